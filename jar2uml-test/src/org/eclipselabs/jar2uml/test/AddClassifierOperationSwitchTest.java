@@ -11,6 +11,8 @@
 package org.eclipselabs.jar2uml.test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.bcel.classfile.ClassFormatException;
 import org.apache.bcel.classfile.JavaClass;
@@ -18,10 +20,16 @@ import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.Type;
 import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Interface;
 import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.Operation;
 import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipselabs.jar2uml.AddClassifierOperationSwitch;
 import org.eclipselabs.jar2uml.JarToUMLException;
+import org.eclipselabs.jar2uml.ReplaceByClassifierSwitch;
 import org.eclipselabs.jar2uml.TypeToClassifierSwitch;
 import org.eclipselabs.jar2uml.test.data.B;
 import org.junit.Assert;
@@ -142,4 +150,42 @@ public class AddClassifierOperationSwitchTest extends J2UTestCase {
 		}
 	}
 
+	/**
+	 * Test method for {@link AddClassifierOperationSwitch#doSwitch(org.eclipse.emf.ecore.EObject)}.
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 * @throws JarToUMLException 
+	 */
+	public void testDoSwitch() throws ClassFormatException, IOException, JarToUMLException {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName(getClass().getSimpleName()); //model must have a name
+		final TypeToClassifierSwitch ttc = new TypeToClassifierSwitch();
+		ttc.setRoot(model);
+		final AddClassifierOperationSwitch aco = new AddClassifierOperationSwitch(ttc);
+		final Classifier umlClass = (Classifier) model.createPackagedElement("B", UMLPackage.eINSTANCE.getClass_());
+		final JavaClass testClass = getTestClass(B.class);
+		final List<Operation> ops = new ArrayList<Operation>();
+		for (Method m : testClass.getMethods()) {
+			aco.setAll(m);
+			final Operation op = aco.doSwitch(umlClass);
+			Assert.assertTrue(aco.isOperationCreated());
+			ops.add(op);
+		}
+		Assert.assertEquals(ops, ((Class) umlClass).getOwnedOperations());
+		for (int i = 0; i < ops.size(); i++) {
+			aco.setAll(testClass.getMethods()[i]);
+			Assert.assertSame(ops.get(i), aco.doSwitch(umlClass));
+		}
+		//operations must be found in the replacing classifier
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(umlClass);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getInterface());
+		final Classifier umlIface = replace.doSwitch(model);
+		for (int i = 0; i < ops.size(); i++) {
+			aco.setAll(testClass.getMethods()[i]);
+			Assert.assertSame(ops.get(i), aco.doSwitch(umlIface));
+		}
+		Assert.assertEquals(ops, ((Interface) umlIface).getOwnedOperations());
+	}
+
 }
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipselabs.jar2uml.AddClassifiers;
+import org.eclipselabs.jar2uml.test.data.A;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link AddClassifiers}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class AddClassifiersTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link AddClassifiers#getReferencedClassNames(JavaClass)}.
+	 * @throws IOException
+	 */
+	public void testGetReferencedClassNames() throws IOException {
+		final Set<String> classNames = AddClassifiers.getReferencedClassNames(getTestClass(B.class));
+		assertTrue(classNames.contains(B.class.getName()));
+		assertTrue(classNames.contains("java.lang.Object"));
+		assertTrue(classNames.contains("java.util.Comparator"));
+		//object types in descriptors, and their enclosing classes
+		assertTrue(classNames.contains(A.AA.class.getName()));
+		assertTrue(classNames.contains(A.class.getName()));
+	}
+
+	/**
+	 * Test method for {@link AddClassifiers#addClassifiersClosure(Collection)}.
+	 * Compares against repeatedly trying to add all classpath classes.
+	 * @throws IOException
+	 */
+	public void testAddClassifiersClosure() throws IOException {
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final JarInputStream jar = new JarInputStream(bundle.getResource(antlrJar).openStream());
+		try {
+			for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				final JavaClass javaClass = new ClassParser(jar, entry.getName()).parse();
+				if ("antlr.Tool".equals(javaClass.getClassName())) {
+					parsedClasses.add(javaClass);
+				} else {
+					parsedCpClasses.add(javaClass);
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		assertEquals(1, parsedClasses.size());
+		//duplicate classpath entries
+		parsedCpClasses.addAll(parsedCpClasses.subList(0, 10));
+
+		final Model model = createModel();
+		final AddClassifiers addClassifiers = new AddClassifiers(null, null, 0, model, true, true);
+		addClassifiers.addAllClassifiers(parsedClasses);
+		final List<JavaClass> skippedClasses = addClassifiers.addClassifiersClosure(parsedCpClasses);
+
+		final Model expectedModel = createModel();
+		final AddClassifiers expectedAddClassifiers = new AddClassifiers(null, null, 0, expectedModel, true, true);
+		expectedAddClassifiers.addAllClassifiers(parsedClasses);
+		final List<JavaClass> expectedSkippedClasses = addClassifiersClosure(expectedAddClassifiers, parsedCpClasses);
+
+		assertFalse(skippedClasses.isEmpty());
+		assertTrue(skippedClasses.size() < parsedCpClasses.size());
+		assertEquals(expectedSkippedClasses.size(), skippedClasses.size());
+		for (int i = 0; i < skippedClasses.size(); i++) {
+			assertSame(expectedSkippedClasses.get(i), skippedClasses.get(i));
+		}
+		assertEquals(getClassifierNames(expectedModel), getClassifierNames(model));
+	}
+
+	/**
+	 * Adds the closure of all referenced classifiers in parsedClasses by trying to add
+	 * all remaining classes, until no more classes are added.
+	 * @param addClassifiers
+	 * @param parsedClasses
+	 * @return The entries in parsedClasses that have not been added.
+	 */
+	private static List<JavaClass> addClassifiersClosure(final AddClassifiers addClassifiers,
+			final Collection<JavaClass> parsedClasses) {
+		final List<JavaClass> processClasses = new ArrayList<JavaClass>(parsedClasses);
+		final Set<JavaClass> addedClasses = new HashSet<JavaClass>();
+		do {
+			processClasses.removeAll(addedClasses);
+			addedClasses.clear();
+			for (JavaClass javaClass : processClasses) {
+				if (addClassifiers.addClassifier(javaClass, true)) {
+					addedClasses.add(javaClass);
+				}
+			}
+		} while (!addedClasses.isEmpty());
+		return processClasses;
+	}
+
+	/**
+	 * @return a new, named UML model
+	 */
+	private Model createModel() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName(getClass().getSimpleName()); //model must have a name
+		return model;
+	}
+
+	/**
+	 * @param model
+	 * @return the qualified names and meta-classes of all classifiers in model, in containment order
+	 */
+	private static List<String> getClassifierNames(final Model model) {
+		final List<String> names = new ArrayList<String>();
+		for (Iterator<EObject> it = model.eAllContents(); it.hasNext();) {
+			final EObject object = it.next();
+			if (object instanceof Classifier) {
+				names.add(((Classifier) object).getQualifiedName() + " : " + object.eClass().getName());
+			}
+		}
+		return names;
+	}
+
+}
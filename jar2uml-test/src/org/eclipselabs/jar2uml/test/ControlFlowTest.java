@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumber;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.GotoInstruction;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Select;
+import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.ExceptionHandler;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link ControlFlow}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ControlFlowTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link InstructionFlow#getSuccessors()} and {@link InstructionFlow#getPredecessors()}.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public void testGraph() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		for (Method m : testClass.getMethods()) {
+			if (m.getCode() == null) {
+				continue;
+			}
+			final ControlFlow cflow = new ControlFlow(new MethodGen(
+					m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool())));
+			final InstructionHandle[] handles = cflow.getMethod().getInstructionList().getInstructionHandles();
+			assertEquals(handles.length, cflow.getFlowCount());
+			int edgeCount = 0;
+			for (InstructionFlow iflow : cflow.getFlows()) {
+				assertSame(iflow, cflow.getFlowOf(handles[iflow.getIndex()]));
+				//successors are unique and have this instruction as predecessor
+				final Set<InstructionFlow> succ = new HashSet<InstructionFlow>(iflow.getSuccessors());
+				assertEquals(iflow.getSuccessorCount(), succ.size());
+				for (int i = 0; i < iflow.getSuccessorCount(); i++) {
+					assertTrue(succ.contains(iflow.getSuccessor(i)));
+					assertTrue(iflow.getSuccessors().contains(iflow.getSuccessor(i)));
+					assertTrue(iflow.getSuccessor(i).getPredecessors().contains(iflow));
+				}
+				for (ExceptionHandler eh : iflow.getExceptionHandlers()) {
+					assertTrue(succ.contains(eh.getHandlerStart()));
+				}
+				final Instruction instr = iflow.getInstruction().getInstruction();
+				if (!iflow.isFinalInstruction() && !(instr instanceof GotoInstruction) && !(instr instanceof Select)) {
+					assertTrue(succ.contains(cflow.getFlow(iflow.getIndex() + 1)));
+				}
+				for (int i = 0; i < iflow.getPredecessorCount(); i++) {
+					assertTrue(iflow.getPredecessor(i).getSuccessors().contains(iflow));
+				}
+				edgeCount += iflow.getSuccessorCount();
+				edgeCount -= iflow.getPredecessorCount();
+				//same line sets include this instruction and are symmetric
+				assertTrue(iflow.getSameLineSet().contains(iflow));
+				for (InstructionFlow sameLine : iflow.getSameLineSet()) {
+					assertTrue(sameLine.getSameLineSet().contains(iflow));
+					assertEquals(iflow.getInstruction().getInstruction().getOpcode(),
+							sameLine.getInstruction().getInstruction().getOpcode());
+				}
+			}
+			assertEquals(0, edgeCount);
+		}
+	}
+
+	/**
+	 * Test method for {@link InstructionFlow#getSameLineSet()}.
+	 * Compares the same line sets against pairwise comparison of all line number table entries,
+	 * and logs the time spent by both.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public void testGetSameLineSet() throws ClassFormatException, IOException {
+		final JarInputStream jar = new JarInputStream(bundle.getResource(antlrJar).openStream());
+		long cflowTime = 0L;
+		long pairwiseTime = 0L;
+		int methodCount = 0;
+		try {
+			for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				final JavaClass javaClass = new ClassParser(jar, entry.getName()).parse();
+				for (Method m : javaClass.getMethods()) {
+					if (m.getCode() == null || m.getLineNumberTable() == null) {
+						continue;
+					}
+					final MethodGen method = new MethodGen(
+							m, javaClass.getClassName(), new ConstantPoolGen(m.getConstantPool()));
+					long start = System.nanoTime();
+					final ControlFlow cflow = new ControlFlow(method);
+					cflowTime += System.nanoTime() - start;
+					start = System.nanoTime();
+					final Map<InstructionFlow, Set<InstructionFlow>> sameLine = findSameLineSets(cflow);
+					pairwiseTime += System.nanoTime() - start;
+					for (InstructionFlow iflow : cflow.getFlows()) {
+						assertEquals(sameLine.get(iflow), new HashSet<InstructionFlow>(iflow.getSameLineSet()));
+					}
+					methodCount++;
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		JarToUMLResources.logger.info(String.format(
+				"%d methods: %d ns for control flow graphs, %d ns for pairwise same line comparison",
+				methodCount, cflowTime, pairwiseTime));
+	}
+
+	/**
+	 * Finds the same line sets of cflow by comparing all pairs of line number table entries.
+	 * @param cflow
+	 * @return the same line set for each instruction
+	 */
+	private static Map<InstructionFlow, Set<InstructionFlow>> findSameLineSets(final ControlFlow cflow) {
+		final Map<InstructionFlow, Set<InstructionFlow>> sameLine = new HashMap<InstructionFlow, Set<InstructionFlow>>();
+		for (InstructionFlow iflow : cflow.getFlows()) {
+			final Set<InstructionFlow> set = new HashSet<InstructionFlow>();
+			set.add(iflow);
+			sameLine.put(iflow, set);
+		}
+		final LineNumber[] lines = cflow.getLines().getLineNumberTable();
+		for (int i = 0; i < lines.length; i++) {
+			final List<InstructionFlow> iflows = cflow.findFlowsFor(i);
+			nextj:
+			for (int j = 0; j < lines.length; j++) {
+				if (j != i && lines[j].getLineNumber() == lines[i].getLineNumber()) {
+					final List<InstructionFlow> jflows = cflow.findFlowsFor(j);
+					if (iflows.size() == jflows.size()) {
+						for (int k = 0; k < iflows.size(); k++) {
+							if (iflows.get(k).getInstruction().getInstruction().getOpcode() != jflows.get(k).getInstruction().getInstruction().getOpcode()) {
+								continue nextj;
+							}
+						}
+						for (int k = 0; k < iflows.size(); k++) {
+							sameLine.get(iflows.get(k)).add(jflows.get(k));
+						}
+					}
+				}
+			}
+		}
+		return sameLine;
+	}
+
+	/**
+	 * Test method for {@link ControlFlow#getFlowOf(InstructionHandle)}.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public void testGetFlowOf() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		final Method m = testClass.getMethods()[0];
+		final ControlFlow cflow = new ControlFlow(new MethodGen(
+				m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool())));
+		final MethodGen other = new MethodGen(
+				m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool()));
+		try {
+			cflow.getFlowOf(other.getInstructionList().getStart());
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.MethodGen;
+import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.ExecutionContext;
+import org.eclipselabs.jar2uml.cflow.ExecutionContextQueue;
+import org.eclipselabs.jar2uml.cflow.LocalHistoryTable;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link ExecutionContextQueue}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ExecutionContextQueueTest extends J2UTestCase {
+
+	private final Set<InstructionFlow> globalHistory = new HashSet<InstructionFlow>();
+	private ControlFlow cflow;
+
+	/**
+	 * Test method for {@link ExecutionContextQueue#removeFirst()}.
+	 */
+	public void testRemoveFirst() {
+		final ExecutionContextQueue queue = new ExecutionContextQueue(globalHistory);
+		assertTrue(queue.isEmpty());
+		final ExecutionContext ec0 = createContext(0, false);
+		final ExecutionContext ec1 = createContext(1, false);
+		final ExecutionContext ec2 = createContext(2, false);
+		queue.addLast(ec0);
+		queue.addFirst(ec1);
+		queue.addLast(ec2);
+		assertEquals(3, queue.size());
+		assertSame(ec1, queue.removeFirst());
+		assertSame(ec0, queue.removeFirst());
+		assertSame(ec2, queue.removeFirst());
+		assertTrue(queue.isEmpty());
+		try {
+			queue.removeFirst();
+			fail("NoSuchElementException expected");
+		} catch (NoSuchElementException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Test method for {@link ExecutionContextQueue#removeBest()}.
+	 */
+	public void testRemoveBest() {
+		final ExecutionContextQueue queue = new ExecutionContextQueue(globalHistory);
+		globalHistory.add(cflow.getFlow(0));
+		globalHistory.add(cflow.getFlow(1));
+		final ExecutionContext visited = createContext(0, true);
+		final ExecutionContext visitedOnOtherPath = createContext(1, false);
+		final ExecutionContext unvisited1 = createContext(2, true);
+		final ExecutionContext unvisited2 = createContext(3, false);
+		queue.addFirst(visited);
+		queue.addLast(visitedOnOtherPath);
+		queue.addLast(unvisited1);
+		queue.addFirst(unvisited2);
+		//never visited instructions first, in queue order
+		assertSame(unvisited2, queue.removeBest());
+		//instructions visited while queued no longer qualify
+		globalHistory.add(cflow.getFlow(2));
+		//then instructions not visited in their own search path
+		assertSame(visitedOnOtherPath, queue.removeBest());
+		//then the first in queue
+		assertSame(visited, queue.removeBest());
+		assertSame(unvisited1, queue.removeBest());
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * @param index the instruction index
+	 * @param visitedOnPath whether the instruction has been visited in the search path of the context
+	 * @return a new execution context for the instruction with the given index
+	 */
+	private ExecutionContext createContext(final int index, final boolean visitedOnPath) {
+		final InstructionFlow iflow = cflow.getFlow(index);
+		final LocalHistoryTable history = new LocalHistoryTable(cflow.getFlowCount());
+		if (visitedOnPath) {
+			history.get(iflow).add(iflow);
+		}
+		return new ExecutionContext(iflow, history, null, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.test.J2UTestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final JavaClass testClass = getTestClass(B.class);
+		for (Method m : testClass.getMethods()) {
+			if (m.getCode() != null) {
+				cflow = new ControlFlow(new MethodGen(
+						m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool())));
+				if (cflow.getFlowCount() > 3) {
+					return;
+				}
+			}
+		}
+		throw new AssertionError();
+	}
+
+}
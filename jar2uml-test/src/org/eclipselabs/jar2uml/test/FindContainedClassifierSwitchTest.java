@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.DataType;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipselabs.jar2uml.ClassifierIndexAdapter;
+import org.eclipselabs.jar2uml.FindContainedClassifierSwitch;
+import org.eclipselabs.jar2uml.MetaClassAdapter;
+import org.eclipselabs.jar2uml.ReplaceByClassifierSwitch;
+import org.eclipselabs.jar2uml.test.data.B;
+import org.junit.Assert;
+
+/**
+ * Test class for {@link FindContainedClassifierSwitch}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class FindContainedClassifierSwitchTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link FindContainedClassifierSwitch#findClassifier(Package, String, org.eclipse.emf.ecore.EClass)}.
+	 */
+	public void testFindClassifier() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName(getClass().getSimpleName()); //model must have a name
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		Assert.assertNull(find.findClassifier(model, "p.A", null));
+		final Classifier a = find.findClassifier(model, "p.A", UMLPackage.eINSTANCE.getDataType());
+		Assert.assertTrue(find.isCreated());
+		Assert.assertSame(a, find.findClassifier(model, "p.A", null));
+		final Classifier inner = find.findClassifier(model, "p.B$C", UMLPackage.eINSTANCE.getDataType());
+		Assert.assertNotNull(inner);
+		Assert.assertSame(inner, find.findClassifier(model, "p.B$C", null));
+		final Package p = find.findPackage(model, "p", false);
+		Assert.assertNotNull(p);
+		//replaced classifiers must be found instead of the originals
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(a);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getInterface());
+		final Classifier iface = replace.doSwitch(p);
+		Assert.assertTrue(iface instanceof Interface);
+		Assert.assertSame(iface, find.findClassifier(model, "p.A", null));
+		//removed classifiers must no longer be found
+		EcoreUtil.remove(iface);
+		Assert.assertNull(find.findClassifier(model, "p.A", null));
+		//removing the first of two classifiers with the same name must expose the second
+		final Classifier first = find.findClassifier(model, "p.D", UMLPackage.eINSTANCE.getDataType());
+		final Classifier second = (Classifier) p.createPackagedElement("D", UMLPackage.eINSTANCE.getDataType());
+		Assert.assertSame(first, find.findClassifier(model, "p.D", null));
+		EcoreUtil.remove(first);
+		Assert.assertSame(second, find.findClassifier(model, "p.D", null));
+		//lookups must survive removal of the indexes
+		ClassifierIndexAdapter.removeAll(model);
+		Assert.assertSame(inner, find.findClassifier(model, "p.B$C", null));
+		Assert.assertSame(p, find.findPackage(model, "p", false));
+	}
+
+	/**
+	 * Test method for {@link FindContainedClassifierSwitch#findClassifier(Package, String, org.eclipse.emf.ecore.EClass)}
+	 * with meta-classes registered in the {@link MetaClassAdapter} of the model.
+	 * @throws IOException
+	 */
+	public void testFindClassifierMetaClass() throws IOException {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName(getClass().getSimpleName()); //model must have a name
+		final MetaClassAdapter metaClasses = MetaClassAdapter.getAdapter(model);
+		Assert.assertSame(metaClasses, MetaClassAdapter.getAdapter(model));
+		Assert.assertTrue(metaClasses.addClass(getTestClass(B.class)));
+		Assert.assertTrue(metaClasses.addClass(getTestClass(B.IPublic.class)));
+		Assert.assertTrue(metaClasses.addClass(getTestClass(B.IPublic.IPublicNested.class)));
+		Assert.assertFalse(metaClasses.addClass(getTestClass(B.class)));
+		Assert.assertEquals(3, metaClasses.size());
+		Assert.assertSame(UMLPackage.eINSTANCE.getInterface(),
+				MetaClassAdapter.getMetaClass(model, B.IPublic.class.getName()));
+		//known classifiers and their containers are created as their registered meta-class
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Classifier nested = find.findClassifier(model, B.IPublic.IPublicNested.class.getName(),
+				UMLPackage.eINSTANCE.getDataType());
+		Assert.assertTrue(nested instanceof Class);
+		final Classifier iface = find.findClassifier(model, B.IPublic.class.getName(), null);
+		Assert.assertTrue(iface instanceof Interface);
+		Assert.assertFalse(iface.isLeaf());
+		Assert.assertSame(iface, nested.getOwner());
+		Assert.assertTrue(find.findClassifier(model, B.class.getName(), null) instanceof Class);
+		//explicit meta-classes are not overridden
+		Assert.assertTrue(find.findClassifier(model, B.IPublicAbstract.class.getName(),
+				UMLPackage.eINSTANCE.getInterface()) instanceof Interface);
+		//unknown classifiers are still created as data types
+		Assert.assertTrue(find.findClassifier(model, "p.D", UMLPackage.eINSTANCE.getDataType()) instanceof DataType);
+		MetaClassAdapter.remove(model);
+		Assert.assertNull(MetaClassAdapter.getMetaClass(model, B.class.getName()));
+	}
+
+}
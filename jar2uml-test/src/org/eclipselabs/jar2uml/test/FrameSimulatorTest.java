@@ -11,19 +11,30 @@
 package org.eclipselabs.jar2uml.test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 
 import org.junit.Assert;
 
 import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.MethodGen;
 import org.eclipselabs.jar2uml.AccessContextVisitor;
+import org.eclipselabs.jar2uml.ConstantPoolView;
 import org.eclipselabs.jar2uml.JarToUMLResources;
 import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.DataflowFrameSimulator;
 import org.eclipselabs.jar2uml.cflow.FrameSimulator;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
+import org.eclipselabs.jar2uml.cflow.SimulationBudget;
 import org.eclipselabs.jar2uml.cflow.SmartExecutionVisitor;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
 import org.eclipselabs.jar2uml.test.data.B;
 
 /**
@@ -32,6 +43,14 @@ import org.eclipselabs.jar2uml.test.data.B;
  */
 public class FrameSimulatorTest extends J2UTestCase {
 
+	/**
+	 * Methods of the test jars for which the dataflow simulator finds less dead code than
+	 * execution path search. The latter proves instructions dead through null checks on
+	 * different local variables that are correlated on each path, which joined frames cannot express.
+	 */
+	private static final Set<String> DATAFLOW_DIFFERENCES = new HashSet<String>(Arrays.asList(
+			"antlr.build.Tool#perform(Ljava/lang/String;Ljava/lang/String;)V"));
+
 	/**
 	 * Test method for {@link FrameSimulator#execute(org.eclipselabs.jar2uml.cflow.ControlFlow)}
 	 * @throws IOException 
@@ -47,6 +66,155 @@ public class FrameSimulatorTest extends J2UTestCase {
 		}
 	}
 
+	/**
+	 * Test method for {@link DataflowFrameSimulator#execute(org.eclipselabs.jar2uml.cflow.ControlFlow)}
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 */
+	public void testExecuteDataflow() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		final AccessContextVisitor acv = new AccessContextVisitor();
+		final FrameSimulator simulator = new FrameSimulator(new SmartExecutionVisitor(), acv);
+		final FrameSimulator dataflow = new DataflowFrameSimulator(new SmartExecutionVisitor(), acv);
+		for (Method m : testClass.getMethods()) {
+			final MethodGen method = new MethodGen(
+					m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool()));
+			testMethod(dataflow, acv, method);
+			//the dataflow simulator must cover at least the instructions covered by execution path search,
+			//whose dead code detection may include instructions that are live on other paths
+			acv.setCp(method.getConstantPool().getConstantPool());
+			final ControlFlow cflow = new ControlFlow(method);
+			simulator.getExecution().setTrackNull(true);
+			simulator.execute(cflow);
+			dataflow.getExecution().setTrackNull(true);
+			dataflow.execute(cflow);
+			Assert.assertTrue(dataflow.getGlobalHistory().containsAll(simulator.getGlobalHistory()));
+			Assert.assertTrue(simulator.getDeadCode().containsAll(dataflow.getDeadCode()));
+			Assert.assertEquals(
+					new HashSet<Object>(simulator.getNoAccessContextAvailable()),
+					new HashSet<Object>(dataflow.getNoAccessContextAvailable()));
+		}
+	}
+
+	/**
+	 * Test method for {@link DataflowFrameSimulator#execute(org.eclipselabs.jar2uml.cflow.ControlFlow)}
+	 * on all methods of the test jars. The dead code and the instructions without access context
+	 * must be the same as for execution path search, except for the methods in {@link #DATAFLOW_DIFFERENCES}.
+	 * Instructions without potential predecessor ({@link ControlFlow#getDeadCode()}) are only
+	 * reported as dead code by the dataflow simulator, and are left out of the comparison.
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 */
+	public void testExecuteDataflowJars() throws ClassFormatException, IOException {
+		final AccessContextVisitor acv = new AccessContextVisitor();
+		final FrameSimulator simulator = new FrameSimulator(new SmartExecutionVisitor(), acv);
+		final FrameSimulator dataflow = new DataflowFrameSimulator(new SmartExecutionVisitor(), acv);
+		simulator.getExecution().setTrackNull(true);
+		dataflow.getExecution().setTrackNull(true);
+		final Set<String> differences = new HashSet<String>();
+		int methodCount = 0;
+		for (String jarPath : new String[] { antlrJar, getoptJar, atJar, instantmessengerJar }) {
+			final JarInputStream jar = new JarInputStream(bundle.getResource(jarPath).openStream());
+			try {
+				for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+					if (!entry.getName().endsWith(".class")) {
+						continue;
+					}
+					final JavaClass javaClass = new ClassParser(jar, entry.getName()).parse();
+					final ConstantPoolView cpg = new ConstantPoolView(javaClass.getConstantPool());
+					acv.setCpg(cpg);
+					for (Method m : javaClass.getMethods()) {
+						if (m.getCode() == null) {
+							continue;
+						}
+						final ControlFlow cflow = new ControlFlow(new MethodCode(m, javaClass.getClassName(), cpg));
+						simulator.execute(cflow);
+						if (simulator.isCutOff()) {
+							continue; //execution path search did not finish
+						}
+						dataflow.execute(cflow);
+						methodCount++;
+						final Set<InstructionFlow> deadCode = new HashSet<InstructionFlow>(simulator.getDeadCode());
+						deadCode.removeAll(cflow.getDeadCode());
+						final Set<InstructionFlow> dataflowDeadCode = new HashSet<InstructionFlow>(dataflow.getDeadCode());
+						dataflowDeadCode.removeAll(cflow.getDeadCode());
+						Assert.assertEquals(
+								new HashSet<InstructionFlow>(simulator.getNoAccessContextAvailable()),
+								new HashSet<InstructionFlow>(dataflow.getNoAccessContextAvailable()));
+						if (!deadCode.equals(dataflowDeadCode)) {
+							//the dataflow simulator may only cover more instructions
+							Assert.assertTrue(deadCode.containsAll(dataflowDeadCode));
+							differences.add(javaClass.getClassName() + '#' + m.getName() + m.getSignature());
+						}
+					}
+				}
+			} finally {
+				jar.close();
+			}
+		}
+		Assert.assertTrue(methodCount > 0);
+		Assert.assertEquals(DATAFLOW_DIFFERENCES, differences);
+	}
+
+	/**
+	 * Test method for {@link FrameSimulator#execute(org.eclipselabs.jar2uml.cflow.ControlFlow)}
+	 * with a {@link SimulationBudget}.
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 */
+	public void testExecuteBudget() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		final AccessContextVisitor acv = new AccessContextVisitor();
+		final FrameSimulator simulator = new FrameSimulator(new SmartExecutionVisitor(), acv);
+		//cut off all execution path searches after the first history copy
+		final SimulationBudget copyBudget = new SimulationBudget();
+		copyBudget.setMethodCopies(1);
+		testBudget(testClass, simulator, acv, copyBudget);
+		for (SimulationBudget.Entry entry : copyBudget.getReport()) {
+			Assert.assertEquals(SimulationBudget.Limit.METHOD_COPIES, entry.getLimit());
+			Assert.assertTrue(entry.getCopies() > 1);
+		}
+		Assert.assertTrue(copyBudget.getRunCopyCount() > 0);
+		//skip all execution path searches
+		final SimulationBudget costBudget = new SimulationBudget();
+		costBudget.setMaxPredictedCost(1);
+		testBudget(testClass, simulator, acv, costBudget);
+		for (SimulationBudget.Entry entry : costBudget.getReport()) {
+			Assert.assertEquals(SimulationBudget.Limit.PREDICTED_COST, entry.getLimit());
+			Assert.assertTrue(entry.getPredictedCost() > 1);
+			Assert.assertEquals(0, entry.getCopies());
+		}
+		Assert.assertEquals(0L, costBudget.getRunCopyCount());
+		costBudget.reset();
+		Assert.assertTrue(costBudget.getReport().isEmpty());
+	}
+
+	/**
+	 * Tests all methods from the test class against budget.
+	 * Cut-off methods must be fully covered by the dataflow analysis.
+	 * @param testClass
+	 * @param simulator
+	 * @param acv
+	 * @param budget
+	 */
+	private void testBudget(final JavaClass testClass, final FrameSimulator simulator,
+			final AccessContextVisitor acv, final SimulationBudget budget) {
+		simulator.setBudget(budget);
+		for (Method m : testClass.getMethods()) {
+			final MethodGen method = new MethodGen(
+					m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool()));
+			acv.setCp(method.getConstantPool().getConstantPool());
+			simulator.getExecution().setTrackNull(true);
+			simulator.execute(new ControlFlow(method));
+			Assert.assertTrue(simulator.getNotCovered().isEmpty());
+			Assert.assertEquals(simulator.isCutOff(), simulator.getCutOffLimit() != null);
+		}
+		Assert.assertFalse(budget.getReport().isEmpty());
+		for (SimulationBudget.Entry entry : budget.getReport()) {
+			Assert.assertTrue(entry.isDegraded());
+		}
+	}
+
 	/**
 	 * Tests a method from the test class.
 	 * @param simulator
@@ -15,14 +15,23 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.classfile.AccessFlags;
 import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Field;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.FieldOrMethod;
+import org.apache.bcel.generic.Instruction;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -31,6 +40,7 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.jdt.core.IClasspathEntry;
@@ -38,14 +48,18 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Feature;
 import org.eclipse.uml2.uml.Model;
 import org.eclipse.uml2.uml.NamedElement;
 import org.eclipse.uml2.uml.VisibilityKind;
 import org.eclipse.uml2.uml.resource.UMLResource;
+import org.eclipselabs.jar2uml.Filter;
 import org.eclipselabs.jar2uml.FindContainedClassifierSwitch;
 import org.eclipselabs.jar2uml.JarToUML;
 import org.eclipselabs.jar2uml.JarToUMLResources;
 import org.eclipselabs.jar2uml.MarkInferredClassifiers;
+import org.eclipselabs.jar2uml.PublicAPIFilter;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
 import org.eclipselabs.jar2uml.test.data.B;
 
 /**
@@ -468,6 +482,160 @@ public final class JarToUMLTest extends J2UTestCase {
 		assertEquals(j2eeAgainDepsModel.eResource(), j2eeRefDepsModel.eResource());
 	}
 
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.JarToUML#setConstantPoolReferences(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testRunConstantPoolReferences() throws CoreException, IOException {
+		final IProject project = getProject(javatestProject);
+		final IFile jaxbOsgiFile = copyFileToProject(jaxbOsgiJar, project);
+		//
+		// all classifiers found via instructions must also be found via the constant pool
+		//
+		final Model jaxbOsgiDepsModel = testRunJar(true, new IFile[]{jaxbOsgiFile}, new IFile[]{}, false, true);
+		final Model jaxbOsgiRefDepsModel = loadModelFromUri(jaxbOsgiDepsUri);
+		final Set<String> names = getClassifierNames(jaxbOsgiDepsModel);
+		for (String name : getClassifierNames(jaxbOsgiRefDepsModel)) {
+			assertTrue(name, names.contains(name));
+		}
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.JarToUML#setConstantPoolReferences(boolean)}
+	 * with a filter that excludes non-public methods.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testRunConstantPoolReferencesFiltered() throws CoreException, IOException {
+		final IProject project = getProject(javatestProject);
+		final IFile atFile = copyFileToProject(atJar, project);
+		final Filter filter = new PublicAPIFilter();
+		//
+		// fields and methods referenced by filtered methods only must not be found in either mode
+		//
+		final Set<String> filteredReferences = getFilteredReferences(jarFile(atFile), filter);
+		assertFalse(filteredReferences.isEmpty());
+		final Model atModel = testRunJar(false, new IFile[]{atFile}, new IFile[]{}, false, false, 1, filter);
+		final Set<String> features = getFeatureNames(atModel);
+		final Set<String> names = getClassifierNames(atModel);
+		final Model atCpModel = testRunJar(false, new IFile[]{atFile}, new IFile[]{}, false, true, 1, filter);
+		final Set<String> cpFeatures = getFeatureNames(atCpModel);
+		for (String reference : filteredReferences) {
+			assertFalse(reference, features.contains(reference));
+			assertFalse(reference, cpFeatures.contains(reference));
+		}
+		//
+		// all classifiers found via instructions must also be found via the constant pool
+		//
+		final Set<String> cpNames = getClassifierNames(atCpModel);
+		for (String name : names) {
+			assertTrue(name, cpNames.contains(name));
+		}
+	}
+
+	/**
+	 * @param jar
+	 * @param filter
+	 * @return The fields and methods, as "class#name", that are referenced by the instructions of
+	 * methods excluded by filter, but are neither referenced by nor declared as included elements.
+	 * Class names use '.' for nested classes.
+	 * @throws IOException
+	 */
+	private Set<String> getFilteredReferences(JarFile jar, Filter filter) throws IOException {
+		final Set<String> included = new HashSet<String>();
+		final Set<String> filtered = new HashSet<String>();
+		for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			final JarEntry entry = entries.nextElement();
+			if (!entry.getName().endsWith(".class")) {
+				continue;
+			}
+			final JavaClass javaClass = new ClassParser(jar.getInputStream(entry), entry.getName()).parse();
+			if (!filter.filter(javaClass)) {
+				continue;
+			}
+			final String className = javaClass.getClassName().replace('$', '.');
+			for (Field field : javaClass.getFields()) {
+				if (filter.filter(field)) {
+					included.add(className + '#' + field.getName());
+				}
+			}
+			final ConstantPoolGen cpg = new ConstantPoolGen(javaClass.getConstantPool());
+			for (Method method : javaClass.getMethods()) {
+				final Set<String> references = filter.filter(method) ? included : filtered;
+				if (references == included) {
+					included.add(className + '#' + method.getName());
+				}
+				if (method.getCode() == null) {
+					continue;
+				}
+				for (Instruction instr : MethodCode.getInstructions(method.getCode().getCode())) {
+					if (instr instanceof FieldOrMethod) {
+						final FieldOrMethod fom = (FieldOrMethod) instr;
+						references.add(fom.getReferenceType(cpg).toString().replace('$', '.') + '#' + fom.getName(cpg));
+					}
+				}
+			}
+		}
+		filtered.removeAll(included);
+		return filtered;
+	}
+
+	/**
+	 * @param model
+	 * @return The fields and methods of all classifiers in model, as "class#name",
+	 * where class is the qualified classifier name, without the model name, and with '.' separators.
+	 */
+	private Set<String> getFeatureNames(Model model) {
+		final Set<String> names = new HashSet<String>();
+		for (Iterator<EObject> it = model.eAllContents(); it.hasNext();) {
+			final EObject element = it.next();
+			if (element instanceof Feature && element.eContainer() instanceof Classifier) {
+				final String qName = ((Classifier) element.eContainer()).getQualifiedName();
+				names.add(qName.substring(qName.indexOf("::") + 2).replace("::", ".") 
+						+ '#' + ((Feature) element).getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.JarToUML#setSimulationThreads(int)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testRunSimulationThreads() throws CoreException, IOException {
+		final IProject project = getProject(javatestProject);
+		final IFile atFile = copyFileToProject(atJar, project);
+		final IFile antlrFile = copyFileToProject(antlrJar, project);
+		final IFile getoptFile = copyFileToProject(getoptJar, project);
+		//
+		// simulating on worker threads must give the same model as simulating on the calling thread
+		//
+		final Model atDepsModel = testRunJar(true, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, false, false, 4);
+		final Model atRefDepsModel = loadModelFromUri(atDepsModelUri);
+		assertEquals(atDepsModel.eResource(), atRefDepsModel.eResource());
+		final Model atModel = testRunJar(false, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, false, false, 4);
+		final Model atRefModel = loadModelFromUri(atModelUri);
+		assertEquals(atModel.eResource(), atRefModel.eResource());
+	}
+
+	/**
+	 * @param model
+	 * @return The qualified names of all classifiers in model, without the model name.
+	 */
+	private Set<String> getClassifierNames(Model model) {
+		final Set<String> names = new HashSet<String>();
+		for (Iterator<EObject> it = model.eAllContents(); it.hasNext();) {
+			final EObject element = it.next();
+			if (element instanceof Classifier) {
+				final String qName = ((Classifier) element).getQualifiedName();
+				names.add(qName.substring(qName.indexOf("::") + 2));
+			}
+		}
+		return names;
+	}
+
 	/**
 	 * Test run on Java test project.
 	 * @param depsOnly
@@ -511,7 +679,56 @@ public final class JarToUMLTest extends J2UTestCase {
 	 * @throws IOException
 	 */
 	private Model testRunJar(boolean depsOnly, IFile[] jarFiles, IFile[] cpJarFiles, boolean updateExisting) throws IOException {
+		return testRunJar(depsOnly, jarFiles, cpJarFiles, updateExisting, false);
+	}
+
+	/**
+	 * Test run on jar files.
+	 * @param depsOnly
+	 * @param jarFiles
+	 * @param cpJarFiles
+	 * @param updateExisting whether to update an existing model
+	 * @param constantPoolReferences whether to derive instruction references from the constant pool
+	 * @return The generated model.
+	 * @throws IOException
+	 */
+	private Model testRunJar(boolean depsOnly, IFile[] jarFiles, IFile[] cpJarFiles, boolean updateExisting,
+			boolean constantPoolReferences) throws IOException {
+		return testRunJar(depsOnly, jarFiles, cpJarFiles, updateExisting, constantPoolReferences, 1);
+	}
+
+	/**
+	 * Test run on jar files.
+	 * @param depsOnly
+	 * @param jarFiles
+	 * @param cpJarFiles
+	 * @param updateExisting whether to update an existing model
+	 * @param constantPoolReferences whether to derive instruction references from the constant pool
+	 * @param simulationThreads the amount of worker threads for frame simulation
+	 * @return The generated model.
+	 * @throws IOException
+	 */
+	private Model testRunJar(boolean depsOnly, IFile[] jarFiles, IFile[] cpJarFiles, boolean updateExisting,
+			boolean constantPoolReferences, int simulationThreads) throws IOException {
+		return testRunJar(depsOnly, jarFiles, cpJarFiles, updateExisting, constantPoolReferences, simulationThreads, null);
+	}
+
+	/**
+	 * Test run on jar files.
+	 * @param depsOnly
+	 * @param jarFiles
+	 * @param cpJarFiles
+	 * @param updateExisting whether to update an existing model
+	 * @param constantPoolReferences whether to derive instruction references from the constant pool
+	 * @param simulationThreads the amount of worker threads for frame simulation
+	 * @param filter the filter to apply, or <code>null</code>
+	 * @return The generated model.
+	 * @throws IOException
+	 */
+	private Model testRunJar(boolean depsOnly, IFile[] jarFiles, IFile[] cpJarFiles, boolean updateExisting,
+			boolean constantPoolReferences, int simulationThreads, Filter filter) throws IOException {
 		JarToUML jar2uml = new JarToUML();
+		jar2uml.setFilter(filter);
 		for (IFile file : jarFiles) {
 			jar2uml.addJar(jarFile(file));
 		}
@@ -524,6 +741,8 @@ public final class JarToUMLTest extends J2UTestCase {
 		jar2uml.setIncludeComment(false);
 		jar2uml.setIncludeFeatures(true);
 		jar2uml.setIncludeInstructionReferences(true);
+		jar2uml.setConstantPoolReferences(constantPoolReferences);
+		jar2uml.setSimulationThreads(simulationThreads);
 		jar2uml.setDependenciesOnly(depsOnly);
 		String outFileName = jarFiles[0].getFullPath().removeFileExtension().lastSegment();
 		if (depsOnly) {
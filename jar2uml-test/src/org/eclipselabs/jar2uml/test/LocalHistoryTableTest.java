@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.eclipselabs.jar2uml.AccessContextVisitor;
+import org.eclipselabs.jar2uml.ConstantPoolView;
+import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.FrameSimulator;
+import org.eclipselabs.jar2uml.cflow.LocalHistoryTable;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
+import org.eclipselabs.jar2uml.cflow.OrderedItem;
+import org.eclipselabs.jar2uml.cflow.SmartExecutionVisitor;
+import org.eclipselabs.jar2uml.cflow.LocalHistoryTable.LocalHistorySet;
+
+/**
+ * Test class for {@link LocalHistoryTable}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class LocalHistoryTableTest extends J2UTestCase {
+
+	/**
+	 * Simple {@link OrderedItem} for testing.
+	 */
+	private static final class Item implements OrderedItem {
+
+		private final int index;
+
+		/**
+		 * Creates a new {@link Item}.
+		 * @param index
+		 */
+		public Item(int index) {
+			super();
+			this.index = index;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.cflow.OrderedItem#getIndex()
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+	}
+
+	/**
+	 * {@link FrameSimulator} that can be forced to use plain bit set history rows.
+	 */
+	private static final class PlainHistoryFrameSimulator extends FrameSimulator {
+
+		private boolean plain;
+
+		/**
+		 * Creates a new {@link PlainHistoryFrameSimulator}.
+		 * @param execution
+		 * @param visitor
+		 */
+		public PlainHistoryFrameSimulator(SmartExecutionVisitor execution, AccessContextVisitor visitor) {
+			super(execution, visitor);
+		}
+
+		/* (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.cflow.FrameSimulator#createHistory(int)
+		 */
+		@Override
+		protected LocalHistoryTable createHistory(int capacity) {
+			return plain ? new LocalHistoryTable(capacity, false) : super.createHistory(capacity);
+		}
+
+		/**
+		 * @param plain whether to use plain bit set history rows only
+		 */
+		public void setPlain(boolean plain) {
+			this.plain = plain;
+		}
+
+	}
+
+	private final Item[] items = new Item[130];
+
+	/**
+	 * Test method for {@link LocalHistoryTable#getCopy()}.
+	 */
+	public void testGetCopy() {
+		final LocalHistoryTable history = new LocalHistoryTable(items.length);
+		assertTrue(history.get(items[0]).add(items[1]));
+		assertTrue(history.get(items[0]).add(items[129]));
+		assertFalse(history.get(items[0]).add(items[1]));
+		assertEquals(1, history.getRowAllocCount());
+		//copies share rows until they change
+		final LocalHistoryTable copy = history.getCopy();
+		assertTrue(copy.get(items[0]).contains(items[129]));
+		assertFalse(copy.get(items[0]).add(items[1]));
+		assertEquals(0, copy.getRowCopyCount());
+		assertTrue(copy.get(items[0]).add(items[64]));
+		assertEquals(1, copy.getRowCopyCount());
+		assertTrue(copy.get(items[0]).contains(items[64]));
+		assertFalse(history.get(items[0]).contains(items[64]));
+		//the original must also copy a shared row before changing it
+		final LocalHistoryTable copy2 = history.getCopy();
+		assertTrue(history.get(items[0]).add(items[2]));
+		assertFalse(copy2.get(items[0]).contains(items[2]));
+		assertEquals(2, history.getRowCopyCount());
+	}
+
+	/**
+	 * Test method for {@link LocalHistorySet#addAll(LocalHistorySet)}.
+	 */
+	public void testAddAll() {
+		final LocalHistoryTable history = new LocalHistoryTable(items.length);
+		final LocalHistorySet set0 = history.get(items[0]);
+		final LocalHistorySet set1 = history.get(items[1]);
+		assertFalse(set1.addAll(set0));
+		set0.add(items[3]);
+		set0.add(items[100]);
+		assertTrue(set1.addAll(set0));
+		assertFalse(set1.addAll(set0));
+		assertTrue(set1.contains(items[3]));
+		assertTrue(set1.contains(items[100]));
+		//set1 shares the row of set0
+		assertEquals(1, history.getRowAllocCount());
+		assertEquals(0, history.getRowCopyCount());
+		set1.add(items[4]);
+		assertFalse(set0.contains(items[4]));
+		assertFalse(set1.addAll(set0));
+		assertTrue(set0.addAll(set1));
+		assertTrue(set0.contains(items[4]));
+		assertEquals(2, history.getRowCopyCount());
+	}
+
+	/**
+	 * Test method for {@link LocalHistoryTable#merge(LocalHistoryTable)}.
+	 */
+	public void testMerge() {
+		final LocalHistoryTable history = new LocalHistoryTable(items.length);
+		history.get(items[0]).add(items[1]);
+		final LocalHistoryTable copy = history.getCopy();
+		copy.get(items[0]).add(items[2]);
+		copy.get(items[5]).add(items[6]);
+		history.merge(copy);
+		assertTrue(history.get(items[0]).contains(items[1]));
+		assertTrue(history.get(items[0]).contains(items[2]));
+		assertTrue(history.get(items[5]).contains(items[6]));
+		assertFalse(history.get(items[6]).contains(items[5]));
+		//merged rows are shared with copy
+		copy.get(items[5]).add(items[7]);
+		assertFalse(history.get(items[5]).contains(items[7]));
+		try {
+			history.merge(new LocalHistoryTable(items.length + 1));
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		copy.setUnmergeable();
+		try {
+			history.merge(copy);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Test method for {@link LocalHistoryTable#isCompressed()}.
+	 */
+	public void testCompressed() {
+		assertFalse(new LocalHistoryTable(items.length).isCompressed());
+		assertTrue(new LocalHistoryTable(items.length, true).isCompressed());
+		final int capacity = 0x2000;
+		final Item[] path = new Item[capacity];
+		for (int i = 0; i < capacity; i++) {
+			path[i] = new Item(i);
+		}
+		final LocalHistoryTable history = new LocalHistoryTable(capacity);
+		assertTrue(history.isCompressed());
+		//straight-line execution path, as in large generated methods
+		for (int i = 0; i < capacity - 1; i++) {
+			final LocalHistorySet instrHistory = history.get(path[i]);
+			assertTrue(instrHistory.add(path[i]));
+			assertTrue(history.get(path[i + 1]).addAll(instrHistory));
+		}
+		final LocalHistorySet last = history.get(path[capacity - 1]);
+		assertTrue(last.contains(path[0]));
+		assertTrue(last.contains(path[capacity - 2]));
+		assertFalse(last.contains(path[capacity - 1]));
+		//a single run per row: far less memory than plain bit sets;
+		//this best case does not occur in real methods, see testCompressedGeneratedParsers()
+		final long plainMemory = (long) capacity * ((capacity + 63) / 64) * 8;
+		assertTrue(history.getRowMemory() * 10 < plainMemory);
+		//fragmented rows fall back to plain bit sets
+		final LocalHistoryTable copy = history.getCopy();
+		final LocalHistorySet first = copy.get(path[0]);
+		for (int i = 2; i < capacity; i += 2) {
+			assertTrue(first.add(path[i]));
+		}
+		assertTrue(first.contains(path[0]));
+		assertFalse(first.contains(path[1]));
+		assertTrue(first.contains(path[capacity - 2]));
+		assertFalse(history.get(path[0]).contains(path[2]));
+		assertFalse(last.addAll(first));
+		final LocalHistorySet second = copy.get(path[1]);
+		assertTrue(second.addAll(first));
+		assertTrue(second.contains(path[capacity - 2]));
+		assertFalse(second.addAll(first));
+		history.merge(copy);
+		assertTrue(history.get(path[0]).contains(path[capacity - 2]));
+		assertFalse(history.get(path[0]).contains(path[capacity - 1]));
+	}
+
+	/**
+	 * Test method for {@link LocalHistoryTable#isCompressed()} on the methods of the generated
+	 * lexers and parsers in antlr.jar. Compares the history memory allocated by {@link FrameSimulator}
+	 * for all compressed tables with the memory allocated for plain bit set rows.
+	 * Branches and merges fragment the rows of these methods, so the gain is modest: the compressed
+	 * tables take between 1.15 and 1.86 times less memory per method, and 1.32 times less in total.
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 */
+	public void testCompressedGeneratedParsers() throws ClassFormatException, IOException {
+		final AccessContextVisitor acv = new AccessContextVisitor();
+		final PlainHistoryFrameSimulator simulator = new PlainHistoryFrameSimulator(new SmartExecutionVisitor(), acv);
+		simulator.getExecution().setTrackNull(true);
+		final Set<String> compressedMethods = new HashSet<String>();
+		long memory = 0L;
+		long plainMemory = 0L;
+		final JarInputStream jar = new JarInputStream(bundle.getResource(antlrJar).openStream());
+		try {
+			for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+				if (!entry.getName().endsWith("Lexer.class") && !entry.getName().endsWith("Parser.class")) {
+					continue;
+				}
+				final JavaClass javaClass = new ClassParser(jar, entry.getName()).parse();
+				final ConstantPoolView cpg = new ConstantPoolView(javaClass.getConstantPool());
+				acv.setCpg(cpg);
+				for (Method m : javaClass.getMethods()) {
+					if (m.getCode() == null) {
+						continue;
+					}
+					final ControlFlow cflow = new ControlFlow(new MethodCode(m, javaClass.getClassName(), cpg));
+					if (!new LocalHistoryTable(cflow.getFlowCount()).isCompressed()) {
+						continue;
+					}
+					compressedMethods.add(javaClass.getClassName() + '#' + m.getName());
+					simulator.setPlain(false);
+					simulator.execute(cflow);
+					final long methodMemory = simulator.getHistoryMemory();
+					final Set<Object> globalHistory = new HashSet<Object>(simulator.getGlobalHistory());
+					simulator.setPlain(true);
+					simulator.execute(cflow);
+					assertEquals(globalHistory, new HashSet<Object>(simulator.getGlobalHistory()));
+					assertTrue(methodMemory <= simulator.getHistoryMemory());
+					memory += methodMemory;
+					plainMemory += simulator.getHistoryMemory();
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		assertTrue(compressedMethods.contains("antlr.actions.java.ActionLexer#mTEXT_ITEM"));
+		assertTrue(compressedMethods.contains("antlr.ANTLRParser#elementNoOptionSpec"));
+		//measured: 623046 bytes compressed vs. 825278 bytes plain
+		assertTrue(memory * 5 < plainMemory * 4);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.test.J2UTestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		for (int i = 0; i < items.length; i++) {
+			items[i] = new Item(i);
+		}
+	}
+
+}
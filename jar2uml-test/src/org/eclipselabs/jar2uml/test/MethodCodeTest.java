@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumber;
+import org.apache.bcel.classfile.LineNumberTable;
+import org.apache.bcel.classfile.LocalVariable;
+import org.apache.bcel.classfile.LocalVariableTable;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ClassGenException;
+import org.apache.bcel.generic.CodeExceptionGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.MethodGen;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link MethodCode}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class MethodCodeTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link MethodCode#MethodCode(Method, String, ConstantPoolGen)}.
+	 * Compares against the code regenerated by {@link MethodGen}.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public void testMethodCode() throws ClassFormatException, IOException {
+		final JarInputStream jar = new JarInputStream(bundle.getResource(antlrJar).openStream());
+		int methodCount = 0;
+		try {
+			for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				final JavaClass javaClass = new ClassParser(jar, entry.getName()).parse();
+				for (Method m : javaClass.getMethods()) {
+					if (m.getCode() == null) {
+						continue;
+					}
+					final ConstantPoolGen cpg = new ConstantPoolGen(m.getConstantPool());
+					final int size = cpg.getSize();
+					final MethodCode code = new MethodCode(m, javaClass.getClassName(), cpg);
+					assertEquals(size, cpg.getSize()); //constant pool is not changed
+					final MethodGen method = new MethodGen(m, javaClass.getClassName(), cpg);
+					assertMethodCode(method, code);
+					methodCount++;
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		assertTrue(methodCount > 0);
+	}
+
+	/**
+	 * Test method for {@link MethodCode#getInstructions(byte[])}.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public void testGetInstructions() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		for (Method m : testClass.getMethods()) {
+			if (m.getCode() == null) {
+				continue;
+			}
+			final Instruction[] instr = MethodCode.getInstructions(m.getCode().getCode());
+			final MethodGen method = new MethodGen(
+					m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool()));
+			final Instruction[] expected = method.getInstructionList().getInstructions();
+			assertEquals(expected.length, instr.length);
+			for (int i = 0; i < instr.length; i++) {
+				assertEquals(expected[i].getOpcode(), instr[i].getOpcode());
+				assertEquals(expected[i].getLength(), instr[i].getLength());
+			}
+		}
+		try {
+			MethodCode.getInstructions(new byte[] { (byte) 0x10 });
+			fail("ClassGenException expected");
+		} catch (ClassGenException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Asserts that code equals the code regenerated by method.
+	 * @param method
+	 * @param code
+	 */
+	private static void assertMethodCode(final MethodGen method, final MethodCode code) {
+		final Method expected = method.getMethod();
+		assertEquals(method.toString(), code.toString());
+		assertEquals(expected.getCode().getMaxLocals(), code.getMaxLocals());
+		assertEquals(expected.getCode().getMaxStack(), code.getMaxStack());
+		//instructions
+		final InstructionHandle[] handles = method.getInstructionList().getInstructionHandles();
+		assertEquals(handles.length, code.getInstructionCount());
+		for (int i = 0; i < handles.length; i++) {
+			assertEquals(handles[i].getPosition(), code.getInstructionHandle(i).getPosition());
+		}
+		//exception handlers
+		final CodeExceptionGen[] cegs = method.getExceptionHandlers();
+		assertEquals(cegs.length, code.getExceptionHandlerCount());
+		for (int i = 0; i < cegs.length; i++) {
+			assertEquals(cegs[i].getStartPC().getPosition(), code.getInstructionHandle(code.getHandlerStart(i)).getPosition());
+			assertEquals(cegs[i].getEndPC().getPosition(), code.getInstructionHandle(code.getHandlerEnd(i)).getPosition());
+			assertEquals(cegs[i].getHandlerPC().getPosition(), code.getInstructionHandle(code.getHandlerTarget(i)).getPosition());
+			assertEquals(cegs[i].getCatchType(), code.getHandlerType(i));
+		}
+		//line numbers
+		final LineNumberTable lines = expected.getLineNumberTable();
+		if (lines == null) {
+			assertNull(code.getLineNumberTable());
+		} else {
+			final LineNumber[] expectedLines = lines.getLineNumberTable();
+			final LineNumber[] codeLines = code.getLineNumberTable().getLineNumberTable();
+			assertEquals(expectedLines.length, codeLines.length);
+			for (int i = 0; i < expectedLines.length; i++) {
+				assertEquals(expectedLines[i].getStartPC(), codeLines[i].getStartPC());
+				assertEquals(expectedLines[i].getLineNumber(), codeLines[i].getLineNumber());
+			}
+		}
+		//local variables
+		final LocalVariable[] expectedVars = method.getLocalVariableTable(method.getConstantPool()).getLocalVariableTable();
+		final LocalVariableTable vars = code.getLocalVariableTable();
+		final LocalVariable[] codeVars = vars.getLocalVariableTable();
+		assertEquals(expectedVars.length, codeVars.length);
+		for (int i = 0; i < expectedVars.length; i++) {
+			assertEquals(expectedVars[i].getIndex(), codeVars[i].getIndex());
+			assertEquals(expectedVars[i].getName(), codeVars[i].getName());
+			assertEquals(expectedVars[i].getSignature(), codeVars[i].getSignature());
+			assertEquals(expectedVars[i].getStartPC(), codeVars[i].getStartPC());
+			assertEquals(expectedVars[i].getLength(), codeVars[i].getLength());
+		}
+	}
+
+}
@@ -10,19 +10,29 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.test;
 
+import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipselabs.jar2uml.AddProperties;
+import org.eclipselabs.jar2uml.ClassFileHandler;
 import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.LazyClassParser;
+import org.eclipselabs.jar2uml.MappedZipFile;
+import org.eclipselabs.jar2uml.ParseCache;
 import org.eclipselabs.jar2uml.ParseClasses;
 
 /**
@@ -99,6 +109,296 @@ public class ParseClassesTest extends J2UTestCase {
 		assertEquals(parsedClasses.size(), classNames.size());
 	}
 
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setParseThreads(int)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesParallel() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar serially and in parallel
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		final List<JavaClass> parParsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parParsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses ppc = new ParseClasses(null, null, 0);
+		ppc.setParseThreads(4);
+		ppc.parseClasses(jar, parParsedClasses, parParsedCpClasses);
+		//
+		// Compare class order and format versions
+		//
+		assertEquals(parsedClasses.size(), parParsedClasses.size());
+		assertEquals(parsedCpClasses.size(), parParsedCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			assertEquals(parsedClasses.get(i).getClassName(), parParsedClasses.get(i).getClassName());
+		}
+		assertEquals(pc.getMajorFormatVersion(), ppc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), ppc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setHeaderOnly(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesHeaderOnly() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar fully and header-only
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		final List<JavaClass> headerClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> headerCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses hpc = new ParseClasses(null, null, 0);
+		hpc.setHeaderOnly(true);
+		hpc.parseClasses(jar, headerClasses, headerCpClasses);
+		//
+		// Compare class headers
+		//
+		assertEquals(parsedClasses.size(), headerClasses.size());
+		assertEquals(parsedCpClasses.size(), headerCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			final JavaClass javaClass = parsedClasses.get(i);
+			final JavaClass headerClass = headerClasses.get(i);
+			assertEquals(javaClass.getClassName(), headerClass.getClassName());
+			assertEquals(javaClass.getSuperclassName(), headerClass.getSuperclassName());
+			assertEquals(javaClass.getAccessFlags(), headerClass.getAccessFlags());
+			assertTrue(Arrays.equals(javaClass.getInterfaceNames(), headerClass.getInterfaceNames()));
+			assertEquals(0, headerClass.getFields().length);
+			assertEquals(0, headerClass.getMethods().length);
+		}
+		assertEquals(pc.getMajorFormatVersion(), hpc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), hpc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setLazyCode(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesLazyCode() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar eagerly and lazily
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		final List<JavaClass> lazyClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> lazyCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses lpc = new ParseClasses(null, null, 0);
+		lpc.setLazyCode(true);
+		lpc.parseClasses(jar, lazyClasses, lazyCpClasses);
+		//
+		// Compare methods and decoded code
+		//
+		assertEquals(parsedClasses.size(), lazyClasses.size());
+		assertEquals(parsedCpClasses.size(), lazyCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			final JavaClass javaClass = parsedClasses.get(i);
+			final JavaClass lazyClass = lazyClasses.get(i);
+			assertEquals(javaClass.getClassName(), lazyClass.getClassName());
+			assertEquals(javaClass.getFields().length, lazyClass.getFields().length);
+			final Method[] methods = javaClass.getMethods();
+			final Method[] lazyMethods = lazyClass.getMethods();
+			assertEquals(methods.length, lazyMethods.length);
+			for (int j = 0; j < methods.length; j++) {
+				assertEquals(methods[j].getSignature(), lazyMethods[j].getSignature());
+				assertEquals(AddProperties.isPreverified(methods[j].getCode()),
+						AddProperties.isPreverified(lazyMethods[j].getCode()));
+				final Code code = methods[j].getCode();
+				final Code lazyCode = LazyClassParser.getCode(lazyMethods[j]);
+				if (code == null) {
+					assertNull(lazyCode);
+				} else {
+					assertTrue(Arrays.equals(code.getCode(), lazyCode.getCode()));
+					assertSame(lazyCode, lazyMethods[j].getCode());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(org.eclipselabs.jar2uml.MappedZipFile, java.util.Collection, java.util.Collection)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesMappedZipFileCollectionOfJavaClassCollectionOfJavaClass() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		final MappedZipFile zip = new MappedZipFile(new File(jar.getName()));
+		assertEquals(jar.size(), zip.size());
+		//
+		// Parse classes in jar and mapped jar
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		final List<JavaClass> mappedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> mappedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses mpc = new ParseClasses(null, null, 0);
+		mpc.parseClasses(zip, mappedClasses, mappedCpClasses);
+		zip.close();
+		//
+		// Compare parsed class names
+		//
+		assertEquals(parsedCpClasses.size(), mappedCpClasses.size());
+		final Set<String> classNames = new HashSet<String>();
+		for (JavaClass javaClass : parsedClasses) {
+			classNames.add(javaClass.getClassName());
+		}
+		final Set<String> mappedClassNames = new HashSet<String>();
+		for (JavaClass javaClass : mappedClasses) {
+			mappedClassNames.add(javaClass.getClassName());
+		}
+		assertEquals(parsedClasses.size(), mappedClasses.size());
+		assertEquals(classNames, mappedClassNames);
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(JarFile, boolean, ClassFileHandler)}
+	 * with {@link org.eclipselabs.jar2uml.ParseClasses#setMappedInput(boolean)}.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public void testParseClassesJarFileClassFileHandlerMapped() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Stream classes in jar from the jar file and from the mapped jar
+		//
+		final List<String> classNames = new ArrayList<String>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, false, new ClassFileHandler() {
+			public boolean accept(String entryName, boolean isCp) {
+				return true;
+			}
+			public void handleClass(JavaClass javaClass, boolean isCp) {
+				classNames.add(javaClass.getClassName() + (isCp ? " (cp)" : ""));
+			}
+		});
+		final List<String> mappedClassNames = new ArrayList<String>();
+		final ParseClasses mpc = new ParseClasses(null, null, 0);
+		mpc.setMappedInput(true);
+		mpc.parseClasses(jar, false, new ClassFileHandler() {
+			public boolean accept(String entryName, boolean isCp) {
+				return true;
+			}
+			public void handleClass(JavaClass javaClass, boolean isCp) {
+				mappedClassNames.add(javaClass.getClassName() + (isCp ? " (cp)" : ""));
+			}
+		});
+		//
+		// Compare class order and format versions
+		//
+		assertFalse(classNames.isEmpty());
+		assertEquals(classNames, mappedClassNames);
+		assertEquals(pc.getMajorFormatVersion(), mpc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), mpc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setParseCache(org.eclipselabs.jar2uml.ParseCache)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesParseCache() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		final File cacheDir = new File(project.getLocation().toFile(), "parsecache");
+		final ParseCache cache = new ParseCache(cacheDir, Long.MAX_VALUE);
+		//
+		// Parse classes in jar twice, filling the cache the first time
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setParseCache(cache);
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		assertEquals(0, cache.getHits());
+		assertEquals(parsedClasses.size(), cache.getMisses());
+		final List<JavaClass> cachedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> cachedCpClasses = new ArrayList<JavaClass>();
+		pc.parseClasses(jar, cachedClasses, cachedCpClasses);
+		assertEquals(parsedClasses.size(), cache.getHits());
+		//
+		// Compare cached classes
+		//
+		assertEquals(parsedClasses.size(), cachedClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			final JavaClass parsed = parsedClasses.get(i);
+			final JavaClass cached = cachedClasses.get(i);
+			assertEquals(parsed.getClassName(), cached.getClassName());
+			assertEquals(parsed.getSuperclassName(), cached.getSuperclassName());
+			assertEquals(parsed.getAccessFlags(), cached.getAccessFlags());
+			assertEquals(parsed.getMethods().length, cached.getMethods().length);
+			assertEquals(parsed.getFields().length, cached.getFields().length);
+		}
+		//
+		// Evict all entries
+		//
+		new ParseCache(cacheDir, 0L).evict();
+		assertEquals(0, cacheDir.listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				return pathname.getName().endsWith(".j2u");
+			}
+		}).length);
+	}
+
 	/**
 	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(java.util.jar.JarInputStream, java.util.Collection, java.util.Collection)}.
 	 * @throws IOException 
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.SmartFrame;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link SmartFrame}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class SmartFrameTest extends J2UTestCase {
+
+	private InstructionFlow iflow1;
+	private InstructionFlow iflow2;
+
+	/**
+	 * Test method for {@link SmartFrame#getCopy()}.
+	 */
+	public void testGetCopy() {
+		final SmartFrame frame = new SmartFrame(3, 4);
+		frame.getLocals().set(0, Type.INT);
+		frame.setResponsibleForLocalVariable(iflow1, 0);
+		frame.getStack().push(Type.STRING);
+		frame.setResponsibleForStackTop(iflow1);
+		frame.getStack().push(Type.INT);
+		frame.setResponsibleForStackTop(iflow2);
+		//copies share their contents until changed
+		final SmartFrame copy = frame.getCopy();
+		assertEquals(frame, copy);
+		assertEquals(frame.hashCode(), copy.hashCode());
+		assertEquals(0, copy.getLocalsCopyCount());
+		copy.getLocals().set(1, Type.LONG);
+		copy.setResponsibleForLocalVariable(iflow2, 0);
+		assertEquals(1, copy.getLocalsCopyCount());
+		assertEquals(Type.UNKNOWN, frame.getLocals().get(1));
+		assertSame(iflow1, frame.getResponsibleForLocalVariable(0));
+		assertSame(iflow2, copy.getResponsibleForLocalVariable(0));
+		copy.setResponsibleForStackEntry(iflow2, 1);
+		assertSame(iflow1, frame.getResponsibleForStackEntry(1));
+		assertSame(iflow2, copy.getResponsibleForStackEntry(1));
+		assertEquals(Type.INT, copy.getStack().pop());
+		assertEquals(2, frame.getStack().size());
+		assertEquals(1, copy.getStack().size());
+		assertFalse(frame.equals(copy));
+		//the original must also copy its shared local variables before changing them
+		frame.getLocals().set(2, Type.FLOAT);
+		assertEquals(2, frame.getLocalsCopyCount());
+		assertEquals(Type.UNKNOWN, copy.getLocals().get(2));
+		frame.getLocals().set(1, Type.INT);
+		assertEquals(2, frame.getLocalsCopyCount());
+		//exception handler frames
+		final SmartFrame excFrame = frame.getCopy();
+		excFrame.getStack().clear();
+		excFrame.getStack().push(Type.THROWABLE);
+		assertEquals(1, excFrame.getStack().slotsUsed());
+		assertEquals(2, frame.getStack().slotsUsed());
+		assertEquals(Type.INT, frame.getStack().peek());
+		frame.resetStatistics();
+		assertEquals(0, frame.getLocalsCopyCount());
+		assertEquals(2, copy.getLocalsCopyCount());
+	}
+
+	/**
+	 * Test method for {@link SmartFrame#getStack()} and {@link SmartFrame#getLocals()} object initialisation.
+	 */
+	public void testInitializeObject() {
+		final SmartFrame frame = new SmartFrame(2, 3);
+		final UninitializedObjectType u = new UninitializedObjectType(new ObjectType("java.lang.Object"));
+		frame.getLocals().set(0, u);
+		frame.getStack().push(u);
+		frame.setResponsibleForStackTop(iflow1);
+		frame.getStack().push(u);
+		frame.getStack().push(Type.INT);
+		final SmartFrame copy = frame.getCopy();
+		copy.getStack().initializeObject(u);
+		copy.getLocals().initializeObject(u);
+		assertEquals(u.getInitialized(), copy.getLocals().get(0));
+		assertEquals(u.getInitialized(), copy.getStack().peek(1));
+		assertEquals(u.getInitialized(), copy.getStack().peek(2));
+		assertSame(iflow1, copy.getResponsibleForStackEntry(2));
+		assertSame(u, frame.getLocals().get(0));
+		assertSame(u, frame.getStack().peek(1));
+		assertSame(u, frame.getStack().peek(2));
+	}
+
+	/**
+	 * Test method for {@link SmartFrame#join(SmartFrame)}.
+	 */
+	public void testJoin() {
+		final Type integer = new ObjectType("java.lang.Integer");
+		final Type stringArray = new ArrayType(Type.STRING, 1);
+		final Type integerArray = new ArrayType(integer, 1);
+		final Type u = new UninitializedObjectType(Type.STRING);
+		final Type[] types1 = { Type.NULL, Type.STRING, Type.STRING, stringArray, stringArray, new ArrayType(Type.INT, 1), u, Type.INT };
+		final Type[] types2 = { Type.STRING, Type.NULL, integer, integerArray, new ArrayType(Type.STRING, 2), stringArray, Type.STRING, Type.STRING };
+		final Type[] joined = { Type.STRING, Type.STRING, Type.OBJECT, new ArrayType(Type.OBJECT, 1), new ArrayType(Type.OBJECT, 1), Type.OBJECT, Type.UNKNOWN, Type.UNKNOWN };
+		for (int i = 0; i < joined.length; i++) {
+			//the result does not depend on the join order
+			assertEquals(joined[i], join(types1[i], types2[i]));
+			assertEquals(joined[i], join(types2[i], types1[i]));
+		}
+		//(String + Integer) + String is the same as String + (Integer + String)
+		assertEquals(Type.OBJECT, join(join(Type.STRING, integer), Type.STRING));
+		//joins reach a fixed point
+		final SmartFrame frame = new SmartFrame(1, 1);
+		frame.getLocals().set(0, Type.STRING);
+		frame.setResponsibleForLocalVariable(iflow1, 0);
+		final SmartFrame other = new SmartFrame(1, 1);
+		other.getLocals().set(0, integer);
+		other.setResponsibleForLocalVariable(iflow2, 0);
+		assertTrue(frame.join(other));
+		assertEquals(Type.OBJECT, frame.getLocals().get(0));
+		assertNull(frame.getResponsibleForLocalVariable(0));
+		assertFalse(frame.join(other));
+	}
+
+	/**
+	 * @param t1
+	 * @param t2
+	 * @return the type of a local variable of t1 joined with t2
+	 */
+	private static Type join(final Type t1, final Type t2) {
+		final SmartFrame frame = new SmartFrame(1, 0);
+		frame.getLocals().set(0, t1);
+		final SmartFrame other = new SmartFrame(1, 0);
+		other.getLocals().set(0, t2);
+		frame.join(other);
+		return frame.getLocals().get(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.test.J2UTestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final ControlFlow cflow = createControlFlow();
+		iflow1 = cflow.getFlow(0);
+		iflow2 = cflow.getFlow(1);
+	}
+
+	/**
+	 * @return the {@link ControlFlow} of the first test class method with at least two instructions
+	 * @throws ClassFormatException
+	 * @throws IOException
+	 */
+	private ControlFlow createControlFlow() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		for (Method m : testClass.getMethods()) {
+			if (m.getCode() != null) {
+				final ControlFlow cflow = new ControlFlow(new MethodGen(
+						m, testClass.getClassName(), new ConstantPoolGen(m.getConstantPool())));
+				if (cflow.getFlowCount() > 1) {
+					return cflow;
+				}
+			}
+		}
+		throw new AssertionError();
+	}
+
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.Type;
+import org.eclipselabs.jar2uml.TypeCache;
+import org.eclipselabs.jar2uml.test.data.B;
+
+/**
+ * Test class for {@link TypeCache}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class TypeCacheTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link TypeCache#getArgumentTypes(String)} and {@link TypeCache#getReturnType(String)}.
+	 * Compares against {@link Type}.
+	 * @throws IOException
+	 */
+	public void testGetArgumentTypes() throws IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		for (Method method : testClass.getMethods()) {
+			final String signature = method.getSignature();
+			final Type[] argTypes = TypeCache.getArgumentTypes(signature);
+			assertTrue(Arrays.equals(Type.getArgumentTypes(signature), argTypes));
+			assertEquals(Type.getReturnType(signature), TypeCache.getReturnType(signature));
+			//shared instances
+			assertSame(argTypes, TypeCache.getArgumentTypes(signature));
+			for (Type argType : argTypes) {
+				assertSame(argType, TypeCache.getType(argType.getSignature()));
+			}
+		}
+		final String signature = "(I[[JLjava/lang/String;[Ljava/lang/Object;Z)[Ljava/lang/String;";
+		assertTrue(Arrays.equals(Type.getArgumentTypes(signature), TypeCache.getArgumentTypes(signature)));
+		assertEquals(Type.getReturnType(signature), TypeCache.getReturnType(signature));
+		assertEquals(0, TypeCache.getArgumentTypes("()V").length);
+		assertSame(Type.VOID, TypeCache.getReturnType("()V"));
+		for (String invalid : new String[] { "", "I)V", "(I", "(Ljava/lang/String)V" }) {
+			try {
+				TypeCache.getArgumentTypes(invalid);
+				fail("ClassFormatException expected");
+			} catch (ClassFormatException e) {
+				//expected
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link TypeCache#getType(String)}.
+	 * @throws IOException
+	 */
+	public void testGetType() throws IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		for (Field field : testClass.getFields()) {
+			final Type type = TypeCache.getType(field.getSignature());
+			assertEquals(field.getType(), type);
+			assertSame(type, TypeCache.getType(field.getSignature()));
+		}
+		assertSame(Type.INT, TypeCache.getType("I"));
+		final Type string = TypeCache.getType("Ljava/lang/String;");
+		assertEquals(Type.STRING, string);
+		TypeCache.clear();
+		assertEquals(string, TypeCache.getType("Ljava/lang/String;"));
+	}
+
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.PrimitiveType;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipselabs.jar2uml.ReplaceByClassifierSwitch;
+import org.eclipselabs.jar2uml.TypeToClassifierSwitch;
+import org.junit.Assert;
+
+/**
+ * Test class for {@link TypeToClassifierSwitch}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class TypeToClassifierSwitchTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link TypeToClassifierSwitch#doSwitch(Type)}.
+	 */
+	public void testDoSwitch() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName(getClass().getSimpleName()); //model must have a name
+		final TypeToClassifierSwitch typeToClassifier = new TypeToClassifierSwitch();
+		typeToClassifier.setRoot(model);
+		final Classifier string = typeToClassifier.doSwitch(Type.STRING);
+		Assert.assertEquals("String", string.getName());
+		Assert.assertEquals(1, typeToClassifier.getMisses());
+		//equal types and signatures are resolved from the cache
+		Assert.assertSame(string, typeToClassifier.doSwitch(new ObjectType("java.lang.String")));
+		Assert.assertSame(string, typeToClassifier.getClassifier("Ljava/lang/String;"));
+		Assert.assertEquals(2, typeToClassifier.getHits());
+		final Classifier array = typeToClassifier.doSwitch(new ArrayType(Type.STRING, 1));
+		Assert.assertTrue(TypeToClassifierSwitch.isArrayType(array));
+		Assert.assertSame(string.getOwner(), array.getOwner());
+		Assert.assertSame(array, typeToClassifier.getClassifier("[Ljava/lang/String;"));
+		final Classifier intType = typeToClassifier.doSwitch(BasicType.INT);
+		Assert.assertTrue(intType instanceof PrimitiveType);
+		Assert.assertSame(intType, typeToClassifier.getClassifier("I"));
+		Assert.assertNull(typeToClassifier.doSwitch(BasicType.VOID));
+		Assert.assertEquals(0, typeToClassifier.getInvalidations());
+		//replaced classifiers are resolved again
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(string);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getClass_());
+		final Classifier stringClass = replace.doSwitch(string.getOwner());
+		Assert.assertNotSame(string, stringClass);
+		Assert.assertSame(stringClass, typeToClassifier.doSwitch(Type.STRING));
+		Assert.assertEquals(1, typeToClassifier.getInvalidations());
+		Assert.assertSame(stringClass, typeToClassifier.doSwitch(Type.STRING));
+		Assert.assertEquals(1, typeToClassifier.getInvalidations());
+		//removed classifiers are created again
+		final Classifier runnable = typeToClassifier.doSwitch(new ObjectType("java.lang.Runnable"));
+		EcoreUtil.remove(runnable);
+		final Classifier newRunnable = typeToClassifier.doSwitch(new ObjectType("java.lang.Runnable"));
+		Assert.assertNotSame(runnable, newRunnable);
+		Assert.assertFalse(newRunnable instanceof Interface);
+		Assert.assertSame(model, EcoreUtil.getRootContainer(newRunnable));
+		//a new root clears the cache
+		final Model otherModel = UMLFactory.eINSTANCE.createModel();
+		otherModel.setName(getClass().getSimpleName());
+		typeToClassifier.setRoot(otherModel);
+		Assert.assertSame(otherModel, EcoreUtil.getRootContainer(typeToClassifier.doSwitch(Type.STRING)));
+	}
+
+}
@@ -12,7 +12,6 @@ package org.eclipselabs.jar2uml;
 
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.generic.AALOAD;
-import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.EmptyVisitor;
 import org.apache.bcel.generic.GETFIELD;
 import org.apache.bcel.generic.INVOKESTATIC;
@@ -29,7 +28,7 @@ import org.eclipselabs.jar2uml.cflow.VisitorWithFrame;
 public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFrame {
 
 	private ConstantPool cp;
-	protected ConstantPoolGen cpg;
+	protected ConstantPoolView cpg;
 	private SmartFrame frame;
 
 	/**
@@ -48,7 +47,7 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 		assert !(instr instanceof INVOKESTATIC);
 		final SmartFrame frame = getFrame();
 		assert frame != null;
-		final int stackIndex = instr.getArgumentTypes(getCpg()).length;
+		final int stackIndex = TypeCache.getArgumentTypes(instr.getSignature(getCpg())).length;
 		final org.apache.bcel.generic.Type accessContext = frame.getStack().peek(stackIndex);
 		if (accessContext.equals(org.apache.bcel.generic.Type.NULL)) {
 			throw new AccessContextUnavailableException(frame.getResponsibleForStackEntry(stackIndex));
@@ -93,21 +92,36 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 
 	/**
 	 * Sets the {@link ConstantPool} to use for the instructions.
+	 * Keeps the current {@link ConstantPoolView} if cp is the current {@link ConstantPool},
+	 * such that all methods of a class share the same {@link ConstantPoolView}.
 	 * @param cp
 	 */
 	public void setCp(ConstantPool cp) {
+		if (cp == this.cp) {
+			return;
+		}
 		this.cp = cp;
 		if (cp == null) {
 			this.cpg = null;
 		} else {
-			this.cpg = new ConstantPoolGen(cp);
+			this.cpg = new ConstantPoolView(cp);
 		}
 	}
 
 	/**
-	 * @return The {@link ConstantPoolGen} for {@link #getCp()}.
+	 * Sets the shared {@link ConstantPoolView} to use for the instructions,
+	 * and its {@link ConstantPool}.
+	 * @param cpg
+	 */
+	public void setCpg(ConstantPoolView cpg) {
+		this.cp = cpg == null ? null : cpg.getConstantPool();
+		this.cpg = cpg;
+	}
+
+	/**
+	 * @return The shared {@link ConstantPoolView} for {@link #getCp()}.
 	 */
-	public ConstantPoolGen getCpg() {
+	public ConstantPoolView getCpg() {
 		return cpg;
 	}
 
@@ -28,6 +28,7 @@ import org.eclipse.uml2.uml.util.UMLSwitch;
 
 /**
  * Adds an operation to the switched element (class, interface or datatype).
+ * Existing operations are looked up through the {@link OperationIndexAdapter} of the switched element.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
@@ -54,7 +55,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 			return null;
 		}
 		final EList<String> argNames = new BasicEList<String>();
-		final org.apache.bcel.generic.Type[] argTypes = m.getArgumentTypes();
+		final org.apache.bcel.generic.Type[] argTypes = TypeCache.getArgumentTypes(m.getSignature());
 		int offset = m.isStatic() ? 0 : 1;
 		int argIndex = 0;
 		for (org.apache.bcel.generic.Type argType : argTypes) {
@@ -171,8 +172,8 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public void setAll(Method method) {
 		setOperationName(method.getName());
 		setArgumentNames(getArgumentNames(method));
-		setBCELArgumentTypes(method.getArgumentTypes());
-		setBCELReturnType(method.getReturnType());
+		setBCELArgumentTypes(TypeCache.getArgumentTypes(method.getSignature()));
+		setBCELReturnType(TypeCache.getReturnType(method.getSignature()));
 	}
 
 	/**
@@ -276,7 +277,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseClass(Class object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		Operation op = OperationIndexAdapter.getIndex(object).getOperation(name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -301,7 +302,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseInterface(Interface object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		Operation op = OperationIndexAdapter.getIndex(object).getOperation(name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -326,7 +327,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseDataType(DataType object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		Operation op = OperationIndexAdapter.getIndex(object).getOperation(name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -13,18 +13,25 @@ package org.eclipselabs.jar2uml;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.Map.Entry;
 
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
 import org.apache.bcel.classfile.Field;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.Instruction;
-import org.apache.bcel.generic.InstructionList;
-import org.apache.bcel.generic.Type;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.uml2.uml.Class;
 import org.eclipse.uml2.uml.Classifier;
@@ -32,6 +39,7 @@ import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Interface;
 import org.eclipse.uml2.uml.Model;
 import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
 
 /**
  * Adds {@link Classifier}s to the UML {@link Model}. This represents the first pass in {@link JarToUML}.
@@ -48,6 +56,11 @@ public class AddClassifiers extends AddToModel {
 		JarToUML.annotate(element, "classpath", "true"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * The characters that field, method and generic signature descriptors can start with.
+	 */
+	private static final String DESCRIPTOR_START = "L[(<"; //$NON-NLS-1$
+
 	protected FixClassifierSwitch fixClassifier = new FixClassifierSwitch();
 	protected ReplaceByClassifierSwitch replaceByClassifier = new ReplaceByClassifierSwitch();
 	protected AddInstructionReferencesVisitor addInstructionReferences = new AddInstructionReferencesVisitor(typeToClassifier);
@@ -79,26 +92,222 @@ public class AddClassifiers extends AddToModel {
 		}
 	}
 
+	/**
+	 * Registers the meta-classes of all unfiltered classes in parsedClasses in the
+	 * {@link MetaClassAdapter} of the UML model, such that referenced classifiers are
+	 * created as instances of their correct meta-class. Does not add any classifiers.
+	 * @param parsedClasses
+	 */
+	public void addAllMetaClasses(Collection<JavaClass> parsedClasses) {
+		final MetaClassAdapter metaClasses = MetaClassAdapter.getAdapter(getModel());
+		for (JavaClass javaClass : parsedClasses) {
+			if (filter(javaClass)) {
+				metaClasses.addClass(javaClass);
+			}
+		}
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("AddClassifiers.metaClasses"),
+				metaClasses.size())); //$NON-NLS-1$
+	}
+
+	/**
+	 * Registers the meta-class of javaClass in the {@link MetaClassAdapter} of the UML model,
+	 * unless javaClass is filtered. Does not add any classifiers.
+	 * @param javaClass
+	 */
+	public void addMetaClass(JavaClass javaClass) {
+		if (filter(javaClass)) {
+			MetaClassAdapter.getAdapter(getModel()).addClass(javaClass);
+		}
+	}
+
 	/**
 	 * Adds the closure of all referenced classifiers in parsedClasses to the UML model. Does not add classifier properties.
+	 * Classpath classes are only processed once their classifier is referenced from the model: the worklist is seeded with
+	 * the classes referenced by the classifiers already in the model, and extended with the referenced classes
+	 * of each added class, as found in its constant pool. Each round processes the worklist in classpath order,
+	 * such that classes are added in the same order as by repeatedly scanning all classpath classes.
+	 * After each round, entries with the same class name as an added class are dropped.
+	 * When the worklist runs empty, the remaining classes are checked once more for references that were not
+	 * found in a constant pool.
 	 * @param parsedClasses
 	 * @return The entries in parsedClasses that have not been added.
 	 * @throws IOException
 	 */
 	public List<JavaClass> addClassifiersClosure(Collection<JavaClass> parsedClasses) throws IOException {
-		final List<JavaClass> processClasses = new ArrayList<JavaClass>(parsedClasses);
-		final Set<JavaClass> addedClasses = new HashSet<JavaClass>();
-		do {
-			processClasses.removeAll(addedClasses);
-			addedClasses.clear();
-			for (JavaClass javaClass : processClasses) {
-				if (addClassifier(javaClass, true)) {
-					addedClasses.add(javaClass);
+		final JavaClass[] cpClasses = parsedClasses.toArray(new JavaClass[parsedClasses.size()]);
+		final Map<String, List<Integer>> classIndex = new HashMap<String, List<Integer>>();
+		for (int i = 0; i < cpClasses.length; i++) {
+			final String className = cpClasses[i].getClassName();
+			List<Integer> entries = classIndex.get(className);
+			if (entries == null) {
+				entries = new ArrayList<Integer>(1);
+				classIndex.put(className, entries);
+			}
+			entries.add(i);
+		}
+		final boolean[] processed = new boolean[cpClasses.length];
+		final boolean[] added = new boolean[cpClasses.length];
+		final TreeSet<Integer> worklist = new TreeSet<Integer>();
+		final List<Integer> roundAdded = new ArrayList<Integer>();
+		int addedCount = 0;
+		int roundCount = 0;
+		int sweepCount = 0;
+		findReferencedClasses(classIndex, processed, worklist);
+		while (!worklist.isEmpty()) {
+			roundCount++;
+			for (Integer i = worklist.first(); i != null; i = worklist.higher(i)) {
+				worklist.remove(i);
+				processed[i] = true;
+				if (addClassifier(cpClasses[i], true)) {
+					added[i] = true;
+					roundAdded.add(i);
+					addedCount++;
+					for (String className : getReferencedClassNames(cpClasses[i])) {
+						final List<Integer> entries = classIndex.get(className);
+						if (entries != null && isReferenced(className)) {
+							for (Integer entry : entries) {
+								if (!processed[entry]) {
+									worklist.add(entry);
+								}
+							}
+						}
+					}
+				}
+				worked();
+			}
+			// entries with the same class name as an added class are not processed in later rounds
+			for (Integer i : roundAdded) {
+				for (Integer entry : classIndex.get(cpClasses[i].getClassName())) {
+					if (!processed[entry]) {
+						processed[entry] = true;
+						worklist.remove(entry);
+						worked();
+					}
+				}
+			}
+			roundAdded.clear();
+			if (worklist.isEmpty()) {
+				sweepCount += findReferencedClasses(classIndex, processed, worklist);
+			}
+		}
+		final List<JavaClass> skippedClasses = new ArrayList<JavaClass>(cpClasses.length - addedCount);
+		nextClass:
+		for (int i = 0; i < cpClasses.length; i++) {
+			for (Integer entry : classIndex.get(cpClasses[i].getClassName())) {
+				if (added[entry]) {
+					continue nextClass;
+				}
+			}
+			if (!processed[i]) {
+				if (!filter(cpClasses[i])) {
+					logSkippedFiltered(cpClasses[i]);
 				}
 				worked();
 			}
-		} while (!addedClasses.isEmpty());
-		return processClasses;
+			skippedClasses.add(cpClasses[i]);
+		}
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("AddClassifiers.closure"),
+				addedCount, cpClasses.length, roundCount, sweepCount)); //$NON-NLS-1$
+		return skippedClasses;
+	}
+
+	/**
+	 * Adds all unprocessed classes in classIndex that are referenced from the UML model to worklist.
+	 * @param classIndex The classpath class indices by class name.
+	 * @param processed Whether each classpath class has been processed.
+	 * @param worklist The classpath class indices to process.
+	 * @return The amount of classes added to worklist.
+	 */
+	private int findReferencedClasses(final Map<String, List<Integer>> classIndex, final boolean[] processed,
+			final Set<Integer> worklist) {
+		int count = 0;
+		for (Entry<String, List<Integer>> entry : classIndex.entrySet()) {
+			if (isReferenced(entry.getKey())) {
+				for (Integer i : entry.getValue()) {
+					if (!processed[i] && worklist.add(i)) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the names of the classes referenced from the constant pool of javaClass:
+	 * class constants, and object types in descriptors. Includes the names of the
+	 * enclosing classes of referenced nested classes.
+	 * @param javaClass
+	 * @return The fully qualified names of the classes referenced by javaClass.
+	 */
+	public static Set<String> getReferencedClassNames(JavaClass javaClass) {
+		final Set<String> classNames = new HashSet<String>();
+		final ConstantPool cp = javaClass.getConstantPool();
+		for (Constant c : cp.getConstantPool()) {
+			if (c instanceof ConstantClass) {
+				final String name = ((ConstantClass) c).getBytes(cp);
+				if (name.startsWith("[")) { //$NON-NLS-1$
+					addDescriptorClassNames(name, classNames);
+				} else {
+					addClassName(name, classNames);
+				}
+			} else if (c instanceof ConstantUtf8) {
+				final String descriptor = ((ConstantUtf8) c).getBytes();
+				if (descriptor.length() > 2 && DESCRIPTOR_START.indexOf(descriptor.charAt(0)) > -1) {
+					addDescriptorClassNames(descriptor, classNames);
+				}
+			}
+		}
+		return classNames;
+	}
+
+	/**
+	 * Adds the names of all object types in descriptor to classNames.
+	 * Strings that are not descriptors may yield names that are not referenced.
+	 * @param descriptor A field or method descriptor, or any other string.
+	 * @param classNames
+	 */
+	private static void addDescriptorClassNames(final String descriptor, final Set<String> classNames) {
+		int start = descriptor.indexOf('L');
+		while (start > -1) {
+			final int end = descriptor.indexOf(';', start);
+			if (end < 0) {
+				return;
+			}
+			final String name = descriptor.substring(start + 1, end);
+			if (name.length() > 0 && name.indexOf('<') < 0 && name.indexOf('(') < 0) {
+				addClassName(name, classNames);
+				start = descriptor.indexOf('L', end);
+			} else {
+				start = descriptor.indexOf('L', start + 1);
+			}
+		}
+	}
+
+	/**
+	 * Adds the fully qualified name for the internal class name, and the names of its enclosing classes, to classNames.
+	 * @param internalName A class name with '/' as package separator.
+	 * @param classNames
+	 */
+	private static void addClassName(final String internalName, final Set<String> classNames) {
+		String className = internalName.replace('/', '.');
+		while (classNames.add(className)) {
+			final int nested = className.lastIndexOf('$');
+			if (nested < 0) {
+				return;
+			}
+			className = className.substring(0, nested);
+		}
+	}
+
+	/**
+	 * @param className The fully qualified class name.
+	 * @return <code>true</code> iff the UML model already contains a classifier for className.
+	 */
+	public boolean isReferenced(String className) {
+		return findContainedClassifier.findClassifier(getModel(), className, null) != null;
 	}
 
 	/**
@@ -241,7 +450,7 @@ public class AddClassifiers extends AddToModel {
 			}
 			JarToUMLResources.logger.finest(fields[i].getSignature());
 			addClassifierProperty.setPropertyName(fields[i].getName());
-			addClassifierProperty.setBCELPropertyType(fields[i].getType());
+			addClassifierProperty.setBCELPropertyType(TypeCache.getType(fields[i].getSignature()));
 		}
 	}
 
@@ -261,14 +470,16 @@ public class AddClassifiers extends AddToModel {
 			}
 			JarToUMLResources.logger.finest(methods[i].getSignature());
 			//set only types to trigger UML element creation
-			addClassifierOperation.setBCELArgumentTypes(methods[i].getArgumentTypes());
-			addClassifierOperation.setBCELReturnType(methods[i].getReturnType());
+			addClassifierOperation.setBCELArgumentTypes(TypeCache.getArgumentTypes(methods[i].getSignature()));
+			addClassifierOperation.setBCELReturnType(TypeCache.getReturnType(methods[i].getSignature()));
 		}
 	}
 
 	/**
 	 * Adds the classifiers referenced by the bytecode instructions of javaClass
-	 * to the UML model. Used in 1st pass.
+	 * to the UML model, or by its constant pool if {@link #isConstantPoolReferences()}.
+	 * Only the constant pool entries referenced by unfiltered methods are used.
+	 * Used in 1st pass.
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
@@ -282,7 +493,15 @@ public class AddClassifiers extends AddToModel {
 				}
 			}
 			JarToUMLResources.logger.finest(methods[i].getSignature());
-			addOpCodeRefs(classifier, methods[i]);
+			if (isConstantPoolReferences()) {
+				addLocalVariableTypes(methods[i].getLocalVariableTable());
+			} else {
+				addOpCodeRefs(classifier, methods[i]);
+			}
+		}
+		if (isConstantPoolReferences()) {
+			addInstructionReferences.addConstantReferences(javaClass.getConstantPool(),
+					getReferencedConstants(javaClass));
 		}
 	}
 
@@ -293,22 +512,29 @@ public class AddClassifiers extends AddToModel {
 	 * @param method The method for which to convert the references.
 	 */
 	public void addOpCodeRefs(Classifier instrContext, Method method) {
-		if (method.getCode() == null) {
+		final Code code = LazyClassParser.getCode(method);
+		if (code == null) {
 			return;
 		}
 		//types in the local variable table should be added to the model
-		final LocalVariableTable lvt = method.getLocalVariableTable();
-		if (lvt != null) {
-			for (LocalVariable local : lvt.getLocalVariableTable()) {
-				typeToClassifier.doSwitch(Type.getType(local.getSignature()));
-			}
-		}
+		addLocalVariableTypes(code.getLocalVariableTable());
 		addInstructionReferences.setCp(method.getConstantPool());
-		InstructionList instrList = new InstructionList(method.getCode().getCode());
-		Instruction[] instr = instrList.getInstructions();
+		final Instruction[] instr = MethodCode.getInstructions(code.getCode());
 		for (int i = 0; i < instr.length; i++) {
 			instr[i].accept(addInstructionReferences);
 		}
 	}
 
+	/**
+	 * Adds the types of the local variables in lvt to the UML model. Used in 1st pass.
+	 * @param lvt The local variable table, or <code>null</code>.
+	 */
+	public void addLocalVariableTypes(LocalVariableTable lvt) {
+		if (lvt != null) {
+			for (LocalVariable local : lvt.getLocalVariableTable()) {
+				typeToClassifier.getClassifier(local.getSignature());
+			}
+		}
+	}
+
 }
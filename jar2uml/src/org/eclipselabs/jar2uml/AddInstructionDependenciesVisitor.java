@@ -10,6 +10,14 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.util.List;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantFieldref;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.generic.AALOAD;
 import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.FieldOrMethod;
@@ -35,6 +43,7 @@ import org.eclipse.uml2.uml.Parameter;
 import org.eclipse.uml2.uml.Property;
 import org.eclipse.uml2.uml.Type;
 import org.eclipse.uml2.uml.VisibilityKind;
+import org.eclipselabs.jar2uml.cflow.AccessContextUnavailableException;
 
 /**
  * Adds classifier fields/methods referenced by the switched bytecode instruction to the model.
@@ -48,6 +57,8 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 	protected AddClassifierOperationSwitch addClassifierOperation = null;
 	protected ReplaceByClassifierSwitch replaceByClassifier = new ReplaceByClassifierSwitch();
 	protected Classifier owner = null;
+	private boolean replaying = false;
+	private org.apache.bcel.generic.Type replayAccessContext = null;
 
 	/**
 	 * Creates a new {@link AddInstructionDependenciesVisitor}.
@@ -68,6 +79,77 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 		this.addClassifierOperation = addClassifierOperationSwitch;
 	}
 
+	/**
+	 * Adds the fields/methods referenced by the recorded instruction visits to the model,
+	 * in the same way as visiting the instructions during frame simulation would.
+	 * @param dependencies The instruction visits recorded by a {@link RecordInstructionDependenciesVisitor}
+	 * for a method of the class represented by {@link #getInstrContext()}.
+	 */
+	public void addDependencies(final List<InstructionDependency> dependencies) {
+		replaying = true;
+		try {
+			for (InstructionDependency dependency : dependencies) {
+				replayAccessContext = dependency.getAccessContext();
+				try {
+					dependency.getInstruction().accept(this);
+				} catch (AccessContextUnavailableException e) {
+					//execution path was cut here during frame simulation
+				}
+			}
+		} finally {
+			replaying = false;
+			replayAccessContext = null;
+		}
+	}
+
+	/**
+	 * @return The recorded access context.
+	 * @throws AccessContextUnavailableException if the recorded access context was not available
+	 */
+	private org.apache.bcel.generic.Type getReplayAccessContext() {
+		assert replayAccessContext != null;
+		if (replayAccessContext.equals(org.apache.bcel.generic.Type.NULL)) {
+			throw new AccessContextUnavailableException(null);
+		}
+		return replayAccessContext;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AccessContextVisitor#getAccessContext(org.apache.bcel.generic.InvokeInstruction)
+	 */
+	@Override
+	protected org.apache.bcel.generic.Type getAccessContext(final InvokeInstruction instr) {
+		if (replaying) {
+			return getReplayAccessContext();
+		}
+		return super.getAccessContext(instr);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AccessContextVisitor#getGetFieldAccessContext()
+	 */
+	@Override
+	protected org.apache.bcel.generic.Type getGetFieldAccessContext() {
+		if (replaying) {
+			return getReplayAccessContext();
+		}
+		return super.getGetFieldAccessContext();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AccessContextVisitor#getPutFieldAccessContext()
+	 */
+	@Override
+	protected org.apache.bcel.generic.Type getPutFieldAccessContext() {
+		if (replaying) {
+			return getReplayAccessContext();
+		}
+		return super.getPutFieldAccessContext();
+	}
+
 	/* (non-Javadoc)
 	 * @see org.apache.bcel.generic.EmptyVisitor#visitAALOAD(org.apache.bcel.generic.AALOAD)
 	 */
@@ -131,8 +213,9 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 		try {
 			addClassifierOperation.setOperationName(obj.getMethodName(cpg));
 			addClassifierOperation.setArgumentNames(null); //we don't have the names available here
-			addClassifierOperation.setBCELArgumentTypes(obj.getArgumentTypes(cpg));
-			addClassifierOperation.setBCELReturnType(obj.getReturnType(cpg));
+			final String signature = obj.getSignature(cpg);
+			addClassifierOperation.setBCELArgumentTypes(TypeCache.getArgumentTypes(signature));
+			addClassifierOperation.setBCELReturnType(TypeCache.getReturnType(signature));
 		} catch (JarToUMLException e) {
 			throw new RuntimeException(e);
 		}
@@ -231,6 +314,51 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 		att.setIsStatic(true);
 	}
 
+	/**
+	 * Adds the fields/methods referenced by the field and method entries of cp to the model,
+	 * without decoding any bytecode instructions. As the access context is not known,
+	 * visibility and final-ness are inferred as for static features, and static-ness is not inferred.
+	 * @param cp The constant pool of the class represented by {@link #getInstrContext()}.
+	 * @param referenced The indices of the referenced entries of cp, or <code>null</code> for all entries.
+	 */
+	public void addConstantDependencies(final ConstantPool cp, final boolean[] referenced) {
+		final Constant[] constants = cp.getConstantPool();
+		for (int i = 0; i < constants.length; i++) {
+			final Constant c = constants[i];
+			if (!(c instanceof ConstantCP) || (referenced != null && !referenced[i])) {
+				continue;
+			}
+			final ConstantCP ref = (ConstantCP) c;
+			final ConstantNameAndType nat = (ConstantNameAndType) cp.getConstant(
+					ref.getNameAndTypeIndex(), Constants.CONSTANT_NameAndType);
+			final String name = nat.getName(cp);
+			final String signature = nat.getSignature(cp);
+			owner = (Classifier) typeToClassifier.doSwitch(AddInstructionReferencesVisitor.getReferenceType(
+					cp.getConstantString(ref.getClassIndex(), Constants.CONSTANT_Class)));
+			if (c instanceof ConstantFieldref) {
+				addClassifierProperty.setPropertyName(name);
+				addClassifierProperty.setBCELPropertyType(TypeCache.getType(signature));
+				final Property att = (Property) addClassifierProperty.doSwitch(owner);
+				setVisibilityStatic(att);
+			} else {
+				try {
+					addClassifierOperation.setOperationName(name);
+					addClassifierOperation.setArgumentNames(null); //we don't have the names available here
+					addClassifierOperation.setBCELArgumentTypes(TypeCache.getArgumentTypes(signature));
+					addClassifierOperation.setBCELReturnType(TypeCache.getReturnType(signature));
+				} catch (JarToUMLException e) {
+					throw new RuntimeException(e);
+				}
+				final Operation newOp = (Operation) addClassifierOperation.doSwitch(owner);
+				setVisibilityStatic(newOp);
+				setIsLeafStatic(newOp);
+				if ("<init>".equals(name)) { //$NON-NLS-1$
+					newOp.setIsAbstract(false); //constructors are never abstract
+				}
+			}
+		}
+	}
+
 	/**
 	 * Sets the visibility of feature, given the access context.
 	 * @param feature
@@ -305,8 +433,7 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 		}
 		if (instrContext.conformsTo(accessContext) || instrContext.conformsTo(owner)) {
 			//feature access on instance of this class or known superclass
-			final EList<Parameter> params = op.getOwnedParameters();
-			final Operation childOp = instrContext.getOperation(op.getName(), null, getParameterTypes(params));
+			final Operation childOp = getOperation(instrContext, op);
 			if (childOp != null) {
 				op.setIsLeaf(false);
 			}
@@ -327,14 +454,26 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 			//feature access on superclass
 			//TODO WARNING: this only works correctly if the entire class hierarchy is known!
 			//Inheritance links between inferred classes are typically missing!
-			final EList<Parameter> params = op.getOwnedParameters();
-			final Operation childOp = instrContext.getOperation(op.getName(), null, getParameterTypes(params));
+			final Operation childOp = getOperation(instrContext, op);
 			if (childOp != null) {
 				op.setIsLeaf(false);
 			}
 		}
 	}
 
+	/**
+	 * @param classifier
+	 * @param op
+	 * @return The operation of classifier with the same name and parameter types as op, or <code>null</code>.
+	 */
+	private Operation getOperation(final Classifier classifier, final Operation op) {
+		if (classifier instanceof Class || classifier instanceof Interface || classifier instanceof DataType) {
+			return OperationIndexAdapter.getIndex(classifier).getOperation(op.getName(),
+					AddClassifierOperationSwitch.getParameterTypes(op.getOwnedParameters()), op.getType());
+		}
+		return classifier.getOperation(op.getName(), null, getParameterTypes(op.getOwnedParameters()));
+	}
+
 	/**
 	 * @param parameters
 	 * @return An {@link EList} of the {@link Type}s of each {@link Parameter} in parameters.
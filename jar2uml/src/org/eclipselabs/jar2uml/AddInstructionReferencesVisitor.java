@@ -10,6 +10,12 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantInterfaceMethodref;
+import org.apache.bcel.classfile.ConstantMethodref;
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.EmptyVisitor;
@@ -177,6 +183,49 @@ public class AddInstructionReferencesVisitor extends EmptyVisitor {
 		owner.setIsAbstract(false);
 	}
 
+	/**
+	 * Adds the classifiers referenced by the class, field and method entries of cp
+	 * to the UML model, without decoding any bytecode instructions.
+	 * Method owners are changed to the right classifier subclass, but field owners are not,
+	 * as the constant pool does not distinguish static from instance fields.
+	 * @param cp The constant pool of the class to add references for.
+	 * @param referenced The indices of the referenced entries of cp, or <code>null</code> for all entries.
+	 */
+	public void addConstantReferences(final ConstantPool cp, final boolean[] referenced) {
+		assert typeToClassifier != null;
+		final Constant[] constants = cp.getConstantPool();
+		for (int i = 0; i < constants.length; i++) {
+			final Constant c = constants[i];
+			if (referenced != null && !referenced[i]) {
+				continue;
+			}
+			if (c instanceof ConstantClass) {
+				typeToClassifier.doSwitch(getReferenceType(((ConstantClass) c).getBytes(cp)));
+			} else if (c instanceof ConstantCP) {
+				owner = (Classifier) typeToClassifier.doSwitch(getReferenceType(
+						cp.getConstantString(((ConstantCP) c).getClassIndex(), Constants.CONSTANT_Class)));
+				if (c instanceof ConstantInterfaceMethodref) {
+					//Can be invoked only on interfaces
+					changeOwnerToInterface();
+				} else if (c instanceof ConstantMethodref && !TypeToClassifierSwitch.isArrayType(owner)) {
+					//Can be invoked only on classes and array types
+					changeOwnerToClass();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param name The internal name of a class or array type, as stored in a {@link ConstantClass}.
+	 * @return The {@link ReferenceType} for name.
+	 */
+	public static ReferenceType getReferenceType(final String name) {
+		if (name.startsWith("[")) { //$NON-NLS-1$
+			return (ReferenceType) TypeCache.getType(name);
+		}
+		return new ObjectType(name.replace('/', '.'));
+	}
+
 	/**
 	 * @return The {@link ConstantPool} to use for the instructions.
 	 */
@@ -186,19 +235,24 @@ public class AddInstructionReferencesVisitor extends EmptyVisitor {
 
 	/**
 	 * Sets the {@link ConstantPool} to use for the instructions.
+	 * Keeps the current {@link ConstantPoolGen} if cp is the current {@link ConstantPool},
+	 * such that all methods of a class share the same {@link ConstantPoolGen}.
 	 * @param cp
 	 */
 	public void setCp(ConstantPool cp) {
+		if (cp == this.cp) {
+			return;
+		}
 		this.cp = cp;
 		if (cp == null) {
 			this.cpg = null;
 		} else {
-			this.cpg = new ConstantPoolGen(cp);
+			this.cpg = new ConstantPoolView(cp);
 		}
 	}
 
 	/**
-	 * @return The {@link ConstantPoolGen} for {@link #getCp()}.
+	 * @return The shared {@link ConstantPoolGen} for {@link #getCp()}.
 	 */
 	public ConstantPoolGen getCpg() {
 		return cpg;
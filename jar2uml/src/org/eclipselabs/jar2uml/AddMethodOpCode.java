@@ -10,30 +10,90 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.MethodGen;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Model;
 import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.DataflowFrameSimulator;
 import org.eclipselabs.jar2uml.cflow.FrameSimulator;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
+import org.eclipselabs.jar2uml.cflow.SimulationBudget;
 import org.eclipselabs.jar2uml.cflow.SmartExecutionVisitor;
+import org.eclipselabs.jar2uml.cflow.VisitorWithFrame;
 
 /**
  * Adds bytecode instruction dependencies for the given method.
+ * Frame simulation can run on worker threads, in which case the UML model
+ * is still only changed on the calling thread.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class AddMethodOpCode extends AddToModel {
 
+	/**
+	 * Simulates the execution frames of a single method, and records
+	 * the resulting instruction dependencies without changing the UML model.
+	 */
+	protected class SimulateMethod implements Callable<List<InstructionDependency>> {
+
+		private final String className;
+		private final Method method;
+		private final ConstantPoolView cpg;
+
+		/**
+		 * Creates a new {@link SimulateMethod}.
+		 * @param className The name of the class that defines method.
+		 * @param method The method to simulate.
+		 * @param cpg The constant pool of the class that defines method.
+		 */
+		public SimulateMethod(String className, Method method, ConstantPoolView cpg) {
+			super();
+			this.className = className;
+			this.method = method;
+			this.cpg = cpg;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public List<InstructionDependency> call() {
+			LazyClassParser.getCode(method);
+			final RecordInstructionDependenciesVisitor recorder = new RecordInstructionDependenciesVisitor();
+			recorder.setCpg(cpg);
+			final FrameSimulator simulator = createSimulator(new SmartExecutionVisitor(), recorder);
+			simulator.setCancellable(AddMethodOpCode.this);
+			final MethodCode code = new MethodCode(method, className, cpg);
+			simulator.execute(new ControlFlow(code));
+			return recorder.getDependencies();
+		}
+
+	}
+
 	protected final AddInstructionDependenciesVisitor addInstructionDependencies = 
 		new AddInstructionDependenciesVisitor(
 				typeToClassifier,
 				addClassifierProperty,
 				addClassifierOperation);
 	protected final SmartExecutionVisitor execution = new SmartExecutionVisitor();
-	protected final FrameSimulator simulator = 
-		new FrameSimulator(execution, addInstructionDependencies);
+	private boolean dataflowSimulation = false;
+	private SimulationBudget simulationBudget = new SimulationBudget();
+	protected FrameSimulator simulator = createSimulator(execution, addInstructionDependencies);
+	private int simulationThreads = 1;
+	private ExecutorService executor = null;
+	private final Map<Method, Future<List<InstructionDependency>>> simulations = 
+		new IdentityHashMap<Method, Future<List<InstructionDependency>>>();
 
 	/**
 	 * Creates a new {@link AddMethodOpCode}.
@@ -52,26 +112,200 @@ public class AddMethodOpCode extends AddToModel {
 				includeInstructionReferences);
 	}
 
+	/**
+	 * @param execution the execution visitor responsible for updating the frame after every instruction
+	 * @param visitor the visitor that needs a valid frame for its execution
+	 * @return a new {@link DataflowFrameSimulator} if {@link #isDataflowSimulation()},
+	 * a new {@link FrameSimulator} otherwise, bounded by {@link #getSimulationBudget()}
+	 */
+	protected FrameSimulator createSimulator(final SmartExecutionVisitor execution, final VisitorWithFrame visitor) {
+		final FrameSimulator simulator;
+		if (isDataflowSimulation()) {
+			simulator = new DataflowFrameSimulator(execution, visitor);
+		} else {
+			simulator = new FrameSimulator(execution, visitor);
+		}
+		simulator.setBudget(getSimulationBudget());
+		return simulator;
+	}
+
+	/**
+	 * Starts simulating the execution frames of the given methods of javaClass on
+	 * {@link #getSimulationThreads()} worker threads, if more than one.
+	 * The recorded dependencies are added to the UML model by
+	 * {@link #addOpCode(Classifier, JavaClass, Method)}, in the order it is invoked.
+	 * @param javaClass The {@link JavaClass} that defines methods.
+	 * @param methods The methods for which to convert the references.
+	 */
+	public void prepareOpCodes(final JavaClass javaClass, final Collection<Method> methods) {
+		if (getSimulationThreads() < 2 || !isIncludeInstructionReferences() || methods.isEmpty()) {
+			return;
+		}
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(getSimulationThreads());
+		}
+		//all methods of javaClass share the same read-only constant pool view
+		final ConstantPoolView cpg = new ConstantPoolView(javaClass.getConstantPool());
+		for (Method method : methods) {
+			//the Code attribute is decoded by the worker thread
+			if (!simulations.containsKey(method) && method.getCode() != null) {
+				simulations.put(method, executor.submit(
+						new SimulateMethod(javaClass.getClassName(), method, cpg)));
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker threads started by {@link #prepareOpCodes(JavaClass, Collection)},
+	 * and discards all prepared methods for which {@link #addOpCode(Classifier, JavaClass, Method)}
+	 * was not invoked.
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		simulations.clear();
+	}
+
+	/**
+	 * @return the amount of methods prepared by {@link #prepareOpCodes(JavaClass, Collection)}
+	 * for which {@link #addOpCode(Classifier, JavaClass, Method)} was not yet invoked.
+	 * Their recorded dependencies are kept until then.
+	 */
+	public int getPreparedCount() {
+		return simulations.size();
+	}
+
+	/**
+	 * Waits for the dependencies recorded for method, and unwraps any exception thrown by the worker thread.
+	 * @param simulation
+	 * @return the recorded dependencies
+	 */
+	private static List<InstructionDependency> getResult(final Future<List<InstructionDependency>> simulation) {
+		try {
+			return simulation.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JarToUMLException(e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new JarToUMLException(cause);
+		}
+	}
+
 	/**
 	 * Adds fields/methods referenced by the bytecode instructions of method
 	 * to the UML model. Used in 2nd pass.
+	 * If method was prepared by {@link #prepareOpCodes(JavaClass, Collection)}, the dependencies
+	 * recorded by the worker thread are added, which gives the same result as simulating on the calling thread.
 	 * @param instrContext The classifier on which the method is defined.
 	 * @param javaClass The {@link JavaClass} representation of instrContext.
 	 * @param method The method for which to convert the references.
 	 * @throws JarToUMLException 
 	 */
 	public void addOpCode(final Classifier instrContext, final JavaClass javaClass, final Method method) {
-		if (!isIncludeInstructionReferences() || method.getCode() == null) {
+		if (!isIncludeInstructionReferences() || LazyClassParser.getCode(method) == null) {
 			return;
 		}
 
 		addInstructionDependencies.setInstrContext(instrContext);
 		addInstructionDependencies.setCp(method.getConstantPool());
 
-		final MethodGen method_gen = new MethodGen(method, javaClass.getClassName(), addInstructionDependencies.getCpg());
-		final ControlFlow cflow = new ControlFlow(method_gen);
+		final Future<List<InstructionDependency>> simulation = simulations.remove(method);
+		if (simulation != null) {
+			addInstructionDependencies.addDependencies(getResult(simulation));
+			return;
+		}
+
+		final MethodCode code = new MethodCode(method, javaClass.getClassName(),
+				addInstructionDependencies.getCpg());
+		final ControlFlow cflow = new ControlFlow(code);
 
 		simulator.execute(cflow);
 	}
 
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods
+	 * prepared by {@link #prepareOpCodes(JavaClass, Collection)}.
+	 * Values lower than 2 simulate on the calling thread. Defaults to 1.
+	 * @return the simulationThreads
+	 */
+	public int getSimulationThreads() {
+		return simulationThreads;
+	}
+
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods
+	 * prepared by {@link #prepareOpCodes(JavaClass, Collection)}.
+	 * Values lower than 2 simulate on the calling thread. Defaults to 1.
+	 * @param simulationThreads the simulationThreads to set
+	 */
+	public void setSimulationThreads(int simulationThreads) {
+		this.simulationThreads = simulationThreads;
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * ({@link DataflowFrameSimulator}) instead of an execution path search ({@link FrameSimulator}).
+	 * Defaults to false.
+	 * @return the dataflowSimulation
+	 */
+	public boolean isDataflowSimulation() {
+		return dataflowSimulation;
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * ({@link DataflowFrameSimulator}) instead of an execution path search ({@link FrameSimulator}).
+	 * Defaults to false.
+	 * @param dataflowSimulation the dataflowSimulation to set
+	 */
+	public void setDataflowSimulation(boolean dataflowSimulation) {
+		this.dataflowSimulation = dataflowSimulation;
+		this.simulator = createSimulator(execution, addInstructionDependencies);
+	}
+
+	/**
+	 * The budget that bounds the execution path search of the frame simulation.
+	 * Is shared by all worker threads.
+	 * @return the simulationBudget
+	 */
+	public SimulationBudget getSimulationBudget() {
+		return simulationBudget;
+	}
+
+	/**
+	 * The budget that bounds the execution path search of the frame simulation.
+	 * Is shared by all worker threads.
+	 * @param simulationBudget the simulationBudget to set
+	 */
+	public void setSimulationBudget(SimulationBudget simulationBudget) {
+		assert simulationBudget != null;
+		this.simulationBudget = simulationBudget;
+		this.simulator.setBudget(simulationBudget);
+	}
+
+	/**
+	 * Adds fields/methods referenced by the constant pool of javaClass
+	 * to the UML model, without simulating any bytecode instructions. Only the constant pool
+	 * entries referenced by unfiltered methods are used. Used in 2nd pass.
+	 * @param instrContext The classifier representation of javaClass.
+	 * @param javaClass The {@link JavaClass} representation of instrContext.
+	 * @see AddInstructionDependenciesVisitor#addConstantDependencies(org.apache.bcel.classfile.ConstantPool, boolean[])
+	 */
+	public void addConstantPoolOpCodes(final Classifier instrContext, final JavaClass javaClass) {
+		if (!isIncludeInstructionReferences()) {
+			return;
+		}
+		addInstructionDependencies.setInstrContext(instrContext);
+		addInstructionDependencies.addConstantDependencies(javaClass.getConstantPool(),
+				getReferencedConstants(javaClass));
+	}
+
 }
@@ -11,7 +11,10 @@
 package org.eclipselabs.jar2uml;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.Code;
@@ -24,6 +27,7 @@ import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Model;
 import org.eclipse.uml2.uml.Operation;
 import org.eclipse.uml2.uml.Property;
+import org.eclipselabs.jar2uml.cflow.SimulationBudget;
 
 /**
  * Adds {@link Classifier} {@link Operation}s and {@link Property}s to the UML {@link Model}.
@@ -48,7 +52,17 @@ public class AddProperties extends AddToModel {
 		return false;
 	}
 
+	/**
+	 * Amount of methods per simulation thread that may be prepared ahead
+	 * of the class whose properties are added.
+	 */
+	public static final int SIMULATION_LOOKAHEAD = 4;
+
 	protected final AddMethodOpCode addMethodOpCode;
+	/**
+	 * Classes whose methods are being simulated, and whose properties are not yet added.
+	 */
+	private final LinkedList<JavaClass> pendingClasses = new LinkedList<JavaClass>();
 
 	private boolean preverified;
 
@@ -76,11 +90,74 @@ public class AddProperties extends AddToModel {
 	 */
 	public void addAllProperties(Collection<JavaClass> parsedClasses) throws IOException {
 		if (isIncludeFeatures()) {
-			for (JavaClass javaClass : parsedClasses) {
-				addClassifierProperties(javaClass);
-				worked();
+			try {
+				for (JavaClass javaClass : parsedClasses) {
+					queueClassifierProperties(javaClass);
+					worked();
+				}
+				flushClassifierProperties();
+			} finally {
+				shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Starts simulating the execution frames of all unfiltered javaClass methods
+	 * on worker threads, if {@link #getSimulationThreads()} is more than one.
+	 * @param javaClass The Java class file to convert.
+	 * @see AddMethodOpCode#prepareOpCodes(JavaClass, Collection)
+	 */
+	public void prepareOperations(JavaClass javaClass) {
+		if (getSimulationThreads() < 2 || !isIncludeInstructionReferences() 
+				|| isConstantPoolReferences() || !filter(javaClass)) {
+			return;
+		}
+		final List<Method> methods = new ArrayList<Method>();
+		for (Method method : javaClass.getMethods()) {
+			if (getFilter() == null || getFilter().filter(method)) {
+				methods.add(method);
 			}
 		}
+		addMethodOpCode.prepareOpCodes(javaClass, methods);
+	}
+
+	/**
+	 * Adds the properties of javaClass after the properties of all previously queued classes.
+	 * Starts simulating the execution frames of the javaClass methods on worker threads
+	 * right away, and adds the properties of the oldest queued classes while more than
+	 * {@link #SIMULATION_LOOKAHEAD} methods per simulation thread are in flight.
+	 * This overlaps the simulation of later classes with the addition of earlier classes,
+	 * while keeping only a bounded amount of recorded dependencies in memory.
+	 * @param javaClass The Java class file to convert.
+	 * @see #flushClassifierProperties()
+	 */
+	public void queueClassifierProperties(JavaClass javaClass) {
+		prepareOperations(javaClass);
+		pendingClasses.addLast(javaClass);
+		final int lookahead = getSimulationThreads() < 2 ? 0 : SIMULATION_LOOKAHEAD * getSimulationThreads();
+		while (!pendingClasses.isEmpty() 
+				&& (pendingClasses.size() > lookahead || addMethodOpCode.getPreparedCount() > lookahead)) {
+			addClassifierProperties(pendingClasses.removeFirst());
+		}
+	}
+
+	/**
+	 * Adds the properties of all classes queued by {@link #queueClassifierProperties(JavaClass)}.
+	 */
+	public void flushClassifierProperties() {
+		while (!pendingClasses.isEmpty()) {
+			addClassifierProperties(pendingClasses.removeFirst());
+		}
+	}
+
+	/**
+	 * Stops the frame simulation worker threads, if any, and discards all queued classes.
+	 * @see AddMethodOpCode#shutdown()
+	 */
+	public void shutdown() {
+		pendingClasses.clear();
+		addMethodOpCode.shutdown();
 	}
 
 	/**
@@ -114,7 +191,7 @@ public class AddProperties extends AddToModel {
 			}
 			JarToUMLResources.logger.finest(fields[i].getSignature());
 			addClassifierProperty.setPropertyName(fields[i].getName());
-			addClassifierProperty.setBCELPropertyType(fields[i].getType());
+			addClassifierProperty.setBCELPropertyType(TypeCache.getType(fields[i].getSignature()));
 			Property prop = (Property) addClassifierProperty.doSwitch(classifier);
 			prop.setVisibility(JarToUML.toUMLVisibility(fields[i]));
 			prop.setIsStatic(fields[i].isStatic());
@@ -130,6 +207,8 @@ public class AddProperties extends AddToModel {
 	 */
 	public void addOperations(Classifier classifier, JavaClass javaClass) {
 		assert classifier != null;
+		final boolean constantPoolReferences = isConstantPoolReferences();
+		prepareOperations(javaClass);
 		Method[] methods = javaClass.getMethods();
 		for (int i = 0; i < methods.length; i++) {
 			if (getFilter() != null) {
@@ -144,11 +223,72 @@ public class AddProperties extends AddToModel {
 			op.setIsAbstract(methods[i].isAbstract());
 			op.setIsStatic(methods[i].isStatic());
 			op.setIsLeaf(methods[i].isFinal());
-			addMethodOpCode.addOpCode(classifier, javaClass, methods[i]);
+			if (!constantPoolReferences) {
+				addMethodOpCode.addOpCode(classifier, javaClass, methods[i]);
+			}
 			if (isPreverified(methods[i].getCode())) {
 				setPreverified(true);
 			}
 		}
+		if (constantPoolReferences) {
+			addMethodOpCode.addConstantPoolOpCodes(classifier, javaClass);
+		}
+	}
+
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods.
+	 * The UML model is only changed on the calling thread.
+	 * Values lower than 2 simulate on the calling thread. Defaults to 1.
+	 * @return the simulationThreads
+	 */
+	public int getSimulationThreads() {
+		return addMethodOpCode.getSimulationThreads();
+	}
+
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods.
+	 * The UML model is only changed on the calling thread.
+	 * Values lower than 2 simulate on the calling thread. Defaults to 1.
+	 * @param simulationThreads the simulationThreads to set
+	 */
+	public void setSimulationThreads(int simulationThreads) {
+		addMethodOpCode.setSimulationThreads(simulationThreads);
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * instead of an execution path search. Defaults to false.
+	 * @return the dataflowSimulation
+	 */
+	public boolean isDataflowSimulation() {
+		return addMethodOpCode.isDataflowSimulation();
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * instead of an execution path search. Defaults to false.
+	 * @param dataflowSimulation the dataflowSimulation to set
+	 */
+	public void setDataflowSimulation(boolean dataflowSimulation) {
+		addMethodOpCode.setDataflowSimulation(dataflowSimulation);
+	}
+
+	/**
+	 * The budget that bounds the execution path search of the frame simulation.
+	 * Is shared by all worker threads.
+	 * @return the simulationBudget
+	 */
+	public SimulationBudget getSimulationBudget() {
+		return addMethodOpCode.getSimulationBudget();
+	}
+
+	/**
+	 * The budget that bounds the execution path search of the frame simulation.
+	 * Is shared by all worker threads.
+	 * @param simulationBudget the simulationBudget to set
+	 */
+	public void setSimulationBudget(SimulationBudget simulationBudget) {
+		addMethodOpCode.setSimulationBudget(simulationBudget);
 	}
 
 	/**
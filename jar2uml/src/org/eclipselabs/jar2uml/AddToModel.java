@@ -10,8 +10,15 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.CPInstruction;
+import org.apache.bcel.generic.Instruction;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.uml2.uml.Model;
+import org.eclipselabs.jar2uml.cflow.MethodCode;
 
 /**
  * Abstract base class for operations that add elements to the UML {@link Model}.
@@ -25,6 +32,7 @@ public abstract class AddToModel extends ChangeModel {
 
 	private boolean includeFeatures;
 	private boolean includeInstructionReferences;
+	private boolean constantPoolReferences;
 	protected AddClassifierInterfaceSwitch addClassifierInterface = new AddClassifierInterfaceSwitch();
 
 	/**
@@ -45,6 +53,13 @@ public abstract class AddToModel extends ChangeModel {
 		typeToClassifier.setRoot(getModel());
 	}
 
+	/**
+	 * @return The {@link TypeToClassifierSwitch} that resolves the types of added elements.
+	 */
+	public TypeToClassifierSwitch getTypeToClassifier() {
+		return typeToClassifier;
+	}
+
 	/**
 	 * Whether or not to include classifier operations and attributes.
 	 * @return the includeFeatures
@@ -78,4 +93,70 @@ public abstract class AddToModel extends ChangeModel {
 		this.includeInstructionReferences = includeInstructionReferences;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Whether to derive instruction references from the constant pool instead of
+	 * the bytecode instructions. Faster, but infers visibility, static-ness and
+	 * abstractness of referenced features less precisely. Defaults to false.
+	 * @return the constantPoolReferences
+	 */
+	public boolean isConstantPoolReferences() {
+		return constantPoolReferences;
+	}
+
+	/**
+	 * Whether to derive instruction references from the constant pool instead of
+	 * the bytecode instructions. Faster, but infers visibility, static-ness and
+	 * abstractness of referenced features less precisely. Defaults to false.
+	 * @param constantPoolReferences the constantPoolReferences to set
+	 */
+	public void setConstantPoolReferences(boolean constantPoolReferences) {
+		this.constantPoolReferences = constantPoolReferences;
+	}
+
+	/**
+	 * The constant pool of javaClass also holds the references of filtered methods.
+	 * If the filter excludes any method of javaClass, the constant pool entries that
+	 * are referenced by the instructions and exception handlers of the other methods are
+	 * marked, such that {@link #isConstantPoolReferences()} finds the same references as the
+	 * bytecode instructions. This decodes the instructions, but does not simulate them.
+	 * @param javaClass
+	 * @return the referenced constant pool indices, or <code>null</code> if no method of javaClass is filtered
+	 */
+	protected boolean[] getReferencedConstants(JavaClass javaClass) {
+		final Filter filter = getFilter();
+		if (filter == null) {
+			return null;
+		}
+		final Method[] methods = javaClass.getMethods();
+		boolean filtered = false;
+		for (Method method : methods) {
+			if (!filter.filter(method)) {
+				filtered = true;
+				break;
+			}
+		}
+		if (!filtered) {
+			return null;
+		}
+		final boolean[] referenced = new boolean[javaClass.getConstantPool().getLength()];
+		for (Method method : methods) {
+			if (!filter.filter(method)) {
+				continue;
+			}
+			final Code code = LazyClassParser.getCode(method);
+			if (code == null) {
+				continue;
+			}
+			for (Instruction instr : MethodCode.getInstructions(code.getCode())) {
+				if (instr instanceof CPInstruction) {
+					referenced[((CPInstruction) instr).getIndex()] = true;
+				}
+			}
+			for (CodeException handler : code.getExceptionTable()) {
+				referenced[handler.getCatchType()] = true;
+			}
+		}
+		return referenced;
+	}
+
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.IOException;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Call-back for processing class files as soon as they are parsed,
+ * without collecting all parsed classes first.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public interface ClassFileHandler {
+
+	/**
+	 * @param entryName The jar entry or file name of the class file.
+	 * @param isCp Whether the class file is a classpath entry.
+	 * @return <code>true</code> iff the class file should be parsed and passed to {@link #handleClass(JavaClass, boolean)}.
+	 */
+	public boolean accept(String entryName, boolean isCp);
+
+	/**
+	 * Processes javaClass. javaClass is not retained by the caller.
+	 * @param javaClass The parsed class file.
+	 * @param isCp Whether the class file is a classpath entry.
+	 * @throws IOException
+	 */
+	public void handleClass(JavaClass javaClass, boolean isCp) throws IOException;
+
+}
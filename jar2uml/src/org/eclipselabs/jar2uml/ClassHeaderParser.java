@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+
+/**
+ * Parses only the header of a class file: the constant pool, access flags,
+ * class name, superclass name and interface names. Stops reading after the interfaces,
+ * such that fields, methods and their attributes are never decoded.
+ * The resulting {@link JavaClass} has no fields, methods or attributes, and its
+ * constant pool only contains the {@link ConstantClass} and {@link ConstantUtf8} entries.
+ * Drop-in replacement for {@link ClassParser} when only the type hierarchy is needed.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ClassHeaderParser {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	// constant pool tags not known to BCEL 5.2
+	private static final byte CONSTANT_MethodHandle = 15;
+	private static final byte CONSTANT_MethodType = 16;
+	private static final byte CONSTANT_Dynamic = 17;
+	private static final byte CONSTANT_InvokeDynamic = 18;
+	private static final byte CONSTANT_Module = 19;
+	private static final byte CONSTANT_Package = 20;
+
+	private final DataInputStream file;
+	private final String fileName;
+	private final byte[] skipBuffer = new byte[8];
+
+	/**
+	 * Creates a new {@link ClassHeaderParser}.
+	 * @param file Input stream positioned at the start of the class file. Not closed by the parser.
+	 * @param fileName The class file name.
+	 */
+	public ClassHeaderParser(InputStream file, String fileName) {
+		super();
+		assert file != null;
+		this.fileName = fileName;
+		if (file instanceof DataInputStream) {
+			this.file = (DataInputStream) file;
+		} else {
+			this.file = new DataInputStream(new BufferedInputStream(file, 1024));
+		}
+	}
+
+	/**
+	 * Parses the class file header.
+	 * @return A {@link JavaClass} without fields, methods or attributes.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public JavaClass parse() throws IOException, ClassFormatException {
+		if (file.readInt() != MAGIC) {
+			throw new ClassFormatException(String.format(
+					JarToUMLResources.getString("ClassHeaderParser.notAClassFile"),
+					fileName)); //$NON-NLS-1$
+		}
+		final int minor = file.readUnsignedShort();
+		final int major = file.readUnsignedShort();
+		final ConstantPool cp = readConstantPool();
+		final int accessFlags = file.readUnsignedShort();
+		final int classIndex = file.readUnsignedShort();
+		final int superclassIndex = file.readUnsignedShort();
+		final int[] interfaces = new int[file.readUnsignedShort()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = file.readUnsignedShort();
+		}
+		return new JavaClass(classIndex, superclassIndex, fileName, major, minor, accessFlags,
+				cp, interfaces, new Field[0], new Method[0], new Attribute[0]);
+	}
+
+	/**
+	 * Reads the constant pool, skipping all entries other than
+	 * {@link ConstantClass} and {@link ConstantUtf8} by their length.
+	 * @return The constant pool, with <code>null</code> for skipped entries.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	private ConstantPool readConstantPool() throws IOException, ClassFormatException {
+		final Constant[] constants = new Constant[file.readUnsignedShort()];
+		for (int i = 1; i < constants.length; i++) {
+			final byte tag = file.readByte();
+			switch (tag) {
+			case Constants.CONSTANT_Utf8:
+				constants[i] = new ConstantUtf8(file.readUTF());
+				break;
+			case Constants.CONSTANT_Class:
+				constants[i] = new ConstantClass(file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_String:
+			case CONSTANT_MethodType:
+			case CONSTANT_Module:
+			case CONSTANT_Package:
+				skip(2);
+				break;
+			case CONSTANT_MethodHandle:
+				skip(3);
+				break;
+			case Constants.CONSTANT_Integer:
+			case Constants.CONSTANT_Float:
+			case Constants.CONSTANT_Fieldref:
+			case Constants.CONSTANT_Methodref:
+			case Constants.CONSTANT_InterfaceMethodref:
+			case Constants.CONSTANT_NameAndType:
+			case CONSTANT_Dynamic:
+			case CONSTANT_InvokeDynamic:
+				skip(4);
+				break;
+			case Constants.CONSTANT_Long:
+			case Constants.CONSTANT_Double:
+				skip(8);
+				i++; // takes up two constant pool slots
+				break;
+			default:
+				throw new ClassFormatException(String.format(
+						JarToUMLResources.getString("ClassHeaderParser.invalidConstantTag"),
+						tag, fileName)); //$NON-NLS-1$
+			}
+		}
+		return new ConstantPool(constants);
+	}
+
+	/**
+	 * Skips exactly n bytes.
+	 * @param n
+	 * @throws IOException
+	 */
+	private void skip(final int n) throws IOException {
+		file.readFully(skipBuffer, 0, n);
+	}
+
+}
@@ -0,0 +1,465 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LocalVariable;
+import org.apache.bcel.classfile.LocalVariableTable;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.Type;
+import org.eclipse.emf.common.util.EList;
+
+/**
+ * Compact summary of a parsed class file: names, flags, super types, field and method signatures,
+ * method argument names, and the class names referenced from the constant pool.
+ * Can be stored and converted back into a {@link JavaClass} without bytecode.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ClassSummary {
+
+	/**
+	 * Summary of a field or method.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	public static final class MemberSummary {
+
+		private final String name;
+		private final String signature;
+		private final int accessFlags;
+		private final int codeFlags;
+		private final String[] argumentNames;
+
+		/**
+		 * Creates a new {@link MemberSummary}.
+		 * @param name
+		 * @param signature
+		 * @param accessFlags
+		 * @param codeFlags {@link ClassSummary#HAS_CODE} and {@link ClassSummary#PREVERIFIED}
+		 * @param argumentNames the argument names, or <code>null</code>
+		 */
+		public MemberSummary(String name, String signature, int accessFlags,
+				int codeFlags, String[] argumentNames) {
+			super();
+			assert name != null;
+			assert signature != null;
+			this.name = name;
+			this.signature = signature;
+			this.accessFlags = accessFlags;
+			this.codeFlags = codeFlags;
+			this.argumentNames = argumentNames;
+		}
+
+		/**
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the signature
+		 */
+		public String getSignature() {
+			return signature;
+		}
+
+		/**
+		 * @return the access flags
+		 */
+		public int getAccessFlags() {
+			return accessFlags;
+		}
+
+		/**
+		 * @return {@link ClassSummary#HAS_CODE} and {@link ClassSummary#PREVERIFIED}
+		 */
+		public int getCodeFlags() {
+			return codeFlags;
+		}
+
+		/**
+		 * @return the argument names from the local variable table, or <code>null</code>
+		 */
+		public String[] getArgumentNames() {
+			return argumentNames;
+		}
+
+	}
+
+	public static final int HAS_CODE = 0x1;
+	public static final int PREVERIFIED = 0x2;
+
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * @param javaClass
+	 * @return A new {@link ClassSummary} of javaClass.
+	 */
+	public static ClassSummary create(final JavaClass javaClass) {
+		final Field[] fields = javaClass.getFields();
+		final MemberSummary[] fieldSummaries = new MemberSummary[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			fieldSummaries[i] = new MemberSummary(
+					fields[i].getName(), fields[i].getSignature(),
+					fields[i].getAccessFlags(), 0, null);
+		}
+		final Method[] methods = javaClass.getMethods();
+		final MemberSummary[] methodSummaries = new MemberSummary[methods.length];
+		for (int i = 0; i < methods.length; i++) {
+			final Code code = methods[i].getCode();
+			int codeFlags = 0;
+			if (code != null) {
+				codeFlags |= HAS_CODE;
+			}
+			if (AddProperties.isPreverified(code)) {
+				codeFlags |= PREVERIFIED;
+			}
+			String[] argNames = null;
+			final EList<String> names = AddClassifierOperationSwitch.getArgumentNames(methods[i]);
+			if (names != null) {
+				argNames = names.toArray(new String[names.size()]);
+			}
+			methodSummaries[i] = new MemberSummary(
+					methods[i].getName(), methods[i].getSignature(),
+					methods[i].getAccessFlags(), codeFlags, argNames);
+		}
+		return new ClassSummary(
+				javaClass.getFileName(), javaClass.getClassName(), javaClass.getSuperclassName(),
+				javaClass.getMajor(), javaClass.getMinor(), javaClass.getAccessFlags(),
+				javaClass.getInterfaceNames(), fieldSummaries, methodSummaries,
+				getReferencedClassNames(javaClass.getConstantPool()));
+	}
+
+	/**
+	 * @param cp
+	 * @return The internal names of all classes referenced by cp.
+	 */
+	public static String[] getReferencedClassNames(final ConstantPool cp) {
+		final List<String> names = new ArrayList<String>();
+		for (Constant c : cp.getConstantPool()) {
+			if (c instanceof ConstantClass) {
+				names.add((String) ((ConstantClass) c).getConstantValue(cp));
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Reads a {@link ClassSummary} written by {@link #write(DataOutputStream)}.
+	 * @param in
+	 * @return the {@link ClassSummary}
+	 * @throws IOException if in does not contain a {@link ClassSummary} in the current format
+	 */
+	public static ClassSummary read(final DataInputStream in) throws IOException {
+		if (in.readInt() != FORMAT_VERSION) {
+			throw new IOException(JarToUMLResources.getString("ClassSummary.wrongFormat")); //$NON-NLS-1$
+		}
+		final String fileName = in.readUTF();
+		final String className = in.readUTF();
+		final String superclassName = in.readUTF();
+		final int major = in.readUnsignedShort();
+		final int minor = in.readUnsignedShort();
+		final int accessFlags = in.readInt();
+		final String[] interfaceNames = readStrings(in);
+		final MemberSummary[] fields = new MemberSummary[in.readInt()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = new MemberSummary(in.readUTF(), in.readUTF(), in.readInt(), 0, null);
+		}
+		final MemberSummary[] methods = new MemberSummary[in.readInt()];
+		for (int i = 0; i < methods.length; i++) {
+			final String name = in.readUTF();
+			final String signature = in.readUTF();
+			final int flags = in.readInt();
+			final int codeFlags = in.readByte();
+			methods[i] = new MemberSummary(name, signature, flags, codeFlags, readStrings(in));
+		}
+		final String[] referencedClassNames = readStrings(in);
+		return new ClassSummary(fileName, className, superclassName, major, minor, accessFlags,
+				interfaceNames, fields, methods, referencedClassNames);
+	}
+
+	/**
+	 * @param in
+	 * @return the strings read from in, or <code>null</code>
+	 * @throws IOException
+	 */
+	private static String[] readStrings(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final String[] strings = new String[length];
+		for (int i = 0; i < length; i++) {
+			strings[i] = in.readUTF();
+		}
+		return strings;
+	}
+
+	/**
+	 * @param out
+	 * @param strings the strings to write, or <code>null</code>
+	 * @throws IOException
+	 */
+	private static void writeStrings(final DataOutputStream out, final String[] strings) throws IOException {
+		if (strings == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(strings.length);
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+	}
+
+	private final String fileName;
+	private final String className;
+	private final String superclassName;
+	private final int major;
+	private final int minor;
+	private final int accessFlags;
+	private final String[] interfaceNames;
+	private final MemberSummary[] fields;
+	private final MemberSummary[] methods;
+	private final String[] referencedClassNames;
+
+	/**
+	 * Creates a new {@link ClassSummary}.
+	 * @param fileName the class file name
+	 * @param className the fully qualified class name
+	 * @param superclassName the fully qualified superclass name
+	 * @param major the class file format major version
+	 * @param minor the class file format minor version
+	 * @param accessFlags the class access flags
+	 * @param interfaceNames the fully qualified implemented interface names
+	 * @param fields the field summaries
+	 * @param methods the method summaries
+	 * @param referencedClassNames the internal names of all classes in the constant pool
+	 */
+	public ClassSummary(String fileName, String className, String superclassName,
+			int major, int minor, int accessFlags, String[] interfaceNames,
+			MemberSummary[] fields, MemberSummary[] methods, String[] referencedClassNames) {
+		super();
+		this.fileName = fileName;
+		this.className = className;
+		this.superclassName = superclassName;
+		this.major = major;
+		this.minor = minor;
+		this.accessFlags = accessFlags;
+		this.interfaceNames = interfaceNames;
+		this.fields = fields;
+		this.methods = methods;
+		this.referencedClassNames = referencedClassNames;
+	}
+
+	/**
+	 * Writes this {@link ClassSummary} to out.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(final DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(fileName);
+		out.writeUTF(className);
+		out.writeUTF(superclassName);
+		out.writeShort(major);
+		out.writeShort(minor);
+		out.writeInt(accessFlags);
+		writeStrings(out, interfaceNames);
+		out.writeInt(fields.length);
+		for (MemberSummary field : fields) {
+			out.writeUTF(field.getName());
+			out.writeUTF(field.getSignature());
+			out.writeInt(field.getAccessFlags());
+		}
+		out.writeInt(methods.length);
+		for (MemberSummary method : methods) {
+			out.writeUTF(method.getName());
+			out.writeUTF(method.getSignature());
+			out.writeInt(method.getAccessFlags());
+			out.writeByte(method.getCodeFlags());
+			writeStrings(out, method.getArgumentNames());
+		}
+		writeStrings(out, referencedClassNames);
+	}
+
+	/**
+	 * Converts this summary back into a {@link JavaClass}. Methods that have code in
+	 * the original class file get a {@link Code} attribute without instructions,
+	 * which only contains the argument names and an empty {@link StackMap}, if preverified.
+	 * @return A new {@link JavaClass} that corresponds to this summary.
+	 */
+	public JavaClass toJavaClass() {
+		final ConstantPoolGen cpg = new ConstantPoolGen();
+		final int classIndex = cpg.addClass(className);
+		final int superclassIndex = "java.lang.Object".equals(className) ? 0 : cpg.addClass(superclassName); //$NON-NLS-1$
+		final int[] interfaces = new int[interfaceNames.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = cpg.addClass(interfaceNames[i]);
+		}
+		for (String name : referencedClassNames) {
+			cpg.addClass(name);
+		}
+		final int codeIndex = cpg.addUtf8("Code"); //$NON-NLS-1$
+		final int lvtIndex = cpg.addUtf8("LocalVariableTable"); //$NON-NLS-1$
+		final int stackMapIndex = cpg.addUtf8("StackMap"); //$NON-NLS-1$
+		final int[][] fieldIndices = addMembers(cpg, fields);
+		final int[][] methodIndices = addMembers(cpg, methods);
+		final int[][] argIndices = new int[methods.length][];
+		for (int i = 0; i < methods.length; i++) {
+			final String[] argNames = methods[i].getArgumentNames();
+			if (argNames != null) {
+				final Type[] argTypes = TypeCache.getArgumentTypes(methods[i].getSignature());
+				argIndices[i] = new int[argNames.length * 2];
+				for (int j = 0; j < argNames.length; j++) {
+					argIndices[i][j * 2] = cpg.addUtf8(argNames[j]);
+					argIndices[i][j * 2 + 1] = cpg.addUtf8(argTypes[j].getSignature());
+				}
+			}
+		}
+		final ConstantPool cp = cpg.getFinalConstantPool();
+		final Field[] bcelFields = new Field[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			bcelFields[i] = new Field(fields[i].getAccessFlags(),
+					fieldIndices[i][0], fieldIndices[i][1], new Attribute[0], cp);
+		}
+		final Method[] bcelMethods = new Method[methods.length];
+		for (int i = 0; i < methods.length; i++) {
+			final MemberSummary method = methods[i];
+			Attribute[] attributes = new Attribute[0];
+			if ((method.getCodeFlags() & HAS_CODE) != 0) {
+				final List<Attribute> codeAttributes = new ArrayList<Attribute>();
+				if (argIndices[i] != null) {
+					final Type[] argTypes = TypeCache.getArgumentTypes(method.getSignature());
+					final LocalVariable[] locals = new LocalVariable[argTypes.length];
+					int slot = (method.getAccessFlags() & Constants.ACC_STATIC) != 0 ? 0 : 1;
+					for (int j = 0; j < locals.length; j++) {
+						locals[j] = new LocalVariable(0, 1, argIndices[i][j * 2], argIndices[i][j * 2 + 1], slot, cp);
+						slot += argTypes[j].getSize();
+					}
+					codeAttributes.add(new LocalVariableTable(lvtIndex, 2 + locals.length * 10, locals, cp));
+				}
+				if ((method.getCodeFlags() & PREVERIFIED) != 0) {
+					codeAttributes.add(new StackMap(stackMapIndex, 2, new StackMapEntry[0], cp));
+				}
+				attributes = new Attribute[] { new Code(codeIndex, 12, 0, 0, new byte[0], new CodeException[0],
+						codeAttributes.toArray(new Attribute[codeAttributes.size()]), cp) };
+			}
+			bcelMethods[i] = new Method(method.getAccessFlags(),
+					methodIndices[i][0], methodIndices[i][1], attributes, cp);
+		}
+		return new JavaClass(classIndex, superclassIndex, fileName, major, minor, accessFlags,
+				cp, interfaces, bcelFields, bcelMethods, new Attribute[0]);
+	}
+
+	/**
+	 * Adds the member names and signatures to cpg.
+	 * @param cpg
+	 * @param members
+	 * @return the name and signature indices of each member
+	 */
+	private static int[][] addMembers(final ConstantPoolGen cpg, final MemberSummary[] members) {
+		final int[][] indices = new int[members.length][];
+		for (int i = 0; i < members.length; i++) {
+			indices[i] = new int[] {
+					cpg.addUtf8(members[i].getName()),
+					cpg.addUtf8(members[i].getSignature()) };
+		}
+		return indices;
+	}
+
+	/**
+	 * @return the class file name
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the fully qualified class name
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the fully qualified superclass name
+	 */
+	public String getSuperclassName() {
+		return superclassName;
+	}
+
+	/**
+	 * @return the class file format major version
+	 */
+	public int getMajor() {
+		return major;
+	}
+
+	/**
+	 * @return the class file format minor version
+	 */
+	public int getMinor() {
+		return minor;
+	}
+
+	/**
+	 * @return the class access flags
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * @return the fully qualified names of the implemented interfaces
+	 */
+	public String[] getInterfaceNames() {
+		return interfaceNames;
+	}
+
+	/**
+	 * @return the field summaries
+	 */
+	public MemberSummary[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return the method summaries
+	 */
+	public MemberSummary[] getMethods() {
+		return methods;
+	}
+
+	/**
+	 * @return the internal names of all classes referenced by the constant pool
+	 */
+	public String[] getReferencedClassNames() {
+		return referencedClassNames;
+	}
+
+}
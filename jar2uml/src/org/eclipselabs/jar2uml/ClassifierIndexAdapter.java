@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Element;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.PackageableElement;
+import org.eclipse.uml2.uml.UMLPackage;
+
+/**
+ * Name index of the nested {@link Classifier}s and {@link Package}s of a single
+ * {@link Package}, {@link Class} or {@link Interface}. The index is attached to its
+ * container as an adapter, and follows all additions to and removals from the
+ * container's packaged elements or nested classifiers, such that it stays correct
+ * when classifiers are replaced or removed by any operation on the model.
+ * Names of added elements are indexed on the next lookup, as UML2 sets the name
+ * of a created element after adding it to its container.
+ * Lookups return the first element with the requested name, like a linear scan would.
+ * The number of elements per name is counted, such that the index is rebuilt
+ * when the first of several elements with the same name is removed.
+ * Renaming an element after it has been indexed is not tracked.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ClassifierIndexAdapter extends AdapterImpl {
+
+	/**
+	 * @param container a {@link Package}, {@link Class} or {@link Interface}
+	 * @return The {@link ClassifierIndexAdapter} for container, which is created if necessary.
+	 */
+	public static ClassifierIndexAdapter getIndex(final Element container) {
+		assert container instanceof Package || container instanceof Class || container instanceof Interface;
+		ClassifierIndexAdapter index = (ClassifierIndexAdapter) EcoreUtil.getExistingAdapter(
+				container, ClassifierIndexAdapter.class);
+		if (index == null) {
+			index = new ClassifierIndexAdapter();
+			container.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Removes all {@link ClassifierIndexAdapter}s from root and its contents.
+	 * @param root
+	 */
+	public static void removeAll(final Element root) {
+		removeIndex(root);
+		for (Iterator<EObject> it = root.eAllContents(); it.hasNext();) {
+			removeIndex(it.next());
+		}
+	}
+
+	/**
+	 * Removes the {@link ClassifierIndexAdapter} from object, if any.
+	 * @param object
+	 */
+	private static void removeIndex(final EObject object) {
+		final Object index = EcoreUtil.getExistingAdapter(object, ClassifierIndexAdapter.class);
+		if (index != null) {
+			object.eAdapters().remove(index);
+		}
+	}
+
+	private final Map<String, Classifier> classifiers = new HashMap<String, Classifier>();
+	private final Map<String, Package> packages = new HashMap<String, Package>();
+	private final Map<String, Integer> classifierCounts = new HashMap<String, Integer>();
+	private final Map<String, Integer> packageCounts = new HashMap<String, Integer>();
+	private final List<Object> pending = new ArrayList<Object>();
+	private boolean valid = false;
+
+	/**
+	 * @param name the local name
+	 * @return The first nested {@link Classifier} named name, or <code>null</code>.
+	 */
+	public Classifier getClassifier(final String name) {
+		update();
+		final Classifier classifier = classifiers.get(name);
+		if (classifier != null && !isCurrent(classifier, name)) {
+			valid = false;
+			return getClassifier(name);
+		}
+		return classifier;
+	}
+
+	/**
+	 * @param name the local name
+	 * @return The first nested {@link Package} named name, or <code>null</code>.
+	 */
+	public Package getPackage(final String name) {
+		update();
+		final Package pack = packages.get(name);
+		if (pack != null && !isCurrent(pack, name)) {
+			valid = false;
+			return getPackage(name);
+		}
+		return pack;
+	}
+
+	/**
+	 * @param element
+	 * @param name
+	 * @return <code>true</code> iff element is still named name and owned by the indexed container.
+	 */
+	private boolean isCurrent(final Element element, final String name) {
+		return element.getOwner() == getTarget() && name.equals(element.getName());
+	}
+
+	/**
+	 * Rebuilds the index if it is not valid, or indexes pending elements otherwise.
+	 */
+	private void update() {
+		if (!valid) {
+			classifiers.clear();
+			packages.clear();
+			classifierCounts.clear();
+			packageCounts.clear();
+			pending.clear();
+			final Object container = getTarget();
+			if (container instanceof Package) {
+				for (PackageableElement element : ((Package) container).getPackagedElements()) {
+					add(element);
+				}
+			} else if (container instanceof Class) {
+				for (Classifier element : ((Class) container).getNestedClassifiers()) {
+					add(element);
+				}
+			} else if (container instanceof Interface) {
+				for (Classifier element : ((Interface) container).getNestedClassifiers()) {
+					add(element);
+				}
+			}
+			valid = true;
+		} else if (!pending.isEmpty()) {
+			for (Object element : pending) {
+				add(element);
+			}
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Adds element to the index, unless an element with the same name is already indexed.
+	 * @param element
+	 */
+	private void add(final Object element) {
+		if (element instanceof Package) {
+			final Package pack = (Package) element;
+			if (pack.getName() != null && increment(packageCounts, pack.getName()) == 1) {
+				packages.put(pack.getName(), pack);
+			}
+		} else if (element instanceof Classifier) {
+			final Classifier classifier = (Classifier) element;
+			if (classifier.getName() != null && increment(classifierCounts, classifier.getName()) == 1) {
+				classifiers.put(classifier.getName(), classifier);
+			}
+		}
+	}
+
+	/**
+	 * Removes element from the index. Invalidates the index if element was indexed
+	 * and other elements with the same name remain.
+	 * @param element
+	 */
+	private void remove(final Object element) {
+		if (pending.remove(element)) {
+			return;
+		}
+		if (element instanceof Package) {
+			final String name = ((Package) element).getName();
+			if (name != null && decrement(packageCounts, name) >= 0 && packages.get(name) == element) {
+				packages.remove(name);
+				valid = !packageCounts.containsKey(name);
+			}
+		} else if (element instanceof Classifier) {
+			final String name = ((Classifier) element).getName();
+			if (name != null && decrement(classifierCounts, name) >= 0 && classifiers.get(name) == element) {
+				classifiers.remove(name);
+				valid = !classifierCounts.containsKey(name);
+			}
+		}
+	}
+
+	/**
+	 * Increments the count for name.
+	 * @param counts
+	 * @param name
+	 * @return The new count for name.
+	 */
+	private static int increment(final Map<String, Integer> counts, final String name) {
+		final Integer count = counts.get(name);
+		final int newCount = count == null ? 1 : count + 1;
+		counts.put(name, newCount);
+		return newCount;
+	}
+
+	/**
+	 * Decrements the count for name, and removes name from counts when its count reaches zero.
+	 * @param counts
+	 * @param name
+	 * @return The new count for name, or -1 if name was not counted.
+	 */
+	private static int decrement(final Map<String, Integer> counts, final String name) {
+		final Integer count = counts.get(name);
+		if (count == null) {
+			return -1;
+		}
+		if (count == 1) {
+			counts.remove(name);
+			return 0;
+		}
+		counts.put(name, count - 1);
+		return count - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification msg) {
+		final Object feature = msg.getFeature();
+		if (!valid || (feature != UMLPackage.Literals.PACKAGE__PACKAGED_ELEMENT
+				&& feature != UMLPackage.Literals.CLASS__NESTED_CLASSIFIER
+				&& feature != UMLPackage.Literals.INTERFACE__NESTED_CLASSIFIER)) {
+			return;
+		}
+		switch (msg.getEventType()) {
+		case Notification.ADD:
+			pending.add(msg.getNewValue());
+			break;
+		case Notification.ADD_MANY:
+			pending.addAll((Collection<?>) msg.getNewValue());
+			break;
+		case Notification.REMOVE:
+			remove(msg.getOldValue());
+			break;
+		case Notification.REMOVE_MANY:
+			for (Object element : (Collection<?>) msg.getOldValue()) {
+				remove(element);
+			}
+			break;
+		case Notification.MOVE:
+			break;
+		default:
+			// SET, UNSET, etc.: rebuild on next lookup
+			valid = false;
+			break;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+	 */
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == ClassifierIndexAdapter.class;
+	}
+
+}
@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+
+/**
+ * Copy-on-write {@link ConstantPoolGen} view on an existing {@link ConstantPool}.
+ * Unlike {@link ConstantPoolGen#ConstantPoolGen(ConstantPool)}, the constants are not copied,
+ * and the lookup tables are only built when one of the lookup methods is first invoked.
+ * {@link #getConstantPool()} returns the viewed {@link ConstantPool} instead of a new one.
+ * The add methods return the index of the constant if it already exists, which is the common case
+ * for {@link MethodGen#getMethod()}, as it adds back the constants of the original method.
+ * The viewed constant pool is only copied when a constant is actually added or replaced.
+ * A view that is never changed can be shared by all methods of a class, also across threads.
+ * Frame simulation only reads the constant pool, so one view per class is sufficient.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ConstantPoolView extends ConstantPoolGen {
+
+	private static final long serialVersionUID = 3521830553215063582L;
+
+	private final ConstantPool cp;
+	private ConstantPoolGen lookup = null;
+	private ConstantPoolGen copy = null;
+
+	/**
+	 * Creates a new {@link ConstantPoolView}.
+	 * @param cp the constant pool to view
+	 */
+	public ConstantPoolView(ConstantPool cp) {
+		super();
+		assert cp != null;
+		this.cp = cp;
+		this.constants = cp.getConstantPool();
+		this.size = constants.length;
+		this.index = constants.length;
+	}
+
+	/**
+	 * @return The {@link ConstantPoolGen} that provides the lookup tables, which is created if necessary.
+	 */
+	protected ConstantPoolGen getLookup() {
+		if (copy != null) {
+			return copy;
+		}
+		synchronized (this) {
+			if (lookup == null) {
+				lookup = new ConstantPoolGen(cp);
+			}
+			return lookup;
+		}
+	}
+
+	/**
+	 * @return The changeable copy of the viewed {@link ConstantPool}, which is created if necessary.
+	 */
+	protected ConstantPoolGen getCopy() {
+		if (copy == null) {
+			copy = new ConstantPoolGen(cp);
+		}
+		return copy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#getConstantPool()
+	 */
+	@Override
+	public ConstantPool getConstantPool() {
+		if (copy != null) {
+			return copy.getConstantPool();
+		}
+		return cp;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#getFinalConstantPool()
+	 */
+	@Override
+	public ConstantPool getFinalConstantPool() {
+		if (copy != null) {
+			return copy.getFinalConstantPool();
+		}
+		return cp;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#getConstant(int)
+	 */
+	@Override
+	public Constant getConstant(int i) {
+		if (copy != null) {
+			return copy.getConstant(i);
+		}
+		return super.getConstant(i);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#getSize()
+	 */
+	@Override
+	public int getSize() {
+		if (copy != null) {
+			return copy.getSize();
+		}
+		return super.getSize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupString(java.lang.String)
+	 */
+	@Override
+	public int lookupString(String str) {
+		return getLookup().lookupString(str);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupClass(java.lang.String)
+	 */
+	@Override
+	public int lookupClass(String str) {
+		return getLookup().lookupClass(str);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupInteger(int)
+	 */
+	@Override
+	public int lookupInteger(int n) {
+		return getLookup().lookupInteger(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupFloat(float)
+	 */
+	@Override
+	public int lookupFloat(float n) {
+		return getLookup().lookupFloat(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupUtf8(java.lang.String)
+	 */
+	@Override
+	public int lookupUtf8(String n) {
+		return getLookup().lookupUtf8(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupLong(long)
+	 */
+	@Override
+	public int lookupLong(long n) {
+		return getLookup().lookupLong(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupDouble(double)
+	 */
+	@Override
+	public int lookupDouble(double n) {
+		return getLookup().lookupDouble(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupNameAndType(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int lookupNameAndType(String name, String signature) {
+		return getLookup().lookupNameAndType(name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupMethodref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int lookupMethodref(String class_name, String method_name, String signature) {
+		return getLookup().lookupMethodref(class_name, method_name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupMethodref(org.apache.bcel.generic.MethodGen)
+	 */
+	@Override
+	public int lookupMethodref(MethodGen method) {
+		return getLookup().lookupMethodref(method);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupInterfaceMethodref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int lookupInterfaceMethodref(String class_name, String method_name, String signature) {
+		return getLookup().lookupInterfaceMethodref(class_name, method_name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupInterfaceMethodref(org.apache.bcel.generic.MethodGen)
+	 */
+	@Override
+	public int lookupInterfaceMethodref(MethodGen method) {
+		return getLookup().lookupInterfaceMethodref(method);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#lookupFieldref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int lookupFieldref(String class_name, String field_name, String signature) {
+		return getLookup().lookupFieldref(class_name, field_name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#setConstant(int, org.apache.bcel.classfile.Constant)
+	 */
+	@Override
+	public void setConstant(int i, Constant c) {
+		getCopy().setConstant(i, c);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addConstant(org.apache.bcel.classfile.Constant, org.apache.bcel.generic.ConstantPoolGen)
+	 */
+	@Override
+	public int addConstant(Constant c, ConstantPoolGen cp) {
+		return getCopy().addConstant(c, cp);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addString(java.lang.String)
+	 */
+	@Override
+	public int addString(String str) {
+		final int i = lookupString(str);
+		return i != -1 ? i : getCopy().addString(str);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addClass(java.lang.String)
+	 */
+	@Override
+	public int addClass(String str) {
+		final int i = lookupClass(str);
+		return i != -1 ? i : getCopy().addClass(str);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addClass(org.apache.bcel.generic.ObjectType)
+	 */
+	@Override
+	public int addClass(ObjectType type) {
+		final int i = lookupClass(type.getClassName());
+		return i != -1 ? i : getCopy().addClass(type);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addArrayClass(org.apache.bcel.generic.ArrayType)
+	 */
+	@Override
+	public int addArrayClass(ArrayType type) {
+		final int i = lookupClass(type.getSignature());
+		return i != -1 ? i : getCopy().addArrayClass(type);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addInteger(int)
+	 */
+	@Override
+	public int addInteger(int n) {
+		final int i = lookupInteger(n);
+		return i != -1 ? i : getCopy().addInteger(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addFloat(float)
+	 */
+	@Override
+	public int addFloat(float n) {
+		final int i = lookupFloat(n);
+		return i != -1 ? i : getCopy().addFloat(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addUtf8(java.lang.String)
+	 */
+	@Override
+	public int addUtf8(String n) {
+		final int i = lookupUtf8(n);
+		return i != -1 ? i : getCopy().addUtf8(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addLong(long)
+	 */
+	@Override
+	public int addLong(long n) {
+		final int i = lookupLong(n);
+		return i != -1 ? i : getCopy().addLong(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addDouble(double)
+	 */
+	@Override
+	public int addDouble(double n) {
+		final int i = lookupDouble(n);
+		return i != -1 ? i : getCopy().addDouble(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addNameAndType(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int addNameAndType(String name, String signature) {
+		final int i = lookupNameAndType(name, signature);
+		return i != -1 ? i : getCopy().addNameAndType(name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addMethodref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int addMethodref(String class_name, String method_name, String signature) {
+		final int i = lookupMethodref(class_name, method_name, signature);
+		return i != -1 ? i : getCopy().addMethodref(class_name, method_name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addMethodref(org.apache.bcel.generic.MethodGen)
+	 */
+	@Override
+	public int addMethodref(MethodGen method) {
+		final int i = lookupMethodref(method);
+		return i != -1 ? i : getCopy().addMethodref(method);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addInterfaceMethodref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int addInterfaceMethodref(String class_name, String method_name, String signature) {
+		final int i = lookupInterfaceMethodref(class_name, method_name, signature);
+		return i != -1 ? i : getCopy().addInterfaceMethodref(class_name, method_name, signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addInterfaceMethodref(org.apache.bcel.generic.MethodGen)
+	 */
+	@Override
+	public int addInterfaceMethodref(MethodGen method) {
+		final int i = lookupInterfaceMethodref(method);
+		return i != -1 ? i : getCopy().addInterfaceMethodref(method);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.ConstantPoolGen#addFieldref(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public int addFieldref(String class_name, String field_name, String signature) {
+		final int i = lookupFieldref(class_name, field_name, signature);
+		return i != -1 ? i : getCopy().addFieldref(class_name, field_name, signature);
+	}
+
+}
@@ -33,6 +33,9 @@ import org.eclipse.uml2.uml.util.UMLSwitch;
  * If the switched object is a {@link Classifier} that cannot contain nested instances of
  * {@link Classifier} and {@link #isCreate()} is true, the switched object will be turned
  * into an instance of {@link Class}. This will generate a warning in the log.
+ * Lookups by local name use the {@link ClassifierIndexAdapter} of the container.
+ * {@link DataType}s are created as the meta-class registered in the {@link MetaClassAdapter}
+ * of the model root instead, if any.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
@@ -114,17 +117,15 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		setCreated(false);
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); it.hasNext();) {
-			Classifier cl = it.next();
-			if (localClassName.equals(cl.getName())) {
-				return cl;
-			}
+		final Classifier cl = ClassifierIndexAdapter.getIndex(parent).getClassifier(localClassName);
+		if (cl != null) {
+			return cl;
 		}
 		if (isCreate()) {
 			setCreated(true);
 			Classifier child = parent.createNestedClassifier(localClassName, getMetaClass());
 			child.setIsAbstract(true);	//abstract
-			child.setIsLeaf(true);		//final
+			child.setIsLeaf(!(child instanceof Interface));	//final, unless interface
 			return child;
 		}
 		return super.caseClass(parent);
@@ -139,17 +140,15 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		setCreated(false);
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); it.hasNext();) {
-			Classifier cl = (Classifier) it.next();
-			if (localClassName.equals(cl.getName())) {
-				return cl;
-			}
+		final Classifier cl = ClassifierIndexAdapter.getIndex(parent).getClassifier(localClassName);
+		if (cl != null) {
+			return cl;
 		}
 		if (isCreate()) {
 			setCreated(true);
 			Classifier child = parent.createNestedClassifier(localClassName, getMetaClass());
 			child.setIsAbstract(true);	//abstract
-			child.setIsLeaf(true);		//final
+			child.setIsLeaf(!(child instanceof Interface));	//final, unless interface
 			return child;
 		}
 		return super.caseInterface(parent);
@@ -164,20 +163,15 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		setCreated(false);
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
-			PackageableElement element = it.next();
-			if (element instanceof Classifier) {
-				Classifier cl = (Classifier) element;
-				if (localClassName.equals(cl.getName())) {
-					return cl;
-				}
-			}
+		final Classifier cl = ClassifierIndexAdapter.getIndex(parent).getClassifier(localClassName);
+		if (cl != null) {
+			return cl;
 		}
 		if (isCreate()) {
 			setCreated(true);
 			Classifier child = (Classifier) parent.createPackagedElement(localClassName, getMetaClass());
 			child.setIsAbstract(true);	//abstract
-			child.setIsLeaf(true);		//final
+			child.setIsLeaf(!(child instanceof Interface));	//final, unless interface
 			return child;
 		}
 		return super.casePackage(parent);
@@ -227,19 +221,26 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	/**
 	 * @param root The model root to start searching at.
 	 * @param className The fully qualified classifier name (e.g. "java.lang.Class$Inner")
-	 * @param createAs If not null and classifier is not found, an instance of this meta-class is created.
+	 * @param createAs If not null and classifier is not found, an instance of this meta-class is created,
+	 * or of the meta-class registered for className if createAs is {@link DataType}.
 	 * @return A {@link Classifier} with qualified name className. If createAs is not null
 	 * and the classifier was not found, a new instance of the createAs meta-class is
 	 * created and returned.
 	 */
 	public Classifier findClassifier(Package root, String className, EClass createAs) {
 		assert className != null;
+		if (createAs == UMLPackage.eINSTANCE.getDataType()) {
+			final EClass metaClass = MetaClassAdapter.getMetaClass(root, className);
+			if (metaClass != null) {
+				createAs = metaClass;
+			}
+		}
 		String localClassName = className;
 		Classifier containerClass = null;
 		String tail = className.substring(className.lastIndexOf('$') + 1);
 		if (tail.length() < className.length()) {
 			String parentName = className.substring(0, className.length() - tail.length() - 1);
-			//create new container classifiers as DataTypes, which will be converted later with log messages
+			//create new unknown container classifiers as DataTypes, which will be converted later with log messages
 			containerClass = findClassifier(root, parentName, createAs != null ? UMLPackage.eINSTANCE.getDataType() : null);
 			localClassName = tail;
 			if (containerClass == null) {
@@ -280,11 +281,9 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		if (parent == null) {
 			return null;
 		}
-		for (Iterator<Package> it = parent.getNestedPackages().iterator(); it.hasNext();) {
-			Package pack = it.next();
-			if (packageName.equals(pack.getName())) {
-				return pack;
-			}
+		final Package pack = ClassifierIndexAdapter.getIndex(parent).getPackage(packageName);
+		if (pack != null) {
+			return pack;
 		}
 		if (create) {
 			setCreated(true);
@@ -317,12 +316,19 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		if (parent == null) {
 			return null;
 		}
-		for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
-			PackageableElement element = it.next();
-			if (element instanceof PrimitiveType) {
-				PrimitiveType type = (PrimitiveType) element;
-				if (localTypeName.equals(type.getName())) {
-					return type;
+		final Classifier indexed = ClassifierIndexAdapter.getIndex(parent).getClassifier(localTypeName);
+		if (indexed instanceof PrimitiveType) {
+			return (PrimitiveType) indexed;
+		}
+		if (indexed != null) {
+			// a non-primitive classifier may hide a primitive type with the same name
+			for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
+				PackageableElement element = it.next();
+				if (element instanceof PrimitiveType) {
+					PrimitiveType type = (PrimitiveType) element;
+					if (localTypeName.equals(type.getName())) {
+						return type;
+					}
 				}
 			}
 		}
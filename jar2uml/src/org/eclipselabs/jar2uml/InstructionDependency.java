@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.Type;
+
+/**
+ * A bytecode instruction visit during frame simulation, together with the access context
+ * found on the execution frame at that time. Recorded by {@link RecordInstructionDependenciesVisitor}
+ * and applied to the UML model by {@link AddInstructionDependenciesVisitor#addDependencies(java.util.List)}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class InstructionDependency {
+
+	private final Instruction instruction;
+	private final Type accessContext;
+
+	/**
+	 * Creates a new {@link InstructionDependency}.
+	 * @param instruction the visited instruction
+	 * @param accessContext the access context of instruction, {@link Type#NULL} if the access context
+	 * was unavailable, or <code>null</code> if instruction has no access context
+	 */
+	public InstructionDependency(Instruction instruction, Type accessContext) {
+		super();
+		assert instruction != null;
+		this.instruction = instruction;
+		this.accessContext = accessContext;
+	}
+
+	/**
+	 * @return the visited instruction
+	 */
+	public Instruction getInstruction() {
+		return instruction;
+	}
+
+	/**
+	 * @return the access context of the instruction, {@link Type#NULL} if the access context
+	 * was unavailable, or <code>null</code> if the instruction has no access context
+	 */
+	public Type getAccessContext() {
+		return accessContext;
+	}
+
+}
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,6 +52,7 @@ import org.eclipse.uml2.uml.UMLFactory;
 import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipse.uml2.uml.VisibilityKind;
 import org.eclipse.uml2.uml.resource.UMLResource;
+import org.eclipselabs.jar2uml.cflow.SimulationBudget;
 import org.eclipselabs.jar2uml.ui.JarToUMLPlugin;
 
 /**
@@ -282,6 +284,16 @@ public final class JarToUML extends JarToUMLRunnable {
 	private boolean dependenciesOnly = false;
 	private boolean includeComment = true;
 	private boolean updateExistingFile;
+	private int parseThreads = 1;
+	private int simulationThreads = 1;
+	private boolean dataflowSimulation = false;
+	private SimulationBudget simulationBudget = new SimulationBudget();
+	private boolean mappedInput = false;
+	private boolean lazyCode = false;
+	private boolean constantPoolReferences = false;
+	private boolean streaming = false;
+	private String parseCacheDirectory;
+	private long parseCacheSize = 64L * 1024L * 1024L;
 
 	/**
 	 * Performs the actual jar to UML conversion.
@@ -326,12 +338,32 @@ public final class JarToUML extends JarToUMLRunnable {
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.parsing")); //$NON-NLS-1$
 			final Filter filter = getFilter();
-			final ParseClasses parseClasses = new ParseClasses(filter, monitor, WORK_PARSE_CLASSES);
+			final boolean streaming = isStreaming();
+			// in streaming mode, classes are parsed by the passes of steps 3 and 4
+			final ParseClasses parseClasses = new ParseClasses(filter, monitor, streaming ? 0 : WORK_PARSE_CLASSES);
+			parseClasses.setParseThreads(getParseThreads());
+			parseClasses.setMappedInput(isMappedInput());
+			if (streaming && getParseThreads() > 1) {
+				// streamed classes must be handled in input order
+				JarToUMLResources.logger.info(String.format(
+						JarToUMLResources.getString("JarToUML.streamingParseThreads"),
+						getParseThreads())); //$NON-NLS-1$
+			}
+			parseClasses.setLazyCode(isLazyCode());
+			// hierarchy-only conversions do not need fields, methods or code
+			parseClasses.setHeaderOnly(!isIncludeFeatures() && !isIncludeInstructionReferences());
+			if (getParseCacheDirectory() != null && !isIncludeInstructionReferences()) {
+				try {
+					parseClasses.setParseCache(new ParseCache(new File(getParseCacheDirectory()), getParseCacheSize()));
+				} catch (IOException e) {
+					// the parse cache is optional
+					JarToUMLResources.logger.warning(String.format(
+							JarToUMLResources.getString("JarToUML.parseCacheDisabled"),
+							e.getLocalizedMessage())); //$NON-NLS-1$
+				}
+			}
 			final List<JavaClass> parsedClasses = getParsedClasses();
 			final List<JavaClass> parsedCpClasses = getParsedCpClasses();
-			parseClasses.beginTask(
-					JarToUMLResources.getString("JarToUML.parsing"), 
-					ParseClasses.getJarWork(getJars()) + ParseClasses.getJarWork(getCpJars()) + ParseClasses.getPathWork(getPaths()) + ParseClasses.getPathWork(getCpPaths())); //$NON-NLS-1$
 			List<JarFile> jars = getJars();
 			List<IContainer> paths = getPaths();
 			List<JarFile> cpJars = getCpJars();
@@ -343,21 +375,29 @@ public final class JarToUML extends JarToUMLRunnable {
 				cpJars = Collections.emptyList();
 				cpPaths = Collections.emptyList();
 			}
-			for (JarFile jar : jars) {
-				parseClasses.parseClasses(jar, parsedClasses, parsedCpClasses);
-				checkCancelled(monitor);
-			}
-			for (IContainer path : paths) {
-				parseClasses.parseClasses(path, parsedClasses);
-				checkCancelled(monitor);
-			}
-			for (JarFile jar : cpJars) {
-				parseClasses.parseClasses(jar, parsedCpClasses, parsedCpClasses);
-				checkCancelled(monitor);
-			}
-			for (IContainer path : cpPaths) {
-				parseClasses.parseClasses(path, parsedCpClasses);
-				checkCancelled(monitor);
+			final StreamClasses streamClasses = streaming ?
+					new StreamClasses(parseClasses, jars, paths, cpJars, cpPaths) : null;
+			if (streamClasses == null) {
+				final int parseWork = ParseClasses.getJarWork(getJars()) + ParseClasses.getJarWork(getCpJars()) + ParseClasses.getPathWork(getPaths()) + ParseClasses.getPathWork(getCpPaths());
+				parseClasses.beginTask(
+						JarToUMLResources.getString("JarToUML.parsing"), 
+						parseWork); //$NON-NLS-1$
+				for (JarFile jar : jars) {
+					parseClasses.parseClasses(jar, parsedClasses, parsedCpClasses);
+					checkCancelled(monitor);
+				}
+				for (IContainer path : paths) {
+					parseClasses.parseClasses(path, parsedClasses);
+					checkCancelled(monitor);
+				}
+				for (JarFile jar : cpJars) {
+					parseClasses.parseClasses(jar, parsedCpClasses, parsedCpClasses);
+					checkCancelled(monitor);
+				}
+				for (IContainer path : cpPaths) {
+					parseClasses.parseClasses(path, parsedCpClasses);
+					checkCancelled(monitor);
+				}
 			}
 			worked(null, JarToUMLResources.getString("JarToUML.parsed")); //$NON-NLS-1$
 			//
@@ -366,31 +406,73 @@ public final class JarToUML extends JarToUMLRunnable {
 			subTask(monitor, JarToUMLResources.getString("JarToUML.addingClassifiers")); //$NON-NLS-1$
 			final boolean includeFeatures = isIncludeFeatures();
 			final boolean includeInstructionReferences = isIncludeInstructionReferences();
-			final AddClassifiers addClassifiers = new AddClassifiers(filter, monitor, WORK_ADD_CLASSIFIERS,	model, includeFeatures,	includeInstructionReferences);
-			addClassifiers.beginTask(
-					JarToUMLResources.getString("JarToUML.addingClassifiers"), 
-					parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
-			addClassifiers.addAllClassifiers(parsedClasses);
-			final List<JavaClass> skippedClasses = addClassifiers.addClassifiersClosure(parsedCpClasses);
-			parsedCpClasses.removeAll(skippedClasses);
+			final AddClassifiers addClassifiers = new AddClassifiers(filter, monitor, 
+					streaming ? WORK_ADD_CLASSIFIERS + WORK_PARSE_CLASSES / 2 : WORK_ADD_CLASSIFIERS,
+					model, includeFeatures,	includeInstructionReferences);
+			addClassifiers.setConstantPoolReferences(isConstantPoolReferences());
+			if (streamClasses != null) {
+				addClassifiers.beginTask(
+						JarToUMLResources.getString("JarToUML.addingClassifiers"), 
+						streamClasses.getClassifierWork()); //$NON-NLS-1$
+				streamClasses.addAllClassifiers(addClassifiers);
+			} else {
+				addClassifiers.beginTask(
+						JarToUMLResources.getString("JarToUML.addingClassifiers"), 
+						parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
+				addClassifiers.addAllMetaClasses(parsedClasses);
+				addClassifiers.addAllMetaClasses(parsedCpClasses);
+				addClassifiers.addAllClassifiers(parsedClasses);
+				final List<JavaClass> skippedClasses = addClassifiers.addClassifiersClosure(parsedCpClasses);
+				parsedCpClasses.removeAll(skippedClasses);
+			}
 			worked(null, JarToUMLResources.getString("JarToUML.addedClassifiers")); //$NON-NLS-1$
 			//
 			// 4
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.addingProperties")); //$NON-NLS-1$
-			final AddProperties addProperties = new AddProperties(filter, monitor, WORK_ADD_PROPERTIES, model, includeFeatures, includeInstructionReferences);
-			addProperties.beginTask(
-					JarToUMLResources.getString("JarToUML.addingProperties"), 
-					parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
-			addProperties.addAllProperties(parsedClasses);
-			addProperties.addAllProperties(parsedCpClasses);
+			final AddProperties addProperties = new AddProperties(filter, monitor, 
+					streaming ? WORK_ADD_PROPERTIES + WORK_PARSE_CLASSES - WORK_PARSE_CLASSES / 2 : WORK_ADD_PROPERTIES, 
+					model, includeFeatures, includeInstructionReferences);
+			addProperties.setConstantPoolReferences(isConstantPoolReferences());
+			addProperties.setSimulationThreads(getSimulationThreads());
+			addProperties.setDataflowSimulation(isDataflowSimulation());
+			final SimulationBudget simulationBudget = getSimulationBudget();
+			simulationBudget.reset();
+			addProperties.setSimulationBudget(simulationBudget);
+			if (streamClasses != null) {
+				addProperties.beginTask(
+						JarToUMLResources.getString("JarToUML.addingProperties"), 
+						streamClasses.getPropertyWork()); //$NON-NLS-1$
+				streamClasses.addAllProperties(addProperties);
+			} else {
+				addProperties.beginTask(
+						JarToUMLResources.getString("JarToUML.addingProperties"), 
+						parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
+				addProperties.addAllProperties(parsedClasses);
+				addProperties.addAllProperties(parsedCpClasses);
+			}
+			final ParseCache parseCache = parseClasses.getParseCache();
+			if (parseCache != null) {
+				parseCache.evict();
+				parseCache.logStatistics();
+			}
+			addClassifiers.getTypeToClassifier().logStatistics();
+			addProperties.getTypeToClassifier().logStatistics();
+			if (isIncludeInstructionReferences() && !isConstantPoolReferences()) {
+				simulationBudget.logReport();
+			}
 			worked(null, JarToUMLResources.getString("JarToUML.addedProperties")); //$NON-NLS-1$
 			//
 			// 5
 			//
 			final MarkInferredClassifiers markInferredClassifiers = new MarkInferredClassifiers(filter,	monitor, WORK_INFERRED_TAGS, model);
-			final Set<Classifier> containedClassifiers = markInferredClassifiers.findContainedClassifiers(getParsedClasses());
-			containedClassifiers.addAll(markInferredClassifiers.findContainedClassifiers(getParsedCpClasses()));
+			final Set<Classifier> containedClassifiers;
+			if (streamClasses != null) {
+				containedClassifiers = markInferredClassifiers.findContainedClassifiersByName(streamClasses.getContainedClassNames());
+			} else {
+				containedClassifiers = markInferredClassifiers.findContainedClassifiers(getParsedClasses());
+				containedClassifiers.addAll(markInferredClassifiers.findContainedClassifiers(getParsedCpClasses()));
+			}
 			final RemoveFromModel removeFromModel = new RemoveFromModel(filter, monitor, WORK_REMOVE_EMPTY, model);
 			if (isDependenciesOnly()) {
 				subTask(monitor, JarToUMLResources.getString("JarToUML.removingClassifiers")); //$NON-NLS-1$
@@ -442,6 +524,14 @@ public final class JarToUML extends JarToUMLRunnable {
 			throw new JarToUMLException(e);
 		} catch (CoreException e) {
 			throw new JarToUMLException(e);
+		} finally {
+			// lookup indexes are only valid during this run, also when it fails or is cancelled
+			final Model model = getModel();
+			if (model != null) {
+				ClassifierIndexAdapter.removeAll(model);
+				OperationIndexAdapter.removeAll(model);
+				MetaClassAdapter.remove(model);
+			}
 		}
 	}
 
@@ -817,4 +907,215 @@ public final class JarToUML extends JarToUMLRunnable {
 		this.updateExistingFile = updateExistingFile;
 	}
 
+	/**
+	 * The amount of worker threads used to parse the class files in each jar.
+	 * Not used in {@link #isStreaming()} mode, which always parses on the calling thread.
+	 * Defaults to 1, i.e. parsing on the calling thread.
+	 * @return the parseThreads
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * The amount of worker threads used to parse the class files in each jar.
+	 * Not used in {@link #isStreaming()} mode, which always parses on the calling thread.
+	 * Defaults to 1, i.e. parsing on the calling thread.
+	 * @param parseThreads the parseThreads to set
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods
+	 * when including instruction references. The UML model is only changed on the calling thread,
+	 * and the result is the same as without worker threads.
+	 * Defaults to 1, i.e. simulating on the calling thread.
+	 * @return the simulationThreads
+	 */
+	public int getSimulationThreads() {
+		return simulationThreads;
+	}
+
+	/**
+	 * The amount of worker threads used to simulate the execution frames of methods
+	 * when including instruction references. The UML model is only changed on the calling thread,
+	 * and the result is the same as without worker threads.
+	 * Defaults to 1, i.e. simulating on the calling thread.
+	 * @param simulationThreads the simulationThreads to set
+	 */
+	public void setSimulationThreads(int simulationThreads) {
+		this.simulationThreads = simulationThreads;
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * instead of an execution path search, when including instruction references.
+	 * The analysis always terminates in time linear in the method size, but joins the
+	 * frames of all paths to an instruction, which may yield less specific access contexts.
+	 * Defaults to false.
+	 * @return the dataflowSimulation
+	 */
+	public boolean isDataflowSimulation() {
+		return dataflowSimulation;
+	}
+
+	/**
+	 * Whether to simulate the execution frames of methods by a worklist fixed-point analysis
+	 * instead of an execution path search, when including instruction references.
+	 * The analysis always terminates in time linear in the method size, but joins the
+	 * frames of all paths to an instruction, which may yield less specific access contexts.
+	 * Defaults to false.
+	 * @param dataflowSimulation the dataflowSimulation to set
+	 */
+	public void setDataflowSimulation(boolean dataflowSimulation) {
+		this.dataflowSimulation = dataflowSimulation;
+	}
+
+	/**
+	 * The per-method and per-run limits for the execution path search of the frame simulation,
+	 * when including instruction references. Methods that exceed a limit are simulated by
+	 * a worklist fixed-point analysis instead, and are reported after the conversion.
+	 * Defaults to a budget of {@link SimulationBudget#DEFAULT_METHOD_COPIES} history copies per method.
+	 * @return the simulationBudget
+	 */
+	public SimulationBudget getSimulationBudget() {
+		return simulationBudget;
+	}
+
+	/**
+	 * The per-method and per-run limits for the execution path search of the frame simulation,
+	 * when including instruction references. Methods that exceed a limit are simulated by
+	 * a worklist fixed-point analysis instead, and are reported after the conversion.
+	 * Defaults to a budget of {@link SimulationBudget#DEFAULT_METHOD_COPIES} history copies per method.
+	 * @param simulationBudget the simulationBudget to set
+	 */
+	public void setSimulationBudget(SimulationBudget simulationBudget) {
+		this.simulationBudget = simulationBudget;
+	}
+
+	/**
+	 * Whether to read jar files through memory-mapped I/O. Defaults to false.
+	 * @return the mappedInput
+	 */
+	public boolean isMappedInput() {
+		return mappedInput;
+	}
+
+	/**
+	 * Whether to read jar files through memory-mapped I/O. Defaults to false.
+	 * @param mappedInput the mappedInput to set
+	 */
+	public void setMappedInput(boolean mappedInput) {
+		this.mappedInput = mappedInput;
+	}
+
+	/**
+	 * Whether to stream each class through the conversion phases as soon as it is parsed,
+	 * instead of keeping all parsed classes in memory. Parsed classes are not available
+	 * via {@link #getParsedClasses()} and {@link #getParsedCpClasses()} in streaming mode.
+	 * Streaming reads the inputs once per conversion pass, and parses on the calling thread,
+	 * such that {@link #getParseThreads()} is not used. Closure passes only re-read the inputs
+	 * that contain referenced classpath classes. {@link #isMappedInput()} applies to every pass.
+	 * Defaults to false.
+	 * @return the streaming
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Whether to stream each class through the conversion phases as soon as it is parsed,
+	 * instead of keeping all parsed classes in memory. Parsed classes are not available
+	 * via {@link #getParsedClasses()} and {@link #getParsedCpClasses()} in streaming mode.
+	 * Streaming reads the inputs once per conversion pass, and parses on the calling thread,
+	 * such that {@link #getParseThreads()} is not used. Closure passes only re-read the inputs
+	 * that contain referenced classpath classes. {@link #isMappedInput()} applies to every pass.
+	 * Defaults to false.
+	 * @param streaming the streaming to set
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * The directory of the on-disk parse cache, or <code>null</code> for no cache.
+	 * The parse cache is not used when instruction references are included,
+	 * as cached classes do not contain bytecode instructions. Defaults to <code>null</code>.
+	 * @return the parseCacheDirectory
+	 */
+	public String getParseCacheDirectory() {
+		return parseCacheDirectory;
+	}
+
+	/**
+	 * The directory of the on-disk parse cache, or <code>null</code> for no cache.
+	 * The parse cache is not used when instruction references are included,
+	 * as cached classes do not contain bytecode instructions. Defaults to <code>null</code>.
+	 * @param parseCacheDirectory the parseCacheDirectory to set
+	 */
+	public void setParseCacheDirectory(String parseCacheDirectory) {
+		this.parseCacheDirectory = parseCacheDirectory;
+	}
+
+	/**
+	 * The maximum size of the on-disk parse cache in bytes. Defaults to 64MB.
+	 * @return the parseCacheSize
+	 */
+	public long getParseCacheSize() {
+		return parseCacheSize;
+	}
+
+	/**
+	 * The maximum size of the on-disk parse cache in bytes. Defaults to 64MB.
+	 * @param parseCacheSize the parseCacheSize to set
+	 */
+	public void setParseCacheSize(long parseCacheSize) {
+		this.parseCacheSize = parseCacheSize;
+	}
+
+
+	/**
+	 * Whether to defer decoding of method code until it is needed for instruction references.
+	 * Reduces parse time and memory for classes and methods without instruction references. Defaults to false.
+	 * @return the lazyCode
+	 */
+	public boolean isLazyCode() {
+		return lazyCode;
+	}
+
+	/**
+	 * Whether to defer decoding of method code until it is needed for instruction references.
+	 * Reduces parse time and memory for classes and methods without instruction references. Defaults to false.
+	 * @param lazyCode the lazyCode to set
+	 */
+	public void setLazyCode(boolean lazyCode) {
+		this.lazyCode = lazyCode;
+	}
+
+	/**
+	 * Whether to derive instruction references from the constant pool instead of the bytecode
+	 * instructions. Much faster, but infers visibility, static-ness and abstractness of referenced
+	 * features less precisely. Only applies if instruction references are included. If the filter
+	 * excludes methods, only the constant pool entries used by the included methods are considered,
+	 * which requires decoding their instructions. Defaults to false.
+	 * @return the constantPoolReferences
+	 */
+	public boolean isConstantPoolReferences() {
+		return constantPoolReferences;
+	}
+
+	/**
+	 * Whether to derive instruction references from the constant pool instead of the bytecode
+	 * instructions. Much faster, but infers visibility, static-ness and abstractness of referenced
+	 * features less precisely. Only applies if instruction references are included. If the filter
+	 * excludes methods, only the constant pool entries used by the included methods are considered,
+	 * which requires decoding their instructions. Defaults to false.
+	 * @param constantPoolReferences the constantPoolReferences to set
+	 */
+	public void setConstantPoolReferences(boolean constantPoolReferences) {
+		this.constantPoolReferences = constantPoolReferences;
+	}
+
 }
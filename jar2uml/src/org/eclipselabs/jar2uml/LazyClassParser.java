@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFieldref;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantInterfaceMethodref;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantMethodref;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+import org.apache.bcel.classfile.Visitor;
+
+/**
+ * Parses class files like {@link ClassParser}, but defers decoding of method {@link Code} attributes.
+ * Each {@link Code} attribute is replaced by a stub without instructions, exception handlers or
+ * line numbers, which only contains the decoded LocalVariableTable and an empty {@link StackMap},
+ * if present. The stub retains a copy of the bytes of the original attribute only, not of the
+ * whole class file, which is decoded on the first call to {@link #getCode(Method)}.
+ * Code that needs instructions must use {@link #getCode(Method)} instead of {@link Method#getCode()}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class LazyClassParser {
+
+	/**
+	 * Retains the bytes of an undecoded {@link Code} attribute inside its stub.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	protected static final class CodeRange extends Attribute {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] attribute;
+
+		/**
+		 * Creates a new {@link CodeRange}.
+		 * @param nameIndex the name index of the original attribute
+		 * @param attribute the bytes of the original attribute, including its name index and length. Not copied.
+		 * @param constantPool the constant pool
+		 */
+		public CodeRange(int nameIndex, byte[] attribute, ConstantPool constantPool) {
+			super(Constants.ATTR_UNKNOWN, nameIndex, attribute.length - 6, constantPool);
+			this.attribute = attribute;
+		}
+
+		/**
+		 * @return The decoded {@link Code} attribute.
+		 * @throws IOException
+		 */
+		public Code decode() throws IOException {
+			final DataInputStream input = new DataInputStream(
+					new ByteArrayInputStream(attribute));
+			return (Code) Attribute.readAttribute(input, getConstantPool());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.classfile.Attribute#accept(org.apache.bcel.classfile.Visitor)
+		 */
+		@Override
+		public void accept(Visitor v) {
+			// not part of the class file structure
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.classfile.Attribute#copy(org.apache.bcel.classfile.ConstantPool)
+		 */
+		@Override
+		public Attribute copy(ConstantPool constantPool) {
+			return new CodeRange(getNameIndex(), attribute, constantPool);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.classfile.Attribute#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("CodeRange(%d)", getLength()); //$NON-NLS-1$
+		}
+
+	}
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final String CODE = "Code"; //$NON-NLS-1$
+	private static final String LOCAL_VARIABLE_TABLE = "LocalVariableTable"; //$NON-NLS-1$
+	private static final String STACK_MAP = "StackMap"; //$NON-NLS-1$
+
+	/**
+	 * Decodes the {@link Code} attribute of method, if it was deferred by a {@link LazyClassParser},
+	 * and replaces the stub in method by the decoded attribute.
+	 * @param method
+	 * @return The decoded {@link Code} attribute of method, or <code>null</code>.
+	 * @throws ClassFormatException if the deferred attribute cannot be decoded
+	 */
+	public static Code getCode(final Method method) {
+		synchronized (method) {
+			final Code code = method.getCode();
+			if (code == null) {
+				return null;
+			}
+			for (Attribute att : code.getAttributes()) {
+				if (att instanceof CodeRange) {
+					final Code decoded;
+					try {
+						decoded = ((CodeRange) att).decode();
+					} catch (IOException e) {
+						throw new ClassFormatException(e.getLocalizedMessage());
+					}
+					final Attribute[] attributes = method.getAttributes().clone();
+					for (int i = 0; i < attributes.length; i++) {
+						if (attributes[i] == code) {
+							attributes[i] = decoded;
+						}
+					}
+					method.setAttributes(attributes);
+					return decoded;
+				}
+			}
+			return code;
+		}
+	}
+
+	private final InputStream input;
+	private final String fileName;
+	private byte[] classFile;
+	private ByteArrayInputStream bytes;
+	private DataInputStream file;
+
+	/**
+	 * Creates a new {@link LazyClassParser}.
+	 * @param input Input stream positioned at the start of the class file. Not closed by the parser.
+	 * @param fileName The class file name.
+	 */
+	public LazyClassParser(InputStream input, String fileName) {
+		super();
+		assert input != null;
+		this.input = input;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Parses the class file, deferring the decoding of {@link Code} attributes.
+	 * @return The parsed class.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public JavaClass parse() throws IOException, ClassFormatException {
+		classFile = readFully(input);
+		bytes = new ByteArrayInputStream(classFile);
+		file = new DataInputStream(bytes);
+		if (file.readInt() != MAGIC) {
+			throw new ClassFormatException(String.format(
+					JarToUMLResources.getString("LazyClassParser.notAClassFile"),
+					fileName)); //$NON-NLS-1$
+		}
+		final int minor = file.readUnsignedShort();
+		final int major = file.readUnsignedShort();
+		final ConstantPool cp = readConstantPool();
+		final int accessFlags = file.readUnsignedShort();
+		final int classIndex = file.readUnsignedShort();
+		final int superclassIndex = file.readUnsignedShort();
+		final int[] interfaces = new int[file.readUnsignedShort()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = file.readUnsignedShort();
+		}
+		final Field[] fields = new Field[file.readUnsignedShort()];
+		for (int i = 0; i < fields.length; i++) {
+			final int fieldFlags = file.readUnsignedShort();
+			final int nameIndex = file.readUnsignedShort();
+			final int signatureIndex = file.readUnsignedShort();
+			fields[i] = new Field(fieldFlags, nameIndex, signatureIndex, readAttributes(cp, false), cp);
+		}
+		final Method[] methods = new Method[file.readUnsignedShort()];
+		for (int i = 0; i < methods.length; i++) {
+			final int methodFlags = file.readUnsignedShort();
+			final int nameIndex = file.readUnsignedShort();
+			final int signatureIndex = file.readUnsignedShort();
+			methods[i] = new Method(methodFlags, nameIndex, signatureIndex, readAttributes(cp, true), cp);
+		}
+		final Attribute[] attributes = readAttributes(cp, false);
+		return new JavaClass(classIndex, superclassIndex, fileName, major, minor, accessFlags,
+				cp, interfaces, fields, methods, attributes);
+	}
+
+	/**
+	 * Reads the constant pool.
+	 * @return The constant pool.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	private ConstantPool readConstantPool() throws IOException, ClassFormatException {
+		final Constant[] constants = new Constant[file.readUnsignedShort()];
+		for (int i = 1; i < constants.length; i++) {
+			final byte tag = file.readByte();
+			switch (tag) {
+			case Constants.CONSTANT_Utf8:
+				constants[i] = new ConstantUtf8(file.readUTF());
+				break;
+			case Constants.CONSTANT_Class:
+				constants[i] = new ConstantClass(file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_String:
+				constants[i] = new ConstantString(file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_Integer:
+				constants[i] = new ConstantInteger(file.readInt());
+				break;
+			case Constants.CONSTANT_Float:
+				constants[i] = new ConstantFloat(file.readFloat());
+				break;
+			case Constants.CONSTANT_Fieldref:
+				constants[i] = new ConstantFieldref(file.readUnsignedShort(), file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_Methodref:
+				constants[i] = new ConstantMethodref(file.readUnsignedShort(), file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_InterfaceMethodref:
+				constants[i] = new ConstantInterfaceMethodref(file.readUnsignedShort(), file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_NameAndType:
+				constants[i] = new ConstantNameAndType(file.readUnsignedShort(), file.readUnsignedShort());
+				break;
+			case Constants.CONSTANT_Long:
+				constants[i] = new ConstantLong(file.readLong());
+				i++; // takes up two constant pool slots
+				break;
+			case Constants.CONSTANT_Double:
+				constants[i] = new ConstantDouble(file.readDouble());
+				i++; // takes up two constant pool slots
+				break;
+			default:
+				throw new ClassFormatException(String.format(
+						JarToUMLResources.getString("LazyClassParser.invalidConstantTag"),
+						tag, fileName)); //$NON-NLS-1$
+			}
+		}
+		return new ConstantPool(constants);
+	}
+
+	/**
+	 * Reads an attribute table.
+	 * @param cp The constant pool.
+	 * @param deferCode Whether to replace {@link Code} attributes by stubs.
+	 * @return The attributes.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	private Attribute[] readAttributes(final ConstantPool cp, final boolean deferCode) throws IOException, ClassFormatException {
+		final Attribute[] attributes = new Attribute[file.readUnsignedShort()];
+		for (int i = 0; i < attributes.length; i++) {
+			if (deferCode) {
+				bytes.mark(0);
+				final int offset = getOffset();
+				final int nameIndex = file.readUnsignedShort();
+				final int length = file.readInt();
+				if (CODE.equals(getUtf8(cp, nameIndex))) {
+					attributes[i] = readCodeStub(cp, nameIndex, offset, length);
+					continue;
+				}
+				bytes.reset();
+			}
+			attributes[i] = Attribute.readAttribute(file, cp);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Reads a {@link Code} attribute stub, positioned after the attribute name index and length.
+	 * @param cp The constant pool.
+	 * @param nameIndex The name index of the attribute.
+	 * @param offset The offset of the attribute in the class file.
+	 * @param length The length of the attribute, excluding its name index and length.
+	 * @return The {@link Code} stub.
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	private Code readCodeStub(final ConstantPool cp, final int nameIndex, final int offset, final int length)
+	throws IOException, ClassFormatException {
+		final int maxStack = file.readUnsignedShort();
+		final int maxLocals = file.readUnsignedShort();
+		skip(file.readInt());
+		skip(file.readUnsignedShort() * 8);
+		final int attributesCount = file.readUnsignedShort();
+		final List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < attributesCount; i++) {
+			bytes.mark(0);
+			final int attNameIndex = file.readUnsignedShort();
+			final int attLength = file.readInt();
+			final String attName = getUtf8(cp, attNameIndex);
+			if (LOCAL_VARIABLE_TABLE.equals(attName)) {
+				bytes.reset();
+				attributes.add(Attribute.readAttribute(file, cp));
+			} else if (STACK_MAP.equals(attName)) {
+				skip(attLength);
+				attributes.add(new StackMap(attNameIndex, 2, new StackMapEntry[0], cp));
+			} else {
+				skip(attLength);
+			}
+		}
+		if (getOffset() != offset + length + 6) {
+			throw new ClassFormatException(String.format(
+					JarToUMLResources.getString("LazyClassParser.invalidCode"),
+					fileName)); //$NON-NLS-1$
+		}
+		final byte[] attribute = new byte[length + 6];
+		System.arraycopy(classFile, offset, attribute, 0, attribute.length);
+		attributes.add(new CodeRange(nameIndex, attribute, cp));
+		return new Code(nameIndex, length, maxStack, maxLocals, new byte[0], new CodeException[0],
+				attributes.toArray(new Attribute[attributes.size()]), cp);
+	}
+
+	/**
+	 * @param cp
+	 * @param index
+	 * @return The {@link ConstantUtf8} value at index in cp.
+	 * @throws ClassFormatException
+	 */
+	private static String getUtf8(final ConstantPool cp, final int index) throws ClassFormatException {
+		return ((ConstantUtf8) cp.getConstant(index, Constants.CONSTANT_Utf8)).getBytes();
+	}
+
+	/**
+	 * @return The current offset in the class file.
+	 */
+	private int getOffset() {
+		return classFile.length - bytes.available();
+	}
+
+	/**
+	 * Skips exactly n bytes.
+	 * @param n
+	 * @throws IOException
+	 */
+	private void skip(final int n) throws IOException {
+		if (n < 0 || file.skipBytes(n) != n) {
+			throw new ClassFormatException(String.format(
+					JarToUMLResources.getString("LazyClassParser.invalidCode"),
+					fileName)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @param input
+	 * @return The remaining contents of input.
+	 * @throws IOException
+	 */
+	private static byte[] readFully(final InputStream input) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+		final byte[] buffer = new byte[4096];
+		for (int read = input.read(buffer); read > -1; read = input.read(buffer)) {
+			output.write(buffer, 0, read);
+		}
+		return output.toByteArray();
+	}
+
+}
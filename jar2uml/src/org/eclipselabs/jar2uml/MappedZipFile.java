@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip archive that memory-maps the archive file and reads the central
+ * directory once. STORED entries are returned as slices of the mapped file,
+ * DEFLATED entries are inflated into a buffer that is reused for the next entry.
+ * Not thread-safe.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class MappedZipFile {
+
+	/**
+	 * Central directory entry of a {@link MappedZipFile}.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	public static final class Entry {
+
+		private final String name;
+		private final int method;
+		private final long crc;
+		private final int compressedSize;
+		private final int size;
+		private final int localHeaderOffset;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param name
+		 * @param method
+		 * @param crc
+		 * @param compressedSize
+		 * @param size
+		 * @param localHeaderOffset
+		 */
+		protected Entry(String name, int method, long crc, int compressedSize,
+				int size, int localHeaderOffset) {
+			super();
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * @return the entry name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the compression method, {@link MappedZipFile#STORED} or {@link MappedZipFile#DEFLATED}
+		 */
+		public int getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return the CRC-32 of the uncompressed data
+		 */
+		public long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * @return the compressed size
+		 */
+		public int getCompressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * @return the uncompressed size
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the offset of the local file header
+		 */
+		public int getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		/**
+		 * @return <code>true</code> iff this entry is a directory
+		 */
+		public boolean isDirectory() {
+			return name.endsWith("/"); //$NON-NLS-1$
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return name;
+		}
+
+	}
+
+	/**
+	 * {@link InputStream} that reads from a {@link ByteBuffer} without copying.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	public static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		/**
+		 * Creates a new {@link ByteBufferInputStream}.
+		 * @param buffer the buffer to read from, starting at its position
+		 */
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			super();
+			this.buffer = buffer;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#skip(long)
+		 */
+		@Override
+		public long skip(long n) {
+			final int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+	}
+
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+
+	private static final int LOCSIG = 0x04034b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final int LOCHDR = 30;
+	private static final int CENHDR = 46;
+	private static final int ENDHDR = 22;
+	private static final int MAX_COMMENT = 0xffff;
+	private static final int ZIP64_MAGIC = 0xffffffff;
+
+	private final String name;
+	private final MappedByteBuffer mapped;
+	private final List<Entry> entries;
+	private final Inflater inflater = new Inflater(true);
+	private byte[] inBuffer = new byte[8192];
+	private byte[] outBuffer = new byte[8192];
+
+	/**
+	 * Creates a new {@link MappedZipFile} and reads its central directory.
+	 * @param file the zip archive to map
+	 * @throws IOException if the file cannot be read, or is not a supported zip archive
+	 * (e.g. ZIP64 archives or archives larger than 2GB)
+	 */
+	public MappedZipFile(File file) throws IOException {
+		super();
+		this.name = file.getPath();
+		final RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			final FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new ZipException(String.format(
+						JarToUMLResources.getString("MappedZipFile.tooLarge"),
+						name)); //$NON-NLS-1$
+			}
+			this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close(); // mapping remains valid
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		this.entries = Collections.unmodifiableList(readCentralDirectory());
+	}
+
+	/**
+	 * @return the entries of this archive, in central directory order
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the archive file path
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the amount of entries in this archive
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the uncompressed data of entry. The returned buffer is only valid until
+	 * the next invocation of this method or {@link #close()}.
+	 * @param entry
+	 * @return the uncompressed data of entry
+	 * @throws IOException
+	 */
+	public ByteBuffer getData(final Entry entry) throws IOException {
+		final int loc = entry.getLocalHeaderOffset();
+		if (mapped.getInt(loc) != LOCSIG) {
+			throw new ZipException(String.format(
+					JarToUMLResources.getString("MappedZipFile.invalidEntry"),
+					entry, name)); //$NON-NLS-1$
+		}
+		final int dataOffset = loc + LOCHDR
+			+ (mapped.getShort(loc + 26) & 0xffff)
+			+ (mapped.getShort(loc + 28) & 0xffff);
+		final ByteBuffer data = mapped.duplicate();
+		data.limit(dataOffset + entry.getCompressedSize());
+		data.position(dataOffset);
+		switch (entry.getMethod()) {
+		case STORED:
+			return data.slice();
+		case DEFLATED:
+			return inflate(data, entry);
+		default:
+			throw new ZipException(String.format(
+					JarToUMLResources.getString("MappedZipFile.unsupportedMethod"),
+					entry.getMethod(), entry, name)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @param entry
+	 * @return an {@link InputStream} on the uncompressed data of entry,
+	 * valid until the next invocation of {@link #getData(Entry)}
+	 * @throws IOException
+	 */
+	public InputStream getInputStream(final Entry entry) throws IOException {
+		return new ByteBufferInputStream(getData(entry));
+	}
+
+	/**
+	 * Releases the inflater. The memory mapping itself is released on garbage collection.
+	 */
+	public void close() {
+		inflater.end();
+		inBuffer = null;
+		outBuffer = null;
+	}
+
+	/**
+	 * Inflates the compressed data into the reused output buffer.
+	 * @param data the compressed data
+	 * @param entry
+	 * @return the inflated data
+	 * @throws IOException
+	 */
+	protected ByteBuffer inflate(final ByteBuffer data, final Entry entry) throws IOException {
+		final int csize = entry.getCompressedSize();
+		final int size = entry.getSize();
+		// raw inflater needs an extra dummy byte at the end of the input
+		if (inBuffer.length < csize + 1) {
+			inBuffer = new byte[csize + 1];
+		}
+		if (outBuffer.length < size) {
+			outBuffer = new byte[size];
+		}
+		data.get(inBuffer, 0, csize);
+		inBuffer[csize] = 0;
+		inflater.reset();
+		inflater.setInput(inBuffer, 0, csize + 1);
+		try {
+			int n = 0;
+			while (n < size && !inflater.finished()) {
+				int read = inflater.inflate(outBuffer, n, size - n);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += read;
+			}
+			if (n != size) {
+				throw new ZipException(String.format(
+						JarToUMLResources.getString("MappedZipFile.invalidEntry"),
+						entry, name)); //$NON-NLS-1$
+			}
+		} catch (DataFormatException e) {
+			final ZipException ze = new ZipException(e.getLocalizedMessage());
+			ze.initCause(e);
+			throw ze;
+		}
+		return ByteBuffer.wrap(outBuffer, 0, size);
+	}
+
+	/**
+	 * Locates the end of central directory record and reads all central directory entries.
+	 * @return the entries
+	 * @throws IOException
+	 */
+	protected List<Entry> readCentralDirectory() throws IOException {
+		final int limit = mapped.limit();
+		final int minEnd = Math.max(0, limit - ENDHDR - MAX_COMMENT);
+		int end = -1;
+		for (int i = limit - ENDHDR; i >= minEnd; i--) {
+			if (mapped.getInt(i) == ENDSIG) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new ZipException(String.format(
+					JarToUMLResources.getString("MappedZipFile.noCentralDirectory"),
+					name)); //$NON-NLS-1$
+		}
+		final int count = mapped.getShort(end + 10) & 0xffff;
+		final int cenOffset = mapped.getInt(end + 16);
+		if (count == 0xffff || cenOffset == ZIP64_MAGIC) {
+			throw new ZipException(String.format(
+					JarToUMLResources.getString("MappedZipFile.zip64"),
+					name)); //$NON-NLS-1$
+		}
+		final List<Entry> entries = new ArrayList<Entry>(count);
+		int cen = cenOffset;
+		for (int i = 0; i < count; i++) {
+			if (mapped.getInt(cen) != CENSIG) {
+				throw new ZipException(String.format(
+						JarToUMLResources.getString("MappedZipFile.noCentralDirectory"),
+						name)); //$NON-NLS-1$
+			}
+			final int flags = mapped.getShort(cen + 8) & 0xffff;
+			final int method = mapped.getShort(cen + 10) & 0xffff;
+			final long crc = mapped.getInt(cen + 16) & 0xffffffffL;
+			final int csize = mapped.getInt(cen + 20);
+			final int size = mapped.getInt(cen + 24);
+			final int nameLength = mapped.getShort(cen + 28) & 0xffff;
+			final int extraLength = mapped.getShort(cen + 30) & 0xffff;
+			final int commentLength = mapped.getShort(cen + 32) & 0xffff;
+			final int loc = mapped.getInt(cen + 42);
+			if (csize == ZIP64_MAGIC || size == ZIP64_MAGIC || loc == ZIP64_MAGIC) {
+				throw new ZipException(String.format(
+						JarToUMLResources.getString("MappedZipFile.zip64"),
+						name)); //$NON-NLS-1$
+			}
+			final String entryName = readName(cen + CENHDR, nameLength);
+			if ((flags & 1) != 0) {
+				throw new ZipException(String.format(
+						JarToUMLResources.getString("MappedZipFile.encrypted"),
+						entryName, name)); //$NON-NLS-1$
+			}
+			entries.add(new Entry(entryName, method, crc, csize, size, loc));
+			cen += CENHDR + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * @param offset
+	 * @param length
+	 * @return the entry name at offset
+	 * @throws IOException
+	 */
+	private String readName(final int offset, final int length) throws IOException {
+		final byte[] bytes = new byte[length];
+		final ByteBuffer nameBuffer = mapped.duplicate();
+		nameBuffer.position(offset);
+		nameBuffer.get(bytes);
+		// jar tools write UTF-8 names, with or without the language encoding flag
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+}
@@ -96,8 +96,30 @@ public class MarkInferredClassifiers extends ChangeModel {
 			logSkippedFiltered(javaClass);
 			return;
 		}
+		addContainedClassifier(javaClass.getClassName(), containedClassifiers);
+	}
+
+	/**
+	 * @return All {@link Classifier}s corresponding to the given class names, including derived classifiers.
+	 * @param classNames The fully qualified names of unfiltered classes.
+	 */
+	public Set<Classifier> findContainedClassifiersByName(Collection<String> classNames) {
+		final Set<Classifier> containedClassifiers = new HashSet<Classifier>();
+		for (String className : classNames) {
+			addContainedClassifier(className, containedClassifiers);
+		}
+		JarToUMLResources.logger.fine(JarToUMLResources.getString("MarkInferredClassifiers.foundContainedClassifiers")); //$NON-NLS-1$
+		return containedClassifiers;
+	}
+
+	/**
+	 * Adds all {@link Classifier}s for className to containedClassifiers, including derived classifiers.
+	 * @param className The fully qualified name of an unfiltered class.
+	 * @param containedClassifiers
+	 */
+	public void addContainedClassifier(String className, Collection<Classifier> containedClassifiers) {
 		Classifier classifier = findContainedClassifier.findClassifier(
-				getModel(), javaClass.getClassName(), null);
+				getModel(), className, null);
 		containedClassifiers.add(classifier);
 		JarToUMLResources.logger.finer(String.format(
 				JarToUMLResources.getString("MarkInferredClassifiers.addedContainedClassifier"), 
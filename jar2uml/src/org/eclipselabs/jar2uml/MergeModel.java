@@ -137,6 +137,9 @@ public final class MergeModel extends JarToUMLRunnable {
 				null, monitor, WORK_INFERRED_TAGS, base);
 		markInferredClassifiers.addAllInferredTags(mergeClassifiers.getContainedClassifiers());
 		worked(monitor, JarToUMLResources.getString("MergeModel.updatedInferred")); //$NON-NLS-1$
+		// lookup indexes are only valid during this run
+		ClassifierIndexAdapter.removeAll(base);
+		OperationIndexAdapter.removeAll(base);
 	}
 
 	/**
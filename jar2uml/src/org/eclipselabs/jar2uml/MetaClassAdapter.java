@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.DataType;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.UMLPackage;
+
+/**
+ * Registry of the meta-classes of all known classes, by fully qualified class name.
+ * The registry is attached to the model root as an adapter, and is filled from the
+ * parsed class headers before any {@link Classifier} is created. Referenced classifiers
+ * with a known name are then created as {@link Class} or {@link Interface} right away,
+ * instead of being created as {@link DataType} and replaced later by {@link ReplaceByClassifierSwitch}.
+ * The first registered meta-class for a name is kept.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class MetaClassAdapter extends AdapterImpl {
+
+	/**
+	 * @param root the model root
+	 * @return The {@link MetaClassAdapter} for root, which is created if necessary.
+	 */
+	public static MetaClassAdapter getAdapter(final Package root) {
+		MetaClassAdapter adapter = (MetaClassAdapter) EcoreUtil.getExistingAdapter(
+				root, MetaClassAdapter.class);
+		if (adapter == null) {
+			adapter = new MetaClassAdapter();
+			root.eAdapters().add(adapter);
+		}
+		return adapter;
+	}
+
+	/**
+	 * @param root the model root
+	 * @param className the fully qualified class name
+	 * @return The registered meta-class for className, or <code>null</code>.
+	 */
+	public static EClass getMetaClass(final Package root, final String className) {
+		final MetaClassAdapter adapter = (MetaClassAdapter) EcoreUtil.getExistingAdapter(
+				root, MetaClassAdapter.class);
+		if (adapter == null) {
+			return null;
+		}
+		return adapter.metaClasses.get(className);
+	}
+
+	/**
+	 * Removes the {@link MetaClassAdapter} from root, if any.
+	 * @param root the model root
+	 */
+	public static void remove(final Package root) {
+		final Object adapter = EcoreUtil.getExistingAdapter(root, MetaClassAdapter.class);
+		if (adapter != null) {
+			root.eAdapters().remove(adapter);
+		}
+	}
+
+	private final Map<String, EClass> metaClasses = new HashMap<String, EClass>();
+
+	/**
+	 * Registers the meta-class of javaClass, unless a meta-class is already
+	 * registered for its name.
+	 * @param javaClass
+	 * @return <code>true</code> iff the meta-class of javaClass was registered.
+	 */
+	public boolean addClass(final JavaClass javaClass) {
+		final String className = javaClass.getClassName();
+		if (metaClasses.containsKey(className)) {
+			return false;
+		}
+		metaClasses.put(className, javaClass.isInterface() ?
+				UMLPackage.eINSTANCE.getInterface() : UMLPackage.eINSTANCE.getClass_());
+		return true;
+	}
+
+	/**
+	 * @return The amount of registered class names.
+	 */
+	public int size() {
+		return metaClasses.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+	 */
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == MetaClassAdapter.class;
+	}
+
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.DataType;
+import org.eclipse.uml2.uml.Element;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Operation;
+import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.UMLPackage;
+
+/**
+ * Signature index of the owned {@link Operation}s of a single {@link Class},
+ * {@link Interface} or {@link DataType}. Operations are keyed by name, parameter types
+ * and return type. The index is attached to its classifier as an adapter, and follows
+ * all additions to and removals from the owned operations, such that it stays correct
+ * when {@link ReplaceByClassifierSwitch} moves the operations to a new classifier.
+ * Added operations are indexed on the next lookup, as their parameters are created
+ * after they are added to their classifier.
+ * Lookups return the first matching operation, like
+ * {@link AddClassifierOperationSwitch#getOperation(EList, String, EList, Type)} does.
+ * The number of operations per signature is counted, such that the index is rebuilt
+ * when the first of several operations with the same signature is removed.
+ * Changing the name or parameter types of an operation after it has been indexed is not tracked.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class OperationIndexAdapter extends AdapterImpl {
+
+	/**
+	 * @param classifier a {@link Class}, {@link Interface} or {@link DataType}
+	 * @return The {@link OperationIndexAdapter} for classifier, which is created if necessary.
+	 */
+	public static OperationIndexAdapter getIndex(final Classifier classifier) {
+		assert classifier instanceof Class || classifier instanceof Interface || classifier instanceof DataType;
+		OperationIndexAdapter index = (OperationIndexAdapter) EcoreUtil.getExistingAdapter(
+				classifier, OperationIndexAdapter.class);
+		if (index == null) {
+			index = new OperationIndexAdapter();
+			classifier.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Removes all {@link OperationIndexAdapter}s from root and its contents.
+	 * @param root
+	 */
+	public static void removeAll(final Element root) {
+		removeIndex(root);
+		for (Iterator<EObject> it = root.eAllContents(); it.hasNext();) {
+			removeIndex(it.next());
+		}
+	}
+
+	/**
+	 * Removes the {@link OperationIndexAdapter} from object, if any.
+	 * @param object
+	 */
+	private static void removeIndex(final EObject object) {
+		final Object index = EcoreUtil.getExistingAdapter(object, OperationIndexAdapter.class);
+		if (index != null) {
+			object.eAdapters().remove(index);
+		}
+	}
+
+	/**
+	 * @param name the operation name
+	 * @param argumentTypes the argument types
+	 * @param returnType the return type or <code>null</code>
+	 * @return The index key for the given signature.
+	 */
+	private static List<Object> getKey(final String name, final List<Type> argumentTypes, final Type returnType) {
+		final List<Object> key = new ArrayList<Object>(argumentTypes.size() + 2);
+		key.add(name);
+		key.add(returnType);
+		key.addAll(argumentTypes);
+		return key;
+	}
+
+	private final Map<List<Object>, Operation> operations = new HashMap<List<Object>, Operation>();
+	private final Map<List<Object>, Integer> counts = new HashMap<List<Object>, Integer>();
+	private final List<Operation> pending = new ArrayList<Operation>();
+	private boolean valid = false;
+
+	/**
+	 * @param name the operation name
+	 * @param argumentTypes the argument types
+	 * @param returnType the return type or <code>null</code>
+	 * @return the first owned operation with the given name, argument types and return type, or <code>null</code>
+	 */
+	public Operation getOperation(final String name, final EList<Type> argumentTypes, final Type returnType) {
+		update();
+		final Operation op = operations.get(getKey(name, argumentTypes, returnType));
+		if (op != null && !isCurrent(op, name, argumentTypes, returnType)) {
+			valid = false;
+			return getOperation(name, argumentTypes, returnType);
+		}
+		return op;
+	}
+
+	/**
+	 * @param op
+	 * @param name
+	 * @param argumentTypes
+	 * @param returnType
+	 * @return <code>true</code> iff op still has the given signature and is owned by the indexed classifier.
+	 */
+	private boolean isCurrent(final Operation op, final String name, final EList<Type> argumentTypes, final Type returnType) {
+		return op.getOwner() == getTarget()
+			&& op.getType() == returnType
+			&& name.equals(op.getName())
+			&& AddClassifierOperationSwitch.compareParameterTypes(op.getOwnedParameters(), argumentTypes);
+	}
+
+	/**
+	 * @return The owned operations of the indexed classifier.
+	 */
+	private List<Operation> getOwnedOperations() {
+		final Object classifier = getTarget();
+		if (classifier instanceof Class) {
+			return ((Class) classifier).getOwnedOperations();
+		} else if (classifier instanceof Interface) {
+			return ((Interface) classifier).getOwnedOperations();
+		} else if (classifier instanceof DataType) {
+			return ((DataType) classifier).getOwnedOperations();
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Rebuilds the index if it is not valid, or indexes pending operations otherwise.
+	 */
+	private void update() {
+		if (!valid) {
+			operations.clear();
+			counts.clear();
+			pending.clear();
+			for (Operation op : getOwnedOperations()) {
+				add(op);
+			}
+			valid = true;
+		} else if (!pending.isEmpty()) {
+			for (Operation op : pending) {
+				add(op);
+			}
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Adds op to the index, unless an operation with the same signature is already indexed.
+	 * @param op
+	 */
+	private void add(final Operation op) {
+		if (op.getName() == null) {
+			return;
+		}
+		final List<Object> key = getKey(op.getName(),
+				AddClassifierOperationSwitch.getParameterTypes(op.getOwnedParameters()), op.getType());
+		final Integer count = counts.get(key);
+		if (count == null) {
+			counts.put(key, 1);
+			operations.put(key, op);
+		} else {
+			counts.put(key, count + 1);
+		}
+	}
+
+	/**
+	 * Removes op from the index. Invalidates the index if op was indexed
+	 * and other operations with the same signature remain.
+	 * @param op
+	 */
+	private void remove(final Operation op) {
+		if (pending.remove(op) || op.getName() == null) {
+			return;
+		}
+		final List<Object> key = getKey(op.getName(),
+				AddClassifierOperationSwitch.getParameterTypes(op.getOwnedParameters()), op.getType());
+		final Integer count = counts.get(key);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			counts.remove(key);
+		} else {
+			counts.put(key, count - 1);
+		}
+		if (operations.get(key) == op) {
+			operations.remove(key);
+			valid = count == 1;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification msg) {
+		final Object feature = msg.getFeature();
+		if (!valid || (feature != UMLPackage.Literals.CLASS__OWNED_OPERATION
+				&& feature != UMLPackage.Literals.INTERFACE__OWNED_OPERATION
+				&& feature != UMLPackage.Literals.DATA_TYPE__OWNED_OPERATION)) {
+			return;
+		}
+		switch (msg.getEventType()) {
+		case Notification.ADD:
+			pending.add((Operation) msg.getNewValue());
+			break;
+		case Notification.ADD_MANY:
+			for (Object op : (Collection<?>) msg.getNewValue()) {
+				pending.add((Operation) op);
+			}
+			break;
+		case Notification.REMOVE:
+			remove((Operation) msg.getOldValue());
+			break;
+		case Notification.REMOVE_MANY:
+			for (Object op : (Collection<?>) msg.getOldValue()) {
+				remove((Operation) op);
+			}
+			break;
+		case Notification.MOVE:
+			break;
+		default:
+			// SET, UNSET, etc.: rebuild on next lookup
+			valid = false;
+			break;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+	 */
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == OperationIndexAdapter.class;
+	}
+
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * On-disk cache of {@link ClassSummary} instances, keyed by jar entry name, CRC-32 and size.
+ * Entries are written to a temporary file and renamed into place, so concurrent
+ * readers never see partial entries. Eviction removes the least recently used entries
+ * until the cache fits its size bound, and holds a file lock, so multiple JVMs can share
+ * the same cache directory. Cached classes do not contain bytecode instructions.
+ * Thread-safe.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ParseCache {
+
+	private static final String ENTRY_SUFFIX = ".j2u"; //$NON-NLS-1$
+	private static final String TMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+	private static final String LOCK_FILE = "cache.lock"; //$NON-NLS-1$
+	private static final long TMP_EXPIRY = 60L * 60L * 1000L;
+
+	private static final FileFilter entryFilter = new FileFilter() {
+		public boolean accept(File pathname) {
+			return pathname.getName().endsWith(ENTRY_SUFFIX);
+		}
+	};
+
+	private static final FileFilter tmpFilter = new FileFilter() {
+		public boolean accept(File pathname) {
+			return pathname.getName().endsWith(TMP_SUFFIX);
+		}
+	};
+
+	private final File directory;
+	private final long maxSize;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	private final AtomicInteger evictions = new AtomicInteger();
+
+	/**
+	 * Creates a new {@link ParseCache}.
+	 * @param directory the cache directory, created if necessary
+	 * @param maxSize the maximum total size of the cache entries in bytes
+	 * @throws IOException if directory cannot be created
+	 */
+	public ParseCache(File directory, long maxSize) throws IOException {
+		super();
+		assert directory != null;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException(String.format(
+					JarToUMLResources.getString("ParseCache.cannotCreateDir"),
+					directory)); //$NON-NLS-1$
+		}
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param entryName
+	 * @param crc
+	 * @param size
+	 * @return The cache file for the given key.
+	 */
+	protected File getFile(final String entryName, final long crc, final long size) {
+		return new File(directory, String.format("%08x%08x%08x%s",
+				entryName.hashCode(), crc, size, ENTRY_SUFFIX)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Retrieves a cached class.
+	 * @param entryName the jar entry name
+	 * @param crc the jar entry CRC-32
+	 * @param size the jar entry uncompressed size
+	 * @return the cached class, or <code>null</code>
+	 */
+	public JavaClass get(final String entryName, final long crc, final long size) {
+		final File file = getFile(entryName, crc, size);
+		if (file.isFile()) {
+			try {
+				final DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(file)));
+				try {
+					if (entryName.equals(in.readUTF()) && in.readLong() == crc && in.readLong() == size) {
+						final ClassSummary summary = ClassSummary.read(in);
+						file.setLastModified(System.currentTimeMillis());
+						hits.incrementAndGet();
+						return summary.toJavaClass();
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// evicted by another JVM, or stale format: treat as miss
+				JarToUMLResources.logger.finest(e.getLocalizedMessage());
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores the summary of javaClass.
+	 * @param entryName the jar entry name
+	 * @param crc the jar entry CRC-32
+	 * @param size the jar entry uncompressed size
+	 * @param javaClass the parsed class
+	 */
+	public void put(final String entryName, final long crc, final long size, final JavaClass javaClass) {
+		final ClassSummary summary = ClassSummary.create(javaClass);
+		try {
+			final File tmp = File.createTempFile("entry", TMP_SUFFIX, directory); //$NON-NLS-1$
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeUTF(entryName);
+				out.writeLong(crc);
+				out.writeLong(size);
+				summary.write(out);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(getFile(entryName, crc, size))) {
+				// target exists and cannot be replaced on this platform
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			JarToUMLResources.logger.warning(String.format(
+					JarToUMLResources.getString("ParseCache.cannotStore"),
+					entryName, e.getLocalizedMessage())); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache fits its size bound.
+	 * Holds an exclusive lock on the cache directory during eviction.
+	 * @throws IOException
+	 */
+	public synchronized void evict() throws IOException {
+		final RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw"); //$NON-NLS-1$
+		try {
+			final FileLock lock = lockFile.getChannel().lock();
+			try {
+				// remove temporary files left behind by crashed runs
+				final File[] tmpFiles = directory.listFiles(tmpFilter);
+				if (tmpFiles != null) {
+					final long expired = System.currentTimeMillis() - TMP_EXPIRY;
+					for (File file : tmpFiles) {
+						if (file.lastModified() < expired) {
+							file.delete();
+						}
+					}
+				}
+				final File[] files = directory.listFiles(entryFilter);
+				if (files == null) {
+					return;
+				}
+				long total = 0L;
+				for (File file : files) {
+					total += file.length();
+				}
+				if (total <= maxSize) {
+					return;
+				}
+				// snapshot access times, as other JVMs may touch entries while sorting
+				final Map<File, Long> accessed = new HashMap<File, Long>(files.length);
+				for (File file : files) {
+					accessed.put(file, Long.valueOf(file.lastModified()));
+				}
+				Arrays.sort(files, new Comparator<File>() {
+					public int compare(File o1, File o2) {
+						return accessed.get(o1).compareTo(accessed.get(o2));
+					}
+				});
+				for (int i = 0; i < files.length && total > maxSize; i++) {
+					final long length = files[i].length();
+					if (files[i].delete()) {
+						total -= length;
+						evictions.incrementAndGet();
+					}
+				}
+			} finally {
+				lock.release();
+			}
+		} finally {
+			lockFile.close();
+		}
+	}
+
+	/**
+	 * Logs the cache hit/miss statistics.
+	 */
+	public void logStatistics() {
+		JarToUMLResources.logger.info(String.format(
+				JarToUMLResources.getString("ParseCache.statistics"),
+				getHits(), getMisses(), getEvictions(), directory)); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the cache directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the maximum total size of the cache entries in bytes
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the amount of cache hits
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the amount of cache misses
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the amount of evicted entries
+	 */
+	public int getEvictions() {
+		return evictions.get();
+	}
+
+}
@@ -10,12 +10,20 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -98,11 +106,74 @@ public class ParseClasses extends JarToUMLOperation {
 		return classFiles.size();
 	}
 
+	/**
+	 * Parses a single jar entry on a worker thread. Returns the parsed class,
+	 * or all classes in the nested jar if the entry is a nested jar.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	protected class ParseEntry implements Callable<List<JavaClass>> {
+
+		private final JarFile jar;
+		private final JarEntry entry;
+		private final boolean nested;
+
+		/**
+		 * Creates a new {@link ParseEntry}.
+		 * @param jar the jar file containing entry
+		 * @param entry the class file or nested jar entry
+		 * @param nested whether entry is a nested jar
+		 */
+		public ParseEntry(JarFile jar, JarEntry entry, boolean nested) {
+			super();
+			this.jar = jar;
+			this.entry = entry;
+			this.nested = nested;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public List<JavaClass> call() throws IOException {
+			checkCancelled();
+			final List<JavaClass> result = new ArrayList<JavaClass>();
+			final InputStream input = nested ? jar.getInputStream(entry) : null;
+			try {
+				if (nested) {
+					final JarInputStream nestedJar = new JarInputStream(input);
+					parseClasses(nestedJar, result, result);
+				} else {
+					result.add(parseClass(jar, entry));
+				}
+			} finally {
+				if (input != null) {
+					input.close();
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @return whether the entry is a nested jar
+		 */
+		public boolean isNested() {
+			return nested;
+		}
+
+	}
+
 	private int majorFormatVersion;
 	private int minorFormatVersion;
+	private int parseThreads = 1;
+	private boolean mappedInput = false;
+	private ParseCache parseCache;
+	private boolean headerOnly = false;
+	private boolean lazyCode = false;
 
 	/**
 	 * Parses all classes in jar and adds them to parsedClasses or parsedCpClasses.
+	 * Reads jar through a {@link MappedZipFile} if {@link #isMappedInput()},
+	 * otherwise uses {@link #getParseThreads()} worker threads if more than one.
 	 * @param jar The jar file to parse class files from.
 	 * @param parsedClasses Collection of classes directly parsed from jar.
 	 * @param parsedCpClasses Collection of classes parsed from nested jars in jar.
@@ -111,6 +182,21 @@ public class ParseClasses extends JarToUMLOperation {
 	public void parseClasses(JarFile jar, Collection<JavaClass> parsedClasses, 
 			Collection<JavaClass> parsedCpClasses) throws IOException {
 		assert jar != null;
+		if (isMappedInput()) {
+			final MappedZipFile zip = openMapped(jar);
+			if (zip != null) {
+				try {
+					parseClasses(zip, parsedClasses, parsedCpClasses);
+				} finally {
+					zip.close();
+				}
+				return;
+			}
+		}
+		if (getParseThreads() > 1) {
+			parseClassesParallel(jar, parsedClasses, parsedCpClasses);
+			return;
+		}
 		for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
 			JarEntry entry = entries.nextElement();
 			String name = entry.getName();
@@ -118,13 +204,7 @@ public class ParseClasses extends JarToUMLOperation {
 				if (!filter(entry.getName())) {
 					continue;
 				}
-				InputStream input = jar.getInputStream(entry);
-				ClassParser parser = new ClassParser(input, entry.getName());
-				JavaClass javaClass = parser.parse();
-				setMajorFormatVersion(javaClass.getMajor());
-				setMinorFormatVersion(javaClass.getMinor());
-				input.close();
-				parsedClasses.add(javaClass);
+				parsedClasses.add(parseClass(jar, entry));
 			} else if (jarFileName.matcher(name).matches()) {
 				InputStream input = jar.getInputStream(entry);
 				JarInputStream nestedJar = new JarInputStream(input);
@@ -136,6 +216,123 @@ public class ParseClasses extends JarToUMLOperation {
 		}
 	}
 
+	/**
+	 * @param jar
+	 * @return A {@link MappedZipFile} for jar, or <code>null</code> if jar cannot be mapped.
+	 */
+	protected MappedZipFile openMapped(final JarFile jar) {
+		try {
+			return new MappedZipFile(new File(jar.getName()));
+		} catch (IOException e) {
+			JarToUMLResources.logger.fine(String.format(
+					JarToUMLResources.getString("ParseClasses.mappedFallback"),
+					jar.getName(), e.getLocalizedMessage())); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/**
+	 * Parses all classes in jar on {@link #getParseThreads()} worker threads
+	 * and adds them to parsedClasses or parsedCpClasses in jar entry order.
+	 * Progress and cancellation are handled on the calling thread.
+	 * @param jar The jar file to parse class files from.
+	 * @param parsedClasses Collection of classes directly parsed from jar.
+	 * @param parsedCpClasses Collection of classes parsed from nested jars in jar.
+	 * @throws IOException
+	 */
+	protected void parseClassesParallel(JarFile jar, Collection<JavaClass> parsedClasses, 
+			Collection<JavaClass> parsedCpClasses) throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(getParseThreads());
+		try {
+			final List<ParseEntry> tasks = new ArrayList<ParseEntry>();
+			final List<Future<List<JavaClass>>> results = new ArrayList<Future<List<JavaClass>>>();
+			for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (classFileName.matcher(name).matches()) {
+					if (!filter(entry.getName())) {
+						continue;
+					}
+					ParseEntry task = new ParseEntry(jar, entry, false);
+					tasks.add(task);
+					results.add(executor.submit(task));
+				} else if (jarFileName.matcher(name).matches()) {
+					ParseEntry task = new ParseEntry(jar, entry, true);
+					tasks.add(task);
+					results.add(executor.submit(task));
+				} else {
+					worked();
+				}
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				List<JavaClass> parsed = getResult(results.get(i));
+				if (tasks.get(i).isNested()) {
+					// switch to classpath classes collection
+					parsedCpClasses.addAll(parsed);
+				} else {
+					parsedClasses.addAll(parsed);
+				}
+				worked();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for result and unwraps any exception thrown by the worker thread.
+	 * @param result
+	 * @return the parsed classes
+	 * @throws IOException
+	 */
+	private static List<JavaClass> getResult(final Future<List<JavaClass>> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			final IOException ioe = new IOException(cause.getLocalizedMessage());
+			ioe.initCause(cause);
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Parses all classes in zip and adds them to parsedClasses or parsedCpClasses.
+	 * Class files are parsed directly from the mapped or inflated entry data.
+	 * @param zip The memory-mapped jar file to parse class files from.
+	 * @param parsedClasses Collection of classes directly parsed from zip.
+	 * @param parsedCpClasses Collection of classes parsed from nested jars in zip.
+	 * @throws IOException
+	 */
+	public void parseClasses(MappedZipFile zip, Collection<JavaClass> parsedClasses, 
+			Collection<JavaClass> parsedCpClasses) throws IOException {
+		assert zip != null;
+		for (MappedZipFile.Entry entry : zip.getEntries()) {
+			String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				parsedClasses.add(parseClass(zip, entry));
+			} else if (jarFileName.matcher(name).matches()) {
+				JarInputStream nestedJar = new JarInputStream(zip.getInputStream(entry));
+				// switch to classpath classes collection
+				parseClasses(nestedJar, parsedCpClasses, parsedCpClasses);
+			}
+			worked();
+		}
+	}
+
 	/**
 	 * Parses all classes in jar and adds them to parsedClasses or parsedCpClasses.
 	 * @param jar The jar file to parse class files from.
@@ -152,8 +349,7 @@ public class ParseClasses extends JarToUMLOperation {
 				if (!filter(entry.getName())) {
 					continue;
 				}
-				ClassParser parser = new ClassParser(jar, entry.getName());
-				JavaClass javaClass = parser.parse();
+				JavaClass javaClass = parseClass(jar, entry.getName());
 				setMajorFormatVersion(javaClass.getMajor());
 				setMinorFormatVersion(javaClass.getMinor());
 				parsedClasses.add(javaClass);
@@ -186,8 +382,7 @@ public class ParseClasses extends JarToUMLOperation {
 				continue;
 			}
 			InputStream input = classFile.getContents();
-			ClassParser parser = new ClassParser(input, filename);
-			JavaClass javaClass = parser.parse();
+			JavaClass javaClass = parseClass(input, filename);
 			setMajorFormatVersion(javaClass.getMajor());
 			setMinorFormatVersion(javaClass.getMinor());
 			input.close();
@@ -196,12 +391,215 @@ public class ParseClasses extends JarToUMLOperation {
 		}
 	}
 
+	/**
+	 * Parses the classes in jar one at a time and passes them to handler.
+	 * Reads jar through a {@link MappedZipFile} if {@link #isMappedInput()}.
+	 * Always parses on the calling thread, as handler must receive the classes in jar entry order.
+	 * @param jar The jar file to parse class files from.
+	 * @param isCp Whether jar is a classpath entry.
+	 * @param handler The handler for the parsed classes. Classes from nested jars are passed as classpath classes.
+	 * @throws IOException
+	 */
+	public void parseClasses(JarFile jar, boolean isCp, ClassFileHandler handler) throws IOException {
+		assert jar != null;
+		assert handler != null;
+		if (isMappedInput()) {
+			final MappedZipFile zip = openMapped(jar);
+			if (zip != null) {
+				try {
+					parseClasses(zip, isCp, handler);
+				} finally {
+					zip.close();
+				}
+				return;
+			}
+		}
+		for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			JarEntry entry = entries.nextElement();
+			String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				if (handler.accept(name, isCp)) {
+					handler.handleClass(parseClass(jar, entry), isCp);
+				}
+			} else if (jarFileName.matcher(name).matches()) {
+				InputStream input = jar.getInputStream(entry);
+				JarInputStream nestedJar = new JarInputStream(input);
+				parseClasses(nestedJar, handler);
+				nestedJar.close();
+			}
+			worked();
+		}
+	}
+
+	/**
+	 * Parses the classes in zip one at a time and passes them to handler.
+	 * Class files are parsed directly from the mapped or inflated entry data.
+	 * @param zip The memory-mapped jar file to parse class files from.
+	 * @param isCp Whether zip is a classpath entry.
+	 * @param handler The handler for the parsed classes. Classes from nested jars are passed as classpath classes.
+	 * @throws IOException
+	 */
+	public void parseClasses(MappedZipFile zip, boolean isCp, ClassFileHandler handler) throws IOException {
+		assert zip != null;
+		assert handler != null;
+		for (MappedZipFile.Entry entry : zip.getEntries()) {
+			String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				if (handler.accept(name, isCp)) {
+					handler.handleClass(parseClass(zip, entry), isCp);
+				}
+			} else if (jarFileName.matcher(name).matches()) {
+				JarInputStream nestedJar = new JarInputStream(zip.getInputStream(entry));
+				parseClasses(nestedJar, handler);
+			}
+			worked();
+		}
+	}
+
+	/**
+	 * Parses the classes in the nested jar one at a time and passes them to handler as classpath classes.
+	 * @param jar The nested jar file to parse class files from.
+	 * @param handler The handler for the parsed classes.
+	 * @throws IOException
+	 */
+	public void parseClasses(JarInputStream jar, ClassFileHandler handler) throws IOException {
+		assert jar != null;
+		assert handler != null;
+		for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+			String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				if (handler.accept(name, true)) {
+					JavaClass javaClass = parseClass(jar, name);
+					setMajorFormatVersion(javaClass.getMajor());
+					setMinorFormatVersion(javaClass.getMinor());
+					handler.handleClass(javaClass, true);
+				}
+			} else if (jarFileName.matcher(name).matches()) {
+				JarInputStream nestedJar = new JarInputStream(jar);
+				parseClasses(nestedJar, handler);
+				// do NOT close input stream!
+			}
+			jar.closeEntry();
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Parses the classes in container one at a time and passes them to handler.
+	 * @param container The Eclipse workspace container to parse class files from.
+	 * @param isCp Whether container is a classpath entry.
+	 * @param handler The handler for the parsed classes.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public void parseClasses(IContainer container, boolean isCp, ClassFileHandler handler) throws IOException, CoreException {
+		assert container != null;
+		assert handler != null;
+		final List<IFile> classFiles = new ArrayList<IFile>();
+		findClassFilesIn(container, classFiles);
+		for (IFile classFile : classFiles) {
+			IPath filePath = classFile.getLocation();
+			String filename = filePath.toString().substring(container.getLocation().toString().length());
+			if (!filter(filename)) {
+				continue;
+			}
+			if (handler.accept(filename, isCp)) {
+				InputStream input = classFile.getContents();
+				JavaClass javaClass = parseClass(input, filename);
+				setMajorFormatVersion(javaClass.getMajor());
+				setMinorFormatVersion(javaClass.getMinor());
+				input.close();
+				handler.handleClass(javaClass, isCp);
+			}
+			worked();
+		}
+	}
+
+	/**
+	 * Parses the class file in input, using a {@link ClassHeaderParser} if {@link #isHeaderOnly()},
+	 * or a {@link LazyClassParser} if {@link #isLazyCode()}. Does not close input.
+	 * @param input The class file input stream.
+	 * @param name The class file name.
+	 * @return The parsed class.
+	 * @throws IOException
+	 */
+	protected JavaClass parseClass(final InputStream input, final String name) throws IOException {
+		if (isHeaderOnly()) {
+			return new ClassHeaderParser(input, name).parse();
+		}
+		if (isLazyCode()) {
+			return new LazyClassParser(input, name).parse();
+		}
+		return new ClassParser(input, name).parse();
+	}
+
+	/**
+	 * Parses the class file in entry, or retrieves it from the parse cache, if set.
+	 * @param jar The jar file containing entry.
+	 * @param entry The class file entry.
+	 * @return The parsed class.
+	 * @throws IOException
+	 */
+	protected JavaClass parseClass(final JarFile jar, final JarEntry entry) throws IOException {
+		final String name = entry.getName();
+		final ParseCache cache = getParseCache();
+		final boolean cacheable = cache != null && entry.getCrc() != -1L && entry.getSize() != -1L;
+		JavaClass javaClass = cacheable ? cache.get(name, entry.getCrc(), entry.getSize()) : null;
+		if (javaClass == null) {
+			final InputStream input = jar.getInputStream(entry);
+			try {
+				javaClass = parseClass(input, name);
+			} finally {
+				input.close();
+			}
+			if (cacheable && !isHeaderOnly()) {
+				cache.put(name, entry.getCrc(), entry.getSize(), javaClass);
+			}
+		}
+		setMajorFormatVersion(javaClass.getMajor());
+		setMinorFormatVersion(javaClass.getMinor());
+		return javaClass;
+	}
+
+	/**
+	 * Parses the class file in entry, or retrieves it from the parse cache, if set.
+	 * @param zip The memory-mapped jar file containing entry.
+	 * @param entry The class file entry.
+	 * @return The parsed class.
+	 * @throws IOException
+	 */
+	protected JavaClass parseClass(final MappedZipFile zip, final MappedZipFile.Entry entry) throws IOException {
+		final String name = entry.getName();
+		final ParseCache cache = getParseCache();
+		JavaClass javaClass = cache != null ? cache.get(name, entry.getCrc(), entry.getSize()) : null;
+		if (javaClass == null) {
+			// DataInputStream prevents the parser from adding another buffer
+			final DataInputStream input = new DataInputStream(zip.getInputStream(entry));
+			javaClass = parseClass(input, name);
+			if (cache != null && !isHeaderOnly()) {
+				cache.put(name, entry.getCrc(), entry.getSize(), javaClass);
+			}
+		}
+		setMajorFormatVersion(javaClass.getMajor());
+		setMinorFormatVersion(javaClass.getMinor());
+		return javaClass;
+	}
+
 	/**
 	 * The class file format major version. 
 	 * @return the majorFormatVersion
 	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
 	 */
-	public int getMajorFormatVersion() {
+	public synchronized int getMajorFormatVersion() {
 		return majorFormatVersion;
 	}
 
@@ -210,22 +608,117 @@ public class ParseClasses extends JarToUMLOperation {
 	 * @param majorFormatVersion the majorFormatVersion to set
 	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
 	 */
-	protected void setMajorFormatVersion(int majorFormatVersion) {
+	protected synchronized void setMajorFormatVersion(int majorFormatVersion) {
 		this.majorFormatVersion = Math.max(this.majorFormatVersion, majorFormatVersion);
 	}
 
 	/**
 	 * @return the minorFormatVersion
 	 */
-	public int getMinorFormatVersion() {
+	public synchronized int getMinorFormatVersion() {
 		return minorFormatVersion;
 	}
 
 	/**
 	 * @param minorFormatVersion the minorFormatVersion to set
 	 */
-	protected void setMinorFormatVersion(int minorFormatVersion) {
+	protected synchronized void setMinorFormatVersion(int minorFormatVersion) {
 		this.minorFormatVersion = Math.max(this.minorFormatVersion, minorFormatVersion);
 	}
 
+	/**
+	 * The amount of worker threads used to parse the entries of a single jar file.
+	 * Values lower than 2 parse on the calling thread. Defaults to 1.
+	 * @return the parseThreads
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * The amount of worker threads used to parse the entries of a single jar file.
+	 * Values lower than 2 parse on the calling thread. Defaults to 1.
+	 * @param parseThreads the parseThreads to set
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * Whether to read jar files through a {@link MappedZipFile} instead of {@link JarFile}.
+	 * Mapped jar files are parsed on the calling thread. Falls back to {@link JarFile}
+	 * for archives that cannot be mapped. Defaults to false.
+	 * @return the mappedInput
+	 */
+	public boolean isMappedInput() {
+		return mappedInput;
+	}
+
+	/**
+	 * Whether to read jar files through a {@link MappedZipFile} instead of {@link JarFile}.
+	 * Mapped jar files are parsed on the calling thread. Falls back to {@link JarFile}
+	 * for archives that cannot be mapped. Defaults to false.
+	 * @param mappedInput the mappedInput to set
+	 */
+	public void setMappedInput(boolean mappedInput) {
+		this.mappedInput = mappedInput;
+	}
+
+	/**
+	 * The on-disk cache of parsed classes for jar file entries, or <code>null</code>.
+	 * Cached classes do not contain bytecode instructions.
+	 * @return the parseCache
+	 */
+	public ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	/**
+	 * The on-disk cache of parsed classes for jar file entries, or <code>null</code>.
+	 * Cached classes do not contain bytecode instructions.
+	 * @param parseCache the parseCache to set
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
+
+	/**
+	 * Whether to parse only the class file headers, i.e. the class name, flags, superclass
+	 * and interfaces. Header-only classes have no fields, methods or attributes, and
+	 * are not stored in the parse cache. Defaults to false.
+	 * @return the headerOnly
+	 */
+	public boolean isHeaderOnly() {
+		return headerOnly;
+	}
+
+	/**
+	 * Whether to parse only the class file headers, i.e. the class name, flags, superclass
+	 * and interfaces. Header-only classes have no fields, methods or attributes, and
+	 * are not stored in the parse cache. Defaults to false.
+	 * @param headerOnly the headerOnly to set
+	 */
+	public void setHeaderOnly(boolean headerOnly) {
+		this.headerOnly = headerOnly;
+	}
+
+
+	/**
+	 * Whether to defer decoding of method code until it is needed for instruction references.
+	 * Reduces parse time and memory for classes and methods without instruction references. Defaults to false.
+	 * @return the lazyCode
+	 */
+	public boolean isLazyCode() {
+		return lazyCode;
+	}
+
+	/**
+	 * Whether to defer decoding of method code until it is needed for instruction references.
+	 * Reduces parse time and memory for classes and methods without instruction references. Defaults to false.
+	 * @param lazyCode the lazyCode to set
+	 */
+	public void setLazyCode(boolean lazyCode) {
+		this.lazyCode = lazyCode;
+	}
+
 }
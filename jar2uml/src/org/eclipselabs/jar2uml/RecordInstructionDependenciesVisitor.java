@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.generic.AALOAD;
+import org.apache.bcel.generic.GETFIELD;
+import org.apache.bcel.generic.GETSTATIC;
+import org.apache.bcel.generic.INVOKEINTERFACE;
+import org.apache.bcel.generic.INVOKESPECIAL;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InvokeInstruction;
+import org.apache.bcel.generic.PUTFIELD;
+import org.apache.bcel.generic.PUTSTATIC;
+import org.apache.bcel.generic.Type;
+import org.eclipselabs.jar2uml.cflow.AccessContextUnavailableException;
+
+/**
+ * Records the instructions visited by {@link AddInstructionDependenciesVisitor} as a list of
+ * {@link InstructionDependency} instances, without changing the UML model.
+ * Throws an {@link AccessContextUnavailableException} in exactly the same cases as
+ * {@link AddInstructionDependenciesVisitor}, such that frame simulation takes the same paths.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class RecordInstructionDependenciesVisitor extends AccessContextVisitor {
+
+	private final List<InstructionDependency> dependencies = new ArrayList<InstructionDependency>();
+
+	/**
+	 * Creates a new {@link RecordInstructionDependenciesVisitor}.
+	 */
+	public RecordInstructionDependenciesVisitor() {
+		super();
+	}
+
+	/**
+	 * Records instr with the given access context.
+	 * @param instr
+	 * @param accessContext
+	 */
+	protected void record(final Instruction instr, final Type accessContext) {
+		dependencies.add(new InstructionDependency(instr, accessContext));
+	}
+
+	/**
+	 * Records instr with an unavailable access context, and rethrows e.
+	 * @param instr
+	 * @param e
+	 * @throws AccessContextUnavailableException
+	 */
+	protected void recordUnavailable(final Instruction instr, final AccessContextUnavailableException e) {
+		record(instr, Type.NULL);
+		throw e;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitAALOAD(org.apache.bcel.generic.AALOAD)
+	 */
+	@Override
+	public void visitAALOAD(AALOAD obj) {
+		//no model changes before the access context is retrieved
+		record(obj, getGetFieldAccessContext());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitGETFIELD(org.apache.bcel.generic.GETFIELD)
+	 */
+	@Override
+	public void visitGETFIELD(GETFIELD obj) {
+		final Type accessContext;
+		try {
+			accessContext = getGetFieldAccessContext();
+		} catch (AccessContextUnavailableException e) {
+			recordUnavailable(obj, e);
+			return;
+		}
+		record(obj, accessContext);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitGETSTATIC(org.apache.bcel.generic.GETSTATIC)
+	 */
+	@Override
+	public void visitGETSTATIC(GETSTATIC obj) {
+		record(obj, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKEINTERFACE(org.apache.bcel.generic.INVOKEINTERFACE)
+	 */
+	@Override
+	public void visitINVOKEINTERFACE(INVOKEINTERFACE obj) {
+		final Type accessContext;
+		try {
+			accessContext = getAccessContext(obj);
+		} catch (AccessContextUnavailableException e) {
+			recordUnavailable(obj, e);
+			return;
+		}
+		record(obj, accessContext);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKESPECIAL(org.apache.bcel.generic.INVOKESPECIAL)
+	 */
+	@Override
+	public void visitINVOKESPECIAL(INVOKESPECIAL obj) {
+		final Type accessContext;
+		try {
+			accessContext = getAccessContext(obj);
+		} catch (AccessContextUnavailableException e) {
+			recordUnavailable(obj, e);
+			return;
+		}
+		record(obj, accessContext);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKESTATIC(org.apache.bcel.generic.INVOKESTATIC)
+	 */
+	@Override
+	public void visitINVOKESTATIC(INVOKESTATIC obj) {
+		record(obj, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKEVIRTUAL(org.apache.bcel.generic.INVOKEVIRTUAL)
+	 */
+	@Override
+	public void visitINVOKEVIRTUAL(INVOKEVIRTUAL obj) {
+		final Type accessContext;
+		try {
+			accessContext = getAccessContext(obj);
+		} catch (AccessContextUnavailableException e) {
+			recordUnavailable(obj, e);
+			return;
+		}
+		record(obj, accessContext);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AccessContextVisitor#visitInvokeInstruction(org.apache.bcel.generic.InvokeInstruction)
+	 */
+	@Override
+	public void visitInvokeInstruction(InvokeInstruction obj) {
+		//the access context is retrieved and recorded by the specific visit methods
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitPUTFIELD(org.apache.bcel.generic.PUTFIELD)
+	 */
+	@Override
+	public void visitPUTFIELD(PUTFIELD obj) {
+		final Type accessContext;
+		try {
+			accessContext = getPutFieldAccessContext();
+		} catch (AccessContextUnavailableException e) {
+			recordUnavailable(obj, e);
+			return;
+		}
+		record(obj, accessContext);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.bcel.generic.EmptyVisitor#visitPUTSTATIC(org.apache.bcel.generic.PUTSTATIC)
+	 */
+	@Override
+	public void visitPUTSTATIC(PUTSTATIC obj) {
+		record(obj, null);
+	}
+
+	/**
+	 * @return the recorded dependencies, in visiting order
+	 */
+	public List<InstructionDependency> getDependencies() {
+		return dependencies;
+	}
+
+}
@@ -0,0 +1,349 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+/**
+ * Streams the class files of the {@link JarToUML} inputs through the classifier
+ * and property phases one class at a time. Parsed classes are released after each
+ * class is processed; only class names are retained between passes.
+ * Each pass re-reads the inputs, as the property phase requires all classifiers to be
+ * added first. Closure passes after the first skip the inputs that contain no referenced
+ * classpath classes that are not added yet. Each pass reports its progress to a sub-monitor
+ * of the phase it belongs to, sized by the amount of input entries it reads.
+ * Class files are always parsed on the calling thread, in input order.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class StreamClasses {
+
+	private final ParseClasses parseClasses;
+	private final List<JarFile> jars;
+	private final List<IContainer> paths;
+	private final List<JarFile> cpJars;
+	private final List<IContainer> cpPaths;
+	private final int work;
+	private final int cpWork;
+	/**
+	 * Class names of classpath entries; <code>null</code> for filtered classes.
+	 */
+	private final Map<String, String> cpClassNames = new HashMap<String, String>();
+	private final Set<String> addedCpClassNames = new LinkedHashSet<String>();
+	private final Set<String> containedClassNames = new LinkedHashSet<String>();
+	/**
+	 * Class names of unfiltered classpath entries that are not added, per input read by a closure pass.
+	 */
+	private final Map<Object, Set<String>> pendingCpClassNames = new HashMap<Object, Set<String>>();
+	private final Map<Object, Integer> inputWork = new HashMap<Object, Integer>();
+	private Set<String> currentPendingCpClassNames;
+
+	/**
+	 * Creates a new {@link StreamClasses}.
+	 * @param parseClasses The class file parser to use.
+	 * @param jars The jar files to convert.
+	 * @param paths The Eclipse workspace containers to convert.
+	 * @param cpJars The classpath jar files.
+	 * @param cpPaths The classpath Eclipse workspace containers.
+	 * @throws CoreException
+	 */
+	public StreamClasses(ParseClasses parseClasses, List<JarFile> jars, List<IContainer> paths,
+			List<JarFile> cpJars, List<IContainer> cpPaths) throws CoreException {
+		super();
+		assert parseClasses != null;
+		this.parseClasses = parseClasses;
+		this.jars = jars;
+		this.paths = paths;
+		this.cpJars = cpJars;
+		this.cpPaths = cpPaths;
+		this.work = getInputWork(jars, paths);
+		this.cpWork = getInputWork(cpJars, cpPaths);
+	}
+
+	/**
+	 * Records the amount of progress monitor work per input.
+	 * @param jars
+	 * @param paths
+	 * @return the amount of progress monitor work contained in jars and paths
+	 * @throws CoreException
+	 */
+	private int getInputWork(List<JarFile> jars, List<IContainer> paths) throws CoreException {
+		int work = 0;
+		for (JarFile jar : jars) {
+			final int jarWork = ParseClasses.getJarWork(Collections.singleton(jar));
+			inputWork.put(jar, jarWork);
+			work += jarWork;
+		}
+		for (IContainer path : paths) {
+			final int pathWork = ParseClasses.getPathWork(Collections.singleton(path));
+			inputWork.put(path, pathWork);
+			work += pathWork;
+		}
+		return work;
+	}
+
+	/**
+	 * Parses the main inputs, followed by the classpath inputs if includeCp, and passes the
+	 * parsed classes to handler, in the same order as the non-streaming conversion parses them.
+	 * Each input entry adds one tick to monitor.
+	 * @param handler
+	 * @param includeCp Whether to parse the classpath inputs as well.
+	 * Classes from jars nested in the main inputs are passed as classpath classes in either case.
+	 * @param monitor The progress monitor for this pass, or <code>null</code>.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public void streamClasses(ClassFileHandler handler, boolean includeCp, IProgressMonitor monitor) 
+	throws IOException, CoreException {
+		streamClasses(handler, includeCp, null, monitor);
+	}
+
+	/**
+	 * Parses the main inputs, followed by the classpath inputs if includeCp, and passes the
+	 * parsed classes to handler. Skips the inputs that contain no pending classpath classes
+	 * referenced from the model of closure, if it has been read by an earlier closure pass.
+	 * @param handler
+	 * @param includeCp Whether to parse the classpath inputs as well.
+	 * @param closure The operation of the closure pass, or <code>null</code>.
+	 * @param monitor The progress monitor for this pass, or <code>null</code>.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	private void streamClasses(ClassFileHandler handler, boolean includeCp, AddClassifiers closure,
+			IProgressMonitor monitor) throws IOException, CoreException {
+		final IProgressMonitor parseMonitor = parseClasses.getMonitor();
+		parseClasses.setMonitor(monitor);
+		try {
+			for (JarFile jar : jars) {
+				if (!isSkipped(jar, closure, monitor)) {
+					parseClasses.parseClasses(jar, false, handler);
+				}
+				parseClasses.checkCancelled();
+			}
+			for (IContainer path : paths) {
+				if (!isSkipped(path, closure, monitor)) {
+					parseClasses.parseClasses(path, false, handler);
+				}
+				parseClasses.checkCancelled();
+			}
+			if (includeCp) {
+				for (JarFile jar : cpJars) {
+					if (!isSkipped(jar, closure, monitor)) {
+						parseClasses.parseClasses(jar, true, handler);
+					}
+					parseClasses.checkCancelled();
+				}
+				for (IContainer path : cpPaths) {
+					if (!isSkipped(path, closure, monitor)) {
+						parseClasses.parseClasses(path, true, handler);
+					}
+					parseClasses.checkCancelled();
+				}
+			}
+		} finally {
+			currentPendingCpClassNames = null;
+			parseClasses.setMonitor(parseMonitor);
+			if (monitor != null) {
+				monitor.done();
+			}
+		}
+	}
+
+	/**
+	 * Determines whether a closure pass can skip input, and makes the pending classpath
+	 * class names of input current otherwise.
+	 * @param input The jar file or Eclipse workspace container to read next.
+	 * @param closure The operation of the closure pass, or <code>null</code>.
+	 * @param monitor The progress monitor for this pass, or <code>null</code>.
+	 * @return <code>true</code> iff input contains no pending classpath classes referenced from the model.
+	 */
+	private boolean isSkipped(Object input, AddClassifiers closure, IProgressMonitor monitor) {
+		if (closure == null) {
+			return false;
+		}
+		currentPendingCpClassNames = pendingCpClassNames.get(input);
+		if (currentPendingCpClassNames == null) {
+			// not read by a closure pass before
+			currentPendingCpClassNames = new HashSet<String>();
+			pendingCpClassNames.put(input, currentPendingCpClassNames);
+			return false;
+		}
+		for (String className : currentPendingCpClassNames) {
+			if (!addedCpClassNames.contains(className) && closure.isReferenced(className)) {
+				return false;
+			}
+		}
+		if (monitor != null) {
+			monitor.worked(inputWork.get(input));
+		}
+		return true;
+	}
+
+	/**
+	 * @param operation The operation of the current phase.
+	 * @param ticks The amount of phase monitor ticks for the pass.
+	 * @param includeCp Whether the pass reads the classpath inputs as well.
+	 * @return A new progress monitor for a single pass of operation, or <code>null</code>.
+	 */
+	protected IProgressMonitor createPassMonitor(JarToUMLOperation operation, int ticks, boolean includeCp) {
+		final IProgressMonitor monitor = operation.getMonitor();
+		if (monitor == null) {
+			return null;
+		}
+		final IProgressMonitor passMonitor = new SubProgressMonitor(monitor, ticks);
+		passMonitor.beginTask("", includeCp ? work + cpWork : work); //$NON-NLS-1$
+		return passMonitor;
+	}
+
+	/**
+	 * The main inputs are read once, followed by all inputs once per closure pass.
+	 * The first closure pass is assigned as much work as all inputs contain,
+	 * and each following pass half of the work that remains of the same amount again,
+	 * as the amount of closure passes is not known in advance.
+	 * @return The amount of progress monitor work for {@link #addAllClassifiers(AddClassifiers)}.
+	 */
+	public int getClassifierWork() {
+		return work + 2 * (work + cpWork);
+	}
+
+	/**
+	 * The main inputs are read once, followed by all inputs once.
+	 * @return The amount of progress monitor work for {@link #addAllProperties(AddProperties)}.
+	 */
+	public int getPropertyWork() {
+		return work + (work + cpWork);
+	}
+
+	/**
+	 * Adds all classifiers, followed by the closure of all referenced classpath classifiers,
+	 * to the UML model. Does not add classifier properties.
+	 * @param addClassifiers
+	 * @throws IOException
+	 * @throws CoreException
+	 * @see AddClassifiers#addAllClassifiers(Collection)
+	 * @see AddClassifiers#addClassifiersClosure(Collection)
+	 */
+	public void addAllClassifiers(final AddClassifiers addClassifiers) throws IOException, CoreException {
+		streamClasses(new ClassFileHandler() {
+			public boolean accept(String entryName, boolean isCp) {
+				return !isCp;
+			}
+			public void handleClass(JavaClass javaClass, boolean isCp) {
+				if (addClassifiers.addClassifier(javaClass, false)) {
+					containedClassNames.add(javaClass.getClassName());
+				}
+			}
+		}, false, createPassMonitor(addClassifiers, work, false));
+		final Set<String> addedClassNames = new LinkedHashSet<String>();
+		int closureWork = work + cpWork;
+		int remainingWork = work + cpWork;
+		do {
+			addedClassNames.clear();
+			streamClasses(new ClassFileHandler() {
+				public boolean accept(String entryName, boolean isCp) {
+					if (!isCp) {
+						return false;
+					}
+					if (!cpClassNames.containsKey(entryName)) {
+						// not parsed before
+						return true;
+					}
+					final String className = cpClassNames.get(entryName);
+					return className != null
+						&& !addedCpClassNames.contains(className)
+						&& addClassifiers.isReferenced(className);
+				}
+				public void handleClass(JavaClass javaClass, boolean isCp) {
+					final String className = javaClass.getClassName();
+					// known for classes referenced later in the stream
+					addClassifiers.addMetaClass(javaClass);
+					if (addClassifiers.addClassifier(javaClass, true)) {
+						addedClassNames.add(className);
+						cpClassNames.put(javaClass.getFileName(), className);
+						currentPendingCpClassNames.remove(className);
+					} else if (addClassifiers.filter(javaClass)) {
+						cpClassNames.put(javaClass.getFileName(), className);
+						currentPendingCpClassNames.add(className);
+					} else {
+						cpClassNames.put(javaClass.getFileName(), null);
+					}
+				}
+			}, true, addClassifiers, createPassMonitor(addClassifiers, closureWork, true));
+			closureWork = (remainingWork + 1) / 2;
+			remainingWork -= closureWork;
+			addedCpClassNames.addAll(addedClassNames);
+		} while (!addedClassNames.isEmpty());
+		containedClassNames.addAll(addedCpClassNames);
+		pendingCpClassNames.clear();
+	}
+
+	/**
+	 * Adds the properties of all classifiers added by {@link #addAllClassifiers(AddClassifiers)}
+	 * to the classifiers in the UML model.
+	 * Classes are queued by {@link AddProperties#queueClassifierProperties(JavaClass)}, such that
+	 * the frame simulation of later classes overlaps with earlier classes. Queued classes are
+	 * retained until their properties are added.
+	 * @param addProperties
+	 * @throws IOException
+	 * @throws CoreException
+	 * @see AddProperties#addAllProperties(Collection)
+	 */
+	public void addAllProperties(final AddProperties addProperties) throws IOException, CoreException {
+		if (!addProperties.isIncludeFeatures()) {
+			return;
+		}
+		try {
+			final ClassFileHandler handler = new ClassFileHandler() {
+				public boolean accept(String entryName, boolean isCp) {
+					return !isCp;
+				}
+				public void handleClass(JavaClass javaClass, boolean isCp) {
+					addProperties.queueClassifierProperties(javaClass);
+				}
+			};
+			streamClasses(handler, false, createPassMonitor(addProperties, work, false));
+			final ClassFileHandler cpHandler = new ClassFileHandler() {
+				public boolean accept(String entryName, boolean isCp) {
+					return isCp && addedCpClassNames.contains(cpClassNames.get(entryName));
+				}
+				public void handleClass(JavaClass javaClass, boolean isCp) {
+					addProperties.queueClassifierProperties(javaClass);
+				}
+			};
+			streamClasses(cpHandler, true, createPassMonitor(addProperties, work + cpWork, true));
+			addProperties.flushClassifierProperties();
+		} finally {
+			addProperties.shutdown();
+		}
+	}
+
+	/**
+	 * @return The names of all unfiltered classes and all added classpath classes.
+	 */
+	public Collection<String> getContainedClassNames() {
+		return containedClassNames;
+	}
+
+}
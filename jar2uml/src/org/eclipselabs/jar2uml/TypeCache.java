@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.generic.Type;
+
+/**
+ * Interning cache for parsed type and method signatures. Replaces {@link Type#getType(String)},
+ * {@link Type#getArgumentTypes(String)} and {@link Type#getReturnType(String)}, which parse
+ * their signature on every invocation and return new {@link Type} instances.
+ * Equal signatures return the same {@link Type} instance, and equal method signatures
+ * return the same argument type array, which must not be modified.
+ * The cache is thread-safe, and is cleared when it exceeds {@link #MAX_SIZE} entries.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class TypeCache {
+
+	/**
+	 * The maximum amount of cached type and method signatures.
+	 */
+	public static final int MAX_SIZE = 65536;
+
+	/**
+	 * Parsed method signature.
+	 */
+	private static final class MethodType {
+
+		private final Type[] argumentTypes;
+		private final Type returnType;
+
+		/**
+		 * Creates a new {@link MethodType}.
+		 * @param argumentTypes
+		 * @param returnType
+		 */
+		public MethodType(Type[] argumentTypes, Type returnType) {
+			super();
+			this.argumentTypes = argumentTypes;
+			this.returnType = returnType;
+		}
+
+	}
+
+	private static final Type[] NO_TYPES = new Type[0];
+	private static final ConcurrentMap<String, Type> types = new ConcurrentHashMap<String, Type>();
+	private static final ConcurrentMap<String, MethodType> methodTypes = new ConcurrentHashMap<String, MethodType>();
+	private static final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Not instantiable.
+	 */
+	private TypeCache() {
+		super();
+	}
+
+	/**
+	 * @param signature The type signature (e.g. "Ljava/lang/String;").
+	 * @return The shared {@link Type} instance for signature.
+	 * @throws ClassFormatException if signature is invalid
+	 * @see Type#getType(String)
+	 */
+	public static Type getType(final String signature) {
+		final Type type = types.get(signature);
+		if (type != null) {
+			return type;
+		}
+		return intern(signature, Type.getType(signature));
+	}
+
+	/**
+	 * @param signature The method signature (e.g. "(ILjava/lang/String;)V").
+	 * @return The shared argument types of signature. Must not be modified.
+	 * @throws ClassFormatException if signature is invalid
+	 * @see Type#getArgumentTypes(String)
+	 */
+	public static Type[] getArgumentTypes(final String signature) {
+		return getMethodType(signature).argumentTypes;
+	}
+
+	/**
+	 * @param signature The method signature (e.g. "(ILjava/lang/String;)V").
+	 * @return The shared return type of signature.
+	 * @throws ClassFormatException if signature is invalid
+	 * @see Type#getReturnType(String)
+	 */
+	public static Type getReturnType(final String signature) {
+		return getMethodType(signature).returnType;
+	}
+
+	/**
+	 * Removes all cached signatures.
+	 */
+	public static void clear() {
+		types.clear();
+		methodTypes.clear();
+		size.set(0);
+	}
+
+	/**
+	 * @param signature The method signature.
+	 * @return The {@link MethodType} for signature, parsed if necessary.
+	 * @throws ClassFormatException if signature is invalid
+	 */
+	private static MethodType getMethodType(final String signature) {
+		final MethodType methodType = methodTypes.get(signature);
+		if (methodType != null) {
+			return methodType;
+		}
+		final MethodType parsed = parseMethodType(signature);
+		checkSize();
+		final MethodType previous = methodTypes.putIfAbsent(signature, parsed);
+		if (previous != null) {
+			return previous;
+		}
+		size.incrementAndGet();
+		return parsed;
+	}
+
+	/**
+	 * Parses signature without copying the remainder of the signature for each argument.
+	 * @param signature The method signature.
+	 * @return The parsed signature, with interned types.
+	 * @throws ClassFormatException if signature is invalid
+	 */
+	private static MethodType parseMethodType(final String signature) {
+		try {
+			if (signature.charAt(0) != '(') {
+				throw new ClassFormatException("Invalid method signature: " + signature); //$NON-NLS-1$
+			}
+			int count = 0;
+			int index = 1;
+			while (signature.charAt(index) != ')') {
+				index = skipType(signature, index);
+				count++;
+			}
+			final Type[] argumentTypes = count == 0 ? NO_TYPES : new Type[count];
+			index = 1;
+			for (int i = 0; i < count; i++) {
+				final int end = skipType(signature, index);
+				argumentTypes[i] = getType(signature.substring(index, end));
+				index = end;
+			}
+			return new MethodType(argumentTypes, getType(signature.substring(index + 1)));
+		} catch (StringIndexOutOfBoundsException e) {
+			throw new ClassFormatException("Invalid method signature: " + signature); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @param signature The method signature.
+	 * @param index The start index of a type signature in signature.
+	 * @return The index directly after the type signature.
+	 * @throws StringIndexOutOfBoundsException if the type signature is not terminated
+	 */
+	private static int skipType(final String signature, int index) {
+		while (signature.charAt(index) == '[') {
+			index++;
+		}
+		if (signature.charAt(index) == 'L') {
+			final int end = signature.indexOf(';', index);
+			if (end < 0) {
+				throw new StringIndexOutOfBoundsException(index);
+			}
+			return end + 1;
+		}
+		return index + 1;
+	}
+
+	/**
+	 * Caches type for signature, unless another thread was first.
+	 * @param signature
+	 * @param type
+	 * @return The cached {@link Type} for signature.
+	 */
+	private static Type intern(final String signature, final Type type) {
+		checkSize();
+		final Type previous = types.putIfAbsent(signature, type);
+		if (previous != null) {
+			return previous;
+		}
+		size.incrementAndGet();
+		return type;
+	}
+
+	/**
+	 * Clears the cache if it has reached {@link #MAX_SIZE}.
+	 */
+	private static void checkSize() {
+		if (size.get() >= MAX_SIZE) {
+			clear();
+		}
+	}
+
+}
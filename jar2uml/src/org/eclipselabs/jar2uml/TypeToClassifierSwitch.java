@@ -10,10 +10,15 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.bcel.generic.ArrayType;
 import org.apache.bcel.generic.BasicType;
 import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
 import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.DataType;
 import org.eclipse.uml2.uml.Package;
@@ -21,6 +26,9 @@ import org.eclipse.uml2.uml.UMLPackage;
 
 /**
  * Returns the corresponding UML type for a given BCEL type. 
+ * Resolved basic, array and object types are cached by their signature for as long as
+ * {@link #getRoot()} does not change. A cached classifier that is no longer contained in
+ * {@link #getRoot()}, because it was replaced or removed, is resolved again.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
@@ -35,6 +43,97 @@ public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
 
 	private Package root = null;
 	private FindContainedClassifierSwitch findContainedClassifier = new FindContainedClassifierSwitch();
+	private final Map<String, Classifier> cache = new HashMap<String, Classifier>();
+	private int hits = 0;
+	private int misses = 0;
+	private int invalidations = 0;
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.TypeSwitch#doSwitch(org.apache.bcel.generic.Type)
+	 */
+	@Override
+	public Classifier doSwitch(Type type) {
+		if (type instanceof BasicType || type instanceof ArrayType || type instanceof ObjectType) {
+			return getClassifier(type.getSignature(), type);
+		}
+		return super.doSwitch(type);
+	}
+
+	/**
+	 * @param signature The type signature (e.g. "Ljava/lang/String;").
+	 * @return The corresponding UML type for signature.
+	 * @see Type#getType(String)
+	 */
+	public Classifier getClassifier(String signature) {
+		return getClassifier(signature, null);
+	}
+
+	/**
+	 * @param signature The type signature.
+	 * @param type The type for signature, or <code>null</code> to create it if necessary.
+	 * @return The corresponding UML type for signature, from the cache if possible.
+	 */
+	private Classifier getClassifier(final String signature, Type type) {
+		final Classifier cached = cache.get(signature);
+		if (cached != null) {
+			if (EcoreUtil.isAncestor(getRoot(), cached)) {
+				hits++;
+				return cached;
+			}
+			invalidations++;
+		}
+		misses++;
+		if (type == null) {
+			type = TypeCache.getType(signature);
+		}
+		final Classifier classifier = super.doSwitch(type);
+		if (classifier != null) {
+			cache.put(signature, classifier);
+		} else if (cached != null) {
+			cache.remove(signature);
+		}
+		return classifier;
+	}
+
+	/**
+	 * Clears the cache of resolved types.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Logs the cache hit/miss statistics.
+	 */
+	public void logStatistics() {
+		final int lookups = getHits() + getMisses();
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("TypeToClassifierSwitch.statistics"),
+				getHits(), getMisses(), lookups > 0 ? 100.0 * getHits() / lookups : 0.0,
+				getInvalidations(), cache.size())); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return The amount of types found in the cache.
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The amount of types not found in the cache, including invalidated entries.
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The amount of cached types that were no longer contained in {@link #getRoot()}.
+	 */
+	public int getInvalidations() {
+		return invalidations;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -116,6 +215,9 @@ public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
 	 * @param root
 	 */
 	public void setRoot(Package root) {
+		if (root != this.root) {
+			clearCache();
+		}
 		this.root = root;
 	}
 
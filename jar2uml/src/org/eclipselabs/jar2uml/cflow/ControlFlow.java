@@ -10,23 +10,21 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.cflow;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.bcel.Constants;
-import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.LineNumber;
 import org.apache.bcel.classfile.LineNumberTable;
-import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.ATHROW;
 import org.apache.bcel.generic.EmptyVisitor;
 import org.apache.bcel.generic.ExceptionThrower;
@@ -52,12 +50,17 @@ import org.apache.bcel.verifier.structurals.UninitializedObjectType;
 import org.eclipselabs.jar2uml.JarToUMLResources;
 
 /**
- * A control flow simulator for BCEL {@link MethodGen} code. 
+ * A control flow simulator for BCEL method code, as decoded by {@link MethodCode}.
+ * The control flow graph is stored in compressed int arrays, indexed by
+ * instruction index: the edges of instruction i are found in the index array
+ * between offsets[i] and offsets[i+1]. {@link InstructionFlow} objects are
+ * thin views on these arrays.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class ControlFlow {
 
 	private static final InstructionFlow[] EMPTY = new InstructionFlow[0];
+	private static final int[] NO_INDICES = new int[0];
 
 	/**
 	 * @param instr
@@ -85,220 +88,123 @@ public class ControlFlow {
 	}
 
 	/**
-	 * Represents the control flow information of an {@link InstructionHandle}. 
+	 * @param indices
+	 * @param length
+	 * @return indices, or a copy of indices with room for at least length entries
+	 */
+	private static int[] ensureCapacity(final int[] indices, final int length) {
+		if (length <= indices.length) {
+			return indices;
+		}
+		final int[] newIndices = new int[Math.max(length, 2 * indices.length)];
+		System.arraycopy(indices, 0, newIndices, 0, indices.length);
+		return newIndices;
+	}
+
+	/**
+	 * Read-only set of {@link InstructionFlow}s, backed by a range of one of the index arrays.
 	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
 	 */
-	public class InstructionFlow implements OrderedItem {
+	private final class FlowSet extends AbstractSet<InstructionFlow> {
+
+		private final InstructionFlow first;
+		private final int[] indices;
+		private final int from;
+		private final int to;
 
 		/**
-		 * Simplified instruction successor determination algorithm,
-		 * which does not take the execution frame into account.
-		 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+		 * Creates a new {@link FlowSet}.
+		 * @param first the first element, or <code>null</code>
+		 * @param indices the index array
+		 * @param from the first offset in indices (inclusive)
+		 * @param to the last offset in indices (exclusive)
 		 */
-		protected class SimpleInstructionSuccessorVisitor extends EmptyVisitor {
-			
-			private InstructionFlow[] successors = getInstruction().getNext() == null ? EMPTY :
-				new InstructionFlow[] {
-					getFlowOf(getInstruction().getNext())
-			};
-
-			/**
-			 * @param successors the successors to set
-			 */
-			protected void setSuccessors(InstructionFlow[] successors) {
-				this.successors = successors;
-			}
-
-			/**
-			 * @return the successors
-			 */
-			public InstructionFlow[] getSuccessors() {
-				return successors;
-			}
-
-			/**
-			 * Terminates method abnormally: no successors.
-			 * @param obj
-			 */
-			@Override
-			public void visitATHROW(ATHROW obj) {
-				setSuccessors(EMPTY);
-			}
-
-			/**
-			 * Goto target is set as successor.
-			 * @param obj
-			 */
-			@Override
-			public void visitGotoInstruction(GotoInstruction obj) {
-				setSuccessors(new InstructionFlow[] { getFlowOf(obj.getTarget()) });
-			}
+		public FlowSet(InstructionFlow first, int[] indices, int from, int to) {
+			super();
+			this.first = first;
+			this.indices = indices;
+			this.from = from;
+			this.to = to;
+		}
 
-			/**
-			 * Two alternative branch targets are set as successors.
-			 * @param obj
-			 */
-			@Override
-			public void visitIfInstruction(IfInstruction obj) {
-				final InstructionFlow[] ret = new InstructionFlow[2];
-				ret[0] = getFlowOf(getInstruction().getNext());
-				ret[1] = getFlowOf(obj.getTarget());
-				setSuccessors(ret);
-			}
+		/* (non-Javadoc)
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		@Override
+		public Iterator<InstructionFlow> iterator() {
+			return new Iterator<InstructionFlow>() {
 
-			/**
-			 * Jump target and next instruction are set as successor.
-			 * This approximates returning from RET.
-			 * @param obj
-			 */
-			@Override
-			public void visitJsrInstruction(JsrInstruction obj) {
-				final InstructionFlow[] ret = new InstructionFlow[2];
-				ret[0] = getFlowOf(getInstruction().getNext());
-				ret[1] = getFlowOf(obj.getTarget());
-				setSuccessors(ret);
-			}
+				private int cursor = first == null ? from : from - 1;
 
-			/**
-			 * No successors: return target is approximated by letting JSR continue to next instruction
-			 * @param obj
-			 */
-			@Override
-			public void visitRET(RET obj) {
-				//approximate by letting JSR continue to next instruction
-				setSuccessors(EMPTY);
-			}
+				/*
+				 * (non-Javadoc)
+				 * @see java.util.Iterator#hasNext()
+				 */
+				public boolean hasNext() {
+					return cursor < to;
+				}
 
-			/**
-			 * Terminates method normally: no successors.
-			 * @param obj
-			 */
-			@Override
-			public void visitReturnInstruction(ReturnInstruction obj) {
-				setSuccessors(EMPTY);
-			}
+				/*
+				 * (non-Javadoc)
+				 * @see java.util.Iterator#next()
+				 */
+				public InstructionFlow next() {
+					if (cursor >= to) {
+						throw new NoSuchElementException();
+					}
+					if (cursor++ < from) {
+						return first;
+					}
+					return flows[indices[cursor - 1]];
+				}
 
-			/**
-			 * Sets the (unique) collection of switch targets as successors.
-			 * @param obj
-			 */
-			@Override
-			public void visitSelect(Select obj) {
-				final LinkedHashSet<InstructionFlow> uniqueTargets = new LinkedHashSet<InstructionFlow>();
-				//default target
-				uniqueTargets.add(getFlowOf(obj.getTarget()));
-				//switch targets
-				for (InstructionHandle target : obj.getTargets()) {
-					uniqueTargets.add(getFlowOf(target));
+				/*
+				 * (non-Javadoc)
+				 * @see java.util.Iterator#remove()
+				 */
+				public void remove() {
+					throw new UnsupportedOperationException();
 				}
-				final InstructionFlow[] ret = new InstructionFlow[uniqueTargets.size()];
-				uniqueTargets.toArray(ret);
-				setSuccessors(ret);
-			}
 
+			};
 		}
 
-		/**
-		 * Extended instruction successor determination algorithm,
-		 * which does take the execution frame into account.
-		 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+		/* (non-Javadoc)
+		 * @see java.util.AbstractCollection#size()
 		 */
-		protected class InstructionSuccessorVisitor extends SimpleInstructionSuccessorVisitor {
-			
-			private SmartFrame frame;
-
-			/**
-			 * @return the frame
-			 */
-			public SmartFrame getFrame() {
-				return frame;
-			}
-
-			/**
-			 * @param frame the frame to set
-			 */
-			public void setFrame(SmartFrame frame) {
-				this.frame = frame;
-			}
-
-			/*
-			 * We may know beforehand which way a IFNULL or IFNONNULL jump goes,
-			 * but the Java compiler does not check for this. As a result, there
-			 * may be dead code WITHOUT any warnings generated by the compiler!
-			 * 
-			 * It's ok to be smarter than the compiler here, as dependencies of
-			 * dead code can be ignored.
-			 * 
-			 * If a target of a jump is cut off, this may confuse the search
-			 * algorithm, as it doesn't know about the cut off branch! The search
-			 * algorithm may decide not to try this instruction anymore, as there
-			 * were "no problems" with it! Hence, an exception must be thrown to
-			 * indicate the situation!
-			 */
-
-			/**
-			 * @see #visitIfInstruction(IfInstruction)
-			 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
-			 */
-			@Override
-			public void visitIFNONNULL(IFNONNULL obj) {
-				if (getFrame().getStack().peek().equals(Type.NULL)) {
-					//We already know which way the jump goes
-					setSuccessors(new InstructionFlow[] { getFlowOf(getInstruction().getNext()) });
-					throw new BranchTargetUnavailableException(
-							new InstructionFlow[] { getFlowOf(obj.getTarget()) }, 
-							getSuccessors(),
-							getFrame().getResponsibleForStackTop());
-				} //else jump may still go either way
-			}
+		@Override
+		public int size() {
+			return first == null ? to - from : to - from + 1;
+		}
 
-			/**
-			 * @see #visitIfInstruction(IfInstruction)
-			 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
-			 */
-			@Override
-			public void visitIFNULL(IFNULL obj) {
-				if (getFrame().getStack().peek().equals(Type.NULL)) {
-					//We already know which way the jump goes
-					setSuccessors(new InstructionFlow[] { getFlowOf(obj.getTarget()) });
-					throw new BranchTargetUnavailableException(
-							new InstructionFlow[] { getFlowOf(getInstruction().getNext()) }, 
-							getSuccessors(),
-							getFrame().getResponsibleForStackTop());
-				} //else jump may still go either way
+		/* (non-Javadoc)
+		 * @see java.util.AbstractCollection#contains(java.lang.Object)
+		 */
+		@Override
+		public boolean contains(Object o) {
+			if (o == first) {
+				return o != null;
 			}
-
-			/**
-			 * Jump target is set as successor.
-			 * @param obj
-			 */
-			@Override
-			public void visitJsrInstruction(JsrInstruction obj) {
-				setSuccessors(new InstructionFlow[] { getFlowOf(obj.getTarget()) });
+			for (int i = from; i < to; i++) {
+				if (flows[indices[i]] == o) {
+					return true;
+				}
 			}
+			return false;
+		}
 
-			/**
-			 * Return target is set as successor.
-			 * @param obj
-			 * @throws ClassCastException if the given execution frame does not contain a valid return address
-			 */
-			@Override
-			public void visitRET(RET obj) {
-				final ReturnaddressType address = (ReturnaddressType) getFrame().getLocals().get(obj.getIndex());
-				setSuccessors(new InstructionFlow[]{ getFlowOf(address.getTarget()) });
-			}
+	}
 
-		}
+	/**
+	 * Represents the control flow information of an {@link InstructionHandle}.
+	 * This is a view on the control flow graph arrays of the containing {@link ControlFlow}.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	public class InstructionFlow implements OrderedItem {
 
 		private final InstructionHandle instr;
 		private final int index;
-		private final Set<InstructionFlow> predecessors = new LinkedHashSet<InstructionFlow>();
-		private final Set<InstructionFlow> successors = new LinkedHashSet<InstructionFlow>();
-		private final Set<InstructionFlow> sameLineSet = new HashSet<InstructionFlow>();
-
-		private List<ExceptionHandler> exceptionHandlers;
-
-		protected InstructionSuccessorVisitor successorVisitor;
+		private InstructionFlow[] staticSuccessors;
 
 		/**
 		 * Creates a new {@link InstructionFlow}.
@@ -309,8 +215,6 @@ public class ControlFlow {
 			this.instr = instr;
 			this.index = index;
 			flows[index] = this;
-			flowOf.put(instr, this);
-			addSameLineEntry(this);
 		}
 
 		/**
@@ -321,23 +225,11 @@ public class ControlFlow {
 			this(instr, getIndexOf(instr));
 		}
 
-		/**
-		 * Initialises potential successors/predecessors
-		 */
-		protected void initSuccessors() {
-			final SimpleInstructionSuccessorVisitor successors = new SimpleInstructionSuccessorVisitor();
-			accept(successors);
-			addAllSuccessors(successors.getSuccessors());
-		}
-
 		/**
 		 * @return The exception handlers that protect this instruction
 		 */
 		public final List<ExceptionHandler> getExceptionHandlers() {
-			if (exceptionHandlers == null) {
-				exceptionHandlers = getExceptionHandlersObject().getExceptionHandlers(this);
-			}
-			return exceptionHandlers;
+			return getExceptionHandlersObject().getExceptionHandlers(this);
 		}
 
 		/**
@@ -348,17 +240,36 @@ public class ControlFlow {
 		}
 
 		/**
+		 * Not thread-safe: all invocations on the same {@link ControlFlow} share one successor visitor.
 		 * @param frame the execution frame BEFORE execution if this instruction
-		 * @return The possible successor instructions for this instruction
+		 * @return The possible successor instructions for this instruction, which must not be modified
 		 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
 		 */
 		public final InstructionFlow[] getSuccessors(final SmartFrame frame) {
 			if (successorVisitor == null) {
 				successorVisitor = new InstructionSuccessorVisitor();
 			}
-			successorVisitor.setFrame(frame);
-			accept(successorVisitor);
-			return successorVisitor.getSuccessors();
+			return successorVisitor.getSuccessors(this, frame);
+		}
+
+		/**
+		 * @return The possible successor instructions for this instruction, not counting
+		 * exception handlers and regardless of any execution frame, which must not be modified
+		 */
+		protected final InstructionFlow[] getStaticSuccessors() {
+			if (staticSuccessors == null) {
+				final int from = succOffsets[index];
+				final int to = handlerOffsets[index];
+				if (from == to) {
+					staticSuccessors = EMPTY;
+				} else {
+					staticSuccessors = new InstructionFlow[to - from];
+					for (int i = from; i < to; i++) {
+						staticSuccessors[i - from] = flows[succIndices[i]];
+					}
+				}
+			}
+			return staticSuccessors;
 		}
 
 		/* (non-Javadoc)
@@ -372,9 +283,9 @@ public class ControlFlow {
 			sb.append("] "); //$NON-NLS-1$
 			sb.append(getInstruction().toString().trim());
 			sb.append(" (p="); //$NON-NLS-1$
-			sb.append(getPredecessors().size());
+			sb.append(getPredecessorCount());
 			sb.append(",s="); //$NON-NLS-1$
-			sb.append(getSuccessors().size());
+			sb.append(getSuccessorCount());
 			sb.append(",l#="); //$NON-NLS-1$
 			sb.append(getLineNumber());
 			if (getSameLineSet().size() > 1) {
@@ -383,8 +294,8 @@ public class ControlFlow {
 			sb.append(")"); //$NON-NLS-1$
 			return sb.toString();
 		}
-		
-	    /** 
+
+	    /**
 	     * Convenience method, simply calls accept() on the contained instruction.
 	     * @param v Visitor object
 	     */
@@ -426,54 +337,52 @@ public class ControlFlow {
 		 * @return the predecessors
 		 */
 		public Set<InstructionFlow> getPredecessors() {
-			return Collections.unmodifiableSet(predecessors);
+			return new FlowSet(null, predIndices, predOffsets[index], predOffsets[index + 1]);
 		}
 
 		/**
-		 * Adds iflow as a predecessor of this.
-		 * @param iflow
+		 * @return the amount of predecessors
 		 */
-		protected void addPredecessor(InstructionFlow iflow) {
-			if (predecessors.add(iflow)) {
-				iflow.addSuccessor(this);
-			}
+		public final int getPredecessorCount() {
+			return predOffsets[index + 1] - predOffsets[index];
 		}
 
 		/**
-		 * Adds all iflows as predecessors of this.
-		 * @param iflows
+		 * @param i
+		 * @return the predecessor at position i
+		 * @throws IndexOutOfBoundsException
 		 */
-		protected void addAllPredecessors(InstructionFlow[] iflows) {
-			for (InstructionFlow iflow : iflows) {
-				addPredecessor(iflow);
+		public final InstructionFlow getPredecessor(int i) {
+			if (i < 0 || i >= getPredecessorCount()) {
+				throw new IndexOutOfBoundsException();
 			}
+			return flows[predIndices[predOffsets[index] + i]];
 		}
 
 		/**
-		 * @return the successors
+		 * @return the successors, including exception handlers
 		 */
 		public Set<InstructionFlow> getSuccessors() {
-			return Collections.unmodifiableSet(successors);
+			return new FlowSet(null, succIndices, succOffsets[index], succOffsets[index + 1]);
 		}
 
 		/**
-		 * Adds iflow as a successor of this.
-		 * @param iflow
+		 * @return the amount of successors, including exception handlers
 		 */
-		protected void addSuccessor(InstructionFlow iflow) {
-			if (successors.add(iflow)) {
-				iflow.addPredecessor(this);
-			}
+		public final int getSuccessorCount() {
+			return succOffsets[index + 1] - succOffsets[index];
 		}
 
 		/**
-		 * Adds all iflows as successors of this.
-		 * @param iflows
+		 * @param i
+		 * @return the successor at position i
+		 * @throws IndexOutOfBoundsException
 		 */
-		protected void addAllSuccessors(InstructionFlow[] iflows) {
-			for (InstructionFlow iflow : iflows) {
-				addSuccessor(iflow);
+		public final InstructionFlow getSuccessor(int i) {
+			if (i < 0 || i >= getSuccessorCount()) {
+				throw new IndexOutOfBoundsException();
 			}
+			return flows[succIndices[succOffsets[index] + i]];
 		}
 
 		/**
@@ -481,10 +390,10 @@ public class ControlFlow {
 		 */
 		public List<InstructionFlow> getPredecessorRun() {
 			final ArrayList<InstructionFlow> run = new ArrayList<InstructionFlow>();
-			InstructionFlow iflow = this;
-			while (iflow.getPredecessors().size() == 1) {
-				iflow = iflow.getPredecessors().iterator().next();
-				run.add(iflow);
+			int i = index;
+			while (predOffsets[i + 1] - predOffsets[i] == 1) {
+				i = predIndices[predOffsets[i]];
+				run.add(flows[i]);
 			}
 			return run;
 		}
@@ -496,14 +405,15 @@ public class ControlFlow {
 		public void findSuccessorSet(final Set<InstructionFlow> succset) {
 			succset.add(this);
 			Succ:
-			for (InstructionFlow succ : getSuccessors()) {
-				for (InstructionFlow pre : succ.getPredecessors()) {
-					if (!succset.contains(pre)) {
+			for (int i = succOffsets[index]; i < succOffsets[index + 1]; i++) {
+				final int succ = succIndices[i];
+				for (int j = predOffsets[succ]; j < predOffsets[succ + 1]; j++) {
+					if (!succset.contains(flows[predIndices[j]])) {
 						continue Succ;
 					}
 				}
-				if (!succset.contains(succ)) {
-					succ.findSuccessorSet(succset);
+				if (!succset.contains(flows[succ])) {
+					flows[succ].findSuccessorSet(succset);
 				}
 			}
 		}
@@ -512,16 +422,10 @@ public class ControlFlow {
 		 * @return the set of instructions that map back to the same source code and correspond to this instruction, including this instruction
 		 */
 		public Set<InstructionFlow> getSameLineSet() {
-			return Collections.unmodifiableSet(sameLineSet);
-		}
-
-		/**
-		 * Adds iflow to the same line set.
-		 * @param iflow
-		 * @return <code>true</code> iff the set changed as a result
-		 */
-		protected boolean addSameLineEntry(InstructionFlow iflow) {
-			return sameLineSet.add(iflow);
+			if (sameLineOffsets == null) {
+				return new FlowSet(this, NO_INDICES, 0, 0);
+			}
+			return new FlowSet(this, sameLineIndices, sameLineOffsets[index], sameLineOffsets[index + 1]);
 		}
 
 		/**
@@ -536,46 +440,325 @@ public class ControlFlow {
 
 	}
 
-	private final MethodGen method;
+	/**
+	 * Simplified instruction successor determination algorithm,
+	 * which does not take the execution frame into account.
+	 * Used to build the control flow graph.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	protected class SimpleInstructionSuccessorVisitor extends EmptyVisitor {
+
+		private InstructionFlow iflow;
+		private InstructionFlow[] successors = new InstructionFlow[2];
+		private int successorCount;
+		private boolean branch;
+
+		/**
+		 * Finds the successors of iflow.
+		 * @param iflow
+		 */
+		public void findSuccessors(final InstructionFlow iflow) {
+			this.iflow = iflow;
+			this.successorCount = 0;
+			this.branch = false;
+			iflow.accept(this);
+			if (!branch && iflow.getIndex() < flowCount - 1) {
+				addSuccessor(getNext());
+			}
+		}
+
+		/**
+		 * @return the next instruction in the instruction list
+		 */
+		protected InstructionFlow getNext() {
+			return flows[iflow.getIndex() + 1];
+		}
+
+		/**
+		 * Adds succ to the found successors.
+		 * @param succ
+		 */
+		protected void addSuccessor(final InstructionFlow succ) {
+			if (successorCount == successors.length) {
+				final InstructionFlow[] newSuccessors = new InstructionFlow[2 * successors.length];
+				System.arraycopy(successors, 0, newSuccessors, 0, successorCount);
+				successors = newSuccessors;
+			}
+			successors[successorCount++] = succ;
+		}
+
+		/**
+		 * @return the amount of successors found
+		 */
+		public int getSuccessorCount() {
+			return successorCount;
+		}
+
+		/**
+		 * @param i
+		 * @return the successor found at position i
+		 */
+		public InstructionFlow getSuccessor(int i) {
+			return successors[i];
+		}
+
+		/**
+		 * Terminates method abnormally: no successors.
+		 * @param obj
+		 */
+		@Override
+		public void visitATHROW(ATHROW obj) {
+			branch = true;
+		}
+
+		/**
+		 * Goto target is set as successor.
+		 * @param obj
+		 */
+		@Override
+		public void visitGotoInstruction(GotoInstruction obj) {
+			branch = true;
+			addSuccessor(getFlowOf(obj.getTarget()));
+		}
+
+		/**
+		 * Two alternative branch targets are set as successors.
+		 * @param obj
+		 */
+		@Override
+		public void visitIfInstruction(IfInstruction obj) {
+			branch = true;
+			addSuccessor(getNext());
+			addSuccessor(getFlowOf(obj.getTarget()));
+		}
+
+		/**
+		 * Jump target and next instruction are set as successor.
+		 * This approximates returning from RET.
+		 * @param obj
+		 */
+		@Override
+		public void visitJsrInstruction(JsrInstruction obj) {
+			branch = true;
+			addSuccessor(getNext());
+			addSuccessor(getFlowOf(obj.getTarget()));
+		}
+
+		/**
+		 * No successors: return target is approximated by letting JSR continue to next instruction
+		 * @param obj
+		 */
+		@Override
+		public void visitRET(RET obj) {
+			//approximate by letting JSR continue to next instruction
+			branch = true;
+		}
+
+		/**
+		 * Terminates method normally: no successors.
+		 * @param obj
+		 */
+		@Override
+		public void visitReturnInstruction(ReturnInstruction obj) {
+			branch = true;
+		}
+
+		/**
+		 * Sets the collection of switch targets as successors.
+		 * @param obj
+		 */
+		@Override
+		public void visitSelect(Select obj) {
+			branch = true;
+			//default target
+			addSuccessor(getFlowOf(obj.getTarget()));
+			//switch targets
+			for (InstructionHandle target : obj.getTargets()) {
+				addSuccessor(getFlowOf(target));
+			}
+		}
+
+	}
+
+	/**
+	 * Extended instruction successor determination algorithm,
+	 * which does take the execution frame into account.
+	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+	 */
+	protected class InstructionSuccessorVisitor extends EmptyVisitor {
+
+		private InstructionFlow iflow;
+		private SmartFrame frame;
+		private InstructionFlow[] successors;
+
+		/**
+		 * @param iflow
+		 * @param frame the execution frame BEFORE execution if iflow
+		 * @return The possible successor instructions for iflow
+		 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
+		 */
+		public InstructionFlow[] getSuccessors(final InstructionFlow iflow, final SmartFrame frame) {
+			this.iflow = iflow;
+			this.frame = frame;
+			this.successors = iflow.getStaticSuccessors();
+			iflow.accept(this);
+			return successors;
+		}
+
+		/**
+		 * @return the frame
+		 */
+		public SmartFrame getFrame() {
+			return frame;
+		}
+
+		/**
+		 * @return the next instruction in the instruction list
+		 */
+		protected InstructionFlow getNext() {
+			return flows[iflow.getIndex() + 1];
+		}
+
+		/*
+		 * We may know beforehand which way a IFNULL or IFNONNULL jump goes,
+		 * but the Java compiler does not check for this. As a result, there
+		 * may be dead code WITHOUT any warnings generated by the compiler!
+		 *
+		 * It's ok to be smarter than the compiler here, as dependencies of
+		 * dead code can be ignored.
+		 *
+		 * If a target of a jump is cut off, this may confuse the search
+		 * algorithm, as it doesn't know about the cut off branch! The search
+		 * algorithm may decide not to try this instruction anymore, as there
+		 * were "no problems" with it! Hence, an exception must be thrown to
+		 * indicate the situation!
+		 */
+
+		/**
+		 * @see SimpleInstructionSuccessorVisitor#visitIfInstruction(IfInstruction)
+		 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
+		 */
+		@Override
+		public void visitIFNONNULL(IFNONNULL obj) {
+			if (getFrame().getStack().peek().equals(Type.NULL)) {
+				//We already know which way the jump goes
+				successors = new InstructionFlow[] { getNext() };
+				throw new BranchTargetUnavailableException(
+						new InstructionFlow[] { getFlowOf(obj.getTarget()) },
+						successors,
+						getFrame().getResponsibleForStackTop());
+			} //else jump may still go either way
+		}
+
+		/**
+		 * @see SimpleInstructionSuccessorVisitor#visitIfInstruction(IfInstruction)
+		 * @throws BranchTargetUnavailableException if a branch target was cut off due to the given execution frame
+		 */
+		@Override
+		public void visitIFNULL(IFNULL obj) {
+			if (getFrame().getStack().peek().equals(Type.NULL)) {
+				//We already know which way the jump goes
+				successors = new InstructionFlow[] { getFlowOf(obj.getTarget()) };
+				throw new BranchTargetUnavailableException(
+						new InstructionFlow[] { getNext() },
+						successors,
+						getFrame().getResponsibleForStackTop());
+			} //else jump may still go either way
+		}
+
+		/**
+		 * Jump target is set as successor.
+		 * @param obj
+		 */
+		@Override
+		public void visitJsrInstruction(JsrInstruction obj) {
+			successors = new InstructionFlow[] { getFlowOf(obj.getTarget()) };
+		}
+
+		/**
+		 * Return target is set as successor.
+		 * @param obj
+		 * @throws ClassCastException if the given execution frame does not contain a valid return address
+		 */
+		@Override
+		public void visitRET(RET obj) {
+			final ReturnaddressType address = (ReturnaddressType) getFrame().getLocals().get(obj.getIndex());
+			successors = new InstructionFlow[]{ getFlowOf(address.getTarget()) };
+		}
+
+	}
+
+	private final MethodCode method;
 	private final LineNumberTable lines;
 	private final SmartFrame startFrame;
 	private final OrderedExceptionHandlers exceptionHandlers;
 	private final int flowCount;
 
-	protected final Map<InstructionHandle, InstructionFlow> flowOf = new HashMap<InstructionHandle, InstructionFlow>();
 	protected final InstructionFlow[] flows;
+	/**
+	 * Byte code positions of the instructions, by instruction index.
+	 */
+	protected final int[] positions;
+	/**
+	 * Offsets into {@link #succIndices} by instruction index, followed by the total amount of successor edges.
+	 */
+	protected int[] succOffsets;
+	/**
+	 * Offsets into {@link #succIndices} by instruction index, where the exception handler successors start.
+	 */
+	protected int[] handlerOffsets;
+	protected int[] succIndices;
+	/**
+	 * Offsets into {@link #predIndices} by instruction index, followed by the total amount of predecessor edges.
+	 */
+	protected int[] predOffsets;
+	protected int[] predIndices;
+	/**
+	 * Offsets into {@link #sameLineIndices} by instruction index, or <code>null</code> if no instructions map to the same line.
+	 */
+	protected int[] sameLineOffsets;
+	protected int[] sameLineIndices;
 	protected final Set<InstructionFlow> deadCode = new LinkedHashSet<InstructionFlow>();
+	protected InstructionSuccessorVisitor successorVisitor;
 
 	/**
 	 * Creates a new {@link ControlFlow}.
 	 * @param method
 	 */
-	public ControlFlow(MethodGen method) {
+	public ControlFlow(MethodCode method) {
 		super();
 		this.method = method;
-		final Method m = method.getMethod();
-		this.lines = m.getLineNumberTable();
-		final Code code = m.getCode();
-		this.startFrame = new SmartFrame(code.getMaxLocals(), code.getMaxStack());
+		this.lines = method.getLineNumberTable();
+		this.startFrame = new SmartFrame(method.getMaxLocals(), method.getMaxStack());
 		initLocalVariableTypes(startFrame);
-		this.flowCount = method.getInstructionList().getLength();
+		this.flowCount = method.getInstructionCount();
 		flows = new InstructionFlow[flowCount];
+		positions = new int[flowCount];
 		createInstructionFlows();
 		exceptionHandlers = new OrderedExceptionHandlers(this);
 		addAllSuccessors();
+		addAllPredecessors();
 		findDeadCode();
 		if (lines != null) {
 			findSameLineInstr();
 		}
 	}
-	
+
+	/**
+	 * Creates a new {@link ControlFlow}.
+	 * @param method
+	 */
+	public ControlFlow(MethodGen method) {
+		this(new MethodCode(method));
+	}
+
 	/**
 	 * Initialises the local variable types in frame according to the method
 	 * context (java class) and argument types.
 	 * @param frame
 	 */
 	private void initLocalVariableTypes(final Frame frame) {
-		final MethodGen method = getMethod();
+		final MethodCode method = getMethod();
 		final LocalVariables localVars = frame.getLocals();
 		int i = 0;
 		if (!method.isStatic()) {
@@ -600,21 +783,76 @@ public class ControlFlow {
 	 * Creates the elements of the control flow graph.
 	 */
 	private void createInstructionFlows() {
-		final InstructionHandle[] instr = getMethod().getInstructionList().getInstructionHandles();
-		for (int i = 0; i < instr.length; i++) {
-			new InstructionFlow(instr[i], i);
+		final MethodCode method = getMethod();
+		for (int i = 0; i < flowCount; i++) {
+			final InstructionHandle instr = method.getInstructionHandle(i);
+			positions[i] = instr.getPosition();
+			new InstructionFlow(instr, i);
 		}
 	}
 
 	/**
 	 * Adds the successor information to the control flow graph.
+	 * Successors are unique, and exception handler successors come last.
 	 */
 	private void addAllSuccessors() {
 		final OrderedExceptionHandlers ehs = getExceptionHandlersObject();
-		for (InstructionFlow iflow : flows) {
-			iflow.initSuccessors();
-			for (ExceptionHandler eh : ehs.getExceptionHandlers(iflow)) {
-				iflow.addSuccessor(eh.getHandlerStart());
+		final SimpleInstructionSuccessorVisitor successors = new SimpleInstructionSuccessorVisitor();
+		succOffsets = new int[flowCount + 1];
+		handlerOffsets = new int[flowCount];
+		succIndices = new int[flowCount + 1];
+		int edgeCount = 0;
+		for (int i = 0; i < flowCount; i++) {
+			succOffsets[i] = edgeCount;
+			successors.findSuccessors(flows[i]);
+			for (int j = 0; j < successors.getSuccessorCount(); j++) {
+				edgeCount = addSuccessor(i, successors.getSuccessor(j).getIndex(), edgeCount);
+			}
+			handlerOffsets[i] = edgeCount;
+			for (ExceptionHandler eh : ehs.getExceptionHandlers(flows[i])) {
+				edgeCount = addSuccessor(i, eh.getHandlerStart().getIndex(), edgeCount);
+			}
+		}
+		succOffsets[flowCount] = edgeCount;
+	}
+
+	/**
+	 * Adds the successor edge from index to succ, unless it already exists.
+	 * @param index
+	 * @param succ
+	 * @param edgeCount the amount of successor edges so far
+	 * @return the new amount of successor edges
+	 */
+	private int addSuccessor(final int index, final int succ, final int edgeCount) {
+		for (int i = succOffsets[index]; i < edgeCount; i++) {
+			if (succIndices[i] == succ) {
+				return edgeCount;
+			}
+		}
+		succIndices = ensureCapacity(succIndices, edgeCount + 1);
+		succIndices[edgeCount] = succ;
+		return edgeCount + 1;
+	}
+
+	/**
+	 * Adds the predecessor information to the control flow graph,
+	 * by inverting the successor edges. Predecessors are ordered by index.
+	 */
+	private void addAllPredecessors() {
+		final int edgeCount = succOffsets[flowCount];
+		predOffsets = new int[flowCount + 1];
+		predIndices = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			predOffsets[succIndices[i] + 1]++;
+		}
+		for (int i = 0; i < flowCount; i++) {
+			predOffsets[i + 1] += predOffsets[i];
+		}
+		final int[] fill = new int[flowCount];
+		System.arraycopy(predOffsets, 0, fill, 0, flowCount);
+		for (int i = 0; i < flowCount; i++) {
+			for (int j = succOffsets[i]; j < succOffsets[i + 1]; j++) {
+				predIndices[fill[succIndices[j]]++] = i;
 			}
 		}
 	}
@@ -625,9 +863,8 @@ public class ControlFlow {
 	private void findDeadCode() {
 		for (int i = 1; i < flows.length; i++) {
 			boolean noLivePredecessors = true;
-			Set<InstructionFlow> pres = flows[i].getPredecessors();
-			for (InstructionFlow pre : pres) {
-				if (!deadCode.contains(pre)) {
+			for (int j = predOffsets[i]; j < predOffsets[i + 1]; j++) {
+				if (!deadCode.contains(flows[predIndices[j]])) {
 					noLivePredecessors = false;
 					break;
 				}
@@ -640,33 +877,138 @@ public class ControlFlow {
 
 	/**
 	 * Finds instructions with the same line number in the line number table and adds it to {@link ControlFlow#sameLineInstr}.
+	 * Line number table entries are bucketed by a hash of their line number and opcode sequence,
+	 * such that only entries in the same bucket need to be compared.
 	 */
 	private void findSameLineInstr() {
 		final LineNumber[] lines = getLines().getLineNumberTable();
+		final int lineCount = lines.length;
+		//instruction index range [runStart, runEnd) for each line number table entry, as in findFlowsFor
+		final int[] runStart = new int[lineCount];
+		final int[] runEnd = new int[lineCount];
+		//(hash, line index) keys, sorted such that buckets are contiguous and ordered by line index
+		final long[] keys = new long[lineCount];
+		int keyCount = 0;
+		for (int i = 0; i < lineCount; i++) {
+			final int beforePos = i < lineCount-1 ? lines[i+1].getStartPC() : Integer.MAX_VALUE;
+			int start = Arrays.binarySearch(positions, lines[i].getStartPC());
+			int end = start;
+			if (start >= 0) {
+				while (end < flowCount && positions[end] < beforePos) {
+					end++;
+				}
+			} else {
+				start = end = 0;
+			}
+			runStart[i] = start;
+			runEnd[i] = end;
+			if (end > start) {
+				int hash = lines[i].getLineNumber();
+				for (int k = start; k < end; k++) {
+					hash = 31 * hash + flows[k].getInstruction().getInstruction().getOpcode();
+				}
+				keys[keyCount++] = ((long) hash << 32) | i;
+			}
+		}
+		Arrays.sort(keys, 0, keyCount);
+		//bucket of each line index, as a [bucketStart, bucketEnd) range in keys
+		final int[] bucketStart = new int[lineCount];
+		final int[] bucketEnd = new int[lineCount];
+		for (int b = 0; b < keyCount;) {
+			int e = b + 1;
+			while (e < keyCount && (keys[e] >>> 32) == (keys[b] >>> 32)) {
+				e++;
+			}
+			for (int k = b; k < e; k++) {
+				final int i = (int) keys[k];
+				bucketStart[i] = b;
+				bucketEnd[i] = e;
+			}
+			b = e;
+		}
 
-		for (int i = 0; i < lines.length; i++) {
-			List<InstructionFlow> iflows = findFlowsFor(i);
+		int[] pairs = NO_INDICES;
+		int pairCount = 0;
+
+		for (int i = 0; i < lineCount; i++) {
+			final int iStart = runStart[i];
+			final int runLength = runEnd[i] - iStart;
+			if (runLength == 0) {
+				continue;
+			}
 
 			nextj:
-			for (int j = 0; j < lines.length; j++) {
-				if (lines[j] != lines[i] && lines[j].getLineNumber() == lines[i].getLineNumber()) {
-					List<InstructionFlow> jflows = findFlowsFor(j);
-					if (iflows.size() == jflows.size()) {
-						for (int k = 0; k < iflows.size(); k++) {
-							if (iflows.get(k).getInstruction().getInstruction().getOpcode() != jflows.get(k).getInstruction().getInstruction().getOpcode()) {
+			for (int b = bucketStart[i]; b < bucketEnd[i]; b++) {
+				final int j = (int) keys[b];
+				if (j != i && lines[j].getLineNumber() == lines[i].getLineNumber()) {
+					final int jStart = runStart[j];
+					if (runEnd[j] - jStart == runLength) {
+						for (int k = 0; k < runLength; k++) {
+							if (flows[iStart + k].getInstruction().getInstruction().getOpcode() != flows[jStart + k].getInstruction().getInstruction().getOpcode()) {
 								continue nextj;
 							}
 						}
-						for (int k = 0; k < iflows.size(); k++) {
-							iflows.get(k).addSameLineEntry(jflows.get(k));
+						for (int k = 0; k < runLength; k++) {
+							pairs = ensureCapacity(pairs, 2 * pairCount + 2);
+							pairs[2 * pairCount] = iStart + k;
+							pairs[2 * pairCount + 1] = jStart + k;
+							pairCount++;
 						}
 					}
 				}
 			}
-	
+
+		}
+
+		if (pairCount > 0) {
+			addSameLineEntries(pairs, pairCount);
 		}
 	}
 
+	/**
+	 * Stores the same line pairs in {@link #sameLineOffsets} and {@link #sameLineIndices}.
+	 * @param pairs the (instruction index, same line instruction index) pairs
+	 * @param pairCount the amount of pairs
+	 */
+	private void addSameLineEntries(final int[] pairs, final int pairCount) {
+		final int[] offsets = new int[flowCount + 1];
+		final int[] indices = new int[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			offsets[pairs[2 * i] + 1]++;
+		}
+		for (int i = 0; i < flowCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		final int[] fill = new int[flowCount];
+		System.arraycopy(offsets, 0, fill, 0, flowCount);
+		for (int i = 0; i < pairCount; i++) {
+			indices[fill[pairs[2 * i]]++] = pairs[2 * i + 1];
+		}
+		//remove duplicates and self-references in place
+		int count = 0;
+		int start = 0;
+		for (int i = 0; i < flowCount; i++) {
+			final int end = offsets[i + 1];
+			offsets[i] = count;
+			Entry:
+			for (int j = start; j < end; j++) {
+				if (indices[j] == i) {
+					continue;
+				}
+				for (int k = offsets[i]; k < count; k++) {
+					if (indices[k] == indices[j]) {
+						continue Entry;
+					}
+				}
+				indices[count++] = indices[j];
+			}
+			start = end;
+		}
+		offsets[flowCount] = count;
+		sameLineOffsets = offsets;
+		sameLineIndices = indices;
+	}
+
 	/**
 	 * @return the flowCount
 	 */
@@ -680,13 +1022,13 @@ public class ControlFlow {
 	 * @throws IllegalArgumentException if instr is not part of this control flow
 	 */
 	public InstructionFlow getFlowOf(InstructionHandle instr) {
-		final InstructionFlow flow = flowOf.get(instr);
-		if (flow == null) {
+		final int index = Arrays.binarySearch(positions, instr.getPosition());
+		if (index < 0 || flows[index].getInstruction() != instr) {
 			throw new IllegalArgumentException(String.format(
 					JarToUMLResources.getString("ControlFlow.illegalInstr"),
 					instr));
 		}
-		return flow;
+		return flows[index];
 	}
 
 	/**
@@ -721,7 +1063,7 @@ public class ControlFlow {
 	/**
 	 * @return the method
 	 */
-	public MethodGen getMethod() {
+	public MethodCode getMethod() {
 		return method;
 	}
 
@@ -757,7 +1099,7 @@ public class ControlFlow {
 	 * @return the starting instruction
 	 */
 	public InstructionFlow getStartInstruction() {
-		return getFlowOf(getMethod().getInstructionList().getStart());
+		return flows[0];
 	}
 
 	/**
@@ -787,14 +1129,14 @@ public class ControlFlow {
 			throw new IllegalArgumentException();
 		}
 
-		final InstructionList il = getMethod().getInstructionList();
-		final int beforePos = lineIndex < lines.length-1 ? lines[lineIndex+1].getStartPC() : il.getByteCode().length;
+		final int beforePos = lineIndex < lines.length-1 ? lines[lineIndex+1].getStartPC() : Integer.MAX_VALUE;
 		final List<InstructionFlow> run = new ArrayList<InstructionFlow>();
 
-		InstructionHandle handle = il.findHandle(lines[lineIndex].getStartPC());
-		while (handle != null && handle.getPosition() < beforePos) {
-			run.add(getFlowOf(handle));
-			handle = handle.getNext();
+		final int start = Arrays.binarySearch(positions, lines[lineIndex].getStartPC());
+		if (start >= 0) {
+			for (int i = start; i < flowCount && positions[i] < beforePos; i++) {
+				run.add(flows[i]);
+			}
 		}
 		return run;
 	}
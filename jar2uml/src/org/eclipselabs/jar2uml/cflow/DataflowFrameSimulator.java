@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.cflow;
+
+import org.eclipselabs.jar2uml.JarToUMLResources;
+
+/**
+ * Simulates JVM execution frames by a worklist fixed-point analysis over
+ * a {@link ControlFlow} ({@link #executeDataflow(ControlFlow)}), instead of searching its execution paths.
+ * The execution frames of all paths that join at an instruction are joined
+ * into one frame by {@link SmartFrame#join(SmartFrame)}. As frame entries can
+ * only change a bounded amount of times, the analysis always terminates, in time
+ * linear in the amount of instructions times the frame size.
+ *
+ * Instructions that find a {@link org.apache.bcel.generic.Type#NULL} access context
+ * on all incoming paths stop the paths that lead through them, just like
+ * {@link FrameSimulator}. The given visitor is invoked for each covered instruction once,
+ * with the joined frame, after the analysis has finished.
+ *
+ * Methods with JSR/RET subroutines are simulated by {@link FrameSimulator},
+ * as different return addresses cannot be joined.
+ *
+ * The statistics are reused as follows: {@link #getReuseCount()} counts frames passed on to a successor
+ * without copying, {@link #getCopyCount()} counts frames copied for a successor,
+ * {@link #getExcCopyCount()} counts frames prepared for an exception handler,
+ * and {@link #getMaxQueueSize()} is the maximum worklist size.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class DataflowFrameSimulator extends FrameSimulator {
+
+	/**
+	 * Creates a new {@link DataflowFrameSimulator}.
+	 * @param execution the execution visitor responsible for updating the frame after every instruction
+	 * @param visitor the visitor that needs a valid frame for its execution
+	 */
+	public DataflowFrameSimulator(SmartExecutionVisitor execution, VisitorWithFrame visitor) {
+		super(execution, visitor);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.cflow.FrameSimulator#simulate(org.eclipselabs.jar2uml.cflow.ControlFlow)
+	 */
+	@Override
+	protected void simulate(final ControlFlow cflow) {
+		final MethodCode method = cflow.getMethod();
+		if (hasSubroutines(cflow)) {
+			JarToUMLResources.logger.fine(String.format(
+					JarToUMLResources.getString("DataflowFrameSimulator.subroutines"),
+					method.toString())); //$NON-NLS-1$
+			super.simulate(cflow);
+			return;
+		}
+		resetGlobals();
+		executeDataflow(cflow);
+		JarToUMLResources.logger.finer(String.format(
+				JarToUMLResources.getString("DataflowFrameSimulator.instrCount"),
+				getIterationCount(), getReuseCount(), getCopyCount(), getExcCopyCount(),
+				getLocalsCopyCount(), getMaxQueueSize(), method)); //$NON-NLS-1$
+	}
+
+}
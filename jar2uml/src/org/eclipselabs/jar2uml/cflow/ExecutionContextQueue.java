@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.cflow;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+
+/**
+ * Double-ended queue of pending {@link ExecutionContext}s, which is also indexed
+ * by scheduling preference. {@link #removeBest()} selects, in queue order:
+ * <ol>
+ * <li>the first context with an instruction that has never been visited before,</li>
+ * <li>else the first context with an instruction that has never been visited in its own search path,</li>
+ * <li>else the first context.</li>
+ * </ol>
+ * Each preference is kept in a separate priority queue, ordered by queue position.
+ * As instructions can only become visited while their contexts are queued, contexts that
+ * no longer qualify for a preference are removed lazily from its priority queue.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ExecutionContextQueue {
+
+	/**
+	 * Queued {@link ExecutionContext} with its queue position.
+	 */
+	private static final class Entry {
+
+		private final ExecutionContext ec;
+		private final long position;
+		private boolean removed;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param ec
+		 * @param position
+		 */
+		public Entry(ExecutionContext ec, long position) {
+			super();
+			this.ec = ec;
+			this.position = position;
+		}
+
+	}
+
+	/**
+	 * Orders entries by queue position.
+	 */
+	private static final Comparator<Entry> QUEUE_ORDER = new Comparator<Entry>() {
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+		 */
+		public int compare(Entry e1, Entry e2) {
+			return e1.position < e2.position ? -1 : (e1.position == e2.position ? 0 : 1);
+		}
+
+	};
+
+	private final Set<InstructionFlow> globalHistory;
+	private final PriorityQueue<Entry> all = new PriorityQueue<Entry>(11, QUEUE_ORDER);
+	private final PriorityQueue<Entry> unvisited = new PriorityQueue<Entry>(11, QUEUE_ORDER);
+	private final PriorityQueue<Entry> unvisitedOnPath = new PriorityQueue<Entry>(11, QUEUE_ORDER);
+	private long head = 0;
+	private long tail = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a new {@link ExecutionContextQueue}.
+	 * @param globalHistory the global history of all visited instructions, which may only grow
+	 */
+	public ExecutionContextQueue(Set<InstructionFlow> globalHistory) {
+		super();
+		this.globalHistory = globalHistory;
+	}
+
+	/**
+	 * Adds ec to the front of this queue.
+	 * @param ec
+	 */
+	public void addFirst(final ExecutionContext ec) {
+		add(new Entry(ec, --head));
+	}
+
+	/**
+	 * Adds ec to the back of this queue.
+	 * @param ec
+	 */
+	public void addLast(final ExecutionContext ec) {
+		add(new Entry(ec, tail++));
+	}
+
+	/**
+	 * Adds entry to all applicable priority queues.
+	 * @param entry
+	 */
+	private void add(final Entry entry) {
+		all.add(entry);
+		if (!isVisited(entry)) {
+			unvisited.add(entry);
+		}
+		if (!isVisitedOnPath(entry)) {
+			unvisitedOnPath.add(entry);
+		}
+		size++;
+	}
+
+	/**
+	 * Removes the first context from this queue.
+	 * @return the first context
+	 * @throws NoSuchElementException if this queue is empty
+	 */
+	public ExecutionContext removeFirst() {
+		return remove(peek(all));
+	}
+
+	/**
+	 * Removes the preferred context from this queue.
+	 * @return the preferred context
+	 * @throws NoSuchElementException if this queue is empty
+	 */
+	public ExecutionContext removeBest() {
+		Entry entry = unvisited.peek();
+		while (entry != null && (entry.removed || isVisited(entry))) {
+			unvisited.poll();
+			entry = unvisited.peek();
+		}
+		if (entry == null) {
+			entry = unvisitedOnPath.peek();
+			while (entry != null && (entry.removed || isVisitedOnPath(entry))) {
+				unvisitedOnPath.poll();
+				entry = unvisitedOnPath.peek();
+			}
+		}
+		if (entry == null) {
+			entry = peek(all);
+		}
+		return remove(entry);
+	}
+
+	/**
+	 * @param queue
+	 * @return the first entry in queue that has not been removed
+	 * @throws NoSuchElementException if there is no such entry
+	 */
+	private Entry peek(final PriorityQueue<Entry> queue) {
+		Entry entry = queue.peek();
+		while (entry != null && entry.removed) {
+			queue.poll();
+			entry = queue.peek();
+		}
+		if (entry == null) {
+			throw new NoSuchElementException();
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes entry from this queue. Entry stays in any priority queue
+	 * of which it is not the head, until it surfaces.
+	 * @param entry
+	 * @return the context of entry
+	 */
+	private ExecutionContext remove(final Entry entry) {
+		assert !entry.removed;
+		entry.removed = true;
+		size--;
+		return entry.ec;
+	}
+
+	/**
+	 * @param entry
+	 * @return <code>true</code> iff the instruction of entry has been visited before
+	 */
+	private boolean isVisited(final Entry entry) {
+		return globalHistory.contains(entry.ec.getIflow());
+	}
+
+	/**
+	 * @param entry
+	 * @return <code>true</code> iff the instruction of entry has been visited before in its search path
+	 */
+	private static boolean isVisitedOnPath(final Entry entry) {
+		final InstructionFlow iflow = entry.ec.getIflow();
+		return entry.ec.getHistory().get(iflow).contains(iflow);
+	}
+
+	/**
+	 * @return <code>true</code> iff this queue is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the amount of contexts in this queue
+	 */
+	public int size() {
+		return size;
+	}
+
+}
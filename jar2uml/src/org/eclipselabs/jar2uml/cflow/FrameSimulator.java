@@ -18,8 +18,11 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.apache.bcel.generic.ATHROW;
-import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.JsrInstruction;
+import org.apache.bcel.generic.RET;
 import org.apache.bcel.generic.Type;
+import org.eclipselabs.jar2uml.AccessContextVisitor;
 import org.eclipselabs.jar2uml.Cancellable;
 import org.eclipselabs.jar2uml.JarToUMLResources;
 import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
@@ -30,15 +33,14 @@ import org.eclipselabs.jar2uml.cflow.LocalHistoryTable.LocalHistorySet;
  * execution paths of a {@link ControlFlow}. Guarantees that
  * the given visitor will have exactly one valid frame context
  * for each instruction, if it exists.
+ *
+ * The search is bounded by a {@link SimulationBudget}. Methods that exceed
+ * the budget are cut off, and their remaining instructions are covered by
+ * {@link #executeDataflow(ControlFlow)}, unless they contain JSR/RET subroutines.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class FrameSimulator {
 
-	/**
-	 * Algorithm cut-off point, where execution stops.
-	 */
-	private static final int CUT_OFF = 0x8000;
-
 	protected final SmartExecutionVisitor execution;
 	protected final VisitorWithFrame visitor;
 	/**
@@ -57,12 +59,25 @@ public class FrameSimulator {
 	 * All instructions which are not covered (skipped?) by the stack simulation algorithm.
 	 */
 	protected final Set<InstructionFlow> notCovered = new HashSet<InstructionFlow>();
+	/**
+	 * Checks for a {@link org.apache.bcel.generic.Type#NULL} access context while the dataflow analysis runs.
+	 */
+	protected final AccessContextVisitor accessContextCheck = new AccessContextVisitor();
 
 	private boolean cutOff;
+	private SimulationBudget.Limit cutOffLimit;
+	private SimulationBudget budget = new SimulationBudget();
+	private long startTime;
+	private int iterationCount = 0;
 	private int reuseCount = 0;
 	private int copyCount = 0;
 	private int excCopyCount = 0;
+	private int rowCopyCount = 0;
+	private int rowAllocCount = 0;
+	private long historyMemory = 0L;
+	private int localsCopyCount = 0;
 	private int maxQueueSize = 0;
+	private long scheduleTime = 0;
 	private Cancellable cancellable;
 
 	/**
@@ -83,37 +98,17 @@ public class FrameSimulator {
 	 * @param cflow
 	 */
 	public synchronized void execute(final ControlFlow cflow) {
-		final MethodGen method = cflow.getMethod();
+		final MethodCode method = cflow.getMethod();
 		final int instrCount = cflow.getFlowCount();
-		final int liveInstrCount = instrCount - cflow.getDeadCode().size();
 
 		execution.setConstantPoolGen(method.getConstantPool());
-		execution.setLocalVarTable(method.getLocalVariableTable(method.getConstantPool()));
+		execution.setLocalVarTable(method.getLocalVariableTable());
 
 		JarToUMLResources.logger.finest(method.toString());
 
-		//try first with simplified algorithm
-		executeSimple(cflow);
-		JarToUMLResources.logger.finer(String.format(
-				JarToUMLResources.getString("FrameSimulator.instrCount"), 
-				reuseCount, copyCount, excCopyCount, maxQueueSize, method)); //$NON-NLS-1$
-
-		if (liveInstrCount > globalHistory.size() + deadCode.size()) {
-			/*
-			 * Fall back to full algorithm if instructions were skipped without being proved unreachable.
-			 * 
-			 * Since we check the types in the local variable table, we can avoid most unreachable code
-			 * situations. Some methods do not have a local variable table, however, so we must retain
-			 * the full algorithm.
-			 */
-			JarToUMLResources.logger.fine(String.format(
-					JarToUMLResources.getString("FrameSimulator.fallback"), 
-					method.toString())); //$NON-NLS-1$
-			executeFull(cflow);
-			JarToUMLResources.logger.finer(String.format(
-					JarToUMLResources.getString("FrameSimulator.instrCount"), 
-					reuseCount, copyCount, excCopyCount, maxQueueSize, method)); //$NON-NLS-1$
-		}
+		startTime = System.nanoTime();
+		simulate(cflow);
+		getBudget().charge(System.nanoTime() - startTime, 0);
 
 		assert noAccessContextAvailable.isEmpty() || instrCount > globalHistory.size();
 
@@ -157,6 +152,76 @@ public class FrameSimulator {
 		}
 	}
 
+	/**
+	 * Simulates the execution frames of cflow, and updates {@link #globalHistory},
+	 * {@link #noAccessContextAvailable} and {@link #deadCode}. Searches execution paths
+	 * with {@link #executeSimple(ControlFlow)} first, and falls back to
+	 * {@link #executeFull(ControlFlow)} if instructions were skipped.
+	 * If {@link #executeFull(ControlFlow)} exceeds the {@link SimulationBudget},
+	 * falls back to {@link #executeDataflow(ControlFlow)}.
+	 * @param cflow
+	 */
+	protected void simulate(final ControlFlow cflow) {
+		final MethodCode method = cflow.getMethod();
+		final int liveInstrCount = cflow.getFlowCount() - cflow.getDeadCode().size();
+
+		setIterationCount(0);
+		//try first with simplified algorithm
+		executeSimple(cflow);
+		JarToUMLResources.logger.finer(String.format(
+				JarToUMLResources.getString("FrameSimulator.instrCount"), 
+				reuseCount, copyCount, excCopyCount, rowCopyCount, rowAllocCount, localsCopyCount, maxQueueSize, scheduleTime, method)); //$NON-NLS-1$
+
+		if (liveInstrCount > globalHistory.size() + deadCode.size()) {
+			/*
+			 * Fall back to full algorithm if instructions were skipped without being proved unreachable.
+			 * 
+			 * Since we check the types in the local variable table, we can avoid most unreachable code
+			 * situations. Some methods do not have a local variable table, however, so we must retain
+			 * the full algorithm.
+			 */
+			JarToUMLResources.logger.fine(String.format(
+					JarToUMLResources.getString("FrameSimulator.fallback"), 
+					method.toString())); //$NON-NLS-1$
+			final SimulationBudget budget = getBudget();
+			final int predictedCost = SimulationBudget.estimateCost(cflow);
+			int copies = 0;
+			if (budget.exceedsPredictedCost(predictedCost)) {
+				//keep the instructions covered by the simplified algorithm
+				setCutOff(true);
+				setCutOffLimit(SimulationBudget.Limit.PREDICTED_COST);
+				JarToUMLResources.logger.fine(String.format(
+						JarToUMLResources.getString("FrameSimulator.cutoff"),
+						SimulationBudget.Limit.PREDICTED_COST,
+						cflow)); //$NON-NLS-1$
+			} else {
+				executeFull(cflow);
+				copies = copyCount + excCopyCount;
+				JarToUMLResources.logger.finer(String.format(
+						JarToUMLResources.getString("FrameSimulator.instrCount"), 
+						reuseCount, copyCount, excCopyCount, rowCopyCount, rowAllocCount, localsCopyCount, maxQueueSize, scheduleTime, method)); //$NON-NLS-1$
+			}
+			if (isCutOff()) {
+				final boolean degraded = !hasSubroutines(cflow);
+				budget.addEntry(new SimulationBudget.Entry(
+						method.getClassName() + '#' + method,
+						getCutOffLimit(),
+						predictedCost,
+						System.nanoTime() - startTime,
+						copies,
+						degraded));
+				if (degraded) {
+					//cover the remaining instructions by joining the frames of all paths
+					executeDataflow(cflow);
+					JarToUMLResources.logger.finer(String.format(
+							JarToUMLResources.getString("DataflowFrameSimulator.instrCount"),
+							iterationCount, reuseCount, copyCount, excCopyCount,
+							localsCopyCount, maxQueueSize, method)); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
 	/**
 	 * Executes all instructions reachable from cflow and records the inferred dependencies.
 	 * Guarantees that if there exists a valid access context for an instance
@@ -164,29 +229,35 @@ public class FrameSimulator {
 	 * @param cflow
 	 */
 	protected void executeFull(final ControlFlow cflow) {
-		final LinkedList<ExecutionContext> ecQueue = new LinkedList<ExecutionContext>();
+		final ExecutionContextQueue ecQueue = new ExecutionContextQueue(globalHistory);
 		final int instrCount = cflow.getFlowCount();
 		final int liveInstrCount = instrCount - cflow.getDeadCode().size();
 
 		SmartFrame frame = cflow.getStartFrame().getCopy();
+		frame.resetStatistics();
 		InstructionFlow iflow = cflow.getStartInstruction();
-		LocalHistoryTable history = new LocalHistoryTable(instrCount);
+		LocalHistoryTable history = createHistory(instrCount);
 		Trace trace = new Trace();
 		ExecutionContext ec = new ExecutionContext(iflow, history, frame, trace);
 		int reuseCount = 0;
 		int copyCount = 0;
 		int excCopyCount = 0;
 		int maxQueueSize = 0;
+		long scheduleTime = 0;
+		final SimulationBudget budget = getBudget();
 
 		resetGlobals();
 
 		while (iflow != null //done searching
 				&& globalHistory.size() + deadCode.size() < liveInstrCount) { //all live instructions covered 
 
-			if (copyCount + excCopyCount > CUT_OFF) {
+			final SimulationBudget.Limit limit = budget.check(startTime, copyCount + excCopyCount);
+			if (limit != null) {
 				setCutOff(true);
+				setCutOffLimit(limit);
 				JarToUMLResources.logger.fine(String.format(
 						JarToUMLResources.getString("FrameSimulator.cutoff"),
+						limit,
 						cflow)); //$NON-NLS-1$
 				break;
 			}
@@ -265,14 +336,19 @@ public class FrameSimulator {
 			if (!ecQueue.isEmpty()) {
 				maxQueueSize = Math.max(maxQueueSize, ecQueue.size());
 				assert maxQueueSize <= copyCount + excCopyCount + 1;
-				if (terminated && !history.isUnmergeable()) {
-					//merge back history of successfully terminated and fully covered execution paths
+				final boolean merge = terminated && !history.isUnmergeable();
+				final long scheduleStart = System.nanoTime();
+				if (merge) {
 					ec = ecQueue.removeFirst(); //first in queue is last branch in current search path
-					assert history != ec.getHistory();
-					ec.getHistory().merge(history);
 				} else {
 					ec = pickBestFromQueue(ec, ecQueue);
 				}
+				scheduleTime += System.nanoTime() - scheduleStart;
+				if (merge) {
+					//merge back history of successfully terminated and fully covered execution paths
+					assert history != ec.getHistory();
+					ec.getHistory().merge(history);
+				}
 				iflow = ec.getIflow();
 				history = ec.getHistory();
 				frame = ec.getFrame();
@@ -290,11 +366,207 @@ public class FrameSimulator {
 
 		}
 
+		budget.charge(0L, copyCount + excCopyCount);
+
+		//store stats
+		setReuseCount(reuseCount);
+		setCopyCount(copyCount);
+		setExcCopyCount(excCopyCount);
+		setRowCopyCount(history.getRowCopyCount());
+		setRowAllocCount(history.getRowAllocCount());
+		setHistoryMemory(history.getAllocatedMemory());
+		setLocalsCopyCount(frame.getLocalsCopyCount());
+		setMaxQueueSize(maxQueueSize);
+		setScheduleTime(scheduleTime);
+	}
+
+	/**
+	 * Executes all instructions reachable from cflow until the execution frames
+	 * before each instruction no longer change, and records the inferred dependencies
+	 * for the reached instructions that are not yet in {@link #globalHistory}.
+	 * The execution frames of all paths that join at an instruction are joined
+	 * into one frame by {@link SmartFrame#join(SmartFrame)}. As frame entries can
+	 * only change a bounded amount of times, the analysis always terminates, in time
+	 * linear in the amount of instructions times the frame size.
+	 * Does not support JSR/RET subroutines.
+	 * @param cflow
+	 */
+	protected void executeDataflow(final ControlFlow cflow) {
+		final int instrCount = cflow.getFlowCount();
+		//the joined execution frames before each instruction
+		final SmartFrame[] frames = new SmartFrame[instrCount];
+		//FIFO worklist of instruction indices
+		final int[] worklist = new int[instrCount];
+		final boolean[] queued = new boolean[instrCount];
+		int head = 0;
+		int queueSize = 0;
+		int iterationCount = 0;
+		int reuseCount = 0;
+		int copyCount = 0;
+		int excCopyCount = 0;
+		int maxQueueSize = 0;
+
+		assert !hasSubroutines(cflow);
+		accessContextCheck.setCp(cflow.getMethod().getConstantPool().getConstantPool());
+
+		final SmartFrame startFrame = cflow.getStartFrame().getCopy();
+		startFrame.resetStatistics();
+		final int start = cflow.getStartInstruction().getIndex();
+		frames[start] = startFrame;
+		worklist[0] = start;
+		queued[start] = true;
+		queueSize = 1;
+
+		while (queueSize > 0) {
+			checkCancelled();
+			final int index = worklist[head];
+			head = (head + 1) % instrCount;
+			queueSize--;
+			queued[index] = false;
+			iterationCount++;
+
+			final InstructionFlow iflow = cflow.getFlow(index);
+			final SmartFrame frame = frames[index].getCopy();
+
+			//execute exception handlers in the context of before the covered instruction
+			if (iflow.isExceptionThrower()) {
+				for (ExceptionHandler eh : iflow.getExceptionHandlers()) {
+					excCopyCount++;
+					final int succ = eh.getHandlerStart().getIndex();
+					if (join(frames, succ, prepareExceptionFrame(frame, eh)) && !queued[succ]) {
+						worklist[(head + queueSize) % instrCount] = succ;
+						queued[succ] = true;
+						queueSize++;
+					}
+				}
+				maxQueueSize = Math.max(maxQueueSize, queueSize);
+			}
+
+			final InstructionFlow[] succ;
+			try {
+				succ = simulateInstr(frame, iflow);
+			} catch (AccessContextUnavailableException e) {
+				//cut execution paths: the access context is null on all incoming paths (so far)
+				continue;
+			}
+
+			for (int i = succ.length-1; i >= 0; i--) {
+				final SmartFrame newFrame;
+				if (i == 0) {
+					newFrame = frame;
+					reuseCount++;
+				} else {
+					newFrame = frame.getCopy();
+					copyCount++;
+				}
+				final int succIndex = succ[i].getIndex();
+				if (join(frames, succIndex, newFrame) && !queued[succIndex]) {
+					worklist[(head + queueSize) % instrCount] = succIndex;
+					queued[succIndex] = true;
+					queueSize++;
+				}
+			}
+			maxQueueSize = Math.max(maxQueueSize, queueSize);
+		}
+
+		//invoke the visitor once for each reached instruction, with its joined frame
+		for (int index = 0; index < instrCount; index++) {
+			if (frames[index] != null) {
+				visitInstr(frames[index], cflow.getFlow(index));
+			}
+		}
+
+		//any code not covered now is guaranteed to be dead
+		final Set<InstructionFlow> notcovered = new HashSet<InstructionFlow>(cflow.getFlows());
+		notcovered.removeAll(globalHistory);
+		notcovered.removeAll(noAccessContextAvailable);
+		deadCode.removeAll(globalHistory);
+		deadCode.addAll(notcovered);
+
 		//store stats
+		setIterationCount(iterationCount);
 		setReuseCount(reuseCount);
 		setCopyCount(copyCount);
 		setExcCopyCount(excCopyCount);
+		setRowCopyCount(0);
+		setRowAllocCount(0);
+		setHistoryMemory(0L);
+		setLocalsCopyCount(startFrame.getLocalsCopyCount());
 		setMaxQueueSize(maxQueueSize);
+		setScheduleTime(0);
+	}
+
+	/**
+	 * Joins frame into the frame before the instruction at index.
+	 * @param frames the frames before each instruction
+	 * @param index the instruction index
+	 * @param frame the frame to join
+	 * @return <code>true</code> iff the frame before the instruction at index has changed
+	 */
+	private static boolean join(final SmartFrame[] frames, final int index, final SmartFrame frame) {
+		if (frames[index] == null) {
+			frames[index] = frame;
+			return true;
+		}
+		return frames[index].join(frame);
+	}
+
+	/**
+	 * Executes iflow without invoking the visitor.
+	 * @param frame the execution frame
+	 * @param iflow the instruction to execute
+	 * @return the possible successor instructions of iflow
+	 * @throws AccessContextUnavailableException if iflow retrieves a <code>null</code> access context
+	 */
+	protected InstructionFlow[] simulateInstr(final SmartFrame frame, final InstructionFlow iflow) {
+		accessContextCheck.setFrame(frame);
+		iflow.accept(accessContextCheck);
+		InstructionFlow[] succ;
+		try {
+			succ = iflow.getSuccessors(frame);
+		} catch (BranchTargetUnavailableException e) {
+			succ = e.getRemainingTargets();
+		}
+		//update stack
+		execution.setFrame(frame);
+		execution.setIflow(iflow);
+		iflow.accept(execution);
+		return succ;
+	}
+
+	/**
+	 * Invokes the visitor for iflow, unless iflow or an instruction from the same line has already been visited.
+	 * @param frame the joined execution frame before iflow
+	 * @param iflow the instruction to visit
+	 */
+	protected void visitInstr(final SmartFrame frame, final InstructionFlow iflow) {
+		if (globalHistory.contains(iflow)) {
+			return;
+		}
+		try {
+			visitor.setFrame(frame);
+			iflow.accept(visitor);
+		} catch (AccessContextUnavailableException e) {
+			noAccessContextAvailable.add(iflow); //no valid access context on any path
+			return;
+		}
+		final Set<InstructionFlow> sameLineSet = iflow.getSameLineSet();
+		globalHistory.addAll(sameLineSet); //add all instructions that were inlined from the same source code
+		noAccessContextAvailable.removeAll(sameLineSet);
+	}
+
+	/**
+	 * @param cflow
+	 * @return <code>true</code> iff cflow contains JSR or RET instructions
+	 */
+	protected static boolean hasSubroutines(final ControlFlow cflow) {
+		for (InstructionFlow iflow : cflow.getFlows()) {
+			final Instruction instr = iflow.getInstruction().getInstruction();
+			if (instr instanceof JsrInstruction || instr instanceof RET) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -312,13 +584,15 @@ public class FrameSimulator {
 		final int liveInstrCount = instrCount - cflow.getDeadCode().size();
 
 		SmartFrame frame = cflow.getStartFrame().getCopy();
+		frame.resetStatistics();
 		InstructionFlow iflow = cflow.getStartInstruction();
-		LocalHistoryTable history = new LocalHistoryTable(instrCount);
+		LocalHistoryTable history = createHistory(instrCount);
 		Trace trace = new Trace();
 		int reuseCount = 0;
 		int copyCount = 0;
 		int excCopyCount = 0;
 		int maxQueueSize = 0;
+		long scheduleTime = 0;
 
 		resetGlobals();
 
@@ -388,7 +662,9 @@ public class FrameSimulator {
 			if (!ecQueue.isEmpty()) {
 				maxQueueSize = Math.max(maxQueueSize, ecQueue.size());
 				assert maxQueueSize <= copyCount + excCopyCount + 1;
+				final long scheduleStart = System.nanoTime();
 				ExecutionContext ec = ecQueue.removeFirst();
+				scheduleTime += System.nanoTime() - scheduleStart;
 				iflow = ec.getIflow();
 				history = ec.getHistory();
 				frame = ec.getFrame();
@@ -405,7 +681,12 @@ public class FrameSimulator {
 		setReuseCount(reuseCount);
 		setCopyCount(copyCount);
 		setExcCopyCount(excCopyCount);
+		setRowCopyCount(history.getRowCopyCount());
+		setRowAllocCount(history.getRowAllocCount());
+		setHistoryMemory(history.getAllocatedMemory());
+		setLocalsCopyCount(frame.getLocalsCopyCount());
 		setMaxQueueSize(maxQueueSize);
+		setScheduleTime(scheduleTime);
 	}
 
 	/**
@@ -438,6 +719,14 @@ public class FrameSimulator {
 		}
 	}
 
+	/**
+	 * @param capacity the amount of instructions
+	 * @return a new, empty history table for an execution path search
+	 */
+	protected LocalHistoryTable createHistory(final int capacity) {
+		return new LocalHistoryTable(capacity);
+	}
+
 	/**
 	 * Resets object-wide fields.
 	 */
@@ -447,6 +736,7 @@ public class FrameSimulator {
 		deadCode.clear();
 		notCovered.clear();
 		setCutOff(false);
+		setCutOffLimit(null);
 	}
 
 	/**
@@ -478,30 +768,10 @@ public class FrameSimulator {
 	 * @param ecQueue the queue of pending execution contexts
 	 * @return the best execution context candidate to process next
 	 */
-	protected ExecutionContext pickBestFromQueue(final ExecutionContext current, final LinkedList<ExecutionContext> ecQueue) {
+	protected ExecutionContext pickBestFromQueue(final ExecutionContext current, final ExecutionContextQueue ecQueue) {
 		assert !ecQueue.isEmpty();
-		ExecutionContext ec = null;
-
 		//cherry-pick next execution context from queue: one that preferably has not been visited before
-		for (ExecutionContext next : ecQueue) {
-			InstructionFlow iflow = next.getIflow();
-			if (!globalHistory.contains(iflow)) {
-				//instruction has never been visited before - 1st choice
-				ec = next;
-				break; //optimal solution - stop looking
-			} else if (ec == null && !next.getHistory().get(iflow).contains(iflow)) {
-				//instruction has never been visited before in this search path - 2nd choice
-				ec = next;
-			}
-		}
-
-		if (ec == null) {
-			//only previously visited instructions left
-			ec = ecQueue.removeFirst();
-		} else {
-			ecQueue.remove(ec);
-		}
-
+		final ExecutionContext ec = ecQueue.removeBest();
 		assert ec != null;
 		return ec;
 	}
@@ -585,6 +855,49 @@ public class FrameSimulator {
 		this.cutOff = cutOff;
 	}
 
+	/**
+	 * @return the budget limit that cut off the last execution path search, or <code>null</code>
+	 */
+	public SimulationBudget.Limit getCutOffLimit() {
+		return cutOffLimit;
+	}
+
+	/**
+	 * @param cutOffLimit the cutOffLimit to set
+	 */
+	protected void setCutOffLimit(SimulationBudget.Limit cutOffLimit) {
+		this.cutOffLimit = cutOffLimit;
+	}
+
+	/**
+	 * @return the budget that bounds the execution path search
+	 */
+	public SimulationBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @param budget the budget that bounds the execution path search
+	 */
+	public void setBudget(SimulationBudget budget) {
+		assert budget != null;
+		this.budget = budget;
+	}
+
+	/**
+	 * @return the amount of instructions executed by the last dataflow analysis.
+	 */
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * @param iterationCount the iterationCount to set
+	 */
+	protected void setIterationCount(int iterationCount) {
+		this.iterationCount = iterationCount;
+	}
+
 	/**
 	 * @return the history table reuse statistics.
 	 */
@@ -627,6 +940,64 @@ public class FrameSimulator {
 		this.excCopyCount = excCopyCount;
 	}
 
+	/**
+	 * @return the history table row copy statistics (shared rows copied on change).
+	 */
+	public int getRowCopyCount() {
+		return rowCopyCount;
+	}
+
+	/**
+	 * @param rowCopyCount the rowCopyCount to set
+	 */
+	protected void setRowCopyCount(int rowCopyCount) {
+		this.rowCopyCount = rowCopyCount;
+	}
+
+	/**
+	 * @return the history table row allocation statistics.
+	 */
+	public int getRowAllocCount() {
+		return rowAllocCount;
+	}
+
+	/**
+	 * @param rowAllocCount the rowAllocCount to set
+	 */
+	protected void setRowAllocCount(int rowAllocCount) {
+		this.rowAllocCount = rowAllocCount;
+	}
+
+	/**
+	 * @return the approximate amount of memory in bytes allocated for history tables
+	 * by the last execution path search.
+	 * @see LocalHistoryTable#getAllocatedMemory()
+	 */
+	public long getHistoryMemory() {
+		return historyMemory;
+	}
+
+	/**
+	 * @param historyMemory the historyMemory to set
+	 */
+	protected void setHistoryMemory(long historyMemory) {
+		this.historyMemory = historyMemory;
+	}
+
+	/**
+	 * @return the execution frame local variables copy statistics (shared local variables copied on change).
+	 */
+	public int getLocalsCopyCount() {
+		return localsCopyCount;
+	}
+
+	/**
+	 * @param localsCopyCount the localsCopyCount to set
+	 */
+	protected void setLocalsCopyCount(int localsCopyCount) {
+		this.localsCopyCount = localsCopyCount;
+	}
+
 	/**
 	 * @return the maximum execution context queue size statistics (simultaneous search paths).
 	 */
@@ -641,6 +1012,20 @@ public class FrameSimulator {
 		this.maxQueueSize = maxQueueSize;
 	}
 
+	/**
+	 * @return the execution context scheduling time statistics (nanoseconds spent selecting the next search path).
+	 */
+	public long getScheduleTime() {
+		return scheduleTime;
+	}
+
+	/**
+	 * @param scheduleTime the scheduleTime to set
+	 */
+	protected void setScheduleTime(long scheduleTime) {
+		this.scheduleTime = scheduleTime;
+	}
+
 	/**
 	 * @param cancellable the cancellable to set
 	 */
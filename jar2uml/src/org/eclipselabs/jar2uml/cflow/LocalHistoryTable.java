@@ -12,11 +12,17 @@ package org.eclipselabs.jar2uml.cflow;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Per-item history utility class for ordered items.
- * Uses a lookup table to implement the history.
+ * Uses a lookup table of bit set rows to implement the history.
+ * Rows are shared between copies of a table, and are only copied
+ * when they are changed (copy-on-write).
+ * Tables whose plain bit set rows would take at least {@link #COMPRESSED_THRESHOLD}
+ * bytes store their rows as run-length encoded bit sets, as long as that takes less
+ * than half the memory of a plain bit set.
  * Meant to be fast, not to be sub-classed.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
@@ -24,12 +30,18 @@ public final class LocalHistoryTable implements Serializable {
 
 	private static final long serialVersionUID = 7170069224023100850L;
 
+	/**
+	 * Minimum memory cost in bytes of a table of plain bit set rows, see {@link #getPlainMemory(int)},
+	 * for which run-length encoded rows are used.
+	 */
+	public static final long COMPRESSED_THRESHOLD = 0x4000L;
+
 	/**
 	 * Utility class for accessing the per-item history.
 	 * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
 	 */
 	public final class LocalHistorySet {
-		
+
 		private final int index;
 
 		/**
@@ -39,9 +51,6 @@ public final class LocalHistoryTable implements Serializable {
 		private LocalHistorySet(final int index) {
 			super();
 			this.index = index;
-			if (table[index] == null) {
-				table[index] = new BitSet(capacity);
-			}
 		}
 
 		/**
@@ -49,7 +58,7 @@ public final class LocalHistoryTable implements Serializable {
 		 * @return <code>true</code> iff item is contained in this history set
 		 */
 		public boolean contains(final OrderedItem item) {
-			return table[index].get(item.getIndex());
+			return LocalHistoryTable.this.contains(index, item.getIndex());
 		}
 
 		/**
@@ -59,22 +68,25 @@ public final class LocalHistoryTable implements Serializable {
 		 */
 		public boolean add(final OrderedItem item) {
 			final int i = item.getIndex();
-			if (table[index].get(i)) {
+			if (LocalHistoryTable.this.contains(index, i)) {
 				return false;
 			}
-			table[index].set(i);
+			if (table[index] != null || !compressed) {
+				getWritableRow(index)[i >>> 6] |= 1L << i;
+			} else {
+				setRuns(index, union(runs[index], new int[] { i, i + 1 }));
+			}
 			return true;
 		}
 
 		/**
 		 * Adds all contents of history to this history set.
+		 * Does not allocate memory, unless this set is changed and its row is shared.
 		 * @param history
 		 * @return <code>true</code> iff this set changed as a result
 		 */
 		public boolean addAll(final LocalHistorySet history) {
-			final BitSet copy = (BitSet) table[index].clone();
-			table[index].or(table[history.index]);
-			return !copy.equals(table[index]);
+			return union(index, history.getTable(), history.index);
 		}
 
 		/**
@@ -84,30 +96,94 @@ public final class LocalHistoryTable implements Serializable {
 			return index;
 		}
 
+		/**
+		 * @return the history table of this history set
+		 */
+		private LocalHistoryTable getTable() {
+			return LocalHistoryTable.this;
+		}
+
 		/* (non-Javadoc)
 		 * @see java.lang.Object#toString()
 		 */
 		@Override
 		public String toString() {
-			return getClass().getSimpleName() + table[index];
+			return getClass().getSimpleName() + rowToString(index);
 		}
 	}
 
+	/**
+	 * History table statistics, shared by all copies of a history table.
+	 */
+	private static final class Statistics implements Serializable {
+
+		private static final long serialVersionUID = -1495187263620457329L;
+
+		private int rowCopyCount;
+		private int rowAllocCount;
+		private long allocatedMemory;
+
+	}
+
 	private final int capacity;
-	private final BitSet[] table;
-	private final transient LocalHistorySet[] localHistorySetCache;
+	private final int rowLength;
+	private final boolean compressed;
+	/**
+	 * Plain bit set rows.
+	 */
+	private final long[][] table;
+	/**
+	 * Run-length encoded rows, which are never changed once created.
+	 * Each row holds sorted, non-adjacent [start, end) pairs.
+	 * <code>null</code> for tables that are not {@link #isCompressed()}.
+	 */
+	private final int[][] runs;
+	/**
+	 * Plain bit set rows that are not shared with any other table, and can be changed in place.
+	 */
+	private final boolean[] owned;
+	private final Statistics statistics;
+	private transient LocalHistorySet[] localHistorySetCache;
 
 	private boolean unmergeable;
 
 	/**
-	 * Creates a new {@link LocalHistoryTable}.
+	 * Creates a new {@link LocalHistoryTable}, which is compressed if the
+	 * memory cost of its plain bit set rows reaches {@link #COMPRESSED_THRESHOLD}.
 	 * @param capacity the maximum amount of items in the history
 	 */
 	public LocalHistoryTable(int capacity) {
+		this(capacity, getPlainMemory(capacity) >= COMPRESSED_THRESHOLD);
+	}
+
+	/**
+	 * Creates a new {@link LocalHistoryTable}.
+	 * @param capacity the maximum amount of items in the history
+	 * @param compressed whether the table may use run-length encoded rows
+	 */
+	public LocalHistoryTable(int capacity, boolean compressed) {
+		this(capacity, new long[capacity][],
+				compressed ? new int[capacity][] : null,
+				new Statistics());
+		statistics.allocatedMemory += getTableMemory();
+	}
+
+	/**
+	 * Creates a new {@link LocalHistoryTable}.
+	 * @param capacity the maximum amount of items in the history
+	 * @param table the (shared) plain bit set rows
+	 * @param runs the (shared) run-length encoded rows, or <code>null</code>
+	 * @param statistics the statistics to update
+	 */
+	private LocalHistoryTable(int capacity, long[][] table, int[][] runs, Statistics statistics) {
 		super();
 		this.capacity = capacity;
-		this.table = new BitSet[capacity];
-		this.localHistorySetCache = new LocalHistorySet[capacity];
+		this.rowLength = (capacity + 63) >>> 6;
+		this.compressed = runs != null;
+		this.table = table;
+		this.runs = runs;
+		this.owned = new boolean[capacity];
+		this.statistics = statistics;
 	}
 
 	/**
@@ -116,12 +192,24 @@ public final class LocalHistoryTable implements Serializable {
 	 */
 	public LocalHistorySet get(final OrderedItem item) {
 		final int i = item.getIndex();
+		if (localHistorySetCache == null) {
+			localHistorySetCache = new LocalHistorySet[capacity];
+		}
 		if (localHistorySetCache[i] == null) {
 			localHistorySetCache[i] = new LocalHistorySet(i);
 		}
 		return localHistorySetCache[i];
 	}
 
+	/**
+	 * @param capacity the maximum amount of items in the history
+	 * @return the memory cost in bytes of a table with all plain bit set rows,
+	 * i.e. capacity rows times the row length.
+	 */
+	public static long getPlainMemory(final int capacity) {
+		return (long) capacity * ((capacity + 63) >>> 6) << 3;
+	}
+
 	/**
 	 * @return the capacity
 	 */
@@ -130,20 +218,33 @@ public final class LocalHistoryTable implements Serializable {
 	}
 
 	/**
-	 * @return a deep copy of this
+	 * @return <code>true</code> iff this table may use run-length encoded rows
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @return a copy of this, which shares all rows with this until they are changed
 	 */
 	public LocalHistoryTable getCopy() {
-		LocalHistoryTable copy = new LocalHistoryTable(capacity);
-		for (int i = 0; i < capacity; i++) {
-			if (table[i] != null) {
-				copy.table[i] = (BitSet) table[i].clone();
-			}
-		}
-		return copy;
+		Arrays.fill(owned, false);
+		statistics.allocatedMemory += getTableMemory();
+		return new LocalHistoryTable(capacity, table.clone(), compressed ? runs.clone() : null, statistics);
+	}
+
+	/**
+	 * @return the approximate amount of memory in bytes taken by the row references
+	 * and ownership flags of a single table, assuming 4-byte references.
+	 */
+	private long getTableMemory() {
+		return (long) capacity * (compressed ? 9 : 5);
 	}
 
 	/**
 	 * Adds elements of history to this history table, resulting in a history union.
+	 * Rows that are missing from this table are shared with history,
+	 * and rows that are already shared are skipped.
 	 * @param history history table to merge
 	 * @throws IllegalArgumentException if history does not have the same capacity, or history is unmergeable
 	 */
@@ -158,14 +259,347 @@ public final class LocalHistoryTable implements Serializable {
 			throw new IllegalArgumentException();
 		}
 		for (int i = 0; i < capacity; i++) {
-			if (history.table[i] != null) {
-				if (table[i] != null) {
-					table[i].or(history.table[i]);
-				} else {
-					table[i] = (BitSet) history.table[i].clone();
+			union(i, history, i);
+		}
+	}
+
+	/**
+	 * @param index the row index
+	 * @param bit the bit index
+	 * @return <code>true</code> iff bit is set in row index
+	 */
+	private boolean contains(final int index, final int bit) {
+		final long[] row = table[index];
+		if (row != null) {
+			return (row[bit >>> 6] & (1L << bit)) != 0;
+		}
+		return compressed && runs[index] != null && contains(runs[index], bit);
+	}
+
+	/**
+	 * Adds all bits of row sourceIndex of source to row index.
+	 * @param index the row index in this table
+	 * @param source the table that contains the bits to add
+	 * @param sourceIndex the row index in source
+	 * @return <code>true</code> iff row index changed as a result
+	 */
+	private boolean union(final int index, final LocalHistoryTable source, final int sourceIndex) {
+		final long[] srcBits = source.table[sourceIndex];
+		final int[] srcRuns = source.compressed ? source.runs[sourceIndex] : null;
+		final long[] dstBits = table[index];
+		final int[] dstRuns = compressed ? runs[index] : null;
+		if (srcBits != null) {
+			if (srcBits == dstBits) {
+				return false;
+			}
+			if (dstBits == null && dstRuns == null) {
+				//share the row of source until either one changes
+				table[index] = srcBits;
+				owned[index] = false;
+				source.owned[sourceIndex] = false;
+				return !isEmpty(srcBits);
+			}
+			if (dstBits == null) {
+				if (containsAll(dstRuns, srcBits)) {
+					return false;
+				}
+				toBits(index);
+			}
+			return or(index, srcBits);
+		} else if (srcRuns != null) {
+			if (srcRuns == dstRuns) {
+				return false;
+			}
+			if (dstBits != null || !compressed) {
+				return or(index, srcRuns);
+			}
+			if (dstRuns == null) {
+				//run-length encoded rows are never changed, and can always be shared
+				runs[index] = srcRuns;
+				return true;
+			}
+			if (containsAll(dstRuns, srcRuns)) {
+				return false;
+			}
+			setRuns(index, union(dstRuns, srcRuns));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds all bits of src to row index, copying the row only if it changes and is shared.
+	 * @param index the row index
+	 * @param src the bits to add
+	 * @return <code>true</code> iff row index changed as a result
+	 */
+	private boolean or(final int index, final long[] src) {
+		long[] dst = table[index];
+		for (int k = 0; k < rowLength; k++) {
+			if (dst == null ? src[k] != 0 : (src[k] & ~dst[k]) != 0) {
+				dst = getWritableRow(index);
+				for (int j = k; j < rowLength; j++) {
+					dst[j] |= src[j];
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds all runs of src to row index, copying the row only if it changes and is shared.
+	 * @param index the row index
+	 * @param src the run-length encoded bits to add
+	 * @return <code>true</code> iff row index changed as a result
+	 */
+	private boolean or(final int index, final int[] src) {
+		long[] dst = table[index];
+		boolean changed = false;
+		for (int k = 0; k < src.length; k += 2) {
+			final int start = src[k];
+			final int end = src[k + 1];
+			for (int w = start >>> 6; w <= (end - 1) >>> 6; w++) {
+				final int lo = Math.max(start, w << 6);
+				final int hi = Math.min(end, (w + 1) << 6);
+				final long mask = (hi - lo == 64 ? -1L : (1L << (hi - lo)) - 1) << lo;
+				if (!changed) {
+					if (dst != null && (mask & ~dst[w]) == 0) {
+						continue;
+					}
+					dst = getWritableRow(index);
+					changed = true;
 				}
+				dst[w] |= mask;
 			}
 		}
+		return changed;
+	}
+
+	/**
+	 * Replaces row index by the given runs, or by a plain bit set row if the runs take at least
+	 * half its memory. Run-length encoded rows are reallocated on each change, whereas owned
+	 * plain bit set rows are changed in place.
+	 * @param index the row index
+	 * @param row the new runs
+	 */
+	private void setRuns(final int index, final int[] row) {
+		statistics.rowAllocCount++;
+		statistics.allocatedMemory += row.length << 2;
+		runs[index] = row;
+		if (row.length >= rowLength) {
+			toBits(index);
+		}
+	}
+
+	/**
+	 * Replaces run-length encoded row index by a plain bit set row.
+	 * @param index the row index
+	 */
+	private void toBits(final int index) {
+		final int[] row = runs[index];
+		runs[index] = null;
+		table[index] = null;
+		owned[index] = false;
+		or(index, row);
+	}
+
+	/**
+	 * @param index the row index
+	 * @return row index, which is allocated or copied if it is missing or shared
+	 */
+	private long[] getWritableRow(final int index) {
+		if (!owned[index]) {
+			final long[] row = table[index];
+			if (row == null) {
+				table[index] = new long[rowLength];
+				statistics.rowAllocCount++;
+			} else {
+				table[index] = row.clone();
+				statistics.rowCopyCount++;
+			}
+			statistics.allocatedMemory += rowLength << 3;
+			owned[index] = true;
+		}
+		return table[index];
+	}
+
+	/**
+	 * @param row
+	 * @return <code>true</code> iff row has no bits set
+	 */
+	private static boolean isEmpty(final long[] row) {
+		for (long word : row) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param row run-length encoded row
+	 * @param bit
+	 * @return <code>true</code> iff bit is set in row
+	 */
+	private static boolean contains(final int[] row, final int bit) {
+		int low = 0;
+		int high = (row.length >>> 1) - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (bit < row[mid << 1]) {
+				high = mid - 1;
+			} else if (bit >= row[(mid << 1) + 1]) {
+				low = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param row run-length encoded row
+	 * @param bits plain bit set
+	 * @return <code>true</code> iff all bits are set in row
+	 */
+	private static boolean containsAll(final int[] row, final long[] bits) {
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				if (!contains(row, (w << 6) + Long.numberOfTrailingZeros(word))) {
+					return false;
+				}
+				word &= word - 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param row run-length encoded row
+	 * @param other run-length encoded row
+	 * @return <code>true</code> iff all bits of other are set in row
+	 */
+	private static boolean containsAll(final int[] row, final int[] other) {
+		int i = 0;
+		for (int k = 0; k < other.length; k += 2) {
+			while (i < row.length && row[i + 1] <= other[k]) {
+				i += 2;
+			}
+			//runs are never adjacent, so each run of other must fit in a single run of row
+			if (i == row.length || row[i] > other[k] || row[i + 1] < other[k + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param a run-length encoded row, or <code>null</code>
+	 * @param b run-length encoded row
+	 * @return the run-length encoded union of a and b
+	 */
+	private static int[] union(final int[] a, final int[] b) {
+		if (a == null) {
+			return b;
+		}
+		final int[] result = new int[a.length + b.length];
+		int length = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length || j < b.length) {
+			final int start;
+			final int end;
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				start = a[i];
+				end = a[i + 1];
+				i += 2;
+			} else {
+				start = b[j];
+				end = b[j + 1];
+				j += 2;
+			}
+			if (length > 0 && start <= result[length - 1]) {
+				//overlapping or adjacent
+				result[length - 1] = Math.max(result[length - 1], end);
+			} else {
+				result[length++] = start;
+				result[length++] = end;
+			}
+		}
+		if (length == result.length) {
+			return result;
+		}
+		final int[] trimmed = new int[length];
+		System.arraycopy(result, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	/**
+	 * @param index the row index
+	 * @return row index in {@link java.util.BitSet#toString()} format
+	 */
+	private String rowToString(final int index) {
+		if (table[index] == null && (!compressed || runs[index] == null)) {
+			return String.valueOf((Object) null);
+		}
+		final StringBuffer sb = new StringBuffer("{"); //$NON-NLS-1$
+		for (int i = 0; i < capacity; i++) {
+			if (contains(index, i)) {
+				if (sb.length() > 1) {
+					sb.append(", "); //$NON-NLS-1$
+				}
+				sb.append(i);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * @return the amount of shared rows that were copied because they changed,
+	 * for this table and all its copies.
+	 */
+	public int getRowCopyCount() {
+		return statistics.rowCopyCount;
+	}
+
+	/**
+	 * @return the amount of new rows that were allocated,
+	 * for this table and all its copies.
+	 */
+	public int getRowAllocCount() {
+		return statistics.rowAllocCount;
+	}
+
+	/**
+	 * @return the approximate amount of memory in bytes allocated for rows and tables,
+	 * for this table and all its copies. This is an upper bound for the peak memory taken
+	 * by all copies of this table.
+	 */
+	public long getAllocatedMemory() {
+		return statistics.allocatedMemory;
+	}
+
+	/**
+	 * @return the approximate amount of memory in bytes taken by the distinct rows of this table,
+	 * not counting the rows that are only referenced by copies.
+	 */
+	public long getRowMemory() {
+		final Map<Object, Object> rows = new IdentityHashMap<Object, Object>();
+		long memory = 0L;
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				if (rows.put(table[i], table[i]) == null) {
+					memory += table[i].length << 3;
+				}
+			} else if (compressed && runs[i] != null) {
+				if (rows.put(runs[i], runs[i]) == null) {
+					memory += runs[i].length << 2;
+				}
+			}
+		}
+		return memory;
 	}
 
 	/**
@@ -189,6 +623,17 @@ public final class LocalHistoryTable implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + (isUnmergeable() ? "(u)" : "") + Arrays.toString(table); //$NON-NLS-1$
+		final StringBuffer sb = new StringBuffer(getClass().getSimpleName());
+		if (isUnmergeable()) {
+			sb.append("(u)"); //$NON-NLS-1$
+		}
+		sb.append('[');
+		for (int i = 0; i < capacity; i++) {
+			if (i > 0) {
+				sb.append(", "); //$NON-NLS-1$
+			}
+			sb.append(rowToString(i));
+		}
+		return sb.append(']').toString();
 	}
 }
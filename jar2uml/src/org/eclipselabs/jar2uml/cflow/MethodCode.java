@@ -0,0 +1,510 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.cflow;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.ExceptionTable;
+import org.apache.bcel.classfile.LineNumber;
+import org.apache.bcel.classfile.LineNumberTable;
+import org.apache.bcel.classfile.LocalVariable;
+import org.apache.bcel.classfile.LocalVariableTable;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.Utility;
+import org.apache.bcel.generic.ClassGenException;
+import org.apache.bcel.generic.CodeExceptionGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import org.apache.bcel.util.ByteSequence;
+import org.eclipselabs.jar2uml.TypeCache;
+
+/**
+ * Read-only view on the code of a BCEL {@link Method}, which decodes the
+ * byte code into an {@link InstructionList} once per instance, and precomputes the instruction positions,
+ * exception handler ranges, line number table and local variable table for {@link ControlFlow}
+ * and {@link FrameSimulator}. Unlike {@link MethodGen}, it does not create line number, local variable
+ * or exception handler generators, does not re-encode the method, and does not change the constant pool.
+ *
+ * The line number table, local variable table and max. locals are the same as those
+ * of the {@link Method} returned by {@link MethodGen#getMethod()}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class MethodCode {
+
+	/**
+	 * Decodes the instructions of code, without creating an {@link InstructionList}.
+	 * Branch instructions do not have their targets set.
+	 * @param code the byte code
+	 * @return the decoded instructions
+	 * @throws ClassGenException if code cannot be decoded
+	 */
+	public static Instruction[] getInstructions(final byte[] code) {
+		final ByteSequence bytes = new ByteSequence(code);
+		final List<Instruction> instructions = new ArrayList<Instruction>();
+		try {
+			while (bytes.available() > 0) {
+				instructions.add(Instruction.readInstruction(bytes));
+			}
+		} catch (IOException e) {
+			throw new ClassGenException(e.toString());
+		}
+		return instructions.toArray(new Instruction[instructions.size()]);
+	}
+
+	private final Method method;
+	private final String className;
+	private final ConstantPoolGen cpg;
+	private final InstructionList instructionList;
+	private final InstructionHandle[] handles;
+	private final int[] positions;
+	private final int maxLocals;
+	private final int maxStack;
+	private final LineNumberTable lineNumberTable;
+	private final LocalVariableTable localVariableTable;
+	/**
+	 * First and last protected instruction index, handler instruction index, and catch type for each exception handler.
+	 */
+	private final int[] handlerStart;
+	private final int[] handlerEnd;
+	private final int[] handlerTarget;
+	private final ObjectType[] handlerType;
+
+	/**
+	 * Creates a new {@link MethodCode}.
+	 * @param method the method, which must have code
+	 * @param className the name of the class that defines method
+	 * @param cpg the constant pool of the class that defines method
+	 * @throws ClassFormatException if the code of method is invalid
+	 */
+	public MethodCode(Method method, String className, ConstantPoolGen cpg) {
+		super();
+		this.method = method;
+		this.className = className;
+		this.cpg = cpg;
+		final Code code = method.getCode();
+		this.instructionList = new InstructionList(code.getCode());
+		this.handles = instructionList.getInstructionHandles();
+		this.positions = instructionList.getInstructionPositions();
+		this.maxStack = code.getMaxStack();
+		//exception handlers
+		final CodeException[] ces = code.getExceptionTable();
+		final int handlerCount = ces == null ? 0 : ces.length;
+		handlerStart = new int[handlerCount];
+		handlerEnd = new int[handlerCount];
+		handlerTarget = new int[handlerCount];
+		handlerType = new ObjectType[handlerCount];
+		for (int i = 0; i < handlerCount; i++) {
+			final CodeException ce = ces[i];
+			if (ce.getCatchType() > 0) {
+				handlerType[i] = new ObjectType(method.getConstantPool().getConstantString(
+						ce.getCatchType(), Constants.CONSTANT_Class));
+			}
+			handlerStart[i] = indexOf(ce.getStartPC());
+			//end pc is exclusive
+			handlerEnd[i] = ce.getEndPC() == code.getCode().length ? handles.length - 1 : indexOf(ce.getEndPC()) - 1;
+			handlerTarget[i] = indexOf(ce.getHandlerPC());
+		}
+		//line numbers and local variables
+		LineNumberTable lines = null;
+		LocalVariableTable locals = null;
+		for (Attribute a : code.getAttributes()) {
+			if (a instanceof LineNumberTable) {
+				lines = addLineNumbers(lines, (LineNumberTable) a);
+			} else if (a instanceof LocalVariableTable) {
+				locals = (LocalVariableTable) a;
+			}
+		}
+		this.lineNumberTable = lines;
+		if (locals == null) {
+			this.maxLocals = code.getMaxLocals();
+			this.localVariableTable = createArgumentVariableTable();
+		} else {
+			final LocalVariable[] vars = createVariables(locals);
+			int max = code.getMaxLocals();
+			for (LocalVariable var : vars) {
+				max = Math.max(max, var.getIndex() + TypeCache.getType(var.getSignature()).getSize());
+			}
+			this.maxLocals = max;
+			this.localVariableTable = new LocalVariableTable(
+					locals.getNameIndex(),
+					vars.length * 10 + 2,
+					vars,
+					method.getConstantPool());
+		}
+	}
+
+	/**
+	 * Creates a new {@link MethodCode} on the instruction list of method.
+	 * @param method the method, which must have code
+	 */
+	public MethodCode(MethodGen method) {
+		super();
+		this.method = method.getMethod();
+		this.className = method.getClassName();
+		this.cpg = method.getConstantPool();
+		this.instructionList = method.getInstructionList();
+		this.handles = instructionList.getInstructionHandles();
+		this.positions = instructionList.getInstructionPositions();
+		this.maxStack = method.getMaxStack();
+		this.maxLocals = method.getMaxLocals();
+		final CodeExceptionGen[] cegs = method.getExceptionHandlers();
+		handlerStart = new int[cegs.length];
+		handlerEnd = new int[cegs.length];
+		handlerTarget = new int[cegs.length];
+		handlerType = new ObjectType[cegs.length];
+		for (int i = 0; i < cegs.length; i++) {
+			handlerStart[i] = indexOf(cegs[i].getStartPC().getPosition());
+			handlerEnd[i] = indexOf(cegs[i].getEndPC().getPosition());
+			handlerTarget[i] = indexOf(cegs[i].getHandlerPC().getPosition());
+			handlerType[i] = cegs[i].getCatchType();
+		}
+		this.lineNumberTable = this.method.getLineNumberTable();
+		this.localVariableTable = method.getLocalVariableTable(cpg);
+	}
+
+	/**
+	 * @param pc
+	 * @return the index of the instruction at byte code position pc
+	 * @throws ClassFormatException if there is no instruction at pc
+	 */
+	private int indexOf(final int pc) {
+		final int index = Arrays.binarySearch(positions, pc);
+		if (index < 0) {
+			throw new ClassFormatException(String.format(
+					"Invalid byte code position %d in %s", pc, method)); //$NON-NLS-1$
+		}
+		return index;
+	}
+
+	/**
+	 * Appends the entries of table that refer to an instruction to lines, like {@link MethodGen}.
+	 * @param lines the line number table so far, or <code>null</code>
+	 * @param table the line number table to add
+	 * @return the new line number table, or <code>null</code> if it is empty
+	 */
+	private LineNumberTable addLineNumbers(final LineNumberTable lines, final LineNumberTable table) {
+		final LineNumber[] entries = table.getLineNumberTable();
+		final List<LineNumber> valid = new ArrayList<LineNumber>(entries.length);
+		if (lines != null) {
+			valid.addAll(Arrays.asList(lines.getLineNumberTable()));
+		}
+		for (LineNumber entry : entries) {
+			if (Arrays.binarySearch(positions, entry.getStartPC()) >= 0) {
+				valid.add(entry);
+			}
+		}
+		if (valid.isEmpty()) {
+			return null;
+		}
+		if (lines == null && valid.size() == entries.length) {
+			return table;
+		}
+		return new LineNumberTable(
+				table.getNameIndex(),
+				valid.size() * 4 + 2,
+				valid.toArray(new LineNumber[valid.size()]),
+				table.getConstantPool());
+	}
+
+	/**
+	 * Creates the local variables of table with the ranges of {@link MethodGen#getLocalVariableTable(ConstantPoolGen)}:
+	 * variables start and end at an instruction, the end instruction is included,
+	 * duplicates are removed, and variables are sorted by index.
+	 * @param table
+	 * @return the local variables
+	 */
+	private LocalVariable[] createVariables(final LocalVariableTable table) {
+		final List<LocalVariable> vars = new ArrayList<LocalVariable>();
+		final List<int[]> ranges = new ArrayList<int[]>();
+		nextVar:
+		for (LocalVariable lv : table.getLocalVariableTable()) {
+			int start = Arrays.binarySearch(positions, lv.getStartPC());
+			int end = Arrays.binarySearch(positions, lv.getStartPC() + lv.getLength());
+			if (start < 0) {
+				start = 0;
+			}
+			if (end < 0) {
+				end = handles.length - 1;
+			}
+			final int startPC = positions[start];
+			int length = positions[end] - startPC;
+			if (length > 0) {
+				length += handles[end].getInstruction().getLength();
+			}
+			final LocalVariable var = new LocalVariable(startPC, length,
+					lv.getNameIndex(), lv.getSignatureIndex(), lv.getIndex(), lv.getConstantPool());
+			//replace variables with the same index and range
+			for (int i = 0; i < ranges.size(); i++) {
+				final int[] range = ranges.get(i);
+				if (range[0] == lv.getIndex() && range[1] == start && range[2] == end) {
+					vars.set(i, var);
+					continue nextVar;
+				}
+			}
+			vars.add(var);
+			ranges.add(new int[] { lv.getIndex(), start, end });
+		}
+		final LocalVariable[] sorted = vars.toArray(new LocalVariable[vars.size()]);
+		if (sorted.length > 1) {
+			sort(sorted, 0, sorted.length - 1);
+		}
+		return sorted;
+	}
+
+	/**
+	 * Sorts vars by index in the same order as {@link MethodGen#getLocalVariables()}.
+	 * @param vars
+	 * @param l
+	 * @param r
+	 */
+	private static void sort(final LocalVariable[] vars, final int l, final int r) {
+		int i = l;
+		int j = r;
+		final int m = vars[(l + r) / 2].getIndex();
+		do {
+			while (vars[i].getIndex() < m) {
+				i++;
+			}
+			while (m < vars[j].getIndex()) {
+				j--;
+			}
+			if (i <= j) {
+				final LocalVariable h = vars[i];
+				vars[i] = vars[j];
+				vars[j] = h;
+				i++;
+				j--;
+			}
+		} while (i <= j);
+		if (l < j) {
+			sort(vars, l, j);
+		}
+		if (i < r) {
+			sort(vars, i, r);
+		}
+	}
+
+	/**
+	 * Creates the local variable table that {@link MethodGen} assumes in the absence of a local variable table:
+	 * <code>this</code> and the arguments, for the entire method.
+	 * Unlike {@link MethodGen}, the names and signatures are not added to the constant pool of the class,
+	 * but stored in a separate constant pool that only contains the local variable table.
+	 * @return the local variable table
+	 */
+	private LocalVariableTable createArgumentVariableTable() {
+		final Type[] argTypes = getArgumentTypes();
+		final int first = isStatic() ? 0 : 1;
+		final int count = first + argTypes.length;
+		//index 0 is unused, index 1 holds the attribute name
+		final Constant[] constants = new Constant[count * 2 + 2];
+		constants[1] = new ConstantUtf8("LocalVariableTable"); //$NON-NLS-1$
+		for (int i = 0; i < count; i++) {
+			final Type type = i < first ? new ObjectType(className) : argTypes[i - first];
+			constants[i * 2 + 2] = new ConstantUtf8(i < first ? "this" : "arg" + (i - first)); //$NON-NLS-1$ //$NON-NLS-2$
+			constants[i * 2 + 3] = new ConstantUtf8(type.getSignature());
+		}
+		final ConstantPool cp = new ConstantPool(constants);
+		final int end = handles.length - 1;
+		int length = positions[end];
+		if (length > 0) {
+			length += handles[end].getInstruction().getLength();
+		}
+		final LocalVariable[] vars = new LocalVariable[count];
+		int slot = 0;
+		for (int i = 0; i < count; i++) {
+			vars[i] = new LocalVariable(0, length, i * 2 + 2, i * 2 + 3, slot, cp);
+			slot += i < first ? 1 : argTypes[i - first].getSize();
+		}
+		return new LocalVariableTable(1, count * 10 + 2, vars, cp);
+	}
+
+	/**
+	 * @return the method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the name of the class that defines the method
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the method name
+	 */
+	public String getName() {
+		return method.getName();
+	}
+
+	/**
+	 * @return <code>true</code> iff the method is static
+	 */
+	public boolean isStatic() {
+		return method.isStatic();
+	}
+
+	/**
+	 * @return the shared argument types of the method, which must not be modified
+	 */
+	public Type[] getArgumentTypes() {
+		return TypeCache.getArgumentTypes(method.getSignature());
+	}
+
+	/**
+	 * @return the constant pool of the class that defines the method
+	 */
+	public ConstantPoolGen getConstantPool() {
+		return cpg;
+	}
+
+	/**
+	 * @return the decoded instructions; must not be changed
+	 */
+	public InstructionList getInstructionList() {
+		return instructionList;
+	}
+
+	/**
+	 * @return the decoded instructions by index
+	 */
+	public InstructionHandle[] getInstructionHandles() {
+		return handles.clone();
+	}
+
+	/**
+	 * @param index
+	 * @return the decoded instruction with the given index
+	 */
+	public InstructionHandle getInstructionHandle(final int index) {
+		return handles[index];
+	}
+
+	/**
+	 * @return the amount of instructions
+	 */
+	public int getInstructionCount() {
+		return handles.length;
+	}
+
+	/**
+	 * @return the byte code positions of the instructions by index
+	 */
+	public int[] getInstructionPositions() {
+		return positions.clone();
+	}
+
+	/**
+	 * @return the maximum amount of local variable slots
+	 */
+	public int getMaxLocals() {
+		return maxLocals;
+	}
+
+	/**
+	 * @return the maximum operand stack size
+	 */
+	public int getMaxStack() {
+		return maxStack;
+	}
+
+	/**
+	 * @return the line number table, or <code>null</code>
+	 */
+	public LineNumberTable getLineNumberTable() {
+		return lineNumberTable;
+	}
+
+	/**
+	 * @return the local variable table
+	 */
+	public LocalVariableTable getLocalVariableTable() {
+		return localVariableTable;
+	}
+
+	/**
+	 * @return the amount of exception handlers
+	 */
+	public int getExceptionHandlerCount() {
+		return handlerStart.length;
+	}
+
+	/**
+	 * @param handler the exception handler index
+	 * @return the index of the first instruction protected by the exception handler
+	 */
+	public int getHandlerStart(final int handler) {
+		return handlerStart[handler];
+	}
+
+	/**
+	 * @param handler the exception handler index
+	 * @return the index of the last instruction protected by the exception handler
+	 */
+	public int getHandlerEnd(final int handler) {
+		return handlerEnd[handler];
+	}
+
+	/**
+	 * @param handler the exception handler index
+	 * @return the index of the first instruction of the exception handler
+	 */
+	public int getHandlerTarget(final int handler) {
+		return handlerTarget[handler];
+	}
+
+	/**
+	 * @param handler the exception handler index
+	 * @return the exception type caught by the exception handler, or <code>null</code> for any exception
+	 */
+	public ObjectType getHandlerType(final int handler) {
+		return handlerType[handler];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuffer buf = new StringBuffer(Utility.methodSignatureToString(
+				method.getSignature(),
+				method.getName(),
+				Utility.accessToString(method.getAccessFlags()),
+				true,
+				localVariableTable));
+		final ExceptionTable exceptions = method.getExceptionTable();
+		if (exceptions != null) {
+			for (String name : exceptions.getExceptionNames()) {
+				buf.append("\n\t\tthrows ").append(name); //$NON-NLS-1$
+			}
+		}
+		return buf.toString();
+	}
+
+}
@@ -12,13 +12,8 @@ package org.eclipselabs.jar2uml.cflow;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
-import org.apache.bcel.generic.CodeExceptionGen;
-import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.verifier.structurals.ExceptionHandlers;
 import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
 
@@ -32,7 +27,7 @@ public class OrderedExceptionHandlers {
 
 	protected static final List<ExceptionHandler> EMPTY = Collections.emptyList();
 
-	protected final Map<InstructionFlow, List<ExceptionHandler>> exceptionHandlers = new HashMap<InstructionFlow, List<ExceptionHandler>>();
+	protected final List<List<ExceptionHandler>> exceptionHandlers;
 
 	/**
 	 * Creates a new {@link OrderedExceptionHandlers}.
@@ -40,23 +35,31 @@ public class OrderedExceptionHandlers {
 	 */
 	public OrderedExceptionHandlers(final ControlFlow cflow) {
 		super();
+		exceptionHandlers = new ArrayList<List<ExceptionHandler>>(
+				Collections.<List<ExceptionHandler>>nCopies(cflow.getFlowCount(), null));
 		//fill exceptionHandlers
-		final CodeExceptionGen[] cegs = cflow.getMethod().getExceptionHandlers();
-		for (int i=0; i<cegs.length; i++){
-			ExceptionHandler eh = new ExceptionHandler(cegs[i].getCatchType(), cflow.getFlowOf(cegs[i].getHandlerPC()));
-			for (InstructionHandle ih=cegs[i].getStartPC(); ih != cegs[i].getEndPC().getNext(); ih=ih.getNext()) {
-				InstructionFlow iflow = cflow.getFlowOf(ih);
-				List<ExceptionHandler> hs = exceptionHandlers.get(iflow);
+		final MethodCode method = cflow.getMethod();
+		for (int i = 0; i < method.getExceptionHandlerCount(); i++) {
+			ExceptionHandler eh = new ExceptionHandler(method.getHandlerType(i), cflow.getFlow(method.getHandlerTarget(i)));
+			for (int index = method.getHandlerStart(i); index <= method.getHandlerEnd(i); index++) {
+				List<ExceptionHandler> hs = exceptionHandlers.get(index);
 				if (hs == null) {
 					hs = new ArrayList<ExceptionHandler>();
-					exceptionHandlers.put(iflow, hs);
+					exceptionHandlers.set(index, hs);
 				}
 				hs.add(eh);
 			}
 		}
-		//make entries read-only
-		for (Entry<InstructionFlow, List<ExceptionHandler>> entry : exceptionHandlers.entrySet()) {
-			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		//make entries read-only, and share them between neighbouring instructions with the same handlers
+		for (int i = 0; i < exceptionHandlers.size(); i++) {
+			final List<ExceptionHandler> hs = exceptionHandlers.get(i);
+			if (hs != null) {
+				if (i > 0 && hs.equals(exceptionHandlers.get(i-1))) {
+					exceptionHandlers.set(i, exceptionHandlers.get(i-1));
+				} else {
+					exceptionHandlers.set(i, Collections.unmodifiableList(hs));
+				}
+			}
 		}
 	}
 
@@ -65,7 +68,7 @@ public class OrderedExceptionHandlers {
 	 * @return all {@link ExceptionHandler} instances that protect iflow
 	 */
 	public List<ExceptionHandler> getExceptionHandlers(InstructionFlow iflow) {
-		final List<ExceptionHandler> hs = exceptionHandlers.get(iflow);
+		final List<ExceptionHandler> hs = exceptionHandlers.get(iflow.getIndex());
 		return hs == null ? EMPTY : hs;
 	}
 
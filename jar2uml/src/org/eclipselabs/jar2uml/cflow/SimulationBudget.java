@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.cflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+
+/**
+ * Per-method and per-run limits for the execution path search of {@link FrameSimulator}.
+ * Methods that exceed a limit are cut off, and are simulated by the
+ * worklist fixed-point analysis of {@link FrameSimulator#executeDataflow(ControlFlow)} instead,
+ * unless they contain JSR/RET subroutines. Each cut-off method is recorded in a report.
+ *
+ * The run limits accumulate over all methods simulated against this budget,
+ * and may be shared between simulators on different threads.
+ * Limits of zero or less are disabled.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class SimulationBudget {
+
+	/**
+	 * The kinds of limit that can cut off an execution path search.
+	 */
+	public enum Limit {
+		/**
+		 * The cost estimated from the control flow graph, before searching.
+		 */
+		PREDICTED_COST,
+		/**
+		 * The amount of history table copies made for one method.
+		 */
+		METHOD_COPIES,
+		/**
+		 * The time spent on one method.
+		 */
+		METHOD_TIME,
+		/**
+		 * The amount of history table copies made for all methods.
+		 */
+		RUN_COPIES,
+		/**
+		 * The time spent on all methods.
+		 */
+		RUN_TIME
+	}
+
+	/**
+	 * Report entry for a cut-off method.
+	 */
+	public static final class Entry {
+
+		private final String method;
+		private final Limit limit;
+		private final int predictedCost;
+		private final long time;
+		private final int copies;
+		private final boolean degraded;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param method
+		 * @param limit
+		 * @param predictedCost
+		 * @param time
+		 * @param copies
+		 * @param degraded
+		 */
+		public Entry(String method, Limit limit, int predictedCost, long time,
+				int copies, boolean degraded) {
+			super();
+			this.method = method;
+			this.limit = limit;
+			this.predictedCost = predictedCost;
+			this.time = time;
+			this.copies = copies;
+			this.degraded = degraded;
+		}
+
+		/**
+		 * @return the cut-off method
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return the limit that was exceeded
+		 */
+		public Limit getLimit() {
+			return limit;
+		}
+
+		/**
+		 * @return the cost estimated by {@link SimulationBudget#estimateCost(ControlFlow)}
+		 */
+		public int getPredictedCost() {
+			return predictedCost;
+		}
+
+		/**
+		 * @return the time spent on the method before it was cut off, in nanoseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return the amount of history table copies made before the method was cut off
+		 */
+		public int getCopies() {
+			return copies;
+		}
+
+		/**
+		 * @return <code>true</code> iff the method was simulated by the dataflow analysis instead
+		 */
+		public boolean isDegraded() {
+			return degraded;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format(
+					JarToUMLResources.getString("SimulationBudget.entry"),
+					limit,
+					method,
+					time / 1000000L,
+					copies,
+					predictedCost,
+					JarToUMLResources.getString(degraded ?
+							"SimulationBudget.degraded" : "SimulationBudget.notDegraded")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+
+	}
+
+	/**
+	 * Default value for {@link #getMethodCopies()}.
+	 */
+	public static final int DEFAULT_METHOD_COPIES = 0x8000;
+
+	private int maxPredictedCost = 0;
+	private int methodCopies = DEFAULT_METHOD_COPIES;
+	private long methodTime = 0L;
+	private long runCopies = 0L;
+	private long runTime = 0L;
+	private final AtomicLong runCopyCount = new AtomicLong();
+	private final AtomicLong runTimeCount = new AtomicLong();
+	private final List<Entry> report = Collections.synchronizedList(new ArrayList<Entry>());
+
+	/**
+	 * Estimates the cost of the execution path search for cflow as the amount of
+	 * alternative control flow edges: all branch targets beyond the first,
+	 * plus all exception handler edges. Each alternative edge can cause a history table copy.
+	 * @param cflow
+	 * @return the estimated cost
+	 */
+	public static int estimateCost(final ControlFlow cflow) {
+		int cost = 0;
+		for (InstructionFlow iflow : cflow.getFlows()) {
+			final int handlerCount = iflow.getExceptionHandlers().size();
+			final int branchCount = iflow.getSuccessorCount() - handlerCount;
+			if (branchCount > 1) {
+				cost += branchCount - 1;
+			}
+			cost += handlerCount;
+		}
+		return cost;
+	}
+
+	/**
+	 * @param predictedCost the cost estimated by {@link #estimateCost(ControlFlow)}
+	 * @return <code>true</code> iff predictedCost exceeds {@link #getMaxPredictedCost()}
+	 */
+	public boolean exceedsPredictedCost(final int predictedCost) {
+		return maxPredictedCost > 0 && predictedCost > maxPredictedCost;
+	}
+
+	/**
+	 * Checks the limits for a running execution path search.
+	 * @param startTime the {@link System#nanoTime()} at which the method simulation started
+	 * @param copies the amount of history table copies made so far for the method
+	 * @return the exceeded limit, or <code>null</code>
+	 */
+	public Limit check(final long startTime, final int copies) {
+		if (methodCopies > 0 && copies > methodCopies) {
+			return Limit.METHOD_COPIES;
+		}
+		if (runCopies > 0 && runCopyCount.get() + copies > runCopies) {
+			return Limit.RUN_COPIES;
+		}
+		if (methodTime > 0L || runTime > 0L) {
+			final long time = System.nanoTime() - startTime;
+			if (methodTime > 0L && time > methodTime * 1000000L) {
+				return Limit.METHOD_TIME;
+			}
+			if (runTime > 0L && runTimeCount.get() + time > runTime * 1000000L) {
+				return Limit.RUN_TIME;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the resources used for a method simulation to the run totals.
+	 * @param time the time spent on the method, in nanoseconds
+	 * @param copies the amount of history table copies made for the method
+	 */
+	public void charge(final long time, final int copies) {
+		runTimeCount.addAndGet(time);
+		runCopyCount.addAndGet(copies);
+	}
+
+	/**
+	 * Adds entry to the report.
+	 * @param entry
+	 */
+	public void addEntry(final Entry entry) {
+		report.add(entry);
+	}
+
+	/**
+	 * Clears the run totals and the report.
+	 */
+	public void reset() {
+		runTimeCount.set(0L);
+		runCopyCount.set(0L);
+		report.clear();
+	}
+
+	/**
+	 * Logs the run totals and the report.
+	 */
+	public void logReport() {
+		final List<Entry> entries = getReport();
+		JarToUMLResources.logger.info(String.format(
+				JarToUMLResources.getString("SimulationBudget.report"),
+				entries.size(), getRunTimeCount() / 1000000L, getRunCopyCount())); //$NON-NLS-1$
+		for (Entry entry : entries) {
+			JarToUMLResources.logger.info(entry.toString());
+		}
+	}
+
+	/**
+	 * @return a snapshot of the cut-off methods report, in order of cut-off
+	 */
+	public List<Entry> getReport() {
+		synchronized (report) {
+			return new ArrayList<Entry>(report);
+		}
+	}
+
+	/**
+	 * @return the time spent on all methods, in nanoseconds
+	 */
+	public long getRunTimeCount() {
+		return runTimeCount.get();
+	}
+
+	/**
+	 * @return the amount of history table copies made for all methods
+	 */
+	public long getRunCopyCount() {
+		return runCopyCount.get();
+	}
+
+	/**
+	 * The maximum cost estimated by {@link #estimateCost(ControlFlow)} for which
+	 * the execution path search is started. Defaults to 0 (disabled).
+	 * @return the maxPredictedCost
+	 */
+	public int getMaxPredictedCost() {
+		return maxPredictedCost;
+	}
+
+	/**
+	 * The maximum cost estimated by {@link #estimateCost(ControlFlow)} for which
+	 * the execution path search is started. Defaults to 0 (disabled).
+	 * @param maxPredictedCost the maxPredictedCost to set
+	 */
+	public void setMaxPredictedCost(int maxPredictedCost) {
+		this.maxPredictedCost = maxPredictedCost;
+	}
+
+	/**
+	 * The maximum amount of history table copies for one method.
+	 * Defaults to {@link #DEFAULT_METHOD_COPIES}.
+	 * @return the methodCopies
+	 */
+	public int getMethodCopies() {
+		return methodCopies;
+	}
+
+	/**
+	 * The maximum amount of history table copies for one method.
+	 * Defaults to {@link #DEFAULT_METHOD_COPIES}.
+	 * @param methodCopies the methodCopies to set
+	 */
+	public void setMethodCopies(int methodCopies) {
+		this.methodCopies = methodCopies;
+	}
+
+	/**
+	 * The maximum time for one method in milliseconds. Defaults to 0 (disabled).
+	 * @return the methodTime
+	 */
+	public long getMethodTime() {
+		return methodTime;
+	}
+
+	/**
+	 * The maximum time for one method in milliseconds. Defaults to 0 (disabled).
+	 * @param methodTime the methodTime to set
+	 */
+	public void setMethodTime(long methodTime) {
+		this.methodTime = methodTime;
+	}
+
+	/**
+	 * The maximum amount of history table copies for all methods. Defaults to 0 (disabled).
+	 * @return the runCopies
+	 */
+	public long getRunCopies() {
+		return runCopies;
+	}
+
+	/**
+	 * The maximum amount of history table copies for all methods. Defaults to 0 (disabled).
+	 * @param runCopies the runCopies to set
+	 */
+	public void setRunCopies(long runCopies) {
+		this.runCopies = runCopies;
+	}
+
+	/**
+	 * The maximum time for all methods in milliseconds, summed over all threads.
+	 * Defaults to 0 (disabled).
+	 * @return the runTime
+	 */
+	public long getRunTime() {
+		return runTime;
+	}
+
+	/**
+	 * The maximum time for all methods in milliseconds, summed over all threads.
+	 * Defaults to 0 (disabled).
+	 * @param runTime the runTime to set
+	 */
+	public void setRunTime(long runTime) {
+		this.runTime = runTime;
+	}
+
+}
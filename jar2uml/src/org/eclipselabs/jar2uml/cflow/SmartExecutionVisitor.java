@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.cflow;
 
+import org.apache.bcel.Constants;
 import org.apache.bcel.classfile.Constant;
 import org.apache.bcel.classfile.ConstantClass;
 import org.apache.bcel.classfile.ConstantDouble;
@@ -25,6 +26,7 @@ import org.apache.bcel.verifier.structurals.Frame;
 import org.apache.bcel.verifier.structurals.LocalVariables;
 import org.apache.bcel.verifier.structurals.OperandStack;
 import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.TypeCache;
 import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
 
 /**
@@ -114,7 +116,7 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 			locals.set(index, stack.pop());
 			frame.setResponsibleForLocalVariable(iflow1, index);
 		} else {
-			locals.set(index, Type.getType(lv.getSignature()));
+			locals.set(index, TypeCache.getType(lv.getSignature()));
 			stack.pop();
 			frame.setResponsibleForLocalVariable(iflow, index);
 		}
@@ -748,10 +750,7 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 	 */
 	@Override
 	public void visitINVOKEINTERFACE(INVOKEINTERFACE o) {
-		super.visitINVOKEINTERFACE(o);
-		if (o.getReturnType(cpg) != Type.VOID){
-			frame.setResponsibleForStackTop(iflow);
-		}
+		executeInvoke(o, true);
 	}
 
 	/* (non-Javadoc)
@@ -759,8 +758,37 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 	 */
 	@Override
 	public void visitINVOKESPECIAL(INVOKESPECIAL o) {
-		super.visitINVOKESPECIAL(o);
-		if (o.getReturnType(cpg) != Type.VOID){
+		if (Constants.CONSTRUCTOR_NAME.equals(o.getMethodName(cpg))) {
+			//initializes the uninitialized object, which is tracked by ExecutionVisitor; returns void
+			super.visitINVOKESPECIAL(o);
+		} else {
+			executeInvoke(o, true);
+		}
+	}
+
+	/**
+	 * Symbolically executes o, which does not invoke a constructor.
+	 * Parses the method signature only once, unlike {@link ExecutionVisitor}.
+	 * @param o the invoke instruction
+	 * @param hasObjectRef whether o pops an object reference
+	 */
+	private void executeInvoke(InvokeInstruction o, boolean hasObjectRef) {
+		final OperandStack stack = frame.getStack();
+		final String signature = o.getSignature(cpg);
+		final int argCount = TypeCache.getArgumentTypes(signature).length;
+		for (int i = 0; i < argCount; i++) {
+			stack.pop();
+		}
+		if (hasObjectRef) {
+			stack.pop();
+		}
+		Type returnType = TypeCache.getReturnType(signature);
+		if (returnType != Type.VOID){
+			if (returnType.equals(Type.BOOLEAN) || returnType.equals(Type.CHAR)
+					|| returnType.equals(Type.BYTE) || returnType.equals(Type.SHORT)) {
+				returnType = Type.INT;
+			}
+			stack.push(returnType);
 			frame.setResponsibleForStackTop(iflow);
 		}
 	}
@@ -770,10 +798,7 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 	 */
 	@Override
 	public void visitINVOKESTATIC(INVOKESTATIC o) {
-		super.visitINVOKESTATIC(o);
-		if (o.getReturnType(cpg) != Type.VOID){
-			frame.setResponsibleForStackTop(iflow);
-		}
+		executeInvoke(o, false);
 	}
 
 	/* (non-Javadoc)
@@ -781,10 +806,7 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 	 */
 	@Override
 	public void visitINVOKEVIRTUAL(INVOKEVIRTUAL o) {
-		super.visitINVOKEVIRTUAL(o);
-		if (o.getReturnType(cpg) != Type.VOID){
-			frame.setResponsibleForStackTop(iflow);
-		}
+		executeInvoke(o, true);
 	}
 
 	/* (non-Javadoc)
@@ -968,14 +990,14 @@ public class SmartExecutionVisitor extends ExecutionVisitor {
 		} else if (c instanceof ConstantClass) {
 			final String className = ((ConstantClass) c).getBytes(getConstantPoolGen().getConstantPool());
 			if (className.startsWith("[")) {
-				stack.push(Type.getType(className)); //already an array type signature
+				stack.push(TypeCache.getType(className)); //already an array type signature
 			} else {
 				final StringBuffer signature = new StringBuffer();
 				signature.append('L');
 				signature.append(className);
 				signature.append(';');
 				assert !signature.toString().endsWith(";;"); //no double signature
-				stack.push(Type.getType(signature.toString()));
+				stack.push(TypeCache.getType(signature.toString()));
 			}
 		} else {
 			throw new RuntimeException(String.format(
@@ -10,32 +10,29 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.cflow;
 
-import java.util.ArrayList;
-
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.ReferenceType;
 import org.apache.bcel.generic.Type;
 import org.apache.bcel.verifier.structurals.Frame;
-import org.apache.bcel.verifier.structurals.LocalVariables;
 import org.apache.bcel.verifier.structurals.OperandStack;
+import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+import org.eclipselabs.jar2uml.TypeCache;
 import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
 
 /**
  * Execution {@link Frame} that keeps track of extra metadata.
+ * Copies share their local variables and stack entries until changed.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class SmartFrame extends Frame {
 
-	protected final InstructionFlow[] localVariableResponsibles;
-	protected final ArrayList<InstructionFlow> stackEntryResponsibles = new ArrayList<InstructionFlow>();
-
 	/**
 	 * Creates a new {@link SmartFrame}.
 	 * @param maxLocals
 	 * @param maxStack
 	 */
 	public SmartFrame(int maxLocals, int maxStack) {
-		super(new LocalVariables(maxLocals), new SmartStack(maxStack));
-		this.localVariableResponsibles = new InstructionFlow[maxLocals];
-		((SmartStack) getStack()).setFrame(this);
+		this(new SmartLocalVariables(maxLocals), new SmartStack(maxStack));
 	}
 
 	/**
@@ -43,10 +40,23 @@ public class SmartFrame extends Frame {
 	 * @param locals
 	 * @param stack
 	 */
-	protected SmartFrame(LocalVariables locals, SmartStack stack) {
+	protected SmartFrame(SmartLocalVariables locals, SmartStack stack) {
 		super(locals, stack);
-		this.localVariableResponsibles = new InstructionFlow[locals.maxLocals()];
-		((SmartStack) getStack()).setFrame(this);
+		stack.setFrame(this);
+	}
+
+	/**
+	 * @return the local variables of this frame
+	 */
+	protected final SmartLocalVariables getSmartLocals() {
+		return (SmartLocalVariables) getLocals();
+	}
+
+	/**
+	 * @return the operand stack of this frame
+	 */
+	protected final SmartStack getSmartStack() {
+		return (SmartStack) getStack();
 	}
 
 	/**
@@ -54,7 +64,7 @@ public class SmartFrame extends Frame {
 	 * @return the instruction responsible for the value of local variable with slot index
 	 */
 	public InstructionFlow getResponsibleForLocalVariable(int index) {
-		return localVariableResponsibles[index];
+		return getSmartLocals().getResponsible(index);
 	}
 
 	/**
@@ -63,7 +73,7 @@ public class SmartFrame extends Frame {
 	 * @param index
 	 */
 	public void setResponsibleForLocalVariable(InstructionFlow iflow, int index) {
-		localVariableResponsibles[index] = iflow;
+		getSmartLocals().setResponsible(iflow, index);
 	}
 
 	/**
@@ -71,14 +81,14 @@ public class SmartFrame extends Frame {
 	 * @return the instruction responsible for the value of {@link OperandStack#peek(int)} at index.
 	 */
 	public InstructionFlow getResponsibleForStackEntry(int index) {
-		return stackEntryResponsibles.get(stackEntryResponsibles.size()-index-1);
+		return getSmartStack().getResponsible(index);
 	}
 
 	/**
 	 * @return the instruction responsible for the value of {@link OperandStack#peek()}
 	 */
 	public InstructionFlow getResponsibleForStackTop() {
-		return stackEntryResponsibles.get(stackEntryResponsibles.size()-1);
+		return getSmartStack().getResponsible(0);
 	}
 
 	/**
@@ -87,7 +97,7 @@ public class SmartFrame extends Frame {
 	 * @param index
 	 */
 	public void setResponsibleForStackEntry(InstructionFlow iflow, int index) {
-		stackEntryResponsibles.set(stackEntryResponsibles.size()-index-1, iflow);
+		getSmartStack().setResponsible(iflow, index);
 	}
 
 	/**
@@ -95,7 +105,7 @@ public class SmartFrame extends Frame {
 	 * @param iflow
 	 */
 	public void setResponsibleForStackTop(InstructionFlow iflow) {
-		stackEntryResponsibles.set(stackEntryResponsibles.size()-1, iflow);
+		getSmartStack().setResponsible(iflow, 0);
 	}
 
 	/**
@@ -108,18 +118,88 @@ public class SmartFrame extends Frame {
 	}
 
 	/**
-	 * @return a deep copy of this frame, with {@link InstructionFlow} and {@link Type} references left original
+	 * @return a copy of this frame, with {@link InstructionFlow} and {@link Type} references left original.
+	 * The copy shares its local variables and stack entries with this frame until either frame changes them.
 	 */
 	public final SmartFrame getCopy() {
-		final SmartStack stack = (SmartStack) getStack();
-		final SmartStack newstack = new SmartStack(stack.maxStack());
-		final SmartFrame frame = new SmartFrame(getLocals().getClone(), newstack);
-		//auto-update stackEntryResponsibles
-		for (int i = stack.size()-1; i >= 0; i--) {
-			newstack.push(stack.peek(i));
+		return new SmartFrame(getSmartLocals().getCopy(), getSmartStack().getCopy());
+	}
+
+	/**
+	 * Joins frame into this frame, such that this frame represents both frames.
+	 * @param frame the frame to join into this frame
+	 * @return <code>true</code> iff this frame has changed
+	 * @throws IllegalArgumentException if the frames have different sizes
+	 * @see #join(Type, Type)
+	 * @see #join(InstructionFlow, InstructionFlow)
+	 */
+	public boolean join(SmartFrame frame) {
+		final boolean localsChanged = getSmartLocals().join(frame.getSmartLocals());
+		final boolean stackChanged = getSmartStack().join(frame.getSmartStack());
+		return localsChanged || stackChanged;
+	}
+
+	/**
+	 * Null-aware join of two frame entry types, which does not depend on the order in which
+	 * the types are joined. {@link Type#NULL} joined with any initialised reference type yields
+	 * that reference type, such that a {@link Type#NULL} entry is only kept if it is <code>null</code>
+	 * in both types. As the class hierarchy of the analysed code is not necessarily available,
+	 * different non-null reference types yield {@link Type#OBJECT}, or an array of the joined
+	 * element types if both types are arrays of reference types.
+	 * An {@link UninitializedObjectType} joined with any other type, and all other different types,
+	 * yield {@link Type#UNKNOWN}.
+	 * @param t1 the current type
+	 * @param t2 the type to join into t1
+	 * @return the joined type
+	 */
+	protected static Type join(final Type t1, final Type t2) {
+		if (t1 == t2 || t1.equals(t2)) {
+			return t1;
 		}
-		System.arraycopy(localVariableResponsibles, 0, frame.localVariableResponsibles, 0, localVariableResponsibles.length);
-		return frame;
+		if (!(t1 instanceof ReferenceType) || !(t2 instanceof ReferenceType)
+				|| t1 instanceof UninitializedObjectType || t2 instanceof UninitializedObjectType) {
+			return Type.UNKNOWN;
+		}
+		if (Type.NULL.equals(t1)) {
+			return t2;
+		}
+		if (Type.NULL.equals(t2)) {
+			return t1;
+		}
+		if (t1 instanceof ArrayType && t2 instanceof ArrayType) {
+			final Type e1 = ((ArrayType) t1).getElementType();
+			final Type e2 = ((ArrayType) t2).getElementType();
+			if (e1 instanceof ReferenceType && e2 instanceof ReferenceType) {
+				return TypeCache.getType('[' + join(e1, e2).getSignature());
+			}
+		}
+		return Type.OBJECT;
+	}
+
+	/**
+	 * Joins two instructions responsible for a frame entry.
+	 * @param iflow1 the current responsible instruction
+	 * @param iflow2 the responsible instruction to join into iflow1
+	 * @return iflow1 if both instructions are the same, <code>null</code> otherwise
+	 */
+	protected static InstructionFlow join(final InstructionFlow iflow1, final InstructionFlow iflow2) {
+		return iflow1 == iflow2 ? iflow1 : null;
+	}
+
+	/**
+	 * @return the amount of local variable arrays copied on change by this frame and the frames
+	 * that share its statistics
+	 * @see #resetStatistics()
+	 */
+	public int getLocalsCopyCount() {
+		return getSmartLocals().getCopyCount();
+	}
+
+	/**
+	 * Starts new statistics for this frame and its future copies.
+	 */
+	public void resetStatistics() {
+		getSmartLocals().resetStatistics();
 	}
 
 	/* (non-Javadoc)
@@ -128,18 +208,10 @@ public class SmartFrame extends Frame {
 	@Override
 	public String toString() {
 		final StringBuffer sb = new StringBuffer();
-		final LocalVariables locals = getLocals();
 
-		sb.append(locals.getClass().getSimpleName());
+		sb.append(getLocals().getClass().getSimpleName());
 		sb.append(":\n");
-		for (int i = 0; i < locals.maxLocals(); i++) {
-			sb.append(i);
-			sb.append(": ");
-			sb.append(locals.get(i));
-			sb.append(" <= ");
-			sb.append(getResponsibleForLocalVariable(i));
-			sb.append("\n");
-		}
+		sb.append(getLocals());
 
 		sb.append(getStack().getClass().getSimpleName());
 		sb.append(":\n");
@@ -147,31 +219,4 @@ public class SmartFrame extends Frame {
 		return sb.toString();
 	}
 
-	/* (non-Javadoc)
-	 * @see org.apache.bcel.verifier.structurals.Frame#equals(java.lang.Object)
-	 */
-	@Override
-	public boolean equals(Object o) {
-		if (!(o instanceof SmartFrame)) {
-            return false; // implies "null" is non-equal.
-        }
-		SmartFrame f = (SmartFrame) o;
-		return localVariableResponsibles == f.localVariableResponsibles
-			&& stackEntryResponsibles.equals(f.stackEntryResponsibles)
-			&& super.equals(o);
-	}
-
-	/* (non-Javadoc)
-	 * @see org.apache.bcel.verifier.structurals.Frame#hashCode()
-	 * @see java.util.List#hashCode()
-	 */
-	@Override
-	public int hashCode() {
-		int lvrHashCode = 1;
-		for (InstructionFlow iflow : localVariableResponsibles) {
-			lvrHashCode = 31 * lvrHashCode + (iflow == null ? 0 : iflow.hashCode());
-		}
-		return super.hashCode() ^ lvrHashCode ^ stackEntryResponsibles.hashCode();
-	}
-
 }
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.cflow;
+
+import java.util.Arrays;
+
+import org.apache.bcel.generic.Type;
+import org.apache.bcel.verifier.exc.AssertionViolatedException;
+import org.apache.bcel.verifier.structurals.LocalVariables;
+import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+
+/**
+ * {@link LocalVariables} for use with a {@link SmartFrame}. Also keeps track of the
+ * instructions responsible for the local variable values. Copies share their
+ * local variable arrays until either copy changes them (copy-on-write).
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class SmartLocalVariables extends LocalVariables {
+
+	/**
+	 * Copy-on-write statistics, shared between copies.
+	 */
+	private static final class Statistics {
+		private int copyCount;
+	}
+
+	private Type[] locals;
+	private InstructionFlow[] responsibles;
+	/**
+	 * <code>true</code> iff {@link #locals} and {@link #responsibles} may be shared with another copy.
+	 */
+	private boolean shared;
+	private Statistics statistics = new Statistics();
+
+	/**
+	 * Creates a new {@link SmartLocalVariables}.
+	 * @param maxLocals
+	 */
+	public SmartLocalVariables(int maxLocals) {
+		super(0);
+		this.locals = new Type[maxLocals];
+		Arrays.fill(locals, Type.UNKNOWN);
+		this.responsibles = new InstructionFlow[maxLocals];
+	}
+
+	/**
+	 * Creates a new {@link SmartLocalVariables} that shares its contents with lv.
+	 * @param lv
+	 */
+	private SmartLocalVariables(SmartLocalVariables lv) {
+		super(0);
+		this.locals = lv.locals;
+		this.responsibles = lv.responsibles;
+		this.shared = true;
+		this.statistics = lv.statistics;
+	}
+
+	/**
+	 * @return a copy of this {@link SmartLocalVariables}, which shares its contents until changed
+	 */
+	public SmartLocalVariables getCopy() {
+		shared = true;
+		return new SmartLocalVariables(this);
+	}
+
+	/**
+	 * Makes sure the contents of this {@link SmartLocalVariables} are not shared with another copy.
+	 */
+	private void makeWritable() {
+		if (shared) {
+			locals = locals.clone();
+			responsibles = responsibles.clone();
+			shared = false;
+			statistics.copyCount++;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#get(int)
+	 */
+	@Override
+	public Type get(int i) {
+		return locals[i];
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#set(int, org.apache.bcel.generic.Type)
+	 */
+	@Override
+	public void set(int i, Type type) {
+		if (type == Type.BYTE || type == Type.SHORT || type == Type.BOOLEAN || type == Type.CHAR) {
+			throw new AssertionViolatedException("LocalVariables do not know about '"+type+"'. Use Type.INT instead.");
+		}
+		if (locals[i] != type) {
+			makeWritable();
+			locals[i] = type;
+		}
+	}
+
+	/**
+	 * @param i
+	 * @return the instruction responsible for the value of local variable with slot i
+	 */
+	public InstructionFlow getResponsible(int i) {
+		return responsibles[i];
+	}
+
+	/**
+	 * Sets the instruction responsible for the value of local variable with slot i.
+	 * @param iflow
+	 * @param i
+	 */
+	public void setResponsible(InstructionFlow iflow, int i) {
+		if (responsibles[i] != iflow) {
+			makeWritable();
+			responsibles[i] = iflow;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#maxLocals()
+	 */
+	@Override
+	public int maxLocals() {
+		return locals.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#initializeObject(org.apache.bcel.verifier.structurals.UninitializedObjectType)
+	 */
+	@Override
+	public void initializeObject(UninitializedObjectType u) {
+		for (int i = 0; i < locals.length; i++) {
+			if (locals[i] == u) {
+				makeWritable();
+				locals[i] = u.getInitialized();
+			}
+		}
+	}
+
+	/**
+	 * Joins lv into this {@link SmartLocalVariables}.
+	 * @param lv
+	 * @return <code>true</code> iff this {@link SmartLocalVariables} has changed
+	 * @throws IllegalArgumentException if lv has a different size
+	 * @see SmartFrame#join(SmartFrame)
+	 */
+	public boolean join(SmartLocalVariables lv) {
+		if (lv.locals.length != locals.length) {
+			throw new IllegalArgumentException();
+		}
+		if (lv.locals == locals && lv.responsibles == responsibles) {
+			return false;
+		}
+		boolean changed = false;
+		for (int i = 0; i < locals.length; i++) {
+			final Type type = SmartFrame.join(locals[i], lv.locals[i]);
+			final InstructionFlow responsible = SmartFrame.join(responsibles[i], lv.responsibles[i]);
+			if (type != locals[i] || responsible != responsibles[i]) {
+				makeWritable();
+				locals[i] = type;
+				responsibles[i] = responsible;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Merge operation not supported.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void merge(LocalVariables lv) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Clone operation not supported.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	protected Object clone() {
+		throw new UnsupportedOperationException();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#getClone()
+	 */
+	@Override
+	public LocalVariables getClone() {
+		return getCopy();
+	}
+
+	/**
+	 * @return the amount of local variable arrays copied on change by this
+	 * {@link SmartLocalVariables} and the copies that share its statistics
+	 */
+	public int getCopyCount() {
+		return statistics.copyCount;
+	}
+
+	/**
+	 * Starts new statistics for this {@link SmartLocalVariables} and its future copies.
+	 */
+	public void resetStatistics() {
+		statistics = new Statistics();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < locals.length; i++) {
+			sb.append(i);
+			sb.append(": ");
+			sb.append(locals[i]);
+			sb.append(" <= ");
+			sb.append(responsibles[i]);
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof SmartLocalVariables)) {
+			return false;
+		}
+		final SmartLocalVariables lv = (SmartLocalVariables) o;
+		return Arrays.equals(locals, lv.locals)
+			&& Arrays.equals(responsibles, lv.responsibles);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.LocalVariables#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(locals) ^ Arrays.hashCode(responsibles);
+	}
+
+}
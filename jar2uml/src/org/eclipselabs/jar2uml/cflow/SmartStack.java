@@ -12,16 +12,55 @@ package org.eclipselabs.jar2uml.cflow;
 
 import org.apache.bcel.generic.ObjectType;
 import org.apache.bcel.generic.Type;
+import org.apache.bcel.verifier.exc.AssertionViolatedException;
 import org.apache.bcel.verifier.structurals.OperandStack;
+import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
 
 /**
- * {@link OperandStack} for use with a {@link SmartFrame}.
+ * {@link OperandStack} for use with a {@link SmartFrame}. Also keeps track of the
+ * instructions responsible for the stack entries. The stack is stored as an immutable
+ * linked list of entries, such that copies share all entries below the ones they change.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  *
  */
 public class SmartStack extends OperandStack {
 
+	/**
+	 * Immutable operand stack entry.
+	 */
+	private static final class Entry {
+
+		private final Type type;
+		private final InstructionFlow responsible;
+		private final Entry next;
+		private final int size;
+		private final int slotsUsed;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param type the stack entry type
+		 * @param responsible the instruction responsible for the stack entry
+		 * @param next the entry below this entry, or <code>null</code>
+		 */
+		public Entry(Type type, InstructionFlow responsible, Entry next) {
+			super();
+			this.type = type;
+			this.responsible = responsible;
+			this.next = next;
+			if (next == null) {
+				this.size = 1;
+				this.slotsUsed = type.getSize();
+			} else {
+				this.size = next.size + 1;
+				this.slotsUsed = next.slotsUsed + type.getSize();
+			}
+		}
+
+	}
+
 	private SmartFrame frame;
+	private Entry top;
 
 	/**
 	 * Creates an otherwise empty stack with a maximum of
@@ -55,13 +94,132 @@ public class SmartStack extends OperandStack {
 		return frame;
 	}
 
+	/**
+	 * @return a copy of this stack, which shares its entries with this stack
+	 */
+	public SmartStack getCopy() {
+		final SmartStack stack = new SmartStack(maxStack());
+		stack.top = top;
+		return stack;
+	}
+
+	/**
+	 * @param i
+	 * @return the stack entry at index i, counted from the top
+	 */
+	private Entry getEntry(int i) {
+		if (i < 0 || i >= size()) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		Entry entry = top;
+		for (; i > 0; i--) {
+			entry = entry.next;
+		}
+		return entry;
+	}
+
+	/**
+	 * @param i
+	 * @return the instruction responsible for the value of {@link #peek(int)} at i
+	 */
+	public InstructionFlow getResponsible(int i) {
+		return getEntry(i).responsible;
+	}
+
+	/**
+	 * Sets the instruction responsible for the value of {@link #peek(int)} at i.
+	 * Copies the entries above and at i, leaving the entries below i shared.
+	 * @param iflow
+	 * @param i
+	 */
+	public void setResponsible(InstructionFlow iflow, int i) {
+		top = setResponsible(top, iflow, i);
+	}
+
+	/**
+	 * @param entry
+	 * @param iflow
+	 * @param i
+	 * @return a copy of entry, where the entry at i has iflow as responsible instruction
+	 */
+	private Entry setResponsible(Entry entry, InstructionFlow iflow, int i) {
+		if (entry == null) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		if (i == 0) {
+			return entry.responsible == iflow ? entry : new Entry(entry.type, iflow, entry.next);
+		}
+		final Entry next = setResponsible(entry.next, iflow, i - 1);
+		return next == entry.next ? entry : new Entry(entry.type, entry.responsible, next);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#clear()
+	 */
+	@Override
+	public void clear() {
+		top = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return top == null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#size()
+	 */
+	@Override
+	public int size() {
+		return top == null ? 0 : top.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#slotsUsed()
+	 */
+	@Override
+	public int slotsUsed() {
+		return top == null ? 0 : top.slotsUsed;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#peek()
+	 */
+	@Override
+	public Type peek() {
+		return peek(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#peek(int)
+	 */
+	@Override
+	public Type peek(int i) {
+		return getEntry(i).type;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.apache.bcel.verifier.structurals.OperandStack#pop()
 	 */
 	@Override
 	public Type pop() {
-		frame.stackEntryResponsibles.remove(frame.stackEntryResponsibles.size()-1);
-		return super.pop();
+		final Entry entry = getEntry(0);
+		top = entry.next;
+		return entry.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#pop(int)
+	 */
+	@Override
+	public Type pop(int i) {
+		for (int j = 0; j < i; j++) {
+			pop();
+		}
+		return null;
 	}
 
 	/* (non-Javadoc)
@@ -69,8 +227,85 @@ public class SmartStack extends OperandStack {
 	 */
 	@Override
 	public void push(Type type) {
-		super.push(type);
-		frame.stackEntryResponsibles.add(null);
+		if (type == null) {
+			throw new AssertionViolatedException("Cannot push NULL onto OperandStack.");
+		}
+		if (type == Type.BOOLEAN || type == Type.CHAR || type == Type.BYTE || type == Type.SHORT) {
+			throw new AssertionViolatedException("The OperandStack does not know about '"+type+"'; use Type.INT instead.");
+		}
+		if (slotsUsed() >= maxStack()) {
+			throw new AssertionViolatedException("OperandStack too small, should have thrown proper Exception elsewhere. Stack: "+this);
+		}
+		top = new Entry(type, null, top);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#initializeObject(org.apache.bcel.verifier.structurals.UninitializedObjectType)
+	 */
+	@Override
+	public void initializeObject(UninitializedObjectType u) {
+		top = initializeObject(top, u);
+	}
+
+	/**
+	 * @param entry
+	 * @param u
+	 * @return a copy of entry, where all u types are replaced by their initialized type
+	 */
+	private Entry initializeObject(Entry entry, UninitializedObjectType u) {
+		if (entry == null) {
+			return null;
+		}
+		final Entry next = initializeObject(entry.next, u);
+		if (entry.type == u) {
+			return new Entry(u.getInitialized(), entry.responsible, next);
+		}
+		return next == entry.next ? entry : new Entry(entry.type, entry.responsible, next);
+	}
+
+	/**
+	 * Joins s into this stack. Entries that are shared with s are left unchanged.
+	 * @param s
+	 * @return <code>true</code> iff this stack has changed
+	 * @throws IllegalArgumentException if s has a different size
+	 * @see SmartFrame#join(SmartFrame)
+	 */
+	public boolean join(SmartStack s) {
+		final int size = size();
+		if (s.size() != size) {
+			throw new IllegalArgumentException();
+		}
+		if (top == s.top) {
+			return false;
+		}
+		final Type[] types = new Type[size];
+		final InstructionFlow[] responsibles = new InstructionFlow[size];
+		boolean changed = false;
+		int count = 0;
+		Entry entry = top;
+		for (Entry other = s.top; entry != other; entry = entry.next, other = other.next) {
+			types[count] = SmartFrame.join(entry.type, other.type);
+			responsibles[count] = SmartFrame.join(entry.responsible, other.responsible);
+			changed |= types[count] != entry.type || responsibles[count] != entry.responsible;
+			count++;
+		}
+		if (changed) {
+			//entry is the first entry shared with s
+			for (int i = count - 1; i >= 0; i--) {
+				entry = new Entry(types[i], responsibles[i], entry);
+			}
+			top = entry;
+		}
+		return changed;
+	}
+
+	/**
+	 * Merge operation not supported.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void merge(OperandStack s) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
@@ -82,6 +317,14 @@ public class SmartStack extends OperandStack {
 		throw new UnsupportedOperationException();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.apache.bcel.verifier.structurals.OperandStack#getClone()
+	 */
+	@Override
+	public OperandStack getClone() {
+		return getCopy();
+	}
+
 	/* (non-Javadoc)
 	 * @see org.apache.bcel.verifier.structurals.OperandStack#toString()
 	 */
@@ -93,12 +336,12 @@ public class SmartStack extends OperandStack {
 		sb.append(" MaxStack: ");
 		sb.append(maxStack());
 		sb.append(".\n");
-		for (int i=0; i<size(); i++){
-			sb.append(peek(i));
+		for (Entry entry = top; entry != null; entry = entry.next) {
+			sb.append(entry.type);
 			sb.append(" (Size: ");
-			sb.append(peek(i).getSize());
+			sb.append(entry.type.getSize());
 			sb.append(") <= ");
-			sb.append(getFrame().getResponsibleForStackEntry(i));
+			sb.append(entry.responsible);
 			sb.append("\n");
 		}
 		return sb.toString();
@@ -112,8 +355,18 @@ public class SmartStack extends OperandStack {
 		if (!(o instanceof SmartStack)) {
             return false;
         }
-		SmartStack s = (SmartStack) o;
-		return frame.equals(s.frame) && super.equals(o);
+		Entry entry = top;
+		Entry other = ((SmartStack) o).top;
+		while (entry != other) {
+			if (entry == null || other == null
+					|| !entry.type.equals(other.type)
+					|| entry.responsible != other.responsible) {
+				return false;
+			}
+			entry = entry.next;
+			other = other.next;
+		}
+		return true;
 	}
 
 	/* (non-Javadoc)
@@ -121,7 +374,12 @@ public class SmartStack extends OperandStack {
 	 */
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ frame.hashCode();
+		int hashCode = 1;
+		for (Entry entry = top; entry != null; entry = entry.next) {
+			hashCode = 31 * hashCode + entry.type.hashCode();
+			hashCode = 31 * hashCode + (entry.responsible == null ? 0 : entry.responsible.hashCode());
+		}
+		return hashCode;
 	}
 
-}
\ No newline at end of file
+}